@@ -0,0 +1,209 @@
+package com.itemchestshop.bench;
+
+import com.itemchestshop.bench.standin.StandInItemStack;
+import com.itemchestshop.bench.standin.StandInPlugin;
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.models.ItemTemplate;
+import com.itemchestshop.utils.DataManager;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Round-trips backup generations: writes a full copy and a run of diffs while
+ * shops are removed, added, changed and put back, then restores every generation
+ * with {@link DataManager#loadBackup} and compares it with the shops as they were
+ * when it was written. Shops added later use items the full copy does not have,
+ * so restoring them goes through the item-table offsets of each diff.
+ *
+ * Exits with status 1 if any generation restores differently.
+ *
+ * Usage:
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec@backup-check -Dbackup.args="--shops 3000"
+ * </pre>
+ */
+public final class BackupRoundTrip {
+
+    private static final Material[] NEW_ITEMS = {
+        Material.NETHERITE_INGOT, Material.AMETHYST_SHARD, Material.COPPER_INGOT, Material.PRISMARINE_SHARD
+    };
+
+    private BackupRoundTrip() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int count = 3000;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--shops") && i + 1 < args.length) {
+                count = Integer.parseInt(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        StandInPlugin plugin = ShopFixtures.createPlugin();
+        boolean ok;
+        try {
+            ok = run(plugin, count);
+        } finally {
+            deleteBackups(plugin);
+            plugin.deleteDataFolder();
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean run(StandInPlugin plugin, int count) throws IOException {
+        DataManager dataManager = new DataManager(plugin);
+        Map<String, ChestShop> shops = new LinkedHashMap<>();
+        for (ChestShop shop : ShopFixtures.generate(count, 42L)) {
+            shops.put(key(shop), shop);
+        }
+        List<ChestShop> initial = new ArrayList<>(shops.values());
+        Map<Integer, Map<String, String>> expected = new LinkedHashMap<>();
+
+        // Full copy
+        write(dataManager, shops.values(), expected);
+
+        // Removals, and stock counts that changed
+        List<ChestShop> removed = new ArrayList<>();
+        for (int i = 0; i < count; i += 10) {
+            removed.add(shops.remove(key(initial.get(i))));
+        }
+        for (int i = 1; i < count; i += 7) {
+            initial.get(i).setStockSnapshot(i % 13, i % 17, 1_000_000L + i);
+        }
+        write(dataManager, shops.values(), expected);
+
+        // New shops with items the full copy does not have, and existing shops selling another item
+        for (int i = 0; i < count / 10; i++) {
+            Location signLocation = ShopFixtures.signLocation(count + i);
+            ChestShop shop = shop(signLocation, ShopFixtures.owner(i, count), ShopFixtures.ownerName(i, count),
+                new StandInItemStack(Material.EMERALD, 1 + i % 4),
+                new StandInItemStack(NEW_ITEMS[i % NEW_ITEMS.length], 1 + i % 8));
+            shops.put(key(shop), shop);
+        }
+        for (int i = 3; i < count; i += 11) {
+            ChestShop old = shops.get(key(initial.get(i)));
+            if (old != null) {
+                ChestShop replacement = shop(old.getSignLocation(), old.getOwner(), old.getOwnerName(),
+                    old.getWantItem(), new StandInItemStack(NEW_ITEMS[i % NEW_ITEMS.length], 2));
+                shops.put(key(replacement), replacement);
+            }
+        }
+        write(dataManager, shops.values(), expected);
+
+        // New owners and trades
+        for (int i = 5; i < count; i += 9) {
+            ChestShop old = shops.get(key(initial.get(i)));
+            if (old != null) {
+                ChestShop transferred = new ChestShop(old.getSignLocation(), old.getChestLocation(),
+                    UUID.nameUUIDFromBytes(("new:" + i).getBytes(StandardCharsets.UTF_8)), "new" + i, old.getWantTemplate(), old.getGiveTemplate());
+                transferred.setTradeTime(old.getTradeTime());
+                shops.put(key(transferred), transferred);
+            }
+        }
+        for (int i = 2; i < count; i += 5) {
+            ChestShop shop = shops.get(key(initial.get(i)));
+            if (shop != null) {
+                shop.setTradeTime(2_000_000L + i);
+            }
+        }
+        write(dataManager, shops.values(), expected);
+
+        // Removed shops come back and some new ones go again
+        for (int i = 0; i < removed.size(); i += 2) {
+            shops.put(key(removed.get(i)), removed.get(i));
+        }
+        for (int i = 0; i < count / 10; i += 3) {
+            shops.remove(key(ShopFixtures.signLocation(count + i)));
+        }
+        write(dataManager, shops.values(), expected);
+
+        // Nothing changed
+        write(dataManager, shops.values(), expected);
+
+        Map<String, World> worlds = DataManager.snapshotWorlds();
+        boolean ok = true;
+        for (Map.Entry<Integer, Map<String, String>> entry : expected.entrySet()) {
+            Map<String, String> restored = describe(dataManager.loadBackup(entry.getKey(), worlds));
+            int wrong = 0;
+            for (Map.Entry<String, String> shop : entry.getValue().entrySet()) {
+                if (!shop.getValue().equals(restored.get(shop.getKey()))) {
+                    wrong++;
+                }
+            }
+            int extra = 0;
+            for (String key : restored.keySet()) {
+                if (!entry.getValue().containsKey(key)) {
+                    extra++;
+                }
+            }
+            System.out.printf("generation %d: %d shops, %d restored, %d wrong or missing, %d extra%n",
+                entry.getKey(), entry.getValue().size(), restored.size(), wrong, extra);
+            ok &= wrong == 0 && extra == 0;
+        }
+        System.out.println(ok ? "All generations restored as written" : "Backups do not round-trip");
+        return ok;
+    }
+
+    private static void write(DataManager dataManager, Collection<ChestShop> shops, Map<Integer, Map<String, String>> expected) {
+        int generation = dataManager.backUpShops(shops);
+        if (generation < 0) {
+            throw new IllegalStateException("Failed to write a backup generation");
+        }
+        expected.put(generation, describe(shops));
+    }
+
+    private static ChestShop shop(Location signLocation, UUID owner, String ownerName,
+                                  ItemStack wantItem, ItemStack giveItem) {
+        return new ChestShop(signLocation, signLocation.clone().subtract(0, 1, 0), owner, ownerName, wantItem, giveItem);
+    }
+
+    /**
+     * Lists what a backup keeps of each shop. When the stock was counted is
+     * left out, as diffs do not record a recount on its own.
+     */
+    private static Map<String, String> describe(Collection<ChestShop> shops) {
+        Map<String, String> described = new TreeMap<>();
+        for (ChestShop shop : shops) {
+            described.put(key(shop), shop.getChestY() + " " + shop.getOwner() + " " + shop.getOwnerName()
+                + " " + item(shop.getWantTemplate()) + " " + item(shop.getGiveTemplate())
+                + " " + shop.getStockTrades() + " " + shop.getSpaceTrades() + " " + shop.getTradeTime());
+        }
+        return described;
+    }
+
+    private static String item(ItemTemplate template) {
+        return template.getType() + "x" + template.getAmount() + ":" + template.getData();
+    }
+
+    private static String key(ChestShop shop) {
+        return shop.getWorldName() + "," + shop.getX() + "," + shop.getY() + "," + shop.getZ();
+    }
+
+    private static String key(Location location) {
+        return location.getWorld().getName() + "," + location.getBlockX() + "," + location.getBlockY() + "," + location.getBlockZ();
+    }
+
+    private static void deleteBackups(StandInPlugin plugin) {
+        File[] files = new File(plugin.getDataFolder(), "backups").listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+}
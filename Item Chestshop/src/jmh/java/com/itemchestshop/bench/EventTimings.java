@@ -0,0 +1,199 @@
+package com.itemchestshop.bench;
+
+import com.google.gson.JsonObject;
+import com.itemchestshop.utils.LatencyHistogram;
+import com.itemchestshop.utils.MetricsRegistry;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Latency and allocation statistics per event type, shared by the load
+ * harness and the trace replayer. Allocations are measured for the calling
+ * thread only, which is where every listener runs.
+ *
+ * Usage:
+ * <pre>
+ * long allocated = timings.allocatedBytes();
+ * long start = System.nanoTime();
+ * ...
+ * timings.record("shop-click", start, allocated);
+ * </pre>
+ */
+final class EventTimings {
+
+    private final Map<String, Stats> stats;
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * @param keys Event types in the order they are reported
+     */
+    EventTimings(String... keys) {
+        this.stats = new LinkedHashMap<>();
+        for (String key : keys) {
+            stats.put(key, new Stats());
+        }
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    /**
+     * Gets the bytes allocated by the current thread so far
+     * @return The allocation counter to pass to record
+     */
+    long allocatedBytes() {
+        return threads.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Records an event that started at the given time
+     * @param key The event type
+     * @param startNanos System.nanoTime() before the event
+     * @param allocatedBefore allocatedBytes() before the event
+     */
+    void record(String key, long startNanos, long allocatedBefore) {
+        long nanos = System.nanoTime() - startNanos;
+        stats.computeIfAbsent(key, k -> new Stats()).record(nanos, allocatedBytes() - allocatedBefore);
+    }
+
+    void reset() {
+        stats.values().forEach(Stats::reset);
+    }
+
+    /**
+     * Counts recorded events
+     * @param excludedKey An event type left out of the count, may be null
+     * @return The number of events
+     */
+    long getEventCount(String excludedKey) {
+        long count = 0;
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            if (!entry.getKey().equals(excludedKey)) {
+                count += entry.getValue().histogram.getCount();
+            }
+        }
+        return count;
+    }
+
+    long getTotalNanos() {
+        long total = 0;
+        for (Stats eventStats : stats.values()) {
+            total += eventStats.totalNanos;
+        }
+        return total;
+    }
+
+    long getTotalBytes() {
+        long total = 0;
+        for (Stats eventStats : stats.values()) {
+            total += eventStats.allocatedBytes;
+        }
+        return total;
+    }
+
+    /**
+     * Prints one row per event type that was recorded, then the allocation totals
+     */
+    void printTable() {
+        System.out.printf(Locale.ROOT, "%-14s %9s %11s %9s %9s %9s %9s %9s %12s%n",
+            "event", "count", "ops/s", "p50", "p90", "p99", "p99.9", "max", "alloc/event");
+
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats eventStats = entry.getValue();
+            LatencyHistogram histogram = eventStats.histogram;
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            System.out.printf(Locale.ROOT, "%-14s %9d %11.0f %9s %9s %9s %9s %9s %12s%n",
+                entry.getKey(), histogram.getCount(), eventStats.opsPerSecond(),
+                MetricsRegistry.formatNanos(histogram.getPercentile(50)),
+                MetricsRegistry.formatNanos(histogram.getPercentile(90)),
+                MetricsRegistry.formatNanos(histogram.getPercentile(99)),
+                MetricsRegistry.formatNanos(histogram.getPercentile(99.9)),
+                MetricsRegistry.formatNanos(histogram.getMax()),
+                formatBytes(eventStats.bytesPerEvent()));
+        }
+
+        long totalBytes = getTotalBytes();
+        System.out.printf(Locale.ROOT, "Allocation: %s in handlers, %s/s of handler time%n",
+            formatBytes(totalBytes), formatBytes(totalBytes / Math.max(1e-9, getTotalNanos() / 1e9)));
+    }
+
+    /**
+     * Builds the per-event section of a JSON report
+     * @return One object per event type
+     */
+    JsonObject toJson() {
+        JsonObject events = new JsonObject();
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats eventStats = entry.getValue();
+            JsonObject event = new JsonObject();
+            event.addProperty("count", eventStats.histogram.getCount());
+            event.addProperty("opsPerSecond", eventStats.opsPerSecond());
+            event.addProperty("p50Nanos", eventStats.histogram.getPercentile(50));
+            event.addProperty("p90Nanos", eventStats.histogram.getPercentile(90));
+            event.addProperty("p99Nanos", eventStats.histogram.getPercentile(99));
+            event.addProperty("p999Nanos", eventStats.histogram.getPercentile(99.9));
+            event.addProperty("maxNanos", eventStats.histogram.getMax());
+            event.addProperty("bytesPerEvent", eventStats.bytesPerEvent());
+            events.add(entry.getKey(), event);
+        }
+        return events;
+    }
+
+    static String formatBytes(double bytes) {
+        if (bytes < 1024) {
+            return String.format(Locale.ROOT, "%.0fB", bytes);
+        } else if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%.1fKB", bytes / 1024);
+        }
+        return String.format(Locale.ROOT, "%.1fMB", bytes / (1024 * 1024));
+    }
+
+    static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+
+    static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+        return time;
+    }
+
+    /**
+     * Timings and allocations of one event type
+     */
+    private static final class Stats {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private long totalNanos;
+        private long allocatedBytes;
+
+        void record(long nanos, long bytes) {
+            histogram.record(nanos);
+            totalNanos += nanos;
+            allocatedBytes += bytes;
+        }
+
+        void reset() {
+            histogram.reset();
+            totalNanos = 0;
+            allocatedBytes = 0;
+        }
+
+        double opsPerSecond() {
+            return histogram.getCount() / Math.max(1e-9, totalNanos / 1e9);
+        }
+
+        double bytesPerEvent() {
+            return histogram.getCount() == 0 ? 0 : (double) allocatedBytes / histogram.getCount();
+        }
+    }
+}
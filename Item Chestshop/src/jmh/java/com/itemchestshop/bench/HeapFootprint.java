@@ -0,0 +1,170 @@
+package com.itemchestshop.bench;
+
+import com.itemchestshop.bench.standin.StandInItemStack;
+import com.itemchestshop.managers.ShopRegistry;
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.models.ShopTables;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Retained heap per shop, for the old shop layout and the compact one.
+ *
+ * Both layouts are built from the same inputs, with a fresh UUID, owner name and
+ * pair of items per shop as they come out of shops.json. The old layout keeps a
+ * sign and chest Location and its own copies of everything in each shop, keyed by
+ * sign Location in a HashMap. The new one is the plugin's {@link ShopRegistry} of
+ * {@link ChestShop}s, including the interning tables it fills.
+ *
+ * Usage:
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec@footprint -Dfootprint.args="--shops 100000"
+ * </pre>
+ */
+public final class HeapFootprint {
+
+    private static final Material[][] TRADES = {
+        {Material.DIAMOND, Material.EMERALD},
+        {Material.DIAMOND, Material.IRON_INGOT},
+        {Material.BREAD, Material.WHEAT},
+        {Material.OAK_LOG, Material.COAL},
+        {Material.IRON_INGOT, Material.EMERALD},
+        {Material.COBBLESTONE, Material.COAL},
+        {Material.GOLD_INGOT, Material.DIAMOND},
+        {Material.ENDER_PEARL, Material.DIAMOND}
+    };
+    private static final int[] AMOUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    private HeapFootprint() {
+    }
+
+    public static void main(String[] args) {
+        int shops = 100_000;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--shops") && i + 1 < args.length) {
+                shops = Integer.parseInt(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        // Create the worlds up front so they are not counted against either layout
+        for (int i = 0; i < ShopFixtures.WORLD_NAMES.length; i++) {
+            ShopFixtures.signLocation(i);
+        }
+
+        long baseline = usedHeap();
+        Map<Location, LegacyShop> legacy = buildLegacy(shops);
+        long legacyBytes = usedHeap() - baseline;
+        Reference.reachabilityFence(legacy);
+        legacy = null;
+
+        baseline = usedHeap();
+        ShopRegistry registry = buildRegistry(shops);
+        long compactBytes = usedHeap() - baseline;
+        Reference.reachabilityFence(registry);
+
+        System.out.printf(Locale.ROOT, "%d shops, %d distinct items, %d owners%n",
+            shops, ShopTables.getItemCount(), ShopTables.getOwnerCount());
+        System.out.printf(Locale.ROOT, "%-10s %12s %14s%n", "layout", "heap (KiB)", "bytes/shop");
+        System.out.printf(Locale.ROOT, "%-10s %12d %14.1f%n", "before", legacyBytes / 1024, (double) legacyBytes / shops);
+        System.out.printf(Locale.ROOT, "%-10s %12d %14.1f%n", "after", compactBytes / 1024, (double) compactBytes / shops);
+    }
+
+    private static Map<Location, LegacyShop> buildLegacy(int count) {
+        Random random = new Random(42L);
+        Map<Location, LegacyShop> shops = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            Location signLocation = ShopFixtures.signLocation(i);
+            Location chestLocation = signLocation.clone().subtract(0, 1, 0);
+            shops.put(signLocation, new LegacyShop(signLocation, chestLocation, owner(i, count), ownerName(i, count),
+                wantItem(random), giveItem(random)));
+        }
+        return shops;
+    }
+
+    private static ShopRegistry buildRegistry(int count) {
+        Random random = new Random(42L);
+        ShopRegistry registry = new ShopRegistry();
+        for (int i = 0; i < count; i++) {
+            Location signLocation = ShopFixtures.signLocation(i);
+            Location chestLocation = signLocation.clone().subtract(0, 1, 0);
+            registry.put(new ChestShop(signLocation, chestLocation, owner(i, count), ownerName(i, count),
+                wantItem(random), giveItem(random)));
+        }
+        return registry;
+    }
+
+    // Parsed from text for every shop, as the loader does
+    private static UUID owner(int index, int count) {
+        return UUID.fromString(ShopFixtures.owner(index, count).toString());
+    }
+
+    private static String ownerName(int index, int count) {
+        return new String(ShopFixtures.ownerName(index, count).toCharArray());
+    }
+
+    // Both builders draw the same sequence, so the two layouts hold the same trades
+    private static ItemStack wantItem(Random random) {
+        Material[] trade = TRADES[random.nextInt(TRADES.length)];
+        return new StandInItemStack(trade[1], AMOUNTS[random.nextInt(AMOUNTS.length)]);
+    }
+
+    private static ItemStack giveItem(Random random) {
+        Material[] trade = TRADES[random.nextInt(TRADES.length)];
+        return new StandInItemStack(trade[0], AMOUNTS[random.nextInt(AMOUNTS.length)]);
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // Collect until the figure settles
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if (Math.abs(used - now) < 64 * 1024) {
+                return now;
+            }
+            used = now;
+        }
+        return used;
+    }
+
+    /**
+     * The shop layout before the compact representation
+     */
+    private static final class LegacyShop {
+        final Location signLocation;
+        final Location chestLocation;
+        final UUID owner;
+        final String ownerName;
+        final ItemStack wantItem;
+        final ItemStack giveItem;
+
+        LegacyShop(Location signLocation, Location chestLocation, UUID owner, String ownerName,
+                   ItemStack wantItem, ItemStack giveItem) {
+            this.signLocation = signLocation;
+            this.chestLocation = chestLocation;
+            this.owner = owner;
+            this.ownerName = ownerName;
+            this.wantItem = wantItem;
+            this.giveItem = giveItem;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.itemchestshop.bench;
+
+import com.itemchestshop.bench.standin.StandInServer;
+import com.itemchestshop.utils.ItemParser;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sign line parsing: exact material names, aliases and names that match nothing
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ItemParserBenchmark {
+
+    private String hit;
+    private String alias;
+    private String miss;
+    private String bareName;
+
+    @Setup
+    public void setUp() {
+        // New ItemStacks are created through the server's item registry
+        StandInServer.get();
+        // Copies, so the strings are not compile-time constants
+        hit = new String("Diamond 1");
+        alias = new String("Wood 32");
+        miss = new String("Unobtainium 5");
+        bareName = new String("oak_log");
+    }
+
+    @Benchmark
+    public ItemStack parseHit() {
+        return ItemParser.parseItem(hit);
+    }
+
+    @Benchmark
+    public ItemStack parseAlias() {
+        return ItemParser.parseItem(alias);
+    }
+
+    @Benchmark
+    public ItemStack parseMiss() {
+        return ItemParser.parseItem(miss);
+    }
+
+    @Benchmark
+    public Material parseMaterial() {
+        return ItemParser.parseMaterial(bareName);
+    }
+}
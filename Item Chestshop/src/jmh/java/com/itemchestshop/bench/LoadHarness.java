@@ -0,0 +1,494 @@
+package com.itemchestshop.bench;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.itemchestshop.bench.standin.StandInInventory;
+import com.itemchestshop.bench.standin.StandInPlayer;
+import com.itemchestshop.bench.standin.StandInPlugin;
+import com.itemchestshop.bench.standin.StandInServer;
+import com.itemchestshop.bench.standin.StandInWorld;
+import com.itemchestshop.commands.ItemChestShopCommand;
+import com.itemchestshop.listeners.ChestShopListener;
+import com.itemchestshop.listeners.SignListener;
+import com.itemchestshop.models.ChestShop;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.SignChangeEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Synthetic load test. Generates a shop population on the stand-in server and
+ * replays a weighted mix of clicks, sign placements, block breaks and commands
+ * through the real listeners and command executor, then reports throughput,
+ * latency percentiles and allocations per event type.
+ *
+ * Events are handed to the listener methods directly, skipping Bukkit's event
+ * dispatch. Preparing the world for the next event is not timed.
+ *
+ * Usage:
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec@load-test -Dload.args="--shops 100000 --events 200000"
+ * </pre>
+ */
+public final class LoadHarness {
+
+    /**
+     * Kinds of generated events, with their default weight in the mix
+     */
+    enum EventType {
+        SHOP_CLICK("shop-click", 400),
+        BLOCK_CLICK("block-click", 300),
+        BLOCK_BREAK("block-break", 250),
+        COMMAND("command", 40),
+        SHOP_CREATE("shop-create", 5),
+        SHOP_BREAK("shop-break", 5),
+        SCHEDULED("scheduled", 0);
+
+        private final String key;
+        private final int defaultWeight;
+
+        EventType(String key, int defaultWeight) {
+            this.key = key;
+            this.defaultWeight = defaultWeight;
+        }
+
+        static EventType fromKey(String key) {
+            for (EventType type : values()) {
+                if (type.key.equalsIgnoreCase(key)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown event type: " + key);
+        }
+    }
+
+    private static final String[] COMMAND_ITEMS = {"diamond", "emerald", "bread", "iron_ingot", "coal", "oak_log"};
+    // New shops go north of the generated ones, which all have z >= 0
+    private static final int CREATE_AREA_Z = -4 * ShopFixtures.SPACING;
+
+    private final Options options;
+    private final Random random;
+    private final StandInServer server;
+    private final StandInPlugin plugin;
+    private final ChestShopListener chestShopListener;
+    private final SignListener signListener;
+    private final ItemChestShopCommand commandExecutor;
+    private final Command command;
+    private final List<StandInPlayer> players;
+    private final List<Location> liveShops;
+    private final List<Location> pendingShops;
+    private final EventTimings timings;
+    private int createdShops;
+
+    private LoadHarness(Options options) {
+        this.options = options;
+        this.random = new Random(options.seed);
+        this.server = StandInServer.get();
+        this.plugin = ShopFixtures.createPlugin();
+        // Let every player keep creating shops
+        plugin.getConfig().set("max-shops-per-player", -1);
+
+        ShopFixtures.populate(plugin, options.shops);
+        this.liveShops = new ArrayList<>();
+        for (ChestShop chestShop : plugin.getChestShopManager().getShops()) {
+            liveShops.add(chestShop.getSignLocation());
+        }
+        this.pendingShops = new ArrayList<>();
+
+        this.chestShopListener = new ChestShopListener(plugin);
+        this.signListener = new SignListener(plugin);
+        this.commandExecutor = new ItemChestShopCommand(plugin);
+        this.command = new Command("itemchestshop") {
+            @Override
+            public boolean execute(CommandSender sender, String label, String[] args) {
+                return commandExecutor.onCommand(sender, this, label, args);
+            }
+        };
+
+        this.players = new ArrayList<>();
+        for (int i = 0; i < options.players; i++) {
+            Location spawn = ShopFixtures.signLocation(random.nextInt(Math.max(1, options.shops))).add(0, 0, 1);
+            players.add(server.addPlayer("player" + i, spawn));
+        }
+
+        String[] keys = new String[EventType.values().length];
+        for (EventType type : EventType.values()) {
+            keys[type.ordinal()] = type.key;
+        }
+        this.timings = new EventTimings(keys);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        System.out.printf(Locale.ROOT, "Generating %d shops in %d worlds for %d players...%n",
+            options.shops, ShopFixtures.WORLD_NAMES.length, options.players);
+
+        LoadHarness harness = new LoadHarness(options);
+        try {
+            harness.run(options.warmup);
+            harness.timings.reset();
+
+            long gcCountBefore = EventTimings.gcCount();
+            long gcTimeBefore = EventTimings.gcTime();
+            long wallStart = System.nanoTime();
+            harness.run(options.events);
+            long wallNanos = System.nanoTime() - wallStart;
+
+            harness.report(wallNanos, EventTimings.gcCount() - gcCountBefore, EventTimings.gcTime() - gcTimeBefore);
+        } finally {
+            harness.plugin.deleteDataFolder();
+        }
+    }
+
+    /**
+     * Runs a number of events, ticking the scheduler between them
+     * @param events The number of events
+     */
+    private void run(int events) {
+        int totalWeight = 0;
+        for (int weight : options.mix.values()) {
+            totalWeight += weight;
+        }
+
+        for (int i = 0; i < events; i++) {
+            dispatch(pick(random.nextInt(totalWeight)));
+
+            if ((i + 1) % options.eventsPerTick == 0) {
+                long allocated = timings.allocatedBytes();
+                long start = System.nanoTime();
+                server.getScheduler().tick();
+                record(EventType.SCHEDULED, start, allocated);
+                publishCreatedShops();
+            }
+        }
+    }
+
+    private EventType pick(int roll) {
+        for (Map.Entry<EventType, Integer> entry : options.mix.entrySet()) {
+            roll -= entry.getValue();
+            if (roll < 0) {
+                return entry.getKey();
+            }
+        }
+        return EventType.SHOP_CLICK;
+    }
+
+    private void dispatch(EventType type) {
+        if (liveShops.isEmpty() && (type == EventType.SHOP_CLICK || type == EventType.SHOP_BREAK)) {
+            type = EventType.SHOP_CREATE;
+        }
+
+        switch (type) {
+            case SHOP_CLICK:
+                shopClick();
+                break;
+            case BLOCK_CLICK:
+                blockClick();
+                break;
+            case BLOCK_BREAK:
+                blockBreak();
+                break;
+            case COMMAND:
+                command();
+                break;
+            case SHOP_CREATE:
+                shopCreate();
+                break;
+            case SHOP_BREAK:
+                shopBreak();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void shopClick() {
+        Location signLocation = liveShops.get(random.nextInt(liveShops.size()));
+        ChestShop chestShop = plugin.getChestShopManager().getChestShop(signLocation);
+        StandInPlayer player = randomPlayer();
+
+        // Restock both sides so most clicks end in a trade
+        Location chestLocation = chestShop.getChestLocation();
+        StandInInventory chest = world(chestLocation).getContainer(
+            chestLocation.getBlockX(), chestLocation.getBlockY(), chestLocation.getBlockZ());
+        if (chest != null && chest.count(chestShop.getGiveTemplate().getType()) < chestShop.getGiveTemplate().getAmount()) {
+            chest.fill(chestShop.getGiveTemplate().getType(), chestShop.getGiveTemplate().getAmount() * 8);
+        }
+        player.getInventory().fill(chestShop.getWantTemplate().getType(), chestShop.getWantTemplate().getAmount() * 4);
+        player.setSneaking(random.nextInt(10) == 0);
+
+        Block block = signLocation.getBlock();
+        PlayerInteractEvent event = new PlayerInteractEvent(player.getPlayer(), Action.RIGHT_CLICK_BLOCK, null,
+            block, BlockFace.NORTH);
+        long allocated = timings.allocatedBytes();
+        long start = System.nanoTime();
+        chestShopListener.onPlayerInteract(event);
+        record(EventType.SHOP_CLICK, start, allocated);
+        player.setSneaking(false);
+    }
+
+    private void blockClick() {
+        StandInPlayer player = randomPlayer();
+        Location target = randomGroundLocation();
+        Material type = random.nextInt(4) == 0 ? Material.CHEST : Material.STONE;
+        world(target).setType(target.getBlockX(), target.getBlockY(), target.getBlockZ(), type);
+
+        PlayerInteractEvent event = new PlayerInteractEvent(player.getPlayer(), Action.RIGHT_CLICK_BLOCK, null,
+            target.getBlock(), BlockFace.UP);
+        long allocated = timings.allocatedBytes();
+        long start = System.nanoTime();
+        chestShopListener.onPlayerInteract(event);
+        record(EventType.BLOCK_CLICK, start, allocated);
+
+        world(target).setType(target.getBlockX(), target.getBlockY(), target.getBlockZ(), Material.AIR);
+    }
+
+    private void blockBreak() {
+        StandInPlayer player = randomPlayer();
+        Location target = randomGroundLocation();
+        world(target).setType(target.getBlockX(), target.getBlockY(), target.getBlockZ(), Material.STONE);
+
+        BlockBreakEvent event = new BlockBreakEvent(target.getBlock(), player.getPlayer());
+        long allocated = timings.allocatedBytes();
+        long start = System.nanoTime();
+        signListener.onBlockBreak(event);
+        record(EventType.BLOCK_BREAK, start, allocated);
+
+        world(target).setType(target.getBlockX(), target.getBlockY(), target.getBlockZ(), Material.AIR);
+    }
+
+    private void command() {
+        StandInPlayer player = randomPlayer();
+        String item = COMMAND_ITEMS[random.nextInt(COMMAND_ITEMS.length)];
+        String[] args;
+        switch (random.nextInt(7)) {
+            case 0:
+                args = new String[] {"list"};
+                break;
+            case 1:
+                args = new String[] {"stats"};
+                break;
+            case 2:
+                args = new String[] {"find", item};
+                break;
+            case 3:
+                args = new String[] {"market", item};
+                break;
+            case 4:
+                args = new String[] {"near", item};
+                break;
+            case 5:
+                args = new String[] {"route", COMMAND_ITEMS[random.nextInt(COMMAND_ITEMS.length)], item};
+                break;
+            default:
+                args = new String[] {"info"};
+                break;
+        }
+
+        long allocated = timings.allocatedBytes();
+        long start = System.nanoTime();
+        command.execute(player.getPlayer(), "ics", args);
+        record(EventType.COMMAND, start, allocated);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void shopCreate() {
+        StandInPlayer player = randomPlayer();
+        int index = createdShops++;
+        StandInWorld world = server.getOrCreateWorld(ShopFixtures.WORLD_NAMES[index % ShopFixtures.WORLD_NAMES.length]);
+        int x = (index % ShopFixtures.ROW_LENGTH) * ShopFixtures.SPACING;
+        int z = CREATE_AREA_Z - (index / ShopFixtures.ROW_LENGTH) * ShopFixtures.SPACING;
+
+        world.placeChest(x, ShopFixtures.SIGN_Y - 1, z).fill(Material.DIAMOND, 16);
+        world.setType(x, ShopFixtures.SIGN_Y, z, Material.OAK_SIGN);
+        Location signLocation = new Location(world.getWorld(), x, ShopFixtures.SIGN_Y, z);
+
+        // ItemParser reads "Item Amount"
+        String[] lines = {player.getName(), "Want: Emerald 4", "Give: Diamond 1", ""};
+        SignChangeEvent event = new SignChangeEvent(signLocation.getBlock(), player.getPlayer(), lines);
+        long allocated = timings.allocatedBytes();
+        long start = System.nanoTime();
+        signListener.onSignChange(event);
+        record(EventType.SHOP_CREATE, start, allocated);
+
+        if (!event.isCancelled()) {
+            pendingShops.add(signLocation);
+        }
+    }
+
+    private void shopBreak() {
+        int index = random.nextInt(liveShops.size());
+        Location signLocation = liveShops.get(index);
+        // Swap-remove, the order of live shops does not matter
+        liveShops.set(index, liveShops.get(liveShops.size() - 1));
+        liveShops.remove(liveShops.size() - 1);
+
+        BlockBreakEvent event = new BlockBreakEvent(signLocation.getBlock(), randomPlayer().getPlayer());
+        long allocated = timings.allocatedBytes();
+        long start = System.nanoTime();
+        signListener.onBlockBreak(event);
+        record(EventType.SHOP_BREAK, start, allocated);
+
+        world(signLocation).setType(signLocation.getBlockX(), signLocation.getBlockY(), signLocation.getBlockZ(), Material.AIR);
+    }
+
+    /**
+     * Moves shops whose delayed creation task has run into the live set
+     */
+    private void publishCreatedShops() {
+        if (pendingShops.isEmpty()) {
+            return;
+        }
+        pendingShops.removeIf(location -> {
+            if (plugin.getChestShopManager().hasChestShop(location)) {
+                liveShops.add(location);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void record(EventType type, long start, long allocatedBefore) {
+        timings.record(type.key, start, allocatedBefore);
+    }
+
+    private StandInPlayer randomPlayer() {
+        return players.get(random.nextInt(players.size()));
+    }
+
+    /**
+     * Picks a spot between the shops, a few blocks above the chests
+     * @return The location
+     */
+    private Location randomGroundLocation() {
+        Location near = ShopFixtures.signLocation(random.nextInt(Math.max(1, options.shops)));
+        return near.add(1, 2 + random.nextInt(4), 1);
+    }
+
+    private StandInWorld world(Location location) {
+        return server.getOrCreateWorld(location.getWorld().getName());
+    }
+
+    private void report(long wallNanos, long gcCount, long gcMillis) throws IOException {
+        long totalEvents = timings.getEventCount(EventType.SCHEDULED.key);
+
+        System.out.printf(Locale.ROOT, "%nLoad test: %d shops at start, %d at end, %d players, %d events after %d warmup%n",
+            options.shops, plugin.getChestShopManager().getShopCount(), options.players,
+            options.events, options.warmup);
+        System.out.printf(Locale.ROOT, "Throughput: %.0f events/s wall clock, %.0f events/s of handler time%n",
+            totalEvents / (wallNanos / 1e9), totalEvents / Math.max(1e-9, timings.getTotalNanos() / 1e9));
+        timings.printTable();
+        System.out.printf(Locale.ROOT, "GC: %d collections, %dms%n", gcCount, gcMillis);
+
+        if (options.report != null) {
+            writeReport(wallNanos, totalEvents, gcCount, gcMillis);
+            System.out.println("Report written to " + options.report.getAbsolutePath());
+        }
+    }
+
+    private void writeReport(long wallNanos, long totalEvents, long gcCount, long gcMillis) throws IOException {
+        JsonObject root = new JsonObject();
+        root.addProperty("shops", options.shops);
+        root.addProperty("players", options.players);
+        root.addProperty("events", options.events);
+        root.addProperty("seed", options.seed);
+        root.addProperty("wallSeconds", wallNanos / 1e9);
+        root.addProperty("eventsPerSecond", totalEvents / (wallNanos / 1e9));
+        root.addProperty("gcCount", gcCount);
+        root.addProperty("gcMillis", gcMillis);
+        root.add("events", timings.toJson());
+
+        try (FileWriter writer = new FileWriter(options.report)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(root, writer);
+        }
+    }
+
+    /**
+     * Command line options
+     */
+    static final class Options {
+        int shops = 10_000;
+        int players = 50;
+        int events = 50_000;
+        int warmup = -1;
+        int eventsPerTick = 50;
+        long seed = 1L;
+        File report;
+        final Map<EventType, Integer> mix = new EnumMap<>(EventType.class);
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (EventType type : EventType.values()) {
+                if (type.defaultWeight > 0) {
+                    options.mix.put(type, type.defaultWeight);
+                }
+            }
+
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--shops":
+                        options.shops = Integer.parseInt(value);
+                        break;
+                    case "--players":
+                        options.players = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "--events":
+                        options.events = Integer.parseInt(value);
+                        break;
+                    case "--warmup":
+                        options.warmup = Integer.parseInt(value);
+                        break;
+                    case "--events-per-tick":
+                        options.eventsPerTick = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "--seed":
+                        options.seed = Long.parseLong(value);
+                        break;
+                    case "--report":
+                        options.report = new File(value);
+                        break;
+                    case "--mix":
+                        // e.g. shop-click=500,block-break=300,command=50
+                        options.mix.clear();
+                        for (String part : value.split(",")) {
+                            String[] pair = part.split("=");
+                            int weight = Integer.parseInt(pair[1].trim());
+                            if (weight > 0) {
+                                options.mix.put(EventType.fromKey(pair[0].trim()), weight);
+                            }
+                        }
+                        options.mix.remove(EventType.SCHEDULED);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+                i++;
+            }
+
+            if (options.mix.isEmpty()) {
+                throw new IllegalArgumentException("The event mix is empty");
+            }
+            if (options.warmup < 0) {
+                options.warmup = options.events / 5;
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.itemchestshop.bench;
+
+import com.itemchestshop.bench.standin.StandInPlugin;
+import com.itemchestshop.managers.ChestShopManager;
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.utils.DataManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading shops.json. Loading into the manager also rebuilds the derived indexes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int shopCount;
+
+    private StandInPlugin plugin;
+    private ChestShopManager manager;
+    private DataManager dataManager;
+
+    @Setup
+    public void setUp() {
+        plugin = ShopFixtures.createPlugin();
+        ShopFixtures.populate(plugin, shopCount);
+        manager = plugin.getChestShopManager();
+        dataManager = new DataManager(plugin);
+    }
+
+    @TearDown
+    public void tearDown() {
+        plugin.deleteDataFolder();
+    }
+
+    @Benchmark
+    public void save() {
+        manager.saveShops();
+    }
+
+    @Benchmark
+    public List<ChestShop> parse() {
+        return dataManager.loadShops();
+    }
+
+    @Benchmark
+    public ChestShopManager loadAndIndex() {
+        manager.loadShops();
+        return manager;
+    }
+}
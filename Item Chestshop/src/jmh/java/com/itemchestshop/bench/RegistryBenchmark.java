@@ -0,0 +1,81 @@
+package com.itemchestshop.bench;
+
+import com.itemchestshop.bench.standin.StandInPlugin;
+import com.itemchestshop.managers.ChestShopManager;
+import com.itemchestshop.models.ChestShop;
+import org.bukkit.Location;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups in the shop registry, as done on every sign click and block break
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RegistryBenchmark {
+
+    private static final int PROBES = 1024;
+
+    @Param({"1000", "10000", "100000"})
+    public int shopCount;
+
+    private StandInPlugin plugin;
+    private ChestShopManager manager;
+    private Location[] hits;
+    private Location[] misses;
+    private UUID owner;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        plugin = ShopFixtures.createPlugin();
+        ShopFixtures.populate(plugin, shopCount);
+        manager = plugin.getChestShopManager();
+
+        // Fresh Location objects, like the ones built from a clicked block
+        hits = new Location[PROBES];
+        misses = new Location[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            hits[i] = ShopFixtures.signLocation((int) ((i * 2654435761L) % shopCount)).clone();
+            misses[i] = hits[i].clone().add(1, 0, 0);
+        }
+        owner = ShopFixtures.owner(0, shopCount);
+    }
+
+    @TearDown
+    public void tearDown() {
+        plugin.deleteDataFolder();
+    }
+
+    @Benchmark
+    public ChestShop lookupHit() {
+        return manager.getChestShop(hits[cursor++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public boolean lookupMiss() {
+        return manager.hasChestShop(misses[cursor++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public int shopCountForOwner() {
+        return manager.getShopCount(owner);
+    }
+}
@@ -0,0 +1,140 @@
+package com.itemchestshop.bench;
+
+import com.itemchestshop.bench.standin.StandInInventory;
+import com.itemchestshop.bench.standin.StandInItemStack;
+import com.itemchestshop.bench.standin.StandInPlugin;
+import com.itemchestshop.bench.standin.StandInServer;
+import com.itemchestshop.bench.standin.StandInWorld;
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.utils.DataManager;
+import org.bukkit.Location;
+import org.bukkit.Material;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Generates reproducible shop populations for benchmarks.
+ * Shops sit on a grid three blocks apart, with the chest directly below the sign.
+ */
+public final class ShopFixtures {
+
+    public static final String[] WORLD_NAMES = {"world", "world_nether", "world_the_end"};
+    public static final int SIGN_Y = 65;
+    public static final int SPACING = 3;
+    public static final int ROW_LENGTH = 1000;
+
+    // {give, give amount, want, want amount}, weighted by how often the pair shows up on a server
+    private static final Object[][] TRADES = {
+        {Material.DIAMOND, 1, Material.EMERALD, 4},
+        {Material.DIAMOND, 1, Material.IRON_INGOT, 32},
+        {Material.BREAD, 16, Material.WHEAT, 48},
+        {Material.OAK_LOG, 64, Material.COAL, 8},
+        {Material.IRON_INGOT, 16, Material.EMERALD, 2},
+        {Material.COBBLESTONE, 64, Material.COAL, 1},
+        {Material.BEEF, 8, Material.EMERALD, 1},
+        {Material.GOLD_INGOT, 8, Material.DIAMOND, 1},
+        {Material.LEATHER, 16, Material.EMERALD, 3},
+        {Material.ENDER_PEARL, 16, Material.DIAMOND, 2},
+        {Material.DIAMOND_SWORD, 1, Material.DIAMOND, 3},
+        {Material.WHITE_WOOL, 32, Material.EMERALD, 1}
+    };
+    private static final int[] TRADE_WEIGHTS = {10, 6, 8, 6, 6, 5, 3, 3, 2, 2, 1, 2};
+
+    private ShopFixtures() {
+    }
+
+    /**
+     * Creates a plugin on the stand-in server with logging turned down to warnings
+     * @return The plugin
+     */
+    public static StandInPlugin createPlugin() {
+        StandInPlugin plugin = StandInPlugin.create(null);
+        plugin.getLogger().setLevel(Level.WARNING);
+        return plugin;
+    }
+
+    /**
+     * Gets the location of the nth shop sign
+     * @param index The shop index
+     * @return The sign location
+     */
+    public static Location signLocation(int index) {
+        StandInWorld world = world(index);
+        int cell = index / WORLD_NAMES.length;
+        return new Location(world.getWorld(), (cell % ROW_LENGTH) * SPACING, SIGN_Y, (cell / ROW_LENGTH) * SPACING);
+    }
+
+    /**
+     * Gets the owner of the nth shop; shops are spread over count / 20 owners
+     * @param index The shop index
+     * @param count The total number of shops
+     * @return The owner UUID
+     */
+    public static UUID owner(int index, int count) {
+        return UUID.nameUUIDFromBytes(("owner:" + ownerName(index, count)).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String ownerName(int index, int count) {
+        return "owner" + (index % Math.max(1, count / 20));
+    }
+
+    /**
+     * Builds shops and places their chests in the stand-in worlds
+     * @param count The number of shops
+     * @param seed Seed for the item mix
+     * @return The shops
+     */
+    public static List<ChestShop> generate(int count, long seed) {
+        Random random = new Random(seed);
+        int totalWeight = 0;
+        for (int weight : TRADE_WEIGHTS) {
+            totalWeight += weight;
+        }
+
+        List<ChestShop> shops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Object[] trade = pickTrade(random.nextInt(totalWeight));
+            Location signLocation = signLocation(i);
+            Location chestLocation = signLocation.clone().subtract(0, 1, 0);
+
+            StandInWorld world = world(i);
+            world.setType(signLocation.getBlockX(), SIGN_Y, signLocation.getBlockZ(), Material.OAK_SIGN);
+            StandInInventory chest = world.placeChest(chestLocation.getBlockX(), chestLocation.getBlockY(), chestLocation.getBlockZ());
+            chest.fill((Material) trade[0], (Integer) trade[1] * (1 + random.nextInt(8)));
+
+            shops.add(new ChestShop(signLocation, chestLocation, owner(i, count), ownerName(i, count),
+                new StandInItemStack((Material) trade[2], (Integer) trade[3]),
+                new StandInItemStack((Material) trade[0], (Integer) trade[1])));
+        }
+        return shops;
+    }
+
+    /**
+     * Writes generated shops to the plugin's shops.json and loads them into its manager
+     * @param plugin The plugin
+     * @param count The number of shops
+     */
+    public static void populate(StandInPlugin plugin, int count) {
+        new DataManager(plugin).saveShops(generate(count, 42L));
+        plugin.getChestShopManager().loadShops();
+    }
+
+    private static StandInWorld world(int index) {
+        return StandInServer.get().getOrCreateWorld(WORLD_NAMES[index % WORLD_NAMES.length]);
+    }
+
+    private static Object[] pickTrade(int roll) {
+        for (int i = 0; i < TRADES.length; i++) {
+            roll -= TRADE_WEIGHTS[i];
+            if (roll < 0) {
+                return TRADES[i];
+            }
+        }
+        return TRADES[0];
+    }
+}
@@ -0,0 +1,204 @@
+package com.itemchestshop.bench;
+
+import com.itemchestshop.utils.TraceRecorder;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Reads trace files written by {@link TraceRecorder}, resolving world and
+ * player ids back to names as it goes.
+ */
+final class TraceReader implements Closeable {
+
+    /**
+     * Kinds of recorded events
+     */
+    enum Type {
+        INTERACT("interact"),
+        SIGN_CHANGE("sign-change"),
+        BREAK("break"),
+        COMMAND("command");
+
+        final String key;
+
+        Type(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * One recorded event, reused between calls to next
+     */
+    static final class Event {
+        Type type;
+        long timeMicros;
+        // Null for commands from the console
+        UUID playerId;
+        String playerName;
+        String world;
+        int x;
+        int y;
+        int z;
+        boolean sneaking;
+        // Sign lines or command arguments
+        String[] text;
+    }
+
+    private final DataInputStream input;
+    private final long startMillis;
+    private final List<String> worlds;
+    private final Map<Integer, UUID> playerIds;
+    private final Map<Integer, String> playerNames;
+    private long timeMicros;
+    private boolean truncated;
+
+    TraceReader(File file) throws IOException {
+        this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        if (input.readInt() != TraceRecorder.MAGIC) {
+            input.close();
+            throw new IOException(file.getName() + " is not a trace file");
+        }
+        int version = input.readUnsignedByte();
+        if (version != TraceRecorder.VERSION) {
+            input.close();
+            throw new IOException("Unsupported trace version " + version + " in " + file.getName());
+        }
+        this.startMillis = input.readLong();
+        this.worlds = new ArrayList<>();
+        this.playerIds = new HashMap<>();
+        this.playerNames = new HashMap<>();
+    }
+
+    /**
+     * Reads the next event
+     * @param event The event to fill in
+     * @return false at the end of the trace
+     * @throws IOException If the file cannot be read or is corrupt
+     */
+    boolean next(Event event) throws IOException {
+        while (true) {
+            int type = input.read();
+            if (type < 0) {
+                return false;
+            }
+
+            try {
+                switch (type) {
+                    case TraceRecorder.RECORD_WORLD:
+                        readVarInt();
+                        worlds.add(readString());
+                        break;
+                    case TraceRecorder.RECORD_PLAYER:
+                        int id = readVarInt();
+                        playerIds.put(id, new UUID(input.readLong(), input.readLong()));
+                        playerNames.put(id, readString());
+                        break;
+                    case TraceRecorder.RECORD_INTERACT:
+                        readBlockEvent(Type.INTERACT, event);
+                        event.sneaking = (input.readUnsignedByte() & TraceRecorder.FLAG_SNEAKING) != 0;
+                        return true;
+                    case TraceRecorder.RECORD_SIGN_CHANGE:
+                        readBlockEvent(Type.SIGN_CHANGE, event);
+                        event.text = readStrings();
+                        return true;
+                    case TraceRecorder.RECORD_BREAK:
+                        readBlockEvent(Type.BREAK, event);
+                        return true;
+                    case TraceRecorder.RECORD_COMMAND:
+                        readHeader(Type.COMMAND, event);
+                        event.world = null;
+                        event.x = 0;
+                        event.y = 0;
+                        event.z = 0;
+                        event.text = readStrings();
+                        return true;
+                    default:
+                        throw new IOException("Unknown record type " + type);
+                }
+            } catch (EOFException e) {
+                // The server stopped while the last buffer was being written
+                truncated = true;
+                return false;
+            }
+        }
+    }
+
+    long getStartMillis() {
+        return startMillis;
+    }
+
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private void readHeader(Type type, Event event) throws IOException {
+        timeMicros += readVarLong();
+        event.type = type;
+        event.timeMicros = timeMicros;
+        int player = readVarInt();
+        event.playerId = player == TraceRecorder.CONSOLE_ID ? null : playerIds.get(player);
+        event.playerName = player == TraceRecorder.CONSOLE_ID ? null : playerNames.get(player);
+        event.sneaking = false;
+        event.text = null;
+    }
+
+    private void readBlockEvent(Type type, Event event) throws IOException {
+        readHeader(type, event);
+        event.world = worlds.get(readVarInt());
+        event.x = readSignedVarInt();
+        event.y = readSignedVarInt();
+        event.z = readSignedVarInt();
+    }
+
+    private String[] readStrings() throws IOException {
+        String[] values = new String[input.readUnsignedByte()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString();
+        }
+        return values;
+    }
+
+    private String readString() throws IOException {
+        byte[] bytes = new byte[readVarInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readSignedVarInt() throws IOException {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int readVarInt() throws IOException {
+        return (int) readVarLong();
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,422 @@
+package com.itemchestshop.bench;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.itemchestshop.bench.standin.StandInInventory;
+import com.itemchestshop.bench.standin.StandInPlayer;
+import com.itemchestshop.bench.standin.StandInPlugin;
+import com.itemchestshop.bench.standin.StandInServer;
+import com.itemchestshop.bench.standin.StandInWorld;
+import com.itemchestshop.commands.ItemChestShopCommand;
+import com.itemchestshop.listeners.ChestShopListener;
+import com.itemchestshop.listeners.SignListener;
+import com.itemchestshop.models.ChestShop;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.SignChangeEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Replays a trace recorded with /itemchestshop trace through the real listeners
+ * and command executor on the stand-in server, then reports latency and
+ * allocations per event type like the load test.
+ *
+ * The shops of the traced server are loaded from a copy of its shops.json. Chests
+ * hold no items on the stand-in server, so by default every click first stocks
+ * the shop and the buyer so it runs the full trade path; --no-refill leaves the
+ * inventories as earlier events left them. Scheduled tasks run on the ticks the
+ * trace timestamps fall on, at any speed.
+ *
+ * Usage:
+ * <pre>
+ * mvn -Pbenchmarks test-compile exec:exec@replay -Dreplay.args="--trace trace.icstrace --shops shops.json --speed 10"
+ * </pre>
+ */
+public final class TraceReplayer {
+
+    private static final String SCHEDULED = "scheduled";
+    private static final long MICROS_PER_TICK = 50_000;
+
+    private final Options options;
+    private final StandInServer server;
+    private final StandInPlugin plugin;
+    private final ChestShopListener chestShopListener;
+    private final SignListener signListener;
+    private final ItemChestShopCommand commandExecutor;
+    private final Command command;
+    private final Map<UUID, StandInPlayer> players;
+    private final EventTimings timings;
+    private long skippedEvents;
+
+    private TraceReplayer(Options options) throws IOException {
+        this.options = options;
+        this.server = StandInServer.get();
+
+        File dataFolder = Files.createTempDirectory("ics-replay").toFile();
+        if (options.shops != null) {
+            createWorlds(options.shops);
+            Files.copy(options.shops.toPath(), new File(dataFolder, "shops.json").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (options.config != null) {
+            Files.copy(options.config.toPath(), new File(dataFolder, "config.yml").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.plugin = StandInPlugin.create(dataFolder);
+        plugin.getLogger().setLevel(Level.WARNING);
+        buildShops();
+
+        this.chestShopListener = new ChestShopListener(plugin);
+        this.signListener = new SignListener(plugin);
+        this.commandExecutor = new ItemChestShopCommand(plugin);
+        this.command = new Command("itemchestshop") {
+            @Override
+            public boolean execute(CommandSender sender, String label, String[] args) {
+                return commandExecutor.onCommand(sender, this, label, args);
+            }
+        };
+
+        this.players = new HashMap<>();
+        String[] keys = new String[TraceReader.Type.values().length + 1];
+        for (TraceReader.Type type : TraceReader.Type.values()) {
+            keys[type.ordinal()] = type.key;
+        }
+        keys[keys.length - 1] = SCHEDULED;
+        this.timings = new EventTimings(keys);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        TraceReplayer replayer = new TraceReplayer(options);
+        try (TraceReader reader = new TraceReader(options.trace)) {
+            System.out.printf(Locale.ROOT, "Replaying %s recorded %s against %d shops at %s...%n",
+                options.trace.getName(), new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(reader.getStartMillis())),
+                replayer.plugin.getChestShopManager().getShopCount(),
+                options.speed > 0 ? options.speed + "x speed" : "full speed");
+
+            long gcCountBefore = EventTimings.gcCount();
+            long gcTimeBefore = EventTimings.gcTime();
+            long wallStart = System.nanoTime();
+            long traceMicros = replayer.replay(reader, wallStart);
+            long wallNanos = System.nanoTime() - wallStart;
+
+            if (reader.isTruncated()) {
+                System.out.println("The trace ends in a partial record, it was cut off while being written");
+            }
+            replayer.report(traceMicros, wallNanos, EventTimings.gcCount() - gcCountBefore, EventTimings.gcTime() - gcTimeBefore);
+        } finally {
+            replayer.plugin.deleteDataFolder();
+        }
+    }
+
+    /**
+     * Feeds every event of a trace through the plugin
+     * @param reader The trace
+     * @param wallStart System.nanoTime() at the start of the replay
+     * @return The time covered by the trace in microseconds
+     */
+    private long replay(TraceReader reader, long wallStart) throws IOException {
+        TraceReader.Event event = new TraceReader.Event();
+        long ticksRun = 0;
+        long lastMicros = 0;
+
+        while (reader.next(event)) {
+            lastMicros = event.timeMicros;
+
+            // Run the ticks that passed on the recorded server before this event
+            long dueTicks = event.timeMicros / MICROS_PER_TICK;
+            while (ticksRun < dueTicks) {
+                tick();
+                ticksRun++;
+            }
+
+            if (options.speed > 0) {
+                long dueNanos = wallStart + (long) (event.timeMicros * 1000 / options.speed);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+            }
+
+            dispatch(event);
+        }
+
+        // Let pending shop creations and saves finish
+        for (int i = 0; i < 20; i++) {
+            tick();
+        }
+        return lastMicros;
+    }
+
+    private void tick() {
+        long allocated = timings.allocatedBytes();
+        long start = System.nanoTime();
+        if (server.getScheduler().tick() > 0) {
+            timings.record(SCHEDULED, start, allocated);
+        }
+    }
+
+    private void dispatch(TraceReader.Event event) {
+        switch (event.type) {
+            case INTERACT:
+                interact(event);
+                break;
+            case SIGN_CHANGE:
+                signChange(event);
+                break;
+            case BREAK:
+                signBreak(event);
+                break;
+            case COMMAND:
+                command(event);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void interact(TraceReader.Event event) {
+        StandInPlayer player = player(event);
+        StandInWorld world = server.getOrCreateWorld(event.world);
+        ensureSign(world, event);
+
+        Location signLocation = new Location(world.getWorld(), event.x, event.y, event.z);
+        ChestShop chestShop = plugin.getChestShopManager().getChestShop(signLocation);
+        if (chestShop != null && options.refill) {
+            restock(chestShop);
+            player.getInventory().fill(chestShop.getWantTemplate().getType(), chestShop.getWantTemplate().getAmount() * 4);
+        }
+        player.setSneaking(event.sneaking);
+
+        Block block = signLocation.getBlock();
+        PlayerInteractEvent interactEvent = new PlayerInteractEvent(player.getPlayer(), Action.RIGHT_CLICK_BLOCK, null,
+            block, BlockFace.NORTH);
+        long allocated = timings.allocatedBytes();
+        long start = System.nanoTime();
+        chestShopListener.onPlayerInteract(interactEvent);
+        timings.record(event.type.key, start, allocated);
+        player.setSneaking(false);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void signChange(TraceReader.Event event) {
+        StandInPlayer player = player(event);
+        StandInWorld world = server.getOrCreateWorld(event.world);
+        ensureSign(world, event);
+        if (!isChest(world.getType(event.x, event.y - 1, event.z)) && !isChest(world.getType(event.x, event.y - 2, event.z))) {
+            // The recorded server had whatever chest the player built; give the sign one
+            world.placeChest(event.x, event.y - 1, event.z);
+        }
+
+        String[] lines = new String[4];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = i < event.text.length ? event.text[i] : "";
+        }
+        Block block = new Location(world.getWorld(), event.x, event.y, event.z).getBlock();
+        SignChangeEvent signEvent = new SignChangeEvent(block, player.getPlayer(), lines);
+        long allocated = timings.allocatedBytes();
+        long start = System.nanoTime();
+        signListener.onSignChange(signEvent);
+        timings.record(event.type.key, start, allocated);
+    }
+
+    private void signBreak(TraceReader.Event event) {
+        StandInPlayer player = player(event);
+        StandInWorld world = server.getOrCreateWorld(event.world);
+        ensureSign(world, event);
+
+        Block block = new Location(world.getWorld(), event.x, event.y, event.z).getBlock();
+        BlockBreakEvent breakEvent = new BlockBreakEvent(block, player.getPlayer());
+        long allocated = timings.allocatedBytes();
+        long start = System.nanoTime();
+        signListener.onBlockBreak(breakEvent);
+        timings.record(event.type.key, start, allocated);
+
+        if (!breakEvent.isCancelled()) {
+            world.setType(event.x, event.y, event.z, Material.AIR);
+        }
+    }
+
+    private void command(TraceReader.Event event) {
+        if (event.text.length > 0 && event.text[0].equalsIgnoreCase("trace")) {
+            // Starting or stopping the recorder is not part of the workload
+            skippedEvents++;
+            return;
+        }
+
+        CommandSender sender = event.playerId == null ? server.getServer().getConsoleSender() : player(event).getPlayer();
+        long allocated = timings.allocatedBytes();
+        long start = System.nanoTime();
+        command.execute(sender, "ics", event.text);
+        timings.record(event.type.key, start, allocated);
+    }
+
+    /**
+     * Gets the stand-in for a traced player, moving it to the event's position
+     */
+    private StandInPlayer player(TraceReader.Event event) {
+        StandInPlayer player = players.get(event.playerId);
+        if (player == null) {
+            StandInWorld world = server.getOrCreateWorld(event.world != null ? event.world : "world");
+            player = server.addPlayer(event.playerId, event.playerName, new Location(world.getWorld(), event.x, event.y, event.z));
+            players.put(event.playerId, player);
+        }
+        if (event.world != null) {
+            player.setLocation(new Location(server.getOrCreateWorld(event.world).getWorld(), event.x + 0.5, event.y, event.z + 1.5));
+        }
+        return player;
+    }
+
+    /**
+     * Creates the worlds a shop file refers to, which must exist before it is loaded
+     * @param shops The shops.json of the recorded server
+     */
+    private void createWorlds(File shops) throws IOException {
+        try (Reader reader = Files.newBufferedReader(shops.toPath())) {
+            // Entries are keyed by "world,x,y,z,yaw,pitch"
+            for (String key : JsonParser.parseReader(reader).getAsJsonObject().keySet()) {
+                server.getOrCreateWorld(key.substring(0, key.indexOf(',')));
+            }
+        }
+    }
+
+    /**
+     * Places the signs and chests of every loaded shop
+     */
+    private void buildShops() {
+        for (ChestShop chestShop : plugin.getChestShopManager().getShops()) {
+            Location sign = chestShop.getSignLocation();
+            Location chest = chestShop.getChestLocation();
+            world(sign).setType(sign.getBlockX(), sign.getBlockY(), sign.getBlockZ(), Material.OAK_SIGN);
+            world(chest).placeChest(chest.getBlockX(), chest.getBlockY(), chest.getBlockZ());
+            restock(chestShop);
+        }
+    }
+
+    private void restock(ChestShop chestShop) {
+        Location chestLocation = chestShop.getChestLocation();
+        StandInInventory chest = world(chestLocation).getContainer(
+            chestLocation.getBlockX(), chestLocation.getBlockY(), chestLocation.getBlockZ());
+        if (chest != null && chest.count(chestShop.getGiveTemplate().getType()) < chestShop.getGiveTemplate().getAmount()) {
+            chest.fill(chestShop.getGiveTemplate().getType(), chestShop.getGiveTemplate().getAmount() * 8);
+        }
+    }
+
+    private static void ensureSign(StandInWorld world, TraceReader.Event event) {
+        if (!world.getType(event.x, event.y, event.z).name().endsWith("_SIGN")) {
+            // Only signs are traced, so the block was a sign on the recorded server
+            world.setType(event.x, event.y, event.z, Material.OAK_SIGN);
+        }
+    }
+
+    private static boolean isChest(Material material) {
+        return material == Material.CHEST || material == Material.TRAPPED_CHEST;
+    }
+
+    private StandInWorld world(Location location) {
+        return server.getOrCreateWorld(location.getWorld().getName());
+    }
+
+    private void report(long traceMicros, long wallNanos, long gcCount, long gcMillis) throws IOException {
+        long totalEvents = timings.getEventCount(SCHEDULED);
+
+        System.out.printf(Locale.ROOT, "%nReplay: %d events over %.1fs of trace time in %.1fs, %d shops at end, %d players%n",
+            totalEvents, traceMicros / 1e6, wallNanos / 1e9, plugin.getChestShopManager().getShopCount(),
+            players.size());
+        if (skippedEvents > 0) {
+            System.out.printf(Locale.ROOT, "Skipped %d trace commands%n", skippedEvents);
+        }
+        System.out.printf(Locale.ROOT, "Throughput: %.0f events/s wall clock, %.0f events/s of handler time%n",
+            totalEvents / (wallNanos / 1e9), totalEvents / Math.max(1e-9, timings.getTotalNanos() / 1e9));
+        timings.printTable();
+        System.out.printf(Locale.ROOT, "GC: %d collections, %dms%n", gcCount, gcMillis);
+
+        if (options.report != null) {
+            JsonObject root = new JsonObject();
+            root.addProperty("trace", options.trace.getName());
+            root.addProperty("speed", options.speed);
+            root.addProperty("refill", options.refill);
+            root.addProperty("traceSeconds", traceMicros / 1e6);
+            root.addProperty("wallSeconds", wallNanos / 1e9);
+            root.addProperty("eventsPerSecond", totalEvents / (wallNanos / 1e9));
+            root.addProperty("gcCount", gcCount);
+            root.addProperty("gcMillis", gcMillis);
+            root.add("events", timings.toJson());
+
+            try (FileWriter writer = new FileWriter(options.report)) {
+                new GsonBuilder().setPrettyPrinting().create().toJson(root, writer);
+            }
+            System.out.println("Report written to " + options.report.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Command line options
+     */
+    static final class Options {
+        File trace;
+        File shops;
+        File config;
+        File report;
+        // Multiple of the recorded pace, 0 replays as fast as possible
+        double speed = 1.0;
+        boolean refill = true;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String value = i + 1 < args.length ? args[i + 1] : null;
+                switch (args[i]) {
+                    case "--trace":
+                        options.trace = new File(value);
+                        break;
+                    case "--shops":
+                        options.shops = new File(value);
+                        break;
+                    case "--config":
+                        options.config = new File(value);
+                        break;
+                    case "--report":
+                        options.report = new File(value);
+                        break;
+                    case "--speed":
+                        options.speed = value.equalsIgnoreCase("max") ? 0 : Math.max(0, Double.parseDouble(value));
+                        break;
+                    case "--no-refill":
+                        options.refill = false;
+                        // Flag without a value
+                        i--;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+                i++;
+            }
+
+            if (options.trace == null) {
+                throw new IllegalArgumentException("Missing --trace <file>");
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.itemchestshop.bench;
+
+import com.itemchestshop.bench.standin.StandInInventory;
+import com.itemchestshop.bench.standin.StandInItemStack;
+import com.itemchestshop.bench.standin.StandInPlayer;
+import com.itemchestshop.bench.standin.StandInPlugin;
+import com.itemchestshop.bench.standin.StandInServer;
+import com.itemchestshop.bench.standin.StandInWorld;
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.utils.TransactionManager;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inventory scans of a single trade: stock and space checks and the full transaction.
+ * The chest holds stacks of the sold item in its first slots and stacks of
+ * other items after them, so the scans walk the whole inventory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransactionBenchmark {
+
+    /** Number of chest slots that are taken, out of 27 */
+    @Param({"1", "14", "26"})
+    public int occupiedSlots;
+
+    private StandInPlugin plugin;
+    private StandInInventory chest;
+    private StandInPlayer buyer;
+    private ChestShop chestShop;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        plugin = ShopFixtures.createPlugin();
+        StandInWorld world = StandInServer.get().getOrCreateWorld("transactions");
+        chest = world.placeChest(0, 64, 0);
+        world.setType(0, 65, 0, Material.OAK_SIGN);
+
+        Location signLocation = new Location(world.getWorld(), 0, 65, 0);
+        chestShop = new ChestShop(signLocation, signLocation.clone().subtract(0, 1, 0), UUID.randomUUID(), "seller",
+            new StandInItemStack(Material.EMERALD, 4), new StandInItemStack(Material.DIAMOND, 1));
+        buyer = StandInServer.get().addPlayer("buyer", signLocation.clone().add(0, 0, 2));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        plugin.deleteDataFolder();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetInventories() {
+        // One stack of diamonds to sell, the rest filler the scans have to skip
+        chest.fill(Material.COBBLESTONE, occupiedSlots * 64);
+        chest.getInventory().setItem(0, new StandInItemStack(Material.DIAMOND, 10));
+        buyer.getInventory().fill(Material.BREAD, 20 * 64);
+        buyer.getInventory().getInventory().setItem(30, new StandInItemStack(Material.EMERALD, 64));
+    }
+
+    @Benchmark
+    public boolean hasStock() {
+        return chestShop.hasStock();
+    }
+
+    @Benchmark
+    public boolean canAcceptPayment() {
+        return chestShop.canAcceptPayment();
+    }
+
+    @Benchmark
+    public TransactionManager.TransactionResult processTransaction() {
+        return TransactionManager.processTransaction(buyer.getPlayer(), chestShop, plugin.getDeliveryVault());
+    }
+}
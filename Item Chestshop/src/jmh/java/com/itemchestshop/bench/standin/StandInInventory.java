@@ -0,0 +1,226 @@
+package com.itemchestshop.bench.standin;
+
+import org.bukkit.Material;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Array-backed inventory. Like a server inventory, getItem returns the stored
+ * stack itself, so changing its amount changes the inventory.
+ */
+public final class StandInInventory implements InvocationHandler {
+
+    private final ItemStack[] slots;
+    private final InventoryType type;
+    private final Inventory inventory;
+
+    private StandInInventory(int size, InventoryType type, Class<? extends Inventory> view) {
+        this.slots = new ItemStack[size];
+        this.type = type;
+        this.inventory = StandIns.proxy(this, view);
+    }
+
+    /**
+     * Creates a single chest inventory
+     * @return The inventory
+     */
+    public static StandInInventory chest() {
+        return new StandInInventory(27, InventoryType.CHEST, Inventory.class);
+    }
+
+    /**
+     * Creates the storage part of a player inventory
+     * @return The inventory
+     */
+    public static StandInInventory player() {
+        return new StandInInventory(36, InventoryType.PLAYER, PlayerInventory.class);
+    }
+
+    public Inventory getInventory() {
+        return inventory;
+    }
+
+    /**
+     * Replaces the contents with full stacks of one material
+     * @param material The material, or null to empty the inventory
+     * @param totalAmount The number of items to place
+     */
+    public void fill(Material material, int totalAmount) {
+        Arrays.fill(slots, null);
+        if (material == null) {
+            return;
+        }
+
+        int maxStack = StandInItemStack.maxStackSize(material);
+        for (int i = 0; i < slots.length && totalAmount > 0; i++) {
+            int amount = Math.min(maxStack, totalAmount);
+            slots[i] = new StandInItemStack(material, amount);
+            totalAmount -= amount;
+        }
+    }
+
+    /**
+     * Counts the items of a material
+     * @param material The material
+     * @return The total amount over all slots
+     */
+    public int count(Material material) {
+        int total = 0;
+        for (ItemStack slot : slots) {
+            if (slot != null && slot.getType() == material) {
+                total += slot.getAmount();
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        Object objectResult = StandIns.objectMethod(proxy, method, args, this);
+        if (objectResult != null) {
+            return objectResult;
+        }
+
+        switch (method.getName()) {
+            case "getSize":
+                return slots.length;
+            case "getMaxStackSize":
+                return 64;
+            case "getType":
+                return type;
+            case "getItem":
+                if (args[0] instanceof Integer) {
+                    return slots[(Integer) args[0]];
+                }
+                break;
+            case "setItem":
+                if (args.length == 2 && args[0] instanceof Integer) {
+                    slots[(Integer) args[0]] = toStandIn((ItemStack) args[1]);
+                    return null;
+                }
+                break;
+            case "getContents":
+            case "getStorageContents":
+                return slots.clone();
+            case "setContents":
+            case "setStorageContents":
+                ItemStack[] contents = (ItemStack[]) args[0];
+                for (int i = 0; i < slots.length; i++) {
+                    slots[i] = i < contents.length ? toStandIn(contents[i]) : null;
+                }
+                return null;
+            case "containsAtLeast":
+                return containsAtLeast((ItemStack) args[0], (Integer) args[1]);
+            case "firstEmpty":
+                return firstEmpty();
+            case "isEmpty":
+                return firstNonEmpty() < 0;
+            case "clear":
+                if (method.getParameterCount() == 0) {
+                    Arrays.fill(slots, null);
+                    return null;
+                }
+                break;
+            case "addItem":
+                return addItem((ItemStack[]) args[0]);
+            case "iterator":
+                if (method.getParameterCount() == 0) {
+                    return iterator();
+                }
+                break;
+            default:
+                break;
+        }
+
+        return StandIns.defaultValue(method.getReturnType());
+    }
+
+    @Override
+    public String toString() {
+        return "StandInInventory" + Arrays.toString(slots);
+    }
+
+    private boolean containsAtLeast(ItemStack item, int amount) {
+        if (item == null) {
+            return false;
+        }
+        if (amount <= 0) {
+            return true;
+        }
+
+        for (ItemStack slot : slots) {
+            if (slot != null && item.isSimilar(slot) && (amount -= slot.getAmount()) <= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int firstEmpty() {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == null || slots[i].getType() == Material.AIR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int firstNonEmpty() {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null && slots[i].getType() != Material.AIR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private HashMap<Integer, ItemStack> addItem(ItemStack[] items) {
+        HashMap<Integer, ItemStack> leftover = new HashMap<>();
+        for (int index = 0; index < items.length; index++) {
+            ItemStack item = items[index];
+            int remaining = item.getAmount();
+            int maxStack = StandInItemStack.maxStackSize(item.getType());
+
+            for (int i = 0; i < slots.length && remaining > 0; i++) {
+                if (slots[i] != null && slots[i].isSimilar(item)) {
+                    int added = Math.min(maxStack - slots[i].getAmount(), remaining);
+                    if (added > 0) {
+                        slots[i].setAmount(slots[i].getAmount() + added);
+                        remaining -= added;
+                    }
+                }
+            }
+            for (int i = 0; i < slots.length && remaining > 0; i++) {
+                if (slots[i] == null || slots[i].getType() == Material.AIR) {
+                    int added = Math.min(maxStack, remaining);
+                    slots[i] = new StandInItemStack(item.getType(), added);
+                    remaining -= added;
+                }
+            }
+
+            if (remaining > 0) {
+                leftover.put(index, new StandInItemStack(item.getType(), remaining));
+            }
+        }
+        return leftover;
+    }
+
+    private Iterator<ItemStack> iterator() {
+        return Arrays.asList(slots.clone()).iterator();
+    }
+
+    private static ItemStack toStandIn(ItemStack item) {
+        if (item == null || item instanceof StandInItemStack) {
+            return item;
+        }
+        return new StandInItemStack(item.getType(), item.getAmount());
+    }
+}
@@ -0,0 +1,122 @@
+package com.itemchestshop.bench.standin;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Plain in-memory item stack that never touches the server's item factory
+ */
+public class StandInItemStack extends ItemStack {
+
+    // Transient so Gson's reflective view of the class does not clash with ItemStack's own fields
+    private transient Material material;
+    private transient int amount;
+
+    public StandInItemStack(Material material, int amount) {
+        super();
+        this.material = material;
+        this.amount = amount;
+    }
+
+    @Override
+    public Material getType() {
+        return material;
+    }
+
+    @Override
+    public void setType(Material type) {
+        this.material = type;
+    }
+
+    @Override
+    public int getAmount() {
+        return amount;
+    }
+
+    @Override
+    public void setAmount(int amount) {
+        this.amount = amount;
+    }
+
+    @Override
+    public int getMaxStackSize() {
+        return maxStackSize(material);
+    }
+
+    @Override
+    public boolean hasItemMeta() {
+        return false;
+    }
+
+    @Override
+    public ItemMeta getItemMeta() {
+        return null;
+    }
+
+    @Override
+    public boolean isSimilar(ItemStack stack) {
+        return stack != null && stack.getType() == material && !stack.hasItemMeta();
+    }
+
+    @Override
+    public StandInItemStack clone() {
+        return new StandInItemStack(material, amount);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ItemStack && isSimilar((ItemStack) other) && ((ItemStack) other).getAmount() == amount;
+    }
+
+    @Override
+    public int hashCode() {
+        return material.hashCode() * 31 + amount;
+    }
+
+    @Override
+    public String toString() {
+        return "StandInItemStack{" + material + " x " + amount + "}";
+    }
+
+    /**
+     * Stands in for Paper's binary item format, which needs the server's codecs
+     * @param item The item
+     * @return The type and amount as bytes
+     */
+    public static byte[] toBytes(ItemStack item) {
+        return (item.getType().name() + ":" + item.getAmount()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads an item written by {@link #toBytes(ItemStack)}
+     * @param data The bytes
+     * @return The item
+     */
+    public static StandInItemStack fromBytes(byte[] data) {
+        String text = new String(data, StandardCharsets.UTF_8);
+        int separator = text.indexOf(':');
+        return new StandInItemStack(Material.valueOf(text.substring(0, separator)), Integer.parseInt(text.substring(separator + 1)));
+    }
+
+    /**
+     * Approximates vanilla stack sizes without asking the server's item registry
+     * @param material The material
+     * @return 1 for tools and armour, 16 for pearls, signs and the like, 64 otherwise
+     */
+    public static int maxStackSize(Material material) {
+        String name = material.name();
+        if (name.endsWith("_SWORD") || name.endsWith("_PICKAXE") || name.endsWith("_AXE") || name.endsWith("_SHOVEL")
+                || name.endsWith("_HOE") || name.endsWith("_HELMET") || name.endsWith("_CHESTPLATE")
+                || name.endsWith("_LEGGINGS") || name.endsWith("_BOOTS") || name.endsWith("_BUCKET")) {
+            return 1;
+        }
+        if (name.equals("ENDER_PEARL") || name.equals("SNOWBALL") || name.equals("EGG") || name.endsWith("_SIGN")
+                || name.endsWith("_BANNER")) {
+            return 16;
+        }
+        return 64;
+    }
+}
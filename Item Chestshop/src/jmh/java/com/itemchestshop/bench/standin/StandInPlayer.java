@@ -0,0 +1,127 @@
+package com.itemchestshop.bench.standin;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Online player with a plain storage inventory. Messages are counted, not rendered.
+ */
+public final class StandInPlayer implements InvocationHandler {
+
+    private final String name;
+    private final UUID uniqueId;
+    private final StandInInventory inventory;
+    private final Set<String> deniedPermissions;
+    private final Player player;
+    private Location location;
+    private boolean sneaking;
+    private long messagesReceived;
+
+    StandInPlayer(UUID uniqueId, String name, Location location) {
+        this.name = name;
+        this.uniqueId = uniqueId;
+        this.inventory = StandInInventory.player();
+        this.deniedPermissions = new HashSet<>();
+        this.location = location;
+        this.player = StandIns.proxy(this, Player.class);
+    }
+
+    /**
+     * Derives a stable id for generated players
+     * @param name The player name
+     * @return The player id
+     */
+    static UUID uniqueIdFor(String name) {
+        return UUID.nameUUIDFromBytes(("player:" + name).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Player getPlayer() {
+        return player;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public UUID getUniqueId() {
+        return uniqueId;
+    }
+
+    public StandInInventory getInventory() {
+        return inventory;
+    }
+
+    public void setLocation(Location location) {
+        this.location = location;
+    }
+
+    public void setSneaking(boolean sneaking) {
+        this.sneaking = sneaking;
+    }
+
+    /**
+     * Makes hasPermission return false for a permission; all others are granted
+     * @param permission The permission node
+     */
+    public void deny(String permission) {
+        deniedPermissions.add(permission);
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        Object objectResult = StandIns.objectMethod(proxy, method, args, this);
+        if (objectResult != null) {
+            return objectResult;
+        }
+
+        switch (method.getName()) {
+            case "getName":
+            case "getDisplayName":
+                return name;
+            case "getUniqueId":
+                return uniqueId;
+            case "getInventory":
+                return inventory.getInventory();
+            case "getWorld":
+                return location.getWorld();
+            case "getLocation":
+                if (method.getParameterCount() == 0) {
+                    return location.clone();
+                }
+                break;
+            case "hasPermission":
+                return !(args[0] instanceof String) || !deniedPermissions.contains(args[0]);
+            case "isPermissionSet":
+            case "isOnline":
+            case "hasPlayedBefore":
+                return true;
+            case "isSneaking":
+                return sneaking;
+            case "getPlayer":
+                return player;
+            case "sendMessage":
+            case "sendActionBar":
+                messagesReceived++;
+                return null;
+            default:
+                break;
+        }
+        return StandIns.defaultValue(method.getReturnType());
+    }
+
+    @Override
+    public String toString() {
+        return "StandInPlayer{" + name + "}";
+    }
+}
@@ -0,0 +1,55 @@
+package com.itemchestshop.bench.standin;
+
+import com.itemchestshop.ItemChestShopPlugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+
+/**
+ * The real plugin, created through Bukkit's unit-test constructor against the stand-in server.
+ * Only the managers are initialized, no listeners or commands are registered with the server.
+ */
+public final class StandInPlugin extends ItemChestShopPlugin {
+
+    @SuppressWarnings("deprecation")
+    private StandInPlugin(StandInServer server, File dataFolder) {
+        super(new JavaPluginLoader(server.getServer()),
+            new PluginDescriptionFile("ItemChestShop", "bench", ItemChestShopPlugin.class.getName()),
+            dataFolder, new File(dataFolder, "ItemChestShop.jar"));
+    }
+
+    /**
+     * Creates a plugin with its own data folder
+     * @param dataFolder The folder for config.yml and shops.json, or null for a new temporary folder
+     * @return The initialized plugin, with any shops in the folder loaded
+     */
+    public static StandInPlugin create(File dataFolder) {
+        try {
+            File folder = dataFolder != null ? dataFolder : Files.createTempDirectory("ics-bench").toFile();
+            folder.mkdirs();
+            StandInPlugin plugin = new StandInPlugin(StandInServer.get(), folder);
+            plugin.initializeManagers();
+            plugin.getChestShopManager().loadShops();
+            return plugin;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Deletes the data folder
+     */
+    public void deleteDataFolder() {
+        File[] files = getDataFolder().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        getDataFolder().delete();
+    }
+}
@@ -0,0 +1,114 @@
+package com.itemchestshop.bench.standin;
+
+import io.papermc.paper.registry.RegistryAccess;
+import io.papermc.paper.registry.RegistryKey;
+import org.bukkit.Keyed;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.inventory.ItemType;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Registries for the stand-in server, found by Paper through the service loader.
+ * Paper builds every new ItemStack from the item registry, so the item registry
+ * hands out item types that create {@link StandInItemStack}s. All other registries are empty.
+ */
+public final class StandInRegistryAccess implements RegistryAccess {
+
+    private static final Map<Object, Registry<?>> REGISTRIES = new ConcurrentHashMap<>();
+    private static final Map<Material, ItemType> ITEM_TYPES = new ConcurrentHashMap<>();
+
+    public StandInRegistryAccess() {
+    }
+
+    @Override
+    public <T extends Keyed> Registry<T> getRegistry(Class<T> type) {
+        return registryFor(type, type == ItemType.class);
+    }
+
+    @Override
+    public <T extends Keyed> Registry<T> getRegistry(RegistryKey<T> key) {
+        return registryFor(key, key == RegistryKey.ITEM);
+    }
+
+    /**
+     * Gets the registry for a registry key or registry class
+     * @param key The key or class
+     * @param items Whether the registry holds item types
+     * @return The registry, never null
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends Keyed> Registry<T> registryFor(Object key, boolean items) {
+        return (Registry<T>) REGISTRIES.computeIfAbsent(key, k -> StandIns.proxy(new RegistryHandler(items), Registry.class));
+    }
+
+    private static ItemType itemType(Material material) {
+        return ITEM_TYPES.computeIfAbsent(material, type -> StandIns.proxy((proxy, method, args) -> {
+            Object objectResult = StandIns.objectMethod(proxy, method, args, type);
+            if (objectResult != null) {
+                return objectResult;
+            }
+
+            switch (method.getName()) {
+                case "createItemStack":
+                    int amount = args != null && args.length > 0 && args[0] instanceof Integer ? (Integer) args[0] : 1;
+                    return new StandInItemStack(type, amount);
+                case "asMaterial":
+                    return type;
+                case "getKey":
+                    return type.getKey();
+                case "getMaxStackSize":
+                    return StandInItemStack.maxStackSize(type);
+                case "typed":
+                    return proxy;
+                default:
+                    return StandIns.defaultValue(method.getReturnType());
+            }
+        }, ItemType.class, ItemType.Typed.class));
+    }
+
+    private static final class RegistryHandler implements InvocationHandler {
+        private final boolean items;
+
+        RegistryHandler(boolean items) {
+            this.items = items;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            Object objectResult = StandIns.objectMethod(proxy, method, args, items ? "StandInItemRegistry" : "StandInRegistry");
+            if (objectResult != null) {
+                return objectResult;
+            }
+
+            switch (method.getName()) {
+                case "get":
+                case "getOrThrow":
+                    if (items && args.length == 1 && args[0] instanceof NamespacedKey) {
+                        Material material = Material.getMaterial(((NamespacedKey) args[0]).getKey().toUpperCase(Locale.ROOT));
+                        if (material != null) {
+                            return itemType(material);
+                        }
+                    }
+                    if (method.getName().equals("getOrThrow")) {
+                        throw new java.util.NoSuchElementException(String.valueOf(args[0]));
+                    }
+                    return null;
+                case "iterator":
+                    return Collections.emptyIterator();
+                case "stream":
+                    return Stream.empty();
+                default:
+                    return StandIns.defaultValue(method.getReturnType());
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.itemchestshop.bench.standin;
+
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scheduler driven by explicit ticks.
+ * Synchronous tasks run when {@link #tick()} reaches them, asynchronous
+ * one-shot tasks run immediately on the calling thread.
+ */
+public final class StandInScheduler implements InvocationHandler {
+
+    private final BukkitScheduler scheduler;
+    private final List<Task> tasks;
+    private long currentTick;
+    private int nextTaskId;
+
+    StandInScheduler() {
+        this.scheduler = StandIns.proxy(this, BukkitScheduler.class);
+        this.tasks = new ArrayList<>();
+        this.nextTaskId = 1;
+    }
+
+    public BukkitScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Advances one tick and runs every task due on it
+     * @return The number of tasks that ran
+     */
+    public int tick() {
+        currentTick++;
+        List<Task> due = new ArrayList<>();
+        for (Task task : tasks) {
+            if (!task.cancelled && task.nextRun <= currentTick) {
+                due.add(task);
+            }
+        }
+
+        for (Task task : due) {
+            if (task.cancelled) {
+                continue;
+            }
+            task.runnable.run();
+            if (task.period > 0) {
+                task.nextRun = currentTick + task.period;
+            } else {
+                task.cancelled = true;
+            }
+        }
+
+        tasks.removeIf(task -> task.cancelled);
+        return due.size();
+    }
+
+    /**
+     * Runs ticks until no one-shot task is left
+     * @param maxTicks The maximum number of ticks to run
+     */
+    public void drain(int maxTicks) {
+        for (int i = 0; i < maxTicks && tasks.stream().anyMatch(task -> task.period <= 0); i++) {
+            tick();
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        Object objectResult = StandIns.objectMethod(proxy, method, args, "StandInScheduler");
+        if (objectResult != null) {
+            return objectResult;
+        }
+
+        String name = method.getName();
+        Runnable runnable = args != null && args.length > 1 && args[1] instanceof Runnable ? (Runnable) args[1] : null;
+        if (runnable != null && name.startsWith("runTask")) {
+            long delay = args.length > 2 ? (Long) args[2] : 0L;
+            long period = args.length > 3 ? (Long) args[3] : 0L;
+            if (name.equals("runTaskAsynchronously")) {
+                runnable.run();
+                return new Task(nextTaskId++, runnable, 0, 0, true).handle;
+            }
+
+            Task task = new Task(nextTaskId++, runnable, currentTick + Math.max(1, delay), period, false);
+            tasks.add(task);
+            return task.handle;
+        }
+
+        if (name.equals("cancelTask") && args.length == 1 && args[0] instanceof Integer) {
+            tasks.stream().filter(task -> task.id == (Integer) args[0]).forEach(task -> task.cancelled = true);
+            return null;
+        }
+        if (name.equals("cancelTasks")) {
+            tasks.forEach(task -> task.cancelled = true);
+            return null;
+        }
+
+        return StandIns.defaultValue(method.getReturnType());
+    }
+
+    private static final class Task implements InvocationHandler {
+        private final int id;
+        private final Runnable runnable;
+        private final long period;
+        private final BukkitTask handle;
+        private long nextRun;
+        private boolean cancelled;
+
+        Task(int id, Runnable runnable, long nextRun, long period, boolean cancelled) {
+            this.id = id;
+            this.runnable = runnable;
+            this.nextRun = nextRun;
+            this.period = period;
+            this.cancelled = cancelled;
+            this.handle = StandIns.proxy(this, BukkitTask.class);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            Object objectResult = StandIns.objectMethod(proxy, method, args, this);
+            if (objectResult != null) {
+                return objectResult;
+            }
+
+            switch (method.getName()) {
+                case "cancel":
+                    cancelled = true;
+                    return null;
+                case "isCancelled":
+                    return cancelled;
+                case "getTaskId":
+                    return id;
+                case "isSync":
+                    return true;
+                default:
+                    return StandIns.defaultValue(method.getReturnType());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Task#" + id;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.itemchestshop.bench.standin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.UnsafeValues;
+import org.bukkit.World;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemFactory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.ItemType;
+import org.bukkit.plugin.PluginManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * In-memory server for running the plugin outside of Paper.
+ * There is only ever one, since Bukkit only accepts its server once per JVM.
+ */
+public final class StandInServer implements InvocationHandler {
+
+    private static StandInServer instance;
+
+    private final Server server;
+    private final Logger logger;
+    private final StandInScheduler scheduler;
+    private final PluginManager pluginManager;
+    private final ItemFactory itemFactory;
+    private final UnsafeValues unsafeValues;
+    private final ConsoleCommandSender console;
+    private final Map<String, StandInWorld> worlds;
+    private final Map<UUID, StandInPlayer> players;
+
+    private StandInServer() {
+        this.server = StandIns.proxy(this, Server.class);
+        this.logger = Logger.getLogger("StandInServer");
+        this.scheduler = new StandInScheduler();
+        this.pluginManager = StandIns.proxy((proxy, method, args) -> {
+            Object objectResult = StandIns.objectMethod(proxy, method, args, "StandInPluginManager");
+            return objectResult != null ? objectResult : StandIns.defaultValue(method.getReturnType());
+        }, PluginManager.class);
+        this.itemFactory = StandIns.proxy((proxy, method, args) -> {
+            // ItemStack.hasItemMeta compares against null meta through the factory
+            if (method.getName().equals("equals") && args != null && args.length == 2) {
+                return Objects.equals(args[0], args[1]);
+            }
+            Object objectResult = StandIns.objectMethod(proxy, method, args, "StandInItemFactory");
+            return objectResult != null ? objectResult : StandIns.defaultValue(method.getReturnType());
+        }, ItemFactory.class);
+        this.unsafeValues = StandIns.proxy((proxy, method, args) -> {
+            switch (method.getName()) {
+                case "createEmptyStack":
+                    return new StandInItemStack(Material.AIR, 0);
+                case "serializeItem":
+                    return StandInItemStack.toBytes((ItemStack) args[0]);
+                case "deserializeItem":
+                    return StandInItemStack.fromBytes((byte[]) args[0]);
+                default:
+                    break;
+            }
+            Object objectResult = StandIns.objectMethod(proxy, method, args, "StandInUnsafeValues");
+            return objectResult != null ? objectResult : StandIns.defaultValue(method.getReturnType());
+        }, UnsafeValues.class);
+        this.console = StandIns.proxy((proxy, method, args) -> {
+            Object objectResult = StandIns.objectMethod(proxy, method, args, "StandInConsole");
+            if (objectResult != null) {
+                return objectResult;
+            }
+            switch (method.getName()) {
+                case "getName":
+                    return "CONSOLE";
+                case "hasPermission":
+                case "isOp":
+                    return true;
+                default:
+                    return StandIns.defaultValue(method.getReturnType());
+            }
+        }, ConsoleCommandSender.class);
+        this.worlds = new LinkedHashMap<>();
+        this.players = new LinkedHashMap<>();
+    }
+
+    /**
+     * Gets the stand-in server, installing it as the Bukkit server on first use
+     * @return The server
+     */
+    public static synchronized StandInServer get() {
+        if (instance == null) {
+            instance = new StandInServer();
+            Bukkit.setServer(instance.server);
+        }
+        return instance;
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    public StandInScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Gets a world, creating it if needed
+     * @param name The world name
+     * @return The world
+     */
+    public StandInWorld getOrCreateWorld(String name) {
+        return worlds.computeIfAbsent(name, StandInWorld::new);
+    }
+
+    /**
+     * Creates an online player standing in a world
+     * @param name The player name
+     * @param location Where the player stands
+     * @return The player
+     */
+    public StandInPlayer addPlayer(String name, Location location) {
+        return addPlayer(StandInPlayer.uniqueIdFor(name), name, location);
+    }
+
+    /**
+     * Creates an online player with a known id, such as one read from a trace
+     * @param uniqueId The player id
+     * @param name The player name
+     * @param location Where the player stands
+     * @return The player
+     */
+    public StandInPlayer addPlayer(UUID uniqueId, String name, Location location) {
+        StandInPlayer player = new StandInPlayer(uniqueId, name, location);
+        players.put(player.getUniqueId(), player);
+        worlds.values().stream()
+            .filter(world -> world.getWorld() == location.getWorld())
+            .forEach(world -> world.addPlayer(player.getPlayer()));
+        return player;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        Object objectResult = StandIns.objectMethod(proxy, method, args, "StandInServer");
+        if (objectResult != null) {
+            return objectResult;
+        }
+
+        switch (method.getName()) {
+            case "getName":
+                return "StandIn";
+            case "getVersion":
+            case "getBukkitVersion":
+            case "getMinecraftVersion":
+                return "1.21.4";
+            case "getLogger":
+                return logger;
+            case "getScheduler":
+                return scheduler.getScheduler();
+            case "getPluginManager":
+                return pluginManager;
+            case "getItemFactory":
+                return itemFactory;
+            case "getUnsafe":
+                return unsafeValues;
+            case "getConsoleSender":
+                return console;
+            case "getRegistry":
+                return StandInRegistryAccess.registryFor(args[0], args[0] == ItemType.class);
+            case "isPrimaryThread":
+                return true;
+            case "getWorld":
+                return findWorld(args[0]);
+            case "getWorlds":
+                List<World> result = new ArrayList<>();
+                worlds.values().forEach(world -> result.add(world.getWorld()));
+                return result;
+            case "getOnlinePlayers":
+                List<Player> online = new ArrayList<>();
+                players.values().forEach(player -> online.add(player.getPlayer()));
+                return online;
+            case "getPlayer":
+            case "getPlayerExact":
+                return findPlayer(args[0]);
+            case "getOfflinePlayer":
+                Player known = findPlayer(args[0]);
+                return known != null ? known : offlinePlayer(args[0]);
+            default:
+                return StandIns.defaultValue(method.getReturnType());
+        }
+    }
+
+    private World findWorld(Object key) {
+        for (StandInWorld world : worlds.values()) {
+            if (world.getName().equals(key) || world.getWorld().getUID().equals(key)) {
+                return world.getWorld();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a player that never joined, like the server does for unknown players
+     */
+    private OfflinePlayer offlinePlayer(Object key) {
+        UUID uniqueId = key instanceof UUID ? (UUID) key
+            : UUID.nameUUIDFromBytes(("OfflinePlayer:" + key).getBytes(StandardCharsets.UTF_8));
+        String name = key instanceof String ? (String) key : null;
+        return StandIns.proxy((proxy, method, args) -> {
+            Object objectResult = StandIns.objectMethod(proxy, method, args, uniqueId);
+            if (objectResult != null) {
+                return objectResult;
+            }
+
+            switch (method.getName()) {
+                case "getUniqueId":
+                    return uniqueId;
+                case "getName":
+                    return name;
+                default:
+                    return StandIns.defaultValue(method.getReturnType());
+            }
+        }, OfflinePlayer.class);
+    }
+
+    private Player findPlayer(Object key) {
+        if (key instanceof UUID) {
+            StandInPlayer player = players.get(key);
+            return player == null ? null : player.getPlayer();
+        }
+        for (StandInPlayer player : players.values()) {
+            if (player.getName().equalsIgnoreCase(String.valueOf(key))) {
+                return player.getPlayer();
+            }
+        }
+        return null;
+    }
+}
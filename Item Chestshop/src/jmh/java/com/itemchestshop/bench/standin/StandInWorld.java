@@ -0,0 +1,235 @@
+package com.itemchestshop.bench.standin;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Chest;
+import org.bukkit.entity.Player;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * World made of a sparse block map. Every chunk counts as loaded, and blocks
+ * and chest states are created on each lookup, as they are on a server.
+ */
+public final class StandInWorld implements InvocationHandler {
+
+    private final String name;
+    private final UUID uid;
+    private final World world;
+    private final Map<Long, Material> blocks;
+    private final Map<Long, StandInInventory> containers;
+    private final List<Player> players;
+    private long droppedItems;
+
+    StandInWorld(String name) {
+        this.name = name;
+        this.uid = UUID.nameUUIDFromBytes(("world:" + name).getBytes(StandardCharsets.UTF_8));
+        this.world = StandIns.proxy(this, World.class);
+        this.blocks = new HashMap<>();
+        this.containers = new HashMap<>();
+        this.players = new ArrayList<>();
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets a block, dropping any container that was there
+     * @param material The new material, AIR clears the block
+     */
+    public void setType(int x, int y, int z, Material material) {
+        long key = blockKey(x, y, z);
+        containers.remove(key);
+        if (material == null || material == Material.AIR) {
+            blocks.remove(key);
+        } else {
+            blocks.put(key, material);
+        }
+    }
+
+    public Material getType(int x, int y, int z) {
+        return blocks.getOrDefault(blockKey(x, y, z), Material.AIR);
+    }
+
+    /**
+     * Places an empty chest
+     * @return The chest's inventory
+     */
+    public StandInInventory placeChest(int x, int y, int z) {
+        setType(x, y, z, Material.CHEST);
+        StandInInventory inventory = StandInInventory.chest();
+        containers.put(blockKey(x, y, z), inventory);
+        return inventory;
+    }
+
+    public StandInInventory getContainer(int x, int y, int z) {
+        return containers.get(blockKey(x, y, z));
+    }
+
+    /**
+     * Gets the number of items dropped on the ground so far
+     * @return The total amount of dropped items
+     */
+    public long getDroppedItems() {
+        return droppedItems;
+    }
+
+    void addPlayer(Player player) {
+        players.add(player);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        Object objectResult = StandIns.objectMethod(proxy, method, args, this);
+        if (objectResult != null) {
+            return objectResult;
+        }
+
+        switch (method.getName()) {
+            case "getName":
+                return name;
+            case "getUID":
+                return uid;
+            case "getBlockAt":
+                if (args.length == 1) {
+                    Location location = (Location) args[0];
+                    return blockAt(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+                }
+                return blockAt((Integer) args[0], (Integer) args[1], (Integer) args[2]);
+            case "isChunkLoaded":
+                return true;
+            case "getPlayers":
+                return new ArrayList<>(players);
+            case "dropItemNaturally":
+                droppedItems += ((org.bukkit.inventory.ItemStack) args[1]).getAmount();
+                return null;
+            case "getMinHeight":
+                return -64;
+            case "getMaxHeight":
+                return 320;
+            default:
+                return StandIns.defaultValue(method.getReturnType());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StandInWorld{" + name + "}";
+    }
+
+    private Block blockAt(int x, int y, int z) {
+        return StandIns.proxy(new BlockHandler(x, y, z), Block.class);
+    }
+
+    private static long blockKey(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    private final class BlockHandler implements InvocationHandler {
+        private final int x;
+        private final int y;
+        private final int z;
+
+        BlockHandler(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "equals":
+                    if (args.length == 1) {
+                        return args[0] instanceof Block && ((Block) args[0]).getWorld() == world
+                            && ((Block) args[0]).getX() == x && ((Block) args[0]).getY() == y
+                            && ((Block) args[0]).getZ() == z;
+                    }
+                    break;
+                case "hashCode":
+                    return Long.hashCode(blockKey(x, y, z));
+                case "toString":
+                    return "StandInBlock{" + name + "," + x + "," + y + "," + z + "," + getType(x, y, z) + "}";
+                case "getType":
+                    return getType(x, y, z);
+                case "getWorld":
+                    return world;
+                case "getX":
+                    return x;
+                case "getY":
+                    return y;
+                case "getZ":
+                    return z;
+                case "getLocation":
+                    if (method.getParameterCount() == 0) {
+                        return new Location(world, x, y, z);
+                    }
+                    break;
+                case "getRelative":
+                    if (args.length == 3) {
+                        return blockAt(x + (Integer) args[0], y + (Integer) args[1], z + (Integer) args[2]);
+                    }
+                    break;
+                case "getState":
+                    return state(proxy);
+                default:
+                    break;
+            }
+            return StandIns.defaultValue(method.getReturnType());
+        }
+
+        private BlockState state(Object block) {
+            StandInInventory inventory = getContainer(x, y, z);
+            Material type = getType(x, y, z);
+            InvocationHandler handler = (proxy, method, args) -> {
+                Object objectResult = StandIns.objectMethod(proxy, method, args, type);
+                if (objectResult != null) {
+                    return objectResult;
+                }
+
+                switch (method.getName()) {
+                    case "getType":
+                        return type;
+                    case "getBlock":
+                        return block;
+                    case "getWorld":
+                        return world;
+                    case "getLocation":
+                        if (method.getParameterCount() == 0) {
+                            return new Location(world, x, y, z);
+                        }
+                        break;
+                    case "getInventory":
+                    case "getBlockInventory":
+                    case "getSnapshotInventory":
+                        if (inventory != null) {
+                            return inventory.getInventory();
+                        }
+                        break;
+                    case "update":
+                        return true;
+                    default:
+                        break;
+                }
+                return StandIns.defaultValue(method.getReturnType());
+            };
+
+            return inventory != null ? StandIns.proxy(handler, Chest.class) : StandIns.proxy(handler, BlockState.class);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.itemchestshop.bench.standin;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Helpers for building Bukkit interface stand-ins from dynamic proxies.
+ * The Bukkit interfaces are far too large to implement by hand, so every
+ * stand-in answers the calls the plugin makes and returns an empty default
+ * for everything else.
+ */
+final class StandIns {
+
+    private StandIns() {
+    }
+
+    /**
+     * Creates a proxy for one or more interfaces
+     * @param handler The handler answering calls
+     * @param types The interfaces to implement, the first one is returned
+     * @return The proxy
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T proxy(InvocationHandler handler, Class<T> type, Class<?>... extraTypes) {
+        Class<?>[] interfaces = new Class<?>[extraTypes.length + 1];
+        interfaces[0] = type;
+        System.arraycopy(extraTypes, 0, interfaces, 1, extraTypes.length);
+        return (T) Proxy.newProxyInstance(StandIns.class.getClassLoader(), interfaces, handler);
+    }
+
+    /**
+     * Answers the java.lang.Object methods of a proxy by identity
+     * @param description Object whose toString describes the proxy, only called for toString
+     * @return The result, or null if the method is not an Object method
+     */
+    static Object objectMethod(Object proxy, Method method, Object[] args, Object description) {
+        switch (method.getName()) {
+            case "equals":
+                return args != null && args.length == 1 ? proxy == args[0] : null;
+            case "hashCode":
+                return method.getParameterCount() == 0 ? System.identityHashCode(proxy) : null;
+            case "toString":
+                return method.getParameterCount() == 0 ? String.valueOf(description) : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Gets the value a stand-in returns for a call it does not model
+     * @param type The return type of the call
+     * @return Zero, false, an empty collection or null
+     */
+    static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive()) {
+            if (type == List.class || type == java.util.Collection.class) {
+                return Collections.emptyList();
+            } else if (type == Set.class) {
+                return Collections.emptySet();
+            } else if (type == Map.class) {
+                return Collections.emptyMap();
+            } else if (type == String.class) {
+                return "";
+            }
+            return null;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == void.class) {
+            return null;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0.0;
+        } else if (type == float.class) {
+            return 0.0f;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
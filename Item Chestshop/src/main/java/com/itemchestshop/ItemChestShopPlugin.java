@@ -1,44 +1,157 @@
 package com.itemchestshop;
 
+import com.itemchestshop.api.ShopQueryService;
 import com.itemchestshop.listeners.SignListener;
 import com.itemchestshop.listeners.ChestShopListener;
+import com.itemchestshop.listeners.DeliveryListener;
+import com.itemchestshop.listeners.ExpiryListener;
+import com.itemchestshop.listeners.StockListener;
+import com.itemchestshop.listeners.WorldListener;
 import com.itemchestshop.commands.ItemChestShopCommand;
 import com.itemchestshop.managers.ChestShopManager;
+import com.itemchestshop.managers.DeliveryVault;
+import com.itemchestshop.managers.ShopSweeper;
+import com.itemchestshop.managers.BulkJobManager;
+import com.itemchestshop.models.ShopTables;
+import com.itemchestshop.replication.ShopReplicator;
 import com.itemchestshop.utils.ConfigManager;
+import com.itemchestshop.utils.MetricsRegistry;
+import com.itemchestshop.utils.ShopExporter;
+import com.itemchestshop.utils.SlowOperationLog;
+import com.itemchestshop.utils.TraceRecorder;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
 
 public class ItemChestShopPlugin extends JavaPlugin {
     
     private static ItemChestShopPlugin instance;
     private ChestShopManager chestShopManager;
+    private ShopSweeper shopSweeper;
+    private BulkJobManager bulkJobManager;
+    private DeliveryVault deliveryVault;
+    private ShopReplicator shopReplicator;
+    private ShopExporter shopExporter;
     private ConfigManager configManager;
+    private MetricsRegistry metrics;
+    private SlowOperationLog slowLog;
+    private TraceRecorder traceRecorder;
+    
+    public ItemChestShopPlugin() {
+        super();
+    }
+    
+    /**
+     * Creates the plugin outside of a server's plugin loader, for benchmarks and load tests
+     */
+    @SuppressWarnings("deprecation")
+    protected ItemChestShopPlugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+    }
     
     @Override
     public void onEnable() {
         instance = this;
+        ShopTables.setLogger(getLogger());
         
         // Initialize managers
-        configManager = new ConfigManager(this);
-        chestShopManager = new ChestShopManager(this);
+        initializeManagers();
+        chestShopManager.loadShopsAsync();
         
         // Register listeners
         getServer().getPluginManager().registerEvents(new SignListener(this), this);
         getServer().getPluginManager().registerEvents(new ChestShopListener(this), this);
+        getServer().getPluginManager().registerEvents(new DeliveryListener(this), this);
+        getServer().getPluginManager().registerEvents(new StockListener(this), this);
+        getServer().getPluginManager().registerEvents(new ExpiryListener(this), this);
+        getServer().getPluginManager().registerEvents(new WorldListener(), this);
         
         // Register commands
         getCommand("itemchestshop").setExecutor(new ItemChestShopCommand(this));
         
+        // Offer the read-only shop API to other plugins
+        getServer().getServicesManager().register(ShopQueryService.class, chestShopManager.getQueryService(), this, ServicePriority.Normal);
+        
+        if (configManager.isTraceEnabled()) {
+            try {
+                File traceFile = traceRecorder.start(configManager.getTraceMaxSizeMegabytes());
+                getLogger().info("Recording shop trace to " + traceFile.getName());
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "Failed to start trace recording", e);
+            }
+        }
+        
         getLogger().info("ItemChestShop has been enabled!");
     }
     
+    /**
+     * Creates the managers shared by listeners and commands.
+     * Kept separate from registration so tools can run the plugin against a stand-in server.
+     */
+    protected void initializeManagers() {
+        configManager = new ConfigManager(this);
+        metrics = new MetricsRegistry(this);
+        metrics.setEnabled(configManager.isDebugEnabled());
+        slowLog = new SlowOperationLog(this);
+        slowLog.configure(configManager);
+        traceRecorder = new TraceRecorder(this);
+        chestShopManager = new ChestShopManager(this);
+        shopSweeper = new ShopSweeper(this, chestShopManager);
+        shopSweeper.configure();
+        bulkJobManager = new BulkJobManager(this, chestShopManager);
+        bulkJobManager.configure();
+        deliveryVault = new DeliveryVault(this);
+        deliveryVault.load();
+        deliveryVault.configure();
+        shopReplicator = new ShopReplicator(this);
+        shopReplicator.start();
+        shopExporter = new ShopExporter(this);
+    }
+    
     @Override
     public void onDisable() {
-        // Save all shops before disabling
-        if (chestShopManager != null) {
+        getServer().getServicesManager().unregisterAll(this);
+        
+        // Save all shops before disabling, unless they never finished loading
+        if (chestShopManager != null && chestShopManager.isLoaded()) {
             chestShopManager.saveShops();
             getLogger().info("Saved all chest shops to persistent storage");
+        } else if (chestShopManager != null) {
+            getLogger().warning("Shops were still loading, leaving shops.json unchanged");
+        }
+        
+        if (chestShopManager != null) {
+            chestShopManager.getPriceHistory().stop();
+        }
+        
+        if (deliveryVault != null) {
+            deliveryVault.shutdown();
+        }
+        
+        if (shopReplicator != null) {
+            shopReplicator.shutdown();
         }
         
+        if (traceRecorder != null) {
+            traceRecorder.stop();
+        }
+        
+        // Keep the final numbers of this run when instrumentation was on
+        if (metrics != null && metrics.isEnabled()) {
+            try {
+                metrics.dump();
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "Failed to write metrics", e);
+            }
+        }
+        
+        ShopTables.clear();
+        
         getLogger().info("ItemChestShop has been disabled!");
     }
     
@@ -50,7 +163,47 @@ public class ItemChestShopPlugin extends JavaPlugin {
         return chestShopManager;
     }
     
+    /**
+     * Gets the read-only view of the shops offered to other plugins
+     * @return The query service
+     */
+    public ShopQueryService getShopQueryService() {
+        return chestShopManager.getQueryService();
+    }
+    
+    public ShopSweeper getShopSweeper() {
+        return shopSweeper;
+    }
+    
+    public BulkJobManager getBulkJobManager() {
+        return bulkJobManager;
+    }
+    
+    public DeliveryVault getDeliveryVault() {
+        return deliveryVault;
+    }
+    
+    public ShopReplicator getShopReplicator() {
+        return shopReplicator;
+    }
+    
+    public ShopExporter getShopExporter() {
+        return shopExporter;
+    }
+    
     public ConfigManager getConfigManager() {
         return configManager;
     }
+    
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+    
+    public SlowOperationLog getSlowLog() {
+        return slowLog;
+    }
+    
+    public TraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+package com.itemchestshop.api;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.UUID;
+
+/**
+ * Selects shops by world, owner, item and bounding box, for
+ * {@link ShopQueryService}. Unset criteria match every shop. A query with a
+ * world only visits that world's shops; the other criteria are checked per
+ * shop. Only the shop's own fields are read, so matching never touches the
+ * world.
+ */
+public final class ShopQuery {
+
+    private World world;
+    private UUID owner;
+    private Material item;
+    private boolean hasBox;
+    private int minX;
+    private int minY;
+    private int minZ;
+    private int maxX;
+    private int maxY;
+    private int maxZ;
+
+    /**
+     * Starts a query that matches every shop
+     * @return A new query
+     */
+    public static ShopQuery all() {
+        return new ShopQuery();
+    }
+
+    /**
+     * Keeps shops in one world
+     * @param world The world
+     * @return This query
+     */
+    public ShopQuery world(World world) {
+        this.world = world;
+        return this;
+    }
+
+    /**
+     * Keeps shops of one owner
+     * @param owner The owner's UUID
+     * @return This query
+     */
+    public ShopQuery owner(UUID owner) {
+        this.owner = owner;
+        return this;
+    }
+
+    /**
+     * Keeps shops that buy or sell an item
+     * @param item The item type
+     * @return This query
+     */
+    public ShopQuery item(Material item) {
+        this.item = item;
+        return this;
+    }
+
+    /**
+     * Keeps shops whose sign is within a box in a world, corners included
+     * @param world The world
+     * @param x1 The x coordinate of one corner
+     * @param y1 The y coordinate of one corner
+     * @param z1 The z coordinate of one corner
+     * @param x2 The x coordinate of the opposite corner
+     * @param y2 The y coordinate of the opposite corner
+     * @param z2 The z coordinate of the opposite corner
+     * @return This query
+     */
+    public ShopQuery within(World world, int x1, int y1, int z1, int x2, int y2, int z2) {
+        this.world = world;
+        this.hasBox = true;
+        this.minX = Math.min(x1, x2);
+        this.minY = Math.min(y1, y2);
+        this.minZ = Math.min(z1, z2);
+        this.maxX = Math.max(x1, x2);
+        this.maxY = Math.max(y1, y2);
+        this.maxZ = Math.max(z1, z2);
+        return this;
+    }
+
+    /**
+     * Gets the world the query is limited to
+     * @return The world, or null for every world
+     */
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Checks whether a shop meets every criterion
+     * @param shop The shop
+     * @return true if the shop is selected
+     */
+    public boolean matches(ShopView shop) {
+        if (world != null && !shop.getWorldName().equals(world.getName())) {
+            return false;
+        }
+        if (owner != null && !owner.equals(shop.getOwner())) {
+            return false;
+        }
+        if (hasBox && (shop.getX() < minX || shop.getX() > maxX || shop.getY() < minY || shop.getY() > maxY
+                || shop.getZ() < minZ || shop.getZ() > maxZ)) {
+            return false;
+        }
+        return item == null || shop.getWantTemplate().getType() == item || shop.getGiveTemplate().getType() == item;
+    }
+}
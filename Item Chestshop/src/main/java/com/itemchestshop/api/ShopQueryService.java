@@ -0,0 +1,200 @@
+package com.itemchestshop.api;
+
+import com.itemchestshop.managers.PriceHistory;
+import com.itemchestshop.managers.ShopRegistry;
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.utils.PriceSeries;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Read-only access to the shops for other plugins, registered with Bukkit's
+ * services manager:
+ *
+ * <pre>
+ * ShopQueryService shops = Bukkit.getServicesManager().load(ShopQueryService.class);
+ * for (ShopView shop : shops.query(ShopQuery.all().owner(playerId))) { ... }
+ * </pre>
+ *
+ * Every method must be called on the main thread and throws
+ * IllegalStateException elsewhere. Lookups, {@link #forEachShop} and queries
+ * walk the live registry without copying it and must not change shops while
+ * they walk; an iterator fails once the shops change. Snapshots are immutable
+ * lists, but their views are the live shops, so they are only read on the main
+ * thread too; copy the values a task needs before handing it to another
+ * thread. The full snapshot is kept until the shops change, so asking for it
+ * again costs nothing.
+ *
+ * To keep their own state instead of polling, integrations listen for
+ * {@link com.itemchestshop.api.events.ShopCreateEvent},
+ * {@link com.itemchestshop.api.events.ShopRemoveEvent} and
+ * {@link com.itemchestshop.api.events.ShopTradeEvent}, and rebuild it on
+ * {@link com.itemchestshop.api.events.ShopsLoadEvent}.
+ */
+public final class ShopQueryService {
+
+    private final Server server;
+    private final ShopRegistry registry;
+    private final PriceHistory priceHistory;
+    private List<ShopView> snapshot;
+    private int snapshotModCount;
+
+    public ShopQueryService(Server server, ShopRegistry registry, PriceHistory priceHistory) {
+        this.server = server;
+        this.registry = registry;
+        this.priceHistory = priceHistory;
+    }
+
+    /**
+     * Gets the number of shops on the server
+     * @return Number of shops
+     */
+    public int getShopCount() {
+        return registry.size();
+    }
+
+    /**
+     * Gets the shop with its sign at a block
+     * @param world The world
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return The shop, or null if there is none
+     */
+    public ShopView getShop(World world, int x, int y, int z) {
+        checkThread();
+        return registry.get(world, x, y, z);
+    }
+
+    /**
+     * Visits every shop without copying the registry
+     * @param action The action to run for each shop
+     */
+    public void forEachShop(Consumer<? super ShopView> action) {
+        checkThread();
+        registry.forEach(action::accept);
+    }
+
+    /**
+     * Iterates over the shops a query selects without copying the registry
+     * @param query Which shops to visit
+     * @return An iterator over the live registry, which fails once the shops change
+     */
+    public Iterator<ShopView> iterator(ShopQuery query) {
+        checkThread();
+        World world = query.getWorld();
+        return new QueryIterator(world != null ? registry.iterator(world) : registry.iterator(), query);
+    }
+
+    /**
+     * Selects shops for a for-each loop, without copying the registry
+     * @param query Which shops to visit
+     * @return An iterable over the live registry
+     */
+    public Iterable<ShopView> query(ShopQuery query) {
+        return () -> iterator(query);
+    }
+
+    /**
+     * Gets an immutable list of every shop. The list is reused until the shops
+     * change, so repeated calls only copy after a change. The views in it are
+     * live shops, read on the main thread only.
+     * @return The shops registered now
+     */
+    public List<ShopView> snapshot() {
+        checkThread();
+        int modCount = registry.getModCount();
+        if (snapshot == null || snapshotModCount != modCount) {
+            ShopView[] shops = new ShopView[registry.size()];
+            int[] count = new int[1];
+            registry.forEach(chestShop -> shops[count[0]++] = chestShop);
+            snapshot = Collections.unmodifiableList(Arrays.asList(shops));
+            snapshotModCount = modCount;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Copies the shops a query selects into an immutable list of live views
+     * @param query Which shops to copy
+     * @return The selected shops registered now
+     */
+    public List<ShopView> snapshot(ShopQuery query) {
+        checkThread();
+        List<ShopView> shops = new ArrayList<>();
+        iterator(query).forEachRemaining(shops::add);
+        return Collections.unmodifiableList(shops);
+    }
+
+    /**
+     * Gets how the exchange rate of an item pair moved, for price charts. Only
+     * the points of the window are read. The points are immutable.
+     * @param giveType The material the shops sell
+     * @param wantType The material the shops ask for
+     * @param resolution Minute, hour or day points; each resolution keeps a limited number
+     * @param from The start of the window in epoch milliseconds, inclusive
+     * @param to The end of the window in epoch milliseconds, inclusive
+     * @return The points with samples, oldest first, empty if the history is disabled
+     */
+    public List<PriceSeries.Point> getPriceHistory(Material giveType, Material wantType, PriceSeries.Resolution resolution,
+                                                   long from, long to) {
+        checkThread();
+        return priceHistory.getHistory(giveType, wantType, resolution, from, to);
+    }
+
+    private void checkThread() {
+        if (!server.isPrimaryThread()) {
+            throw new IllegalStateException("Shops can only be queried on the main thread");
+        }
+    }
+
+    /**
+     * Skips the shops a query does not select
+     */
+    private static final class QueryIterator implements Iterator<ShopView> {
+        private final Iterator<ChestShop> shops;
+        private final ShopQuery query;
+        private ShopView next;
+
+        QueryIterator(Iterator<ChestShop> shops, ShopQuery query) {
+            this.shops = shops;
+            this.query = query;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public ShopView next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            ShopView current = next;
+            advance();
+            return current;
+        }
+
+        private void advance() {
+            next = null;
+            while (shops.hasNext()) {
+                ChestShop chestShop = shops.next();
+                if (query.matches(chestShop)) {
+                    next = chestShop;
+                    return;
+                }
+            }
+        }
+    }
+}
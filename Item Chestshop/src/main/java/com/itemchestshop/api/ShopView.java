@@ -0,0 +1,120 @@
+package com.itemchestshop.api;
+
+import com.itemchestshop.models.ItemTemplate;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.UUID;
+
+/**
+ * A read-only view of a shop, for other plugins.
+ *
+ * Views are the registered shops themselves, not copies, so they are only read
+ * on the main thread. The sign, chest, owner and items of a shop never change;
+ * a shop given to another owner or moved to another world is replaced by a new
+ * one. The stock counts and trade time do change, on the main thread, as the
+ * shop trades.
+ */
+public interface ShopView {
+
+    /**
+     * Gets the world of the shop
+     * @return The world, or null while it is unloaded
+     */
+    World getWorld();
+
+    /**
+     * Gets the name of the shop's world, which is known while the world is unloaded
+     * @return The world name
+     */
+    String getWorldName();
+
+    /**
+     * Gets the x coordinate of the sign
+     * @return The block x coordinate
+     */
+    int getX();
+
+    /**
+     * Gets the y coordinate of the sign
+     * @return The block y coordinate
+     */
+    int getY();
+
+    /**
+     * Gets the z coordinate of the sign
+     * @return The block z coordinate
+     */
+    int getZ();
+
+    /**
+     * Gets the y coordinate of the chest, which is in the same column as the sign
+     * @return The block y coordinate
+     */
+    int getChestY();
+
+    /**
+     * Builds the location of the sign
+     * @return A new location
+     */
+    Location getSignLocation();
+
+    /**
+     * Builds the location of the chest
+     * @return A new location
+     */
+    Location getChestLocation();
+
+    UUID getOwner();
+
+    String getOwnerName();
+
+    /**
+     * Gets a copy of the item the shop asks for
+     * @return The payment item and amount, which the caller may change
+     */
+    ItemStack getWantItem();
+
+    /**
+     * Gets a copy of the item the shop sells
+     * @return The sold item and amount, which the caller may change
+     */
+    ItemStack getGiveItem();
+
+    /**
+     * Gets the template of the item the shop asks for, which knows the type and amount without decoding the item
+     * @return The payment item template
+     */
+    ItemTemplate getWantTemplate();
+
+    /**
+     * Gets the template of the item the shop sells, which knows the type and amount without decoding the item
+     * @return The sold item template
+     */
+    ItemTemplate getGiveTemplate();
+
+    /**
+     * Gets how many more trades the chest's stock allows, as of the last scan and the trades since
+     * @return The number of trades, or -1 if the chest was never scanned
+     */
+    int getStockTrades();
+
+    /**
+     * Gets how many more payments fit in the chest, as of the last scan and the trades since
+     * @return The number of trades, or -1 if the chest was never scanned
+     */
+    int getSpaceTrades();
+
+    /**
+     * Gets when the stock and space counts were taken
+     * @return The time in epoch milliseconds, or 0 if the chest was never scanned
+     */
+    long getStockTime();
+
+    /**
+     * Gets when the shop last traded
+     * @return The time in epoch milliseconds, or when the shop was created or first loaded if it never traded
+     */
+    long getTradeTime();
+}
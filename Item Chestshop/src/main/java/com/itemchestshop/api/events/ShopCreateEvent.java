@@ -0,0 +1,50 @@
+package com.itemchestshop.api.events;
+
+import com.itemchestshop.api.ShopView;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+/**
+ * Called on the main thread after a shop was registered and indexed
+ */
+public class ShopCreateEvent extends Event {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    /**
+     * Why the shop was registered
+     */
+    public enum Reason {
+        // A player placed a shop sign
+        CREATED,
+        // An expired shop was brought back
+        RESTORED,
+        // The shop replaced an earlier one, given to another owner or moved to another world
+        REPLACED
+    }
+
+    private final ShopView shop;
+    private final Reason reason;
+
+    public ShopCreateEvent(ShopView shop, Reason reason) {
+        this.shop = shop;
+        this.reason = reason;
+    }
+
+    public ShopView getShop() {
+        return shop;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,55 @@
+package com.itemchestshop.api.events;
+
+import com.itemchestshop.api.ShopView;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+/**
+ * Called on the main thread after a shop was unregistered. The shop is no
+ * longer returned by lookups and queries.
+ */
+public class ShopRemoveEvent extends Event {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    /**
+     * Why the shop was unregistered
+     */
+    public enum Reason {
+        // Its sign or chest was broken
+        BROKEN,
+        // The sweeper found its sign or chest gone
+        ORPHANED,
+        // An admin removed it with a bulk job
+        ADMIN,
+        // It was inactive for too long
+        EXPIRED,
+        // A new shop took its place, given to another owner or moved to another world
+        REPLACED
+    }
+
+    private final ShopView shop;
+    private final Reason reason;
+
+    public ShopRemoveEvent(ShopView shop, Reason reason) {
+        this.shop = shop;
+        this.reason = reason;
+    }
+
+    public ShopView getShop() {
+        return shop;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
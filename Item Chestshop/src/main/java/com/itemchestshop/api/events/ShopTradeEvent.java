@@ -0,0 +1,44 @@
+package com.itemchestshop.api.events;
+
+import com.itemchestshop.api.ShopView;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+/**
+ * Called on the main thread after a player traded with a shop. The items have
+ * changed hands and the shop's stock counts and trade time are updated.
+ */
+public class ShopTradeEvent extends Event {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final ShopView shop;
+    private final Player player;
+
+    public ShopTradeEvent(ShopView shop, Player player) {
+        this.shop = shop;
+        this.player = player;
+    }
+
+    public ShopView getShop() {
+        return shop;
+    }
+
+    /**
+     * Gets the player who paid the shop's price and received its item
+     * @return The buyer
+     */
+    public Player getPlayer() {
+        return player;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,34 @@
+package com.itemchestshop.api.events;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+/**
+ * Called on the main thread after the whole registry was replaced, when the
+ * shops finished loading at startup or a backup was restored. No create or
+ * remove events are called for the shops involved; integrations rebuild their
+ * state from {@link com.itemchestshop.api.ShopQueryService} instead.
+ */
+public class ShopsLoadEvent extends Event {
+
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final int shopCount;
+
+    public ShopsLoadEvent(int shopCount) {
+        this.shopCount = shopCount;
+    }
+
+    public int getShopCount() {
+        return shopCount;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
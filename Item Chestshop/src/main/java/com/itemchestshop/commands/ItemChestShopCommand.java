@@ -1,39 +1,84 @@
 package com.itemchestshop.commands;
 
 import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.managers.BulkJobManager;
 import com.itemchestshop.managers.ChestShopManager;
+import com.itemchestshop.managers.DeliveryVault;
+import com.itemchestshop.managers.MarketIndex;
+import com.itemchestshop.managers.PriceHistory;
+import com.itemchestshop.managers.TradeGraph;
+import com.itemchestshop.managers.TradeLeaderboard;
 import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.replication.ReplicaIndex;
+import com.itemchestshop.replication.ShopDelta;
+import com.itemchestshop.replication.ShopReplicator;
 import com.itemchestshop.utils.ConfigManager;
+import com.itemchestshop.utils.DataManager;
 import com.itemchestshop.utils.ItemParser;
-import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.format.NamedTextColor;
-import net.kyori.adventure.text.format.TextColor;
+import com.itemchestshop.utils.LatencyHistogram;
+import com.itemchestshop.utils.Messages;
+import com.itemchestshop.utils.MetricsRegistry;
+import com.itemchestshop.utils.PriceSeries;
+import com.itemchestshop.utils.ShopExporter;
+import com.itemchestshop.utils.ShopFilter;
+import com.itemchestshop.utils.TraceRecorder;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.UUID;
 
 public class ItemChestShopCommand implements CommandExecutor {
     
     private final ItemChestShopPlugin plugin;
     private final ChestShopManager chestShopManager;
     private final ConfigManager configManager;
+    private final MetricsRegistry metrics;
+    private final TraceRecorder traceRecorder;
     
     public ItemChestShopCommand(ItemChestShopPlugin plugin) {
         this.plugin = plugin;
         this.chestShopManager = plugin.getChestShopManager();
         this.configManager = plugin.getConfigManager();
+        this.metrics = plugin.getMetrics();
+        this.traceRecorder = plugin.getTraceRecorder();
     }
     
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        long start = metrics.start();
+        traceRecorder.recordCommand(sender, args);
+        try {
+            return handleCommand(sender, args);
+        } finally {
+            metrics.record(MetricsRegistry.Metric.COMMAND, start);
+        }
+    }
+    
+    /**
+     * Dispatches a subcommand
+     * @param sender The command sender
+     * @param args The command arguments
+     * @return true if the command was handled
+     */
+    private boolean handleCommand(CommandSender sender, String[] args) {
         if (args.length == 0) {
             showHelp(sender);
             return true;
@@ -41,13 +86,22 @@ public class ItemChestShopCommand implements CommandExecutor {
         
         String subCommand = args[0].toLowerCase();
         
+        if (!chestShopManager.isLoaded() && readsShops(subCommand)) {
+            send(sender, Messages.Key.SHOPS_LOADING);
+            return true;
+        }
+        if (chestShopManager.isRestoring() && changesShops(subCommand)) {
+            send(sender, Messages.Key.SHOPS_RESTORING);
+            return true;
+        }
+        
         switch (subCommand) {
             case "help":
                 showHelp(sender);
                 break;
             case "reload":
                 if (!sender.hasPermission("itemchestshop.admin")) {
-                    sender.sendMessage(Component.text("You don't have permission to use this command!", NamedTextColor.RED));
+                    send(sender, Messages.Key.NO_PERMISSION);
                     return true;
                 }
                 reloadConfig(sender);
@@ -59,7 +113,7 @@ public class ItemChestShopCommand implements CommandExecutor {
                 if (sender instanceof Player) {
                     showPlayerStats(sender, (Player) sender);
                 } else {
-                    sender.sendMessage(Component.text("This command can only be used by players!", NamedTextColor.RED));
+                    send(sender, Messages.Key.PLAYERS_ONLY);
                 }
                 break;
             case "list":
@@ -68,7 +122,7 @@ public class ItemChestShopCommand implements CommandExecutor {
                     try {
                         page = Integer.parseInt(args[1]);
                     } catch (NumberFormatException e) {
-                        sender.sendMessage(Component.text("Invalid page number: " + args[1], NamedTextColor.RED));
+                        send(sender, Messages.Key.INVALID_PAGE_NUMBER, "page", args[1]);
                         return true;
                     }
                 }
@@ -76,10 +130,115 @@ public class ItemChestShopCommand implements CommandExecutor {
                 break;
             case "find":
                 if (args.length < 2) {
-                    sender.sendMessage(Component.text("Usage: /itemchestshop find <item>", NamedTextColor.RED));
+                    send(sender, Messages.Key.USAGE_FIND);
+                    return true;
+                }
+                findShops(sender, args[1], args.length > 2 && args[2].equalsIgnoreCase("instock"));
+                break;
+            case "near":
+                if (!(sender instanceof Player)) {
+                    send(sender, Messages.Key.PLAYERS_ONLY);
+                    return true;
+                }
+                if (args.length < 2) {
+                    send(sender, Messages.Key.USAGE_NEAR);
+                    return true;
+                }
+                boolean inStockOnly = args.length > 2 && args[2].equalsIgnoreCase("instock");
+                findNearestShops((Player) sender, args[1], inStockOnly);
+                break;
+            case "market":
+                if (args.length < 2) {
+                    send(sender, Messages.Key.USAGE_MARKET);
+                    return true;
+                }
+                showMarket(sender, args[1]);
+                break;
+            case "history":
+                if (args.length < 2) {
+                    send(sender, Messages.Key.USAGE_HISTORY);
+                    return true;
+                }
+                showPriceHistory(sender, args[1], args.length > 2 ? args[2] : null);
+                break;
+            case "route":
+                if (args.length < 3) {
+                    send(sender, Messages.Key.USAGE_ROUTE);
+                    return true;
+                }
+                findRoute(sender, args[1], args[2]);
+                break;
+            case "top":
+                showLeaderboard(sender, args.length > 1 ? args[1].toLowerCase() : "shops",
+                    args.length > 2 ? args[2] : TradeLeaderboard.Window.DAY.getName());
+                break;
+            case "claim":
+                if (sender instanceof Player) {
+                    claimDeliveries((Player) sender);
+                } else {
+                    send(sender, Messages.Key.PLAYERS_ONLY);
+                }
+                break;
+            case "metrics":
+                if (!sender.hasPermission("itemchestshop.admin")) {
+                    send(sender, Messages.Key.NO_PERMISSION);
+                    return true;
+                }
+                showMetrics(sender, args.length > 1 ? args[1].toLowerCase() : "");
+                break;
+            case "arbitrage":
+                if (!sender.hasPermission("itemchestshop.admin")) {
+                    send(sender, Messages.Key.NO_PERMISSION);
+                    return true;
+                }
+                showArbitrage(sender);
+                break;
+            case "trace":
+                if (!sender.hasPermission("itemchestshop.admin")) {
+                    send(sender, Messages.Key.NO_PERMISSION);
+                    return true;
+                }
+                handleTrace(sender, args.length > 1 ? args[1].toLowerCase() : "");
+                break;
+            case "export":
+                if (!sender.hasPermission("itemchestshop.admin")) {
+                    send(sender, Messages.Key.NO_PERMISSION);
+                    return true;
+                }
+                exportShops(sender, args);
+                break;
+            case "bulk":
+                if (!sender.hasPermission("itemchestshop.admin")) {
+                    send(sender, Messages.Key.NO_PERMISSION);
+                    return true;
+                }
+                runBulkJob(sender, args);
+                break;
+            case "expired":
+                if (!sender.hasPermission("itemchestshop.admin")) {
+                    send(sender, Messages.Key.NO_PERMISSION);
+                    return true;
+                }
+                if (args.length < 2) {
+                    send(sender, Messages.Key.USAGE_EXPIRED);
                     return true;
                 }
-                findShops(sender, args[1]);
+                showExpiredShops(sender, args[1], args.length > 2 && args[2].equalsIgnoreCase("restore"));
+                break;
+            case "restore":
+                if (!sender.hasPermission("itemchestshop.admin")) {
+                    send(sender, Messages.Key.NO_PERMISSION);
+                    return true;
+                }
+                if (args.length < 2) {
+                    showBackups(sender);
+                    return true;
+                }
+                try {
+                    restoreShops(sender, Integer.parseInt(args[1]));
+                } catch (NumberFormatException e) {
+                    send(sender, Messages.Key.USAGE_RESTORE);
+                }
                 break;
             default:
                 showHelp(sender);
@@ -89,41 +248,75 @@ public class ItemChestShopCommand implements CommandExecutor {
         return true;
     }
     
+    /**
+     * Checks whether a subcommand reads the shop registry
+     * @param subCommand The lower-case subcommand
+     * @return true if it needs the shops to be loaded
+     */
+    private static boolean readsShops(String subCommand) {
+        switch (subCommand) {
+            case "stats":
+            case "list":
+            case "find":
+            case "near":
+            case "market":
+            case "route":
+            case "top":
+            case "arbitrage":
+            case "export":
+            case "bulk":
+            case "expired":
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Checks whether a subcommand may change the shop registry, which a running restore would undo
+     * @param subCommand The lower-case subcommand
+     * @return true if it must wait for a restore to finish
+     */
+    private static boolean changesShops(String subCommand) {
+        switch (subCommand) {
+            case "bulk":
+            case "expired":
+                return true;
+            default:
+                return false;
+        }
+    }
+    
     /**
      * Shows help information
      * @param sender The command sender
      */
     private void showHelp(CommandSender sender) {
-        sender.sendMessage(Component.text("=== ItemChestShop Commands ===", NamedTextColor.GOLD));
-        sender.sendMessage(Component.text("/itemchestshop help", NamedTextColor.YELLOW)
-            .append(Component.text(" - Show this help", NamedTextColor.WHITE)));
-        sender.sendMessage(Component.text("/itemchestshop info", NamedTextColor.YELLOW)
-            .append(Component.text(" - Show plugin info", NamedTextColor.WHITE)));
-        sender.sendMessage(Component.text("/itemchestshop stats", NamedTextColor.YELLOW)
-            .append(Component.text(" - Show your shop statistics", NamedTextColor.WHITE)));
-        sender.sendMessage(Component.text("/itemchestshop list [page]", NamedTextColor.YELLOW)
-            .append(Component.text(" - Browse all shops", NamedTextColor.WHITE)));
-        sender.sendMessage(Component.text("/itemchestshop find <item>", NamedTextColor.YELLOW)
-            .append(Component.text(" - Find shops selling an item", NamedTextColor.WHITE)));
+        send(sender, Messages.Key.HELP_HEADER);
+        send(sender, Messages.Key.HELP_HELP);
+        send(sender, Messages.Key.HELP_INFO);
+        send(sender, Messages.Key.HELP_STATS);
+        send(sender, Messages.Key.HELP_LIST);
+        send(sender, Messages.Key.HELP_FIND);
+        send(sender, Messages.Key.HELP_NEAR);
+        send(sender, Messages.Key.HELP_MARKET);
+        send(sender, Messages.Key.HELP_ROUTE);
+        send(sender, Messages.Key.HELP_HISTORY);
+        send(sender, Messages.Key.HELP_TOP);
+        send(sender, Messages.Key.HELP_CLAIM);
         
         if (sender.hasPermission("itemchestshop.admin")) {
-            sender.sendMessage(Component.text("/itemchestshop reload", NamedTextColor.YELLOW)
-                .append(Component.text(" - Reload configuration", NamedTextColor.WHITE)));
+            send(sender, Messages.Key.HELP_RELOAD);
+            send(sender, Messages.Key.HELP_ARBITRAGE);
+            send(sender, Messages.Key.HELP_METRICS);
+            send(sender, Messages.Key.HELP_TRACE);
+            send(sender, Messages.Key.HELP_BULK);
+            send(sender, Messages.Key.HELP_EXPORT);
+            send(sender, Messages.Key.HELP_RESTORE);
+            send(sender, Messages.Key.HELP_EXPIRED);
         }
         
-        sender.sendMessage(Component.text("", NamedTextColor.GRAY));
-        sender.sendMessage(Component.text("To create a shop:", NamedTextColor.GRAY));
-        sender.sendMessage(Component.text("1. Place a chest", NamedTextColor.GRAY));
-        sender.sendMessage(Component.text("2. Place a sign on or above the chest", NamedTextColor.GRAY));
-        sender.sendMessage(Component.text("3. Write on the sign:", NamedTextColor.GRAY));
-        sender.sendMessage(Component.text("   Line 1: Your username (or leave empty)", NamedTextColor.GRAY));
-        sender.sendMessage(Component.text("   Line 2: Want: [amount] [item]", NamedTextColor.GRAY));
-        sender.sendMessage(Component.text("   Line 3: Give: [amount] [item]", NamedTextColor.GRAY));
-        sender.sendMessage(Component.text("", NamedTextColor.GRAY));
-        sender.sendMessage(Component.text("Example:", NamedTextColor.GRAY));
-        sender.sendMessage(Component.text("VydeogamzXD", NamedTextColor.GRAY));
-        sender.sendMessage(Component.text("Want: 64 Bread", NamedTextColor.GRAY));
-        sender.sendMessage(Component.text("Give: 1 Diamond", NamedTextColor.GRAY));
+        send(sender, Messages.Key.HELP_CREATE);
     }
     
     /**
@@ -131,17 +324,21 @@ public class ItemChestShopCommand implements CommandExecutor {
      * @param sender The command sender
      */
     private void showInfo(CommandSender sender) {
-        sender.sendMessage(Component.text("=== ItemChestShop Plugin Info ===", NamedTextColor.GOLD));
-        sender.sendMessage(Component.text("Version: ", NamedTextColor.YELLOW)
-            .append(Component.text(plugin.getDescription().getVersion(), NamedTextColor.WHITE)));
-        sender.sendMessage(Component.text("Author: ", NamedTextColor.YELLOW)
-            .append(Component.text("VydeogamzXD", NamedTextColor.WHITE)));
-        sender.sendMessage(Component.text("Description: ", NamedTextColor.YELLOW)
-            .append(Component.text(plugin.getDescription().getDescription(), NamedTextColor.WHITE)));
+        send(sender, Messages.Key.INFO_HEADER);
+        send(sender, Messages.Key.INFO_VERSION, "version", plugin.getDescription().getVersion());
+        send(sender, Messages.Key.INFO_AUTHOR);
+        send(sender, Messages.Key.INFO_DESCRIPTION, "description", plugin.getDescription().getDescription());
+        
+        int totalShops = chestShopManager.getShopCount();
+        send(sender, Messages.Key.INFO_TOTAL_SHOPS, "count", String.valueOf(totalShops));
         
-        int totalShops = chestShopManager.getAllChestShops().size();
-        sender.sendMessage(Component.text("Total Shops: ", NamedTextColor.YELLOW)
-            .append(Component.text(String.valueOf(totalShops), NamedTextColor.WHITE)));
+        ShopReplicator replicator = plugin.getShopReplicator();
+        if (replicator.isReady()) {
+            ReplicaIndex replicaIndex = replicator.getReplicaIndex();
+            send(sender, Messages.Key.INFO_REMOTE_SHOPS,
+                "count", String.valueOf(replicaIndex.getShopCount()),
+                "servers", String.valueOf(replicaIndex.getServerCount()));
+        }
     }
     
     /**
@@ -151,39 +348,35 @@ public class ItemChestShopCommand implements CommandExecutor {
      */
     private void showPlayerStats(CommandSender sender, Player player) {
         List<ChestShop> playerShops = new ArrayList<>();
-        for (ChestShop shop : chestShopManager.getAllChestShops().values()) {
+        for (ChestShop shop : chestShopManager.getShops()) {
             if (shop.getOwner().equals(player.getUniqueId())) {
                 playerShops.add(shop);
             }
         }
         
-        player.sendMessage(Component.text("=== Your Shop Statistics ===", NamedTextColor.GOLD));
-        player.sendMessage(Component.text("Total Shops: ", NamedTextColor.YELLOW)
-            .append(Component.text(String.valueOf(playerShops.size()), NamedTextColor.WHITE)));
+        send(player, Messages.Key.STATS_HEADER);
+        send(player, Messages.Key.STATS_TOTAL_SHOPS, "count", String.valueOf(playerShops.size()));
         
         if (playerShops.isEmpty()) {
-            player.sendMessage(Component.text("You don't have any shops yet!", NamedTextColor.GRAY));
-            player.sendMessage(Component.text("Use ", NamedTextColor.GRAY)
-                .append(Component.text("/itemchestshop help", NamedTextColor.YELLOW))
-                .append(Component.text(" to learn how to create one.", NamedTextColor.GRAY)));
+            send(player, Messages.Key.STATS_NO_SHOPS);
             return;
         }
         
-        player.sendMessage(Component.text("Your Shops:", NamedTextColor.YELLOW));
+        send(player, Messages.Key.STATS_SHOPS_HEADER);
         for (int i = 0; i < Math.min(playerShops.size(), 5); i++) {
             ChestShop shop = playerShops.get(i);
-            String location = shop.getSignLocation().getWorld().getName() + " " + 
-                            shop.getSignLocation().getBlockX() + "," + 
-                            shop.getSignLocation().getBlockY() + "," + 
-                            shop.getSignLocation().getBlockZ();
-            
-            player.sendMessage(Component.text("" + (i + 1) + ". ", NamedTextColor.GRAY)
-                .append(Component.text(shop.getWantItem() + " → " + shop.getGiveItem(), NamedTextColor.WHITE))
-                .append(Component.text(" at " + location, NamedTextColor.GRAY)));
+            send(player, Messages.Key.STATS_SHOP,
+                "index", String.valueOf(i + 1),
+                "want", formatItem(shop.getWantItem()),
+                "give", formatItem(shop.getGiveItem()),
+                "world", shop.getWorldName(),
+                "x", String.valueOf(shop.getX()),
+                "y", String.valueOf(shop.getY()),
+                "z", String.valueOf(shop.getZ()));
         }
         
         if (playerShops.size() > 5) {
-            player.sendMessage(Component.text("... and " + (playerShops.size() - 5) + " more shops", NamedTextColor.GRAY));
+            send(player, Messages.Key.STATS_MORE, "count", String.valueOf(playerShops.size() - 5));
         }
     }
     
@@ -194,9 +387,568 @@ public class ItemChestShopCommand implements CommandExecutor {
     private void reloadConfig(CommandSender sender) {
         try {
             configManager.loadConfig();
-            sender.sendMessage(Component.text("Configuration reloaded successfully!", NamedTextColor.GREEN));
+            metrics.setEnabled(configManager.isDebugEnabled());
+            plugin.getSlowLog().configure(configManager);
+            plugin.getShopSweeper().configure();
+            plugin.getBulkJobManager().configure();
+            plugin.getDeliveryVault().configure();
+            plugin.getChestShopManager().getStockMonitor().configure();
+            plugin.getChestShopManager().getShopExpiry().configure();
+            plugin.getChestShopManager().getPriceHistory().configure();
+            plugin.getChestShopManager().getLeaderboard().setSize(configManager.getLeaderboardSize());
+            plugin.getShopReplicator().start();
+            send(sender, Messages.Key.RELOAD_SUCCESS);
         } catch (Exception e) {
-            sender.sendMessage(Component.text("Failed to reload configuration: " + e.getMessage(), NamedTextColor.RED));
+            send(sender, Messages.Key.RELOAD_FAILED, "error", String.valueOf(e.getMessage()));
+        }
+    }
+    
+    /**
+     * Shows the busiest shops, owners or items over a recent time span
+     * @param sender The command sender
+     * @param board "shops", "owners" or "items"
+     * @param windowName "hour", "day" or "week"
+     */
+    private void showLeaderboard(CommandSender sender, String board, String windowName) {
+        TradeLeaderboard.Window window = TradeLeaderboard.Window.fromName(windowName);
+        if (window == null) {
+            send(sender, Messages.Key.USAGE_TOP);
+            return;
+        }
+        
+        TradeLeaderboard leaderboard = chestShopManager.getLeaderboard();
+        long now = System.currentTimeMillis();
+        int index = 1;
+        switch (board) {
+            case "shops":
+                List<TradeLeaderboard.Entry<ChestShop>> shops = leaderboard.getTopShops(window, now);
+                if (shops.isEmpty()) {
+                    send(sender, Messages.Key.TOP_EMPTY, "window", window.getName());
+                    return;
+                }
+                send(sender, Messages.Key.TOP_SHOPS_HEADER, "window", window.getName());
+                for (TradeLeaderboard.Entry<ChestShop> entry : shops) {
+                    ChestShop shop = entry.getKey();
+                    send(sender, Messages.Key.TOP_SHOP_ENTRY,
+                        "index", String.valueOf(index++),
+                        "give", formatItem(shop.getGiveItem()),
+                        "want", formatItem(shop.getWantItem()),
+                        "owner", shop.getOwnerName(),
+                        "world", shop.getWorldName(),
+                        "x", String.valueOf(shop.getX()),
+                        "y", String.valueOf(shop.getY()),
+                        "z", String.valueOf(shop.getZ()),
+                        "count", String.valueOf(entry.getCount()));
+                }
+                break;
+            case "owners":
+                List<TradeLeaderboard.Entry<UUID>> owners = leaderboard.getTopOwners(window, now);
+                if (owners.isEmpty()) {
+                    send(sender, Messages.Key.TOP_EMPTY, "window", window.getName());
+                    return;
+                }
+                send(sender, Messages.Key.TOP_OWNERS_HEADER, "window", window.getName());
+                for (TradeLeaderboard.Entry<UUID> entry : owners) {
+                    String ownerName = plugin.getServer().getOfflinePlayer(entry.getKey()).getName();
+                    send(sender, Messages.Key.TOP_OWNER_ENTRY,
+                        "index", String.valueOf(index++),
+                        "owner", String.valueOf(ownerName),
+                        "count", String.valueOf(entry.getCount()));
+                }
+                break;
+            case "items":
+                List<TradeLeaderboard.Entry<Material>> items = leaderboard.getTopItems(window, now);
+                if (items.isEmpty()) {
+                    send(sender, Messages.Key.TOP_EMPTY, "window", window.getName());
+                    return;
+                }
+                send(sender, Messages.Key.TOP_ITEMS_HEADER, "window", window.getName());
+                for (TradeLeaderboard.Entry<Material> entry : items) {
+                    send(sender, Messages.Key.TOP_ITEM_ENTRY,
+                        "index", String.valueOf(index++),
+                        "item", formatMaterialName(entry.getKey()),
+                        "count", String.valueOf(entry.getCount()));
+                }
+                break;
+            default:
+                send(sender, Messages.Key.USAGE_TOP);
+                break;
+        }
+    }
+    
+    /**
+     * Hands over as many items from the player's delivery box as fit in their inventory
+     * @param player The player
+     */
+    private void claimDeliveries(Player player) {
+        DeliveryVault deliveryVault = plugin.getDeliveryVault();
+        if (deliveryVault.getPendingAmount(player.getUniqueId()) == 0) {
+            send(player, Messages.Key.CLAIM_EMPTY);
+            return;
+        }
+        
+        int delivered = deliveryVault.deliver(player);
+        int remaining = deliveryVault.getPendingAmount(player.getUniqueId());
+        if (delivered > 0) {
+            send(player, Messages.Key.DELIVERY_DELIVERED, "amount", String.valueOf(delivered));
+        }
+        if (remaining > 0) {
+            send(player, delivered > 0 ? Messages.Key.DELIVERY_WAITING : Messages.Key.CLAIM_NO_ROOM,
+                "amount", String.valueOf(remaining));
+        }
+    }
+    
+    /**
+     * Shows, resets or dumps the runtime metrics
+     * @param sender The command sender
+     * @param action Empty to show, "reset" or "dump"
+     */
+    private void showMetrics(CommandSender sender, String action) {
+        if (action.equals("reset")) {
+            metrics.reset();
+            send(sender, Messages.Key.METRICS_RESET);
+            return;
+        }
+        
+        if (action.equals("dump")) {
+            try {
+                File file = metrics.dump();
+                send(sender, Messages.Key.METRICS_DUMPED, "file", file.getName());
+            } catch (IOException e) {
+                send(sender, Messages.Key.METRICS_DUMP_FAILED, "error", String.valueOf(e.getMessage()));
+            }
+            return;
+        }
+        
+        send(sender, Messages.Key.METRICS_HEADER);
+        if (!metrics.isEnabled()) {
+            send(sender, Messages.Key.METRICS_DISABLED);
+        }
+        
+        long minutes = (System.currentTimeMillis() - metrics.getResetAt()) / 60000;
+        send(sender, Messages.Key.METRICS_RECORDING, "minutes", String.valueOf(minutes));
+        
+        for (MetricsRegistry.Metric metric : MetricsRegistry.Metric.values()) {
+            LatencyHistogram histogram = metrics.getHistogram(metric);
+            send(sender, Messages.Key.METRICS_TIMING,
+                "metric", metric.getDisplayName(),
+                "count", String.valueOf(histogram.getCount()),
+                "rate", formatRate(metrics.getRate(metric)),
+                "p50", MetricsRegistry.formatNanos(histogram.getPercentile(50)),
+                "p99", MetricsRegistry.formatNanos(histogram.getPercentile(99)),
+                "max", MetricsRegistry.formatNanos(histogram.getMax()));
+        }
+        
+        send(sender, Messages.Key.METRICS_TRADES,
+            "succeeded", String.valueOf(metrics.getCount(MetricsRegistry.Counter.TRANSACTIONS_SUCCEEDED)),
+            "failed", String.valueOf(metrics.getCount(MetricsRegistry.Counter.TRANSACTIONS_FAILED)));
+        send(sender, Messages.Key.METRICS_SHOPS,
+            "created", String.valueOf(metrics.getCount(MetricsRegistry.Counter.SHOPS_CREATED)),
+            "removed", String.valueOf(metrics.getCount(MetricsRegistry.Counter.SHOPS_REMOVED)));
+    }
+    
+    /**
+     * Starts, stops or shows the status of the trace recorder
+     * @param sender The command sender
+     * @param action Empty for the status, "start" or "stop"
+     */
+    private void handleTrace(CommandSender sender, String action) {
+        if (action.equals("start")) {
+            try {
+                File file = traceRecorder.start(configManager.getTraceMaxSizeMegabytes());
+                send(sender, Messages.Key.TRACE_STARTED, "file", file.getName());
+            } catch (IOException e) {
+                send(sender, Messages.Key.TRACE_START_FAILED, "error", String.valueOf(e.getMessage()));
+            }
+            return;
+        }
+        
+        if (action.equals("stop")) {
+            if (!traceRecorder.isRecording()) {
+                send(sender, Messages.Key.TRACE_NOT_RECORDING);
+                return;
+            }
+            traceRecorder.stop();
+            send(sender, Messages.Key.TRACE_STOPPED,
+                "file", traceRecorder.getFile().getName(),
+                "events", String.valueOf(traceRecorder.getRecordedEvents()));
+            return;
+        }
+        
+        send(sender, Messages.Key.TRACE_HEADER);
+        if (!traceRecorder.isRecording()) {
+            send(sender, Messages.Key.TRACE_IDLE);
+            return;
+        }
+        send(sender, Messages.Key.TRACE_FILE, "file", traceRecorder.getFile().getName());
+        send(sender, Messages.Key.TRACE_EVENTS,
+            "recorded", String.valueOf(traceRecorder.getRecordedEvents()),
+            "dropped", String.valueOf(traceRecorder.getDroppedEvents()));
+        send(sender, Messages.Key.TRACE_SIZE, "size", String.valueOf(traceRecorder.getBytesRecorded() / 1024));
+    }
+    
+    /**
+     * Writes the shops to a file in the background
+     * @param sender The command sender
+     * @param args The command arguments: an optional format, "gzip", and world:, owner: and item: filters
+     */
+    private void exportShops(CommandSender sender, String[] args) {
+        ShopExporter.Format format = ShopExporter.Format.NDJSON;
+        boolean gzip = false;
+        ShopFilter filter = new ShopFilter();
+        
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            String lower = arg.toLowerCase();
+            if (ShopExporter.Format.fromName(lower) != null) {
+                format = ShopExporter.Format.fromName(lower);
+            } else if (lower.equals("gzip")) {
+                gzip = true;
+            } else if (isSelector(lower)) {
+                if (!applySelector(sender, arg, filter)) {
+                    return;
+                }
+            } else {
+                send(sender, Messages.Key.USAGE_EXPORT);
+                return;
+            }
+        }
+        
+        File file = plugin.getShopExporter().export(format, gzip, filter, result -> {
+            if (sender instanceof Player && !((Player) sender).isOnline()) {
+                return;
+            }
+            if (result.getError() != null) {
+                send(sender, Messages.Key.EXPORT_FAILED, "error", String.valueOf(result.getError().getMessage()));
+                return;
+            }
+            send(sender, Messages.Key.EXPORT_DONE,
+                "count", String.valueOf(result.getShopCount()),
+                "file", result.getFile().getName(),
+                "millis", String.valueOf(result.getMillis()));
+        });
+        
+        if (file == null) {
+            send(sender, Messages.Key.EXPORT_RUNNING);
+            return;
+        }
+        send(sender, Messages.Key.EXPORT_STARTED, "file", file.getName());
+    }
+    
+    /**
+     * Starts, cancels or shows a bulk job
+     * @param sender The command sender
+     * @param args The command arguments: "cancel", or an action, its target, selectors and an optional "dry-run"
+     */
+    private void runBulkJob(CommandSender sender, String[] args) {
+        BulkJobManager bulkJobManager = plugin.getBulkJobManager();
+        if (args.length < 2) {
+            BulkJobManager.Job running = bulkJobManager.getJob();
+            if (running == null) {
+                send(sender, Messages.Key.BULK_IDLE);
+            } else {
+                sendBulkProgress(sender, running);
+            }
+            return;
+        }
+        if (args[1].equalsIgnoreCase("cancel")) {
+            if (!bulkJobManager.cancel()) {
+                send(sender, Messages.Key.BULK_IDLE);
+            }
+            return;
+        }
+        
+        BulkJobManager.Action action = BulkJobManager.Action.fromName(args[1]);
+        if (action == null) {
+            send(sender, Messages.Key.USAGE_BULK);
+            return;
+        }
+        
+        // Transfers and migrations name their target before the selectors
+        int first = action == BulkJobManager.Action.REMOVE ? 2 : 3;
+        if (args.length <= first) {
+            send(sender, Messages.Key.USAGE_BULK);
+            return;
+        }
+        
+        ShopFilter filter = new ShopFilter();
+        boolean dryRun = false;
+        for (int i = first; i < args.length; i++) {
+            String lower = args[i].toLowerCase();
+            if (lower.equals("dry-run")) {
+                dryRun = true;
+            } else if (isSelector(lower)) {
+                if (!applySelector(sender, args[i], filter)) {
+                    return;
+                }
+            } else {
+                send(sender, Messages.Key.USAGE_BULK);
+                return;
+            }
+        }
+        if (!filter.isSelective()) {
+            send(sender, Messages.Key.BULK_NO_SELECTOR);
+            return;
+        }
+        
+        BulkJobManager.Job job;
+        if (action == BulkJobManager.Action.TRANSFER) {
+            OfflinePlayer newOwner = plugin.getServer().getOfflinePlayerIfCached(args[2]);
+            if (newOwner == null || newOwner.getName() == null) {
+                send(sender, Messages.Key.BULK_UNKNOWN_PLAYER, "player", args[2]);
+                return;
+            }
+            job = BulkJobManager.Job.transfer(filter, dryRun, newOwner.getUniqueId(), newOwner.getName());
+        } else if (action == BulkJobManager.Action.MIGRATE) {
+            World world = plugin.getServer().getWorld(args[2]);
+            if (world == null) {
+                send(sender, Messages.Key.BULK_UNKNOWN_WORLD, "world", args[2]);
+                return;
+            }
+            job = BulkJobManager.Job.migrate(filter, dryRun, world);
+        } else {
+            job = BulkJobManager.Job.remove(filter, dryRun);
+        }
+        
+        boolean started = bulkJobManager.start(job, progress -> {
+            if (!(sender instanceof Player) || ((Player) sender).isOnline()) {
+                sendBulkProgress(sender, progress);
+            }
+        }, done -> {
+            if (sender instanceof Player && !((Player) sender).isOnline()) {
+                return;
+            }
+            String actionName = done.getAction().getName();
+            if (done.isDryRun()) {
+                send(sender, Messages.Key.BULK_DRY_RUN_DONE, "action", actionName, "matched", String.valueOf(done.getMatched()));
+            } else if (done.isCancelled()) {
+                send(sender, Messages.Key.BULK_CANCELLED,
+                    "action", actionName,
+                    "checked", String.valueOf(done.getChecked()),
+                    "total", String.valueOf(done.getTotal()),
+                    "changed", String.valueOf(done.getChanged()));
+            } else {
+                send(sender, Messages.Key.BULK_DONE,
+                    "action", actionName,
+                    "millis", String.valueOf(done.getMillis()),
+                    "matched", String.valueOf(done.getMatched()),
+                    "changed", String.valueOf(done.getChanged()),
+                    "skipped", String.valueOf(done.getSkipped()));
+            }
+        });
+        
+        if (!started) {
+            send(sender, Messages.Key.BULK_RUNNING, "action", bulkJobManager.getJob().getAction().getName());
+            return;
+        }
+        send(sender, dryRun ? Messages.Key.BULK_DRY_RUN_STARTED : Messages.Key.BULK_STARTED,
+            "action", action.getName(),
+            "total", String.valueOf(job.getTotal()));
+    }
+    
+    /**
+     * Sends the progress line of a bulk job
+     * @param sender The command sender
+     * @param job The job
+     */
+    private void sendBulkProgress(CommandSender sender, BulkJobManager.Job job) {
+        send(sender, Messages.Key.BULK_PROGRESS,
+            "action", job.getAction().getName(),
+            "checked", String.valueOf(job.getChecked()),
+            "total", String.valueOf(job.getTotal()),
+            "matched", String.valueOf(job.getMatched()),
+            "changed", String.valueOf(job.getChanged()));
+    }
+    
+    /**
+     * Checks whether an argument is a shop selector
+     * @param argument The argument, lower case
+     * @return true for world:, owner:, item: and region: arguments
+     */
+    private static boolean isSelector(String argument) {
+        return argument.startsWith("world:") || argument.startsWith("owner:")
+            || argument.startsWith("item:") || argument.startsWith("region:");
+    }
+    
+    /**
+     * Adds a world:, owner:, item: or region: selector to a filter
+     * @param sender The command sender, told if the selector is invalid
+     * @param argument The selector
+     * @param filter The filter to narrow
+     * @return false if the selector is invalid
+     */
+    private boolean applySelector(CommandSender sender, String argument, ShopFilter filter) {
+        int colon = argument.indexOf(':');
+        String value = argument.substring(colon + 1);
+        switch (argument.substring(0, colon).toLowerCase()) {
+            case "world":
+                filter.world(value);
+                return true;
+            case "owner":
+                filter.owner(value);
+                return true;
+            case "item":
+                Material item = ItemParser.parseMaterial(value);
+                if (item == null) {
+                    send(sender, Messages.Key.INVALID_ITEM, "item", value);
+                    return false;
+                }
+                filter.item(item);
+                return true;
+            default:
+                String[] corners = value.split(",");
+                try {
+                    if (corners.length == 4) {
+                        filter.region(Integer.parseInt(corners[0].trim()), Integer.parseInt(corners[1].trim()),
+                            Integer.parseInt(corners[2].trim()), Integer.parseInt(corners[3].trim()));
+                        return true;
+                    }
+                } catch (NumberFormatException e) {
+                    // Reported below
+                }
+                send(sender, Messages.Key.INVALID_REGION, "region", value);
+                return false;
+        }
+    }
+    
+    /**
+     * Lists a player's shops in the archive of expired shops, or registers them again
+     * @param sender The command sender
+     * @param owner The owner's name or UUID
+     * @param restore Whether to register the shops again
+     */
+    private void showExpiredShops(CommandSender sender, String owner, boolean restore) {
+        ShopFilter filter = new ShopFilter().owner(owner);
+        chestShopManager.getShopExpiry().readArchive((expiredShops, error) -> {
+            if (sender instanceof Player && !((Player) sender).isOnline()) {
+                return;
+            }
+            if (error != null) {
+                send(sender, Messages.Key.EXPIRED_FAILED, "error", String.valueOf(error.getMessage()));
+                return;
+            }
+            
+            // A shop that expired more than once is listed with its latest expiry
+            Map<String, DataManager.ExpiredShop> latest = new LinkedHashMap<>();
+            for (DataManager.ExpiredShop expiredShop : expiredShops) {
+                ChestShop shop = expiredShop.getShop();
+                if (filter.matches(shop)) {
+                    String key = shop.getWorldName() + "," + shop.getX() + "," + shop.getY() + "," + shop.getZ();
+                    latest.remove(key);
+                    latest.put(key, expiredShop);
+                }
+            }
+            if (latest.isEmpty()) {
+                send(sender, Messages.Key.EXPIRED_NONE, "player", owner);
+                return;
+            }
+            
+            List<DataManager.ExpiredShop> newestFirst = new ArrayList<>(latest.values());
+            Collections.reverse(newestFirst);
+            if (restore) {
+                List<ChestShop> shops = new ArrayList<>();
+                for (DataManager.ExpiredShop expiredShop : newestFirst) {
+                    shops.add(expiredShop.getShop());
+                }
+                int restored = chestShopManager.getShopExpiry().restore(shops);
+                send(sender, Messages.Key.EXPIRED_RESTORED,
+                    "restored", String.valueOf(restored),
+                    "amount", String.valueOf(shops.size()),
+                    "player", owner);
+                return;
+            }
+            
+            long now = System.currentTimeMillis();
+            int shownShops = Math.min(10, newestFirst.size());
+            send(sender, Messages.Key.EXPIRED_HEADER, "player", owner, "amount", String.valueOf(newestFirst.size()));
+            for (DataManager.ExpiredShop expiredShop : newestFirst.subList(0, shownShops)) {
+                ChestShop shop = expiredShop.getShop();
+                send(sender, Messages.Key.EXPIRED_ENTRY,
+                    "give", ItemParser.itemToString(shop.getGiveItem()),
+                    "want", ItemParser.itemToString(shop.getWantItem()),
+                    "world", shop.getWorldName(),
+                    "x", String.valueOf(shop.getX()),
+                    "y", String.valueOf(shop.getY()),
+                    "z", String.valueOf(shop.getZ()),
+                    "age", formatAge(now - expiredShop.getTime()));
+            }
+        });
+    }
+    
+    /**
+     * Lists the backup generations, newest first
+     * @param sender The command sender
+     */
+    private void showBackups(CommandSender sender) {
+        List<DataManager.Backup> backups = chestShopManager.getBackups();
+        send(sender, Messages.Key.RESTORE_HEADER);
+        if (backups.isEmpty()) {
+            send(sender, Messages.Key.RESTORE_EMPTY);
+            return;
+        }
+        
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+        for (int i = backups.size() - 1; i >= 0; i--) {
+            DataManager.Backup backup = backups.get(i);
+            send(sender, Messages.Key.RESTORE_ENTRY,
+                "generation", String.valueOf(backup.getGeneration()),
+                "type", backup.isFull() ? "full" : "diff",
+                "date", dateFormat.format(new Date(backup.getTime())),
+                "size", String.valueOf(Math.max(1, backup.getSize() / 1024)));
+        }
+    }
+    
+    /**
+     * Backs up the current shops, then replaces them with a backup generation
+     * @param sender The command sender
+     * @param generation The generation to restore
+     */
+    private void restoreShops(CommandSender sender, int generation) {
+        boolean known = false;
+        for (DataManager.Backup backup : chestShopManager.getBackups()) {
+            known |= backup.getGeneration() == generation;
+        }
+        if (!known) {
+            send(sender, Messages.Key.RESTORE_UNKNOWN, "generation", String.valueOf(generation));
+            return;
+        }
+        if (chestShopManager.isRestoring()) {
+            send(sender, Messages.Key.RESTORE_RUNNING);
+            return;
+        }
+        // Backups can be listed while loading, but the loaded shops would replace the restored ones
+        if (!chestShopManager.isLoaded()) {
+            send(sender, Messages.Key.SHOPS_LOADING);
+            return;
+        }
+        
+        // Keeps the shops being replaced, so the restore can be undone. After a failed load
+        // there are none, and an empty generation would only push real ones out.
+        boolean unreadable = chestShopManager.isLoadFailed();
+        int backup = unreadable ? 0 : chestShopManager.backUpShops();
+        if (backup < 0) {
+            send(sender, Messages.Key.RESTORE_FAILED, "error", "the current shops could not be backed up");
+            return;
+        }
+        
+        chestShopManager.restoreShops(generation, error -> {
+            if (sender instanceof Player && !((Player) sender).isOnline()) {
+                return;
+            }
+            if (error != null) {
+                send(sender, Messages.Key.RESTORE_FAILED, "error", String.valueOf(error.getMessage()));
+                return;
+            }
+            send(sender, Messages.Key.RESTORE_DONE,
+                "count", String.valueOf(chestShopManager.getShopCount()),
+                "generation", String.valueOf(generation));
+        });
+        if (unreadable) {
+            send(sender, Messages.Key.RESTORE_STARTED_UNREADABLE, "generation", String.valueOf(generation));
+        } else {
+            send(sender, Messages.Key.RESTORE_STARTED,
+                "generation", String.valueOf(generation),
+                "backup", String.valueOf(backup));
         }
     }
     
@@ -206,111 +958,508 @@ public class ItemChestShopCommand implements CommandExecutor {
      * @param page The page number (1-based)
      */
     private void showShopList(CommandSender sender, int page) {
-        Map<Location, ChestShop> allShops = chestShopManager.getAllChestShops();
+        List<ChestShop> shopList = chestShopManager.getShops();
+        List<ShopDelta> remoteShops = plugin.getShopReplicator().getReplicaIndex().getShops();
+        int totalShops = shopList.size() + remoteShops.size();
         
-        if (allShops.isEmpty()) {
-            sender.sendMessage(Component.text("No shops found on this server.", NamedTextColor.YELLOW));
+        if (totalShops == 0) {
+            send(sender, Messages.Key.LIST_EMPTY);
             return;
         }
         
-        List<ChestShop> shopList = new ArrayList<>(allShops.values());
         int shopsPerPage = 10;
-        int totalPages = (int) Math.ceil((double) shopList.size() / shopsPerPage);
+        int totalPages = (int) Math.ceil((double) totalShops / shopsPerPage);
         
         if (page < 1 || page > totalPages) {
-            sender.sendMessage(Component.text("Invalid page number. Valid pages: 1-" + totalPages, NamedTextColor.RED));
+            send(sender, Messages.Key.LIST_INVALID_PAGE, "pages", String.valueOf(totalPages));
             return;
         }
         
         int startIndex = (page - 1) * shopsPerPage;
-        int endIndex = Math.min(startIndex + shopsPerPage, shopList.size());
+        int endIndex = Math.min(startIndex + shopsPerPage, totalShops);
         
-        sender.sendMessage(Component.text("=== Shop List (Page " + page + "/" + totalPages + ") ===", NamedTextColor.GOLD));
+        send(sender, Messages.Key.LIST_HEADER, "page", String.valueOf(page), "pages", String.valueOf(totalPages));
         
+        // This server's shops come first, then those on the other servers
         for (int i = startIndex; i < endIndex; i++) {
-            ChestShop shop = shopList.get(i);
-            Location loc = shop.getSignLocation();
-            String ownerName = plugin.getServer().getOfflinePlayer(shop.getOwner()).getName();
-            
-            // Format shop info
-            String wantItem = formatItemName(shop.getWantItem());
-            String giveItem = formatItemName(shop.getGiveItem());
-            
-            sender.sendMessage(Component.text("" + (i + 1) + ". ", NamedTextColor.YELLOW)
-                .append(Component.text(ownerName + "'s shop", NamedTextColor.WHITE)));
-            sender.sendMessage(Component.text("   Want: ", NamedTextColor.GRAY)
-                .append(Component.text("" + shop.getWantItem().getAmount() + "x " + wantItem, NamedTextColor.GREEN)));
-            sender.sendMessage(Component.text("   Give: ", NamedTextColor.GRAY)
-                .append(Component.text("" + shop.getGiveItem().getAmount() + "x " + giveItem, NamedTextColor.AQUA)));
-            sender.sendMessage(Component.text("   Location: " + loc.getWorld().getName() + " (" + 
-                loc.getBlockX() + ", " + loc.getBlockY() + ", " + loc.getBlockZ() + ")", NamedTextColor.GRAY));
+            if (i < shopList.size()) {
+                ChestShop shop = shopList.get(i);
+                
+                sendShopOwner(sender, i + 1, shop);
+                send(sender, Messages.Key.LIST_WANT, "want", formatItem(shop.getWantItem()));
+                send(sender, Messages.Key.LIST_GIVE, "give", formatItem(shop.getGiveItem()));
+                sendShopStock(sender, shop);
+                sendShopLocation(sender, shop);
+            } else {
+                ShopDelta shop = remoteShops.get(i - shopList.size());
+                
+                send(sender, Messages.Key.SHOP_ENTRY_OWNER, "index", String.valueOf(i + 1), "owner", String.valueOf(shop.getOwnerName()));
+                send(sender, Messages.Key.LIST_WANT, "want", formatItem(shop.getWantType(), shop.getWantAmount()));
+                send(sender, Messages.Key.LIST_GIVE, "give", formatItem(shop.getGiveType(), shop.getGiveAmount()));
+                sendRemoteShopLocation(sender, shop);
+            }
         }
         
         if (page < totalPages) {
-            sender.sendMessage(Component.text("Use ", NamedTextColor.GRAY)
-                .append(Component.text("/itemchestshop list " + (page + 1), NamedTextColor.YELLOW))
-                .append(Component.text(" for the next page.", NamedTextColor.GRAY)));
+            send(sender, Messages.Key.LIST_NEXT_PAGE, "page", String.valueOf(page + 1));
         }
     }
     
     /**
-     * Finds shops that sell a specific item
+     * Finds shops that sell a specific item, the best stocked first
      * @param sender The command sender
      * @param itemName The item to search for
+     * @param inStockOnly Whether to skip shops not known to have stock
      */
-    private void findShops(CommandSender sender, String itemName) {
+    private void findShops(CommandSender sender, String itemName, boolean inStockOnly) {
         ItemStack searchItem = ItemParser.parseItem(itemName);
         
         if (searchItem == null) {
-            sender.sendMessage(Component.text("Invalid item: " + itemName, NamedTextColor.RED));
+            send(sender, Messages.Key.INVALID_ITEM, "item", itemName);
             return;
         }
         
-        Map<Location, ChestShop> allShops = chestShopManager.getAllChestShops();
         List<ChestShop> matchingShops = new ArrayList<>();
         
-        for (ChestShop shop : allShops.values()) {
-            if (shop.getGiveItem().getType() == searchItem.getType()) {
+        for (ChestShop shop : chestShopManager.getShops()) {
+            if (shop.getGiveTemplate().getType() == searchItem.getType()
+                    && (!inStockOnly || shop.getStockTrades() > 0)) {
                 matchingShops.add(shop);
             }
         }
+        // Uses the stock snapshots, so no chest is read; shops never scanned come last
+        matchingShops.sort(Comparator.comparingInt(ChestShop::getStockTrades).reversed());
+        
+        // Remote shops have no stock snapshot
+        List<ShopDelta> remoteShops = inStockOnly ? new ArrayList<>()
+            : plugin.getShopReplicator().getReplicaIndex().findByGiveType(searchItem.getType());
+        int totalShops = matchingShops.size() + remoteShops.size();
         
-        if (matchingShops.isEmpty()) {
-            sender.sendMessage(Component.text("No shops found selling " + formatItemName(searchItem) + ".", NamedTextColor.YELLOW));
+        if (totalShops == 0) {
+            send(sender, Messages.Key.FIND_NONE, "item", formatItemName(searchItem));
             return;
         }
         
-        sender.sendMessage(Component.text("=== Shops selling " + formatItemName(searchItem) + " ===", NamedTextColor.GOLD));
+        send(sender, Messages.Key.FIND_HEADER, "item", formatItemName(searchItem));
         
         for (int i = 0; i < Math.min(matchingShops.size(), 15); i++) {
             ChestShop shop = matchingShops.get(i);
-            Location loc = shop.getSignLocation();
-            String ownerName = plugin.getServer().getOfflinePlayer(shop.getOwner()).getName();
             
-            String wantItem = formatItemName(shop.getWantItem());
+            sendShopOwner(sender, i + 1, shop);
+            send(sender, Messages.Key.FIND_WANT, "want", formatItem(shop.getWantItem()));
+            send(sender, Messages.Key.FIND_GIVE, "give", formatItem(shop.getGiveItem()));
+            sendShopStock(sender, shop);
+            sendShopLocation(sender, shop);
+        }
+        
+        for (int i = matchingShops.size(); i < Math.min(totalShops, 15); i++) {
+            ShopDelta shop = remoteShops.get(i - matchingShops.size());
+            
+            send(sender, Messages.Key.SHOP_ENTRY_OWNER, "index", String.valueOf(i + 1), "owner", String.valueOf(shop.getOwnerName()));
+            send(sender, Messages.Key.FIND_WANT, "want", formatItem(shop.getWantType(), shop.getWantAmount()));
+            send(sender, Messages.Key.FIND_GIVE, "give", formatItem(shop.getGiveType(), shop.getGiveAmount()));
+            sendRemoteShopLocation(sender, shop);
+        }
+        
+        if (totalShops > 15) {
+            send(sender, Messages.Key.FIND_MORE, "count", String.valueOf(totalShops - 15));
+        }
+    }
+    
+    /**
+     * Shows the shops closest to a player that sell an item
+     * @param player The player searching
+     * @param itemName The item to search for
+     * @param inStockOnly Whether to skip shops that are out of stock
+     */
+    private void findNearestShops(Player player, String itemName, boolean inStockOnly) {
+        Material material = ItemParser.parseMaterial(itemName);
+        
+        if (material == null) {
+            send(player, Messages.Key.INVALID_ITEM, "item", itemName);
+            return;
+        }
+        
+        Location origin = player.getLocation();
+        List<ChestShop> nearestShops = chestShopManager.findNearestShops(origin, material, 10, inStockOnly);
+        
+        if (nearestShops.isEmpty()) {
+            send(player, Messages.Key.NEAR_NONE, "item", formatMaterialName(material));
+            return;
+        }
+        
+        send(player, Messages.Key.NEAR_HEADER, "item", formatMaterialName(material));
+        
+        for (int i = 0; i < nearestShops.size(); i++) {
+            ChestShop shop = nearestShops.get(i);
+            Location loc = shop.getSignLocation();
+            long distance = Math.round(Math.sqrt(
+                Math.pow(loc.getX() - origin.getX(), 2) + 
+                Math.pow(loc.getY() - origin.getY(), 2) + 
+                Math.pow(loc.getZ() - origin.getZ(), 2)));
             
-            sender.sendMessage(Component.text("" + (i + 1) + ". ", NamedTextColor.YELLOW)
-                .append(Component.text(ownerName + "'s shop", NamedTextColor.WHITE)));
-            sender.sendMessage(Component.text("   Wants: ", NamedTextColor.GRAY)
-                .append(Component.text("" + shop.getWantItem().getAmount() + "x " + wantItem, NamedTextColor.GREEN)));
-            sender.sendMessage(Component.text("   Gives: ", NamedTextColor.GRAY)
-                .append(Component.text("" + shop.getGiveItem().getAmount() + "x " + formatItemName(shop.getGiveItem()), NamedTextColor.AQUA)));
-            sender.sendMessage(Component.text("   Location: " + loc.getWorld().getName() + " (" + 
-                loc.getBlockX() + ", " + loc.getBlockY() + ", " + loc.getBlockZ() + ")", NamedTextColor.GRAY));
+            send(player, Messages.Key.NEAR_ENTRY,
+                "index", String.valueOf(i + 1),
+                "give", formatItem(shop.getGiveItem()),
+                "want", formatItem(shop.getWantItem()),
+                "x", String.valueOf(loc.getBlockX()),
+                "y", String.valueOf(loc.getBlockY()),
+                "z", String.valueOf(loc.getBlockZ()),
+                "distance", String.valueOf(distance));
+        }
+    }
+    
+    /**
+     * Shows the exchange rates of every shop selling an item
+     * @param sender The command sender
+     * @param itemName The item to show rates for
+     */
+    private void showMarket(CommandSender sender, String itemName) {
+        Material material = ItemParser.parseMaterial(itemName);
+        
+        if (material == null) {
+            send(sender, Messages.Key.INVALID_ITEM, "item", itemName);
+            return;
+        }
+        
+        String giveName = formatMaterialName(material);
+        List<MarketIndex.MarketStats> rates = chestShopManager.getMarketIndex().getStatsForItem(material);
+        
+        if (rates.isEmpty()) {
+            send(sender, Messages.Key.FIND_NONE, "item", giveName);
+            return;
+        }
+        
+        send(sender, Messages.Key.MARKET_HEADER, "item", giveName);
+        send(sender, Messages.Key.MARKET_PRICE_OF, "item", giveName);
+        
+        for (MarketIndex.MarketStats stats : rates) {
+            send(sender, stats.getCount() == 1 ? Messages.Key.MARKET_ENTRY_SINGLE : Messages.Key.MARKET_ENTRY,
+                "item", formatMaterialName(stats.getWantType()),
+                "min", formatRate(stats.getMin()),
+                "median", formatRate(stats.getMedian()),
+                "mean", formatRate(stats.getMean()),
+                "count", String.valueOf(stats.getCount()));
+        }
+    }
+    
+    /**
+     * Shows how the median price of an item moved, per payment item, most traded pair first
+     * @param sender The command sender
+     * @param itemName The item sold
+     * @param wantName The payment item to limit the summary to, or null for every payment item
+     */
+    private void showPriceHistory(CommandSender sender, String itemName, String wantName) {
+        PriceHistory priceHistory = chestShopManager.getPriceHistory();
+        if (!priceHistory.isRecording()) {
+            send(sender, Messages.Key.HISTORY_DISABLED);
+            return;
+        }
+        
+        Material material = ItemParser.parseMaterial(itemName);
+        if (material == null) {
+            send(sender, Messages.Key.INVALID_ITEM, "item", itemName);
+            return;
+        }
+        List<Material> wantTypes = priceHistory.getWantTypes(material);
+        if (wantName != null) {
+            Material wantType = ItemParser.parseMaterial(wantName);
+            if (wantType == null) {
+                send(sender, Messages.Key.INVALID_ITEM, "item", wantName);
+                return;
+            }
+            wantTypes = wantTypes.contains(wantType) ? List.of(wantType) : List.of();
+        }
+        
+        long now = System.currentTimeMillis();
+        List<PriceHistory.Summary> summaries = new ArrayList<>();
+        for (Material wantType : wantTypes) {
+            PriceHistory.Summary summary = priceHistory.getSummary(material, wantType, now);
+            if (summary != null) {
+                summaries.add(summary);
+            }
+        }
+        
+        String giveName = formatMaterialName(material);
+        if (summaries.isEmpty()) {
+            send(sender, Messages.Key.HISTORY_NONE, "item", giveName);
+            return;
         }
+        summaries.sort(Comparator.comparingDouble((PriceHistory.Summary summary) -> summary.getLatest().getShops()).reversed());
         
-        if (matchingShops.size() > 15) {
-            sender.sendMessage(Component.text("... and " + (matchingShops.size() - 15) + " more shops.", NamedTextColor.GRAY));
+        send(sender, Messages.Key.HISTORY_HEADER, "item", giveName);
+        for (PriceHistory.Summary summary : summaries.subList(0, Math.min(summaries.size(), 8))) {
+            float median = summary.getLatest().getMedian();
+            send(sender, Messages.Key.HISTORY_ENTRY,
+                "item", formatMaterialName(summary.getWantType()),
+                "now", formatRate(median),
+                "hour", formatChange(summary.getHourAgo(), median),
+                "day", formatChange(summary.getDayAgo(), median),
+                "week", formatChange(summary.getWeekAgo(), median),
+                "low", formatRate(summary.getWeekLow()),
+                "high", formatRate(summary.getWeekHigh()),
+                "shops", String.valueOf(Math.round(summary.getLatest().getShops())));
         }
     }
     
+    /**
+     * Formats how much a median price changed since an earlier point
+     * @param earlier The earlier point, or null if the history does not reach back that far
+     * @param median The current median price
+     * @return The change in percent with a sign, or "-" if unknown
+     */
+    private String formatChange(PriceSeries.Point earlier, float median) {
+        if (earlier == null || earlier.getMedian() <= 0) {
+            return "-";
+        }
+        return String.format(Locale.ROOT, "%+.1f%%", (median / earlier.getMedian() - 1) * 100);
+    }
+    
+    /**
+     * Searches the best chain of trades off the main thread and reports it
+     * @param sender The command sender
+     * @param haveName The item the sender has
+     * @param wantName The item the sender wants
+     */
+    private void findRoute(CommandSender sender, String haveName, String wantName) {
+        Material have = ItemParser.parseMaterial(haveName);
+        if (have == null) {
+            send(sender, Messages.Key.INVALID_ITEM, "item", haveName);
+            return;
+        }
+        
+        Material want = ItemParser.parseMaterial(wantName);
+        if (want == null) {
+            send(sender, Messages.Key.INVALID_ITEM, "item", wantName);
+            return;
+        }
+        
+        if (have == want) {
+            send(sender, Messages.Key.ROUTE_SAME_ITEM, "item", formatMaterialName(want));
+            return;
+        }
+        
+        TradeGraph.Snapshot snapshot = chestShopManager.getTradeGraph().snapshot();
+        int maxHops = configManager.getMaxRouteHops();
+        
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            TradeGraph.Route route = snapshot.findRoute(have, want, maxHops);
+            plugin.getServer().getScheduler().runTask(plugin, () -> showRoute(sender, have, want, route));
+        });
+    }
+    
+    /**
+     * Shows the result of a route search
+     * @param sender The command sender
+     * @param have The starting item
+     * @param want The target item
+     * @param route The route found, or null
+     */
+    private void showRoute(CommandSender sender, Material have, Material want, TradeGraph.Route route) {
+        if (sender instanceof Player && !((Player) sender).isOnline()) {
+            return;
+        }
+        
+        String haveName = formatMaterialName(have);
+        String wantName = formatMaterialName(want);
+        
+        if (route == null) {
+            send(sender, Messages.Key.ROUTE_NONE,
+                "have", haveName,
+                "want", wantName,
+                "hops", String.valueOf(configManager.getMaxRouteHops()));
+            return;
+        }
+        
+        send(sender, Messages.Key.ROUTE_HEADER, "have", haveName, "want", wantName);
+        send(sender, Messages.Key.ROUTE_SUMMARY,
+            "have", haveName,
+            "want", wantName,
+            "rate", formatRate(route.getRate()),
+            "trades", String.valueOf(route.getHops().size()));
+        showHops(sender, route);
+    }
+    
+    /**
+     * Searches profitable trade loops off the main thread and reports them
+     * @param sender The command sender
+     */
+    private void showArbitrage(CommandSender sender) {
+        TradeGraph.Snapshot snapshot = chestShopManager.getTradeGraph().snapshot();
+        int maxHops = configManager.getMaxRouteHops();
+        
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<TradeGraph.Route> cycles = snapshot.findArbitrageCycles(maxHops, 5);
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                if (cycles.isEmpty()) {
+                    send(sender, Messages.Key.ARBITRAGE_NONE);
+                    return;
+                }
+                
+                send(sender, Messages.Key.ARBITRAGE_HEADER);
+                for (TradeGraph.Route cycle : cycles) {
+                    StringBuilder loop = new StringBuilder(formatMaterialName(cycle.getHops().get(0).getPayType()));
+                    for (TradeGraph.Hop hop : cycle.getHops()) {
+                        loop.append(" → ").append(formatMaterialName(hop.getReceiveType()));
+                    }
+                    
+                    send(sender, Messages.Key.ARBITRAGE_LOOP,
+                        "loop", loop.toString(),
+                        "profit", formatRate((cycle.getRate() - 1) * 100));
+                    showHops(sender, cycle);
+                }
+            });
+        });
+    }
+    
+    /**
+     * Shows the individual trades of a route
+     * @param sender The command sender
+     * @param route The route
+     */
+    private void showHops(CommandSender sender, TradeGraph.Route route) {
+        int step = 1;
+        for (TradeGraph.Hop hop : route.getHops()) {
+            send(sender, Messages.Key.ROUTE_HOP,
+                "step", String.valueOf(step++),
+                "pay", hop.getPayAmount() + "x " + formatMaterialName(hop.getPayType()),
+                "receive", hop.getReceiveAmount() + "x " + formatMaterialName(hop.getReceiveType()),
+                "world", hop.getWorldName(),
+                "x", String.valueOf(hop.getX()),
+                "y", String.valueOf(hop.getY()),
+                "z", String.valueOf(hop.getZ()),
+                "owner", hop.getOwnerName());
+        }
+    }
+    
+    /**
+     * Sends a configured message
+     * @param sender The command sender
+     * @param key The message
+     * @param placeholders Alternating placeholder names and values
+     */
+    private void send(CommandSender sender, Messages.Key key, String... placeholders) {
+        sender.sendMessage(configManager.getMessages().get(key, placeholders));
+    }
+    
+    /**
+     * Sends the numbered owner line of a shop list entry
+     * @param sender The command sender
+     * @param index The 1-based position in the list
+     * @param shop The shop
+     */
+    private void sendShopOwner(CommandSender sender, int index, ChestShop shop) {
+        String ownerName = plugin.getServer().getOfflinePlayer(shop.getOwner()).getName();
+        send(sender, Messages.Key.SHOP_ENTRY_OWNER, "index", String.valueOf(index), "owner", String.valueOf(ownerName));
+    }
+    
+    /**
+     * Sends the stock line of a shop list entry, from the shop's last stock snapshot
+     * @param sender The command sender
+     * @param shop The shop
+     */
+    private void sendShopStock(CommandSender sender, ChestShop shop) {
+        if (shop.getStockTime() == 0) {
+            send(sender, Messages.Key.SHOP_ENTRY_STOCK_UNKNOWN);
+            return;
+        }
+        send(sender, Messages.Key.SHOP_ENTRY_STOCK,
+            "stock", String.valueOf(shop.getStockTrades()),
+            "space", String.valueOf(shop.getSpaceTrades()),
+            "age", formatAge(System.currentTimeMillis() - shop.getStockTime()));
+    }
+    
+    /**
+     * Formats a time span in its largest whole unit
+     * @param millis The time span in milliseconds
+     * @return The span, e.g. "40s", "12m", "3h" or "2d"
+     */
+    private static String formatAge(long millis) {
+        long seconds = Math.max(0, millis / 1000);
+        if (seconds < 60) {
+            return seconds + "s";
+        }
+        if (seconds < 3600) {
+            return seconds / 60 + "m";
+        }
+        if (seconds < 86400) {
+            return seconds / 3600 + "h";
+        }
+        return seconds / 86400 + "d";
+    }
+    
+    /**
+     * Sends the location line of a shop list entry
+     * @param sender The command sender
+     * @param shop The shop
+     */
+    private void sendShopLocation(CommandSender sender, ChestShop shop) {
+        send(sender, Messages.Key.SHOP_ENTRY_LOCATION,
+            "world", shop.getWorldName(),
+            "x", String.valueOf(shop.getX()),
+            "y", String.valueOf(shop.getY()),
+            "z", String.valueOf(shop.getZ()));
+    }
+    
+    /**
+     * Sends the location line of a shop on another server
+     * @param sender The command sender
+     * @param shop The remote shop
+     */
+    private void sendRemoteShopLocation(CommandSender sender, ShopDelta shop) {
+        send(sender, Messages.Key.SHOP_ENTRY_REMOTE_LOCATION,
+            "world", shop.getWorld(),
+            "x", String.valueOf(shop.getX()),
+            "y", String.valueOf(shop.getY()),
+            "z", String.valueOf(shop.getZ()),
+            "server", shop.getOrigin());
+    }
+    
+    /**
+     * Formats an exchange rate for display
+     * @param rate The rate to format
+     * @return The rate with at most two decimals
+     */
+    private String formatRate(double rate) {
+        String formatted = String.format(Locale.ROOT, "%.2f", rate);
+        return formatted.replaceAll("\\.?0+$", "");
+    }
+    
+    /**
+     * Formats an item with its amount for display
+     * @param item The item to format
+     * @return The amount and item name, e.g. "64x Bread"
+     */
+    private String formatItem(ItemStack item) {
+        return item.getAmount() + "x " + formatItemName(item);
+    }
+    
+    /**
+     * Formats an item type and amount for display
+     * @param type The item type
+     * @param amount The amount
+     * @return The amount and item name, e.g. "64x Bread"
+     */
+    private String formatItem(Material type, int amount) {
+        return amount + "x " + formatMaterialName(type);
+    }
+    
     /**
      * Formats an item name for display
      * @param item The item to format
      * @return The formatted item name
      */
     private String formatItemName(ItemStack item) {
-        String name = item.getType().name().toLowerCase().replace('_', ' ');
+        return formatMaterialName(item.getType());
+    }
+    
+    /**
+     * Formats a material name for display
+     * @param material The material to format
+     * @return The formatted material name
+     */
+    private String formatMaterialName(Material material) {
+        String name = material.name().toLowerCase().replace('_', ' ');
         return name.substring(0, 1).toUpperCase() + name.substring(1);
     }
 }
\ No newline at end of file
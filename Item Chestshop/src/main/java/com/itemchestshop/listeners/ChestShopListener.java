@@ -1,15 +1,20 @@
 package com.itemchestshop.listeners;
 
 import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.api.events.ShopTradeEvent;
 import com.itemchestshop.managers.ChestShopManager;
+import com.itemchestshop.managers.DeliveryVault;
 import com.itemchestshop.models.ChestShop;
 import com.itemchestshop.utils.ConfigManager;
 import com.itemchestshop.utils.ItemParser;
+import com.itemchestshop.utils.Messages;
+import com.itemchestshop.utils.MetricsRegistry;
+import com.itemchestshop.utils.PhaseTimer;
+import com.itemchestshop.utils.ShopBlocks;
+import com.itemchestshop.utils.SlowOperationLog;
+import com.itemchestshop.utils.TraceRecorder;
 import com.itemchestshop.utils.TransactionManager;
-import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.format.NamedTextColor;
 import org.bukkit.Bukkit;
-import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.Sign;
 import org.bukkit.entity.Player;
@@ -22,62 +27,118 @@ public class ChestShopListener implements Listener {
     
     private final ItemChestShopPlugin plugin;
     private final ChestShopManager chestShopManager;
+    private final DeliveryVault deliveryVault;
     private final ConfigManager configManager;
+    private final MetricsRegistry metrics;
+    private final SlowOperationLog slowLog;
+    private final TraceRecorder traceRecorder;
     
     public ChestShopListener(ItemChestShopPlugin plugin) {
         this.plugin = plugin;
         this.chestShopManager = plugin.getChestShopManager();
+        this.deliveryVault = plugin.getDeliveryVault();
         this.configManager = plugin.getConfigManager();
+        this.metrics = plugin.getMetrics();
+        this.slowLog = plugin.getSlowLog();
+        this.traceRecorder = plugin.getTraceRecorder();
     }
     
     @EventHandler
     public void onPlayerInteract(PlayerInteractEvent event) {
+        long start = metrics.start();
+        try {
+            handleInteract(event);
+        } finally {
+            metrics.record(MetricsRegistry.Metric.INTERACT, start);
+        }
+    }
+    
+    /**
+     * Handles a click on a possible shop sign
+     * @param event The interact event
+     */
+    private void handleInteract(PlayerInteractEvent event) {
         if (event.getAction() != Action.RIGHT_CLICK_BLOCK) {
             return;
         }
         
         Block clickedBlock = event.getClickedBlock();
-        if (clickedBlock == null || !isSign(clickedBlock.getType())) {
+        if (clickedBlock == null || !ShopBlocks.isSign(clickedBlock.getType())) {
             return;
         }
         
         Player player = event.getPlayer();
-        ChestShop chestShop = chestShopManager.getChestShop(clickedBlock.getLocation());
+        traceRecorder.recordInteract(player, clickedBlock);
+        
+        if (!chestShopManager.isLoaded()) {
+            // Any sign may be a shop that is not registered yet
+            event.setCancelled(true);
+            player.sendMessage(configManager.getMessages().get(Messages.Key.SHOPS_LOADING));
+            return;
+        }
+        
+        // Most signs are not shops; skip them without building a Location
+        if (!chestShopManager.mayHaveShop(clickedBlock)) {
+            return;
+        }
+        
+        PhaseTimer timer = slowLog.begin(SlowOperationLog.Operation.TRADE);
+        ChestShop chestShop = chestShopManager.getChestShop(clickedBlock);
+        timer.mark(PhaseTimer.Phase.LOOKUP);
         
         if (chestShop == null) {
+            timer.cancel();
             return;
         }
         
         // Check permissions
         if (!player.hasPermission("itemchestshop.use")) {
-            player.sendMessage(Component.text("You don't have permission to use shops!", NamedTextColor.RED));
+            timer.cancel();
+            player.sendMessage(configManager.getMessages().get(Messages.Key.NO_PERMISSION_USE));
             return;
         }
+        timer.mark(PhaseTimer.Phase.PERMISSION);
         
         // Cancel the event to prevent other interactions
         event.setCancelled(true);
         
         // Show shop info if player is sneaking
         if (player.isSneaking()) {
+            timer.cancel();
             showShopInfo(player, chestShop);
             return;
         }
         
         // Process the transaction
-        TransactionManager.TransactionResult result = TransactionManager.processTransaction(player, chestShop);
+        long transactionStart = metrics.start();
+        TransactionManager.TransactionResult result = TransactionManager.processTransaction(player, chestShop, deliveryVault, timer);
+        metrics.record(MetricsRegistry.Metric.TRANSACTION, transactionStart);
+        slowLog.finishTrade(timer, chestShop);
+        metrics.increment(result.isSuccess() 
+            ? MetricsRegistry.Counter.TRANSACTIONS_SUCCEEDED 
+            : MetricsRegistry.Counter.TRANSACTIONS_FAILED);
+        chestShopManager.getStockMonitor().check(chestShop);
+        
+        // Tell the buyer what happened, or why the trade was refused
+        Messages messages = configManager.getMessages();
+        player.sendMessage(messages.get(result.getMessageKey()));
+        if (result.getUndelivered() > 0) {
+            player.sendMessage(messages.get(Messages.Key.DELIVERY_STORED, "amount", String.valueOf(result.getUndelivered())));
+        }
         
         if (result.isSuccess()) {
-            // Send success message to buyer
-            player.sendMessage(Component.text("Transaction successful!", NamedTextColor.GREEN));
+            chestShopManager.getLeaderboard().record(chestShop);
+            if (ShopTradeEvent.getHandlerList().getRegisteredListeners().length > 0) {
+                plugin.getServer().getPluginManager().callEvent(new ShopTradeEvent(chestShop, player));
+            }
             
             // Notify shop owner if they're online
             Player owner = Bukkit.getPlayer(chestShop.getOwner());
             if (owner != null && owner.isOnline()) {
-                owner.sendMessage(Component.text("Someone bought from your shop!", NamedTextColor.GOLD));
+                owner.sendMessage(messages.get(Messages.Key.SHOP_OWNER_NOTIFICATION,
+                    "give", ItemParser.itemToString(chestShop.getGiveItem()),
+                    "want", ItemParser.itemToString(chestShop.getWantItem())));
             }
-        } else {
-            // Send error message
-            player.sendMessage(Component.text("Transaction failed!", NamedTextColor.RED));
         }
     }
     
@@ -87,37 +148,22 @@ public class ChestShopListener implements Listener {
      * @param chestShop The chest shop
      */
     private void showShopInfo(Player player, ChestShop chestShop) {
-        player.sendMessage(Component.text("=== Chest Shop Info ===", NamedTextColor.GOLD));
-        player.sendMessage(Component.text("Owner: ", NamedTextColor.YELLOW)
-            .append(Component.text(chestShop.getOwnerName(), NamedTextColor.WHITE)));
-        player.sendMessage(Component.text("Selling: ", NamedTextColor.YELLOW)
-            .append(Component.text(ItemParser.itemToString(chestShop.getGiveItem()), NamedTextColor.WHITE)));
-        player.sendMessage(Component.text("Price: ", NamedTextColor.YELLOW)
-            .append(Component.text(ItemParser.itemToString(chestShop.getWantItem()), NamedTextColor.WHITE)));
+        Messages messages = configManager.getMessages();
+        player.sendMessage(messages.get(Messages.Key.SHOP_INFO_HEADER));
+        player.sendMessage(messages.get(Messages.Key.SHOP_INFO_OWNER, "owner", chestShop.getOwnerName()));
+        player.sendMessage(messages.get(Messages.Key.SHOP_INFO_SELLING, "give", ItemParser.itemToString(chestShop.getGiveItem())));
+        player.sendMessage(messages.get(Messages.Key.SHOP_INFO_PRICE, "want", ItemParser.itemToString(chestShop.getWantItem())));
         
         // Show stock status
-        if (chestShop.hasStock()) {
-            player.sendMessage(Component.text("In Stock", NamedTextColor.GREEN));
-        } else {
-            player.sendMessage(Component.text("Out of Stock", NamedTextColor.RED));
-        }
+        player.sendMessage(messages.get(chestShop.hasStock() 
+            ? Messages.Key.SHOP_INFO_IN_STOCK 
+            : Messages.Key.SHOP_INFO_OUT_OF_STOCK));
         
         // Show if shop can accept payment
-        if (chestShop.canAcceptPayment()) {
-            player.sendMessage(Component.text("Accepting Payments", NamedTextColor.GREEN));
-        } else {
-            player.sendMessage(Component.text("Shop Full - Cannot Accept Payment", NamedTextColor.RED));
-        }
+        player.sendMessage(messages.get(chestShop.canAcceptPayment() 
+            ? Messages.Key.SHOP_INFO_ACCEPTING 
+            : Messages.Key.SHOP_INFO_FULL));
         
-        player.sendMessage(Component.text("Right-click to buy, Shift+Right-click for info", NamedTextColor.GRAY));
-    }
-    
-    /**
-     * Checks if a material is a sign
-     * @param material The material to check
-     * @return true if it's a sign
-     */
-    private boolean isSign(Material material) {
-        return material.name().contains("SIGN");
+        player.sendMessage(messages.get(Messages.Key.SHOP_INFO_HINT));
     }
 }
\ No newline at end of file
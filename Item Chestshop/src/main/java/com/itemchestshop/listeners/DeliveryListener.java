@@ -0,0 +1,35 @@
+package com.itemchestshop.listeners;
+
+import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.managers.DeliveryVault;
+import com.itemchestshop.utils.Messages;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+public class DeliveryListener implements Listener {
+    
+    private final ItemChestShopPlugin plugin;
+    private final DeliveryVault deliveryVault;
+    
+    public DeliveryListener(ItemChestShopPlugin plugin) {
+        this.plugin = plugin;
+        this.deliveryVault = plugin.getDeliveryVault();
+    }
+    
+    /**
+     * Reminds players of items waiting in their delivery box when they join.
+     * The items themselves are handed over by the vault's delivery task.
+     * @param event The join event
+     */
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        int pendingAmount = deliveryVault.getPendingAmount(player.getUniqueId());
+        if (pendingAmount > 0) {
+            player.sendMessage(plugin.getConfigManager().getMessages().get(Messages.Key.DELIVERY_WAITING,
+                "amount", String.valueOf(pendingAmount)));
+        }
+    }
+}
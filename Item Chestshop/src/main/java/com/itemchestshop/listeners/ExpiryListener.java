@@ -0,0 +1,38 @@
+package com.itemchestshop.listeners;
+
+import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.managers.ShopExpiry;
+import com.itemchestshop.models.ShopTables;
+import com.itemchestshop.utils.Messages;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+public class ExpiryListener implements Listener {
+
+    private final ItemChestShopPlugin plugin;
+    private final ShopExpiry shopExpiry;
+
+    public ExpiryListener(ItemChestShopPlugin plugin) {
+        this.plugin = plugin;
+        this.shopExpiry = plugin.getChestShopManager().getShopExpiry();
+    }
+
+    /**
+     * Records the login for the expiry of the player's shops, and reminds owners
+     * of shops that will expire soon unless they trade
+     * @param event The join event
+     */
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        ShopTables.recordOwnerLogin(player.getUniqueId(), System.currentTimeMillis());
+
+        int warnedShops = shopExpiry.getWarnedShopCount(player.getUniqueId());
+        if (warnedShops > 0) {
+            player.sendMessage(plugin.getConfigManager().getMessages().get(Messages.Key.EXPIRY_SUMMARY,
+                "amount", String.valueOf(warnedShops)));
+        }
+    }
+}
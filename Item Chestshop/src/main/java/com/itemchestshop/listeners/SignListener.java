@@ -4,10 +4,11 @@ import com.itemchestshop.ItemChestShopPlugin;
 import com.itemchestshop.managers.ChestShopManager;
 import com.itemchestshop.models.ChestShop;
 import com.itemchestshop.utils.ConfigManager;
-import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.format.NamedTextColor;
+import com.itemchestshop.utils.Messages;
+import com.itemchestshop.utils.MetricsRegistry;
+import com.itemchestshop.utils.ShopBlocks;
+import com.itemchestshop.utils.TraceRecorder;
 import org.bukkit.Location;
-import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.Sign;
 import org.bukkit.entity.Player;
@@ -21,26 +22,62 @@ public class SignListener implements Listener {
     private final ItemChestShopPlugin plugin;
     private final ChestShopManager chestShopManager;
     private final ConfigManager configManager;
+    private final MetricsRegistry metrics;
+    private final TraceRecorder traceRecorder;
     
     public SignListener(ItemChestShopPlugin plugin) {
         this.plugin = plugin;
         this.chestShopManager = plugin.getChestShopManager();
         this.configManager = plugin.getConfigManager();
+        this.metrics = plugin.getMetrics();
+        this.traceRecorder = plugin.getTraceRecorder();
     }
     
     @EventHandler
     public void onSignChange(SignChangeEvent event) {
+        long start = metrics.start();
+        try {
+            handleSignChange(event);
+        } finally {
+            metrics.record(MetricsRegistry.Metric.SIGN_CHANGE, start);
+        }
+    }
+    
+    @EventHandler
+    public void onBlockBreak(BlockBreakEvent event) {
+        long start = metrics.start();
+        try {
+            handleBlockBreak(event);
+        } finally {
+            metrics.record(MetricsRegistry.Metric.BLOCK_BREAK, start);
+        }
+    }
+    
+    /**
+     * Validates a new shop sign and schedules the shop creation
+     * @param event The sign change event
+     */
+    private void handleSignChange(SignChangeEvent event) {
         Player player = event.getPlayer();
         String[] lines = event.getLines();
+        traceRecorder.recordSignChange(player, event.getBlock(), lines);
         
         // Check if this is a chest shop sign
         if (!isChestShopSign(lines)) {
             return;
         }
         
+        // Creating a shop saves the registry, which is still empty while loading
+        if (!chestShopManager.isWritable()) {
+            player.sendMessage(configManager.getMessages().get(chestShopManager.isRestoring()
+                ? Messages.Key.SHOPS_RESTORING : Messages.Key.SHOPS_LOADING));
+            event.setCancelled(true);
+            return;
+        }
+        
         // Check permissions
         if (!player.hasPermission("itemchestshop.create")) {
-            player.sendMessage(Component.text(configManager.getMessage("no-permission-create"), NamedTextColor.RED));
+            player.sendMessage(configManager.getMessages().get(Messages.Key.NO_PERMISSION_CREATE));
             event.setCancelled(true);
             return;
         }
@@ -48,14 +85,14 @@ public class SignListener implements Listener {
         // Check if player has reached shop limit
         int maxShops = configManager.getMaxShopsPerPlayer();
         if (maxShops > 0 && chestShopManager.getShopCount(player.getUniqueId()) >= maxShops) {
-            player.sendMessage(Component.text("You have reached the maximum number of shops (" + maxShops + ")!", NamedTextColor.RED));
+            player.sendMessage(configManager.getMessages().get(Messages.Key.SHOP_LIMIT_REACHED, "max", String.valueOf(maxShops)));
             event.setCancelled(true);
             return;
         }
         
         // Validate the shop format
         if (!chestShopManager.isValidShopFormat(lines)) {
-            player.sendMessage(Component.text(configManager.getMessage("invalid-format"), NamedTextColor.RED));
+            player.sendMessage(configManager.getMessages().get(Messages.Key.INVALID_FORMAT));
             event.setCancelled(true);
             return;
         }
@@ -64,7 +101,7 @@ public class SignListener implements Listener {
         Location signLocation = event.getBlock().getLocation();
         Location chestLocation = findChestBelowSign(signLocation);
         if (chestLocation == null) {
-            player.sendMessage(Component.text(configManager.getMessage("no-chest-found"), NamedTextColor.RED));
+            player.sendMessage(configManager.getMessages().get(Messages.Key.NO_CHEST_FOUND));
             event.setCancelled(true);
             return;
         }
@@ -74,7 +111,7 @@ public class SignListener implements Listener {
             event.setLine(0, player.getName());
         } else {
             // If the first line doesn't match the player's name, cancel
-            player.sendMessage(Component.text("The first line must be your username or empty!", NamedTextColor.RED));
+            player.sendMessage(configManager.getMessages().get(Messages.Key.SIGN_OWNER_MISMATCH));
             event.setCancelled(true);
             return;
         }
@@ -89,20 +126,37 @@ public class SignListener implements Listener {
             );
             
             if (chestShop != null) {
-                player.sendMessage(Component.text(configManager.getMessage("shop-created"), NamedTextColor.GREEN));
+                player.sendMessage(configManager.getMessages().get(Messages.Key.SHOP_CREATED));
             } else {
-                player.sendMessage(Component.text("Failed to create chest shop!", NamedTextColor.RED));
+                player.sendMessage(configManager.getMessages().get(Messages.Key.SHOP_CREATE_FAILED));
             }
         }, 1L);
     }
     
-    @EventHandler
-    public void onBlockBreak(BlockBreakEvent event) {
+    /**
+     * Removes the shop of a broken sign if the player may break it
+     * @param event The block break event
+     */
+    private void handleBlockBreak(BlockBreakEvent event) {
         Block block = event.getBlock();
         Player player = event.getPlayer();
         
         // Check if a sign is being broken
-        if (isSign(block.getType())) {
+        if (ShopBlocks.isSign(block.getType())) {
+            traceRecorder.recordBreak(player, block);
+            
+            // Any sign may be a shop that is not registered yet
+            if (!chestShopManager.isWritable()) {
+                player.sendMessage(configManager.getMessages().get(chestShopManager.isRestoring()
+                    ? Messages.Key.SHOPS_RESTORING : Messages.Key.SHOPS_LOADING));
+                event.setCancelled(true);
+                return;
+            }
+            
+            if (!chestShopManager.mayHaveShop(block)) {
+                return;
+            }
+            
             Location signLocation = block.getLocation();
             ChestShop chestShop = chestShopManager.getChestShop(signLocation);
             
@@ -110,14 +164,14 @@ public class SignListener implements Listener {
                 // Check if player is the owner or has admin permission
                 if (!chestShop.getOwner().equals(player.getUniqueId()) && 
                     !player.hasPermission("itemchestshop.admin")) {
-                    player.sendMessage(Component.text("You can only break your own shop signs!", NamedTextColor.RED));
+                    player.sendMessage(configManager.getMessages().get(Messages.Key.NOT_SHOP_OWNER));
                     event.setCancelled(true);
                     return;
                 }
                 
                 // Remove the chest shop
                 chestShopManager.removeChestShop(signLocation);
-                player.sendMessage(Component.text(configManager.getMessage("shop-removed"), NamedTextColor.GREEN));
+                player.sendMessage(configManager.getMessages().get(Messages.Key.SHOP_REMOVED));
             }
         }
     }
@@ -149,7 +203,7 @@ public class SignListener implements Listener {
         Location belowSign = signLocation.clone().subtract(0, 1, 0);
         Block belowBlock = belowSign.getBlock();
         
-        if (belowBlock.getType() == Material.CHEST || belowBlock.getType() == Material.TRAPPED_CHEST) {
+        if (ShopBlocks.isChest(belowBlock.getType())) {
             return belowSign;
         }
         
@@ -157,19 +211,10 @@ public class SignListener implements Listener {
         Location twoBelow = signLocation.clone().subtract(0, 2, 0);
         Block twoBelowBlock = twoBelow.getBlock();
         
-        if (twoBelowBlock.getType() == Material.CHEST || twoBelowBlock.getType() == Material.TRAPPED_CHEST) {
+        if (ShopBlocks.isChest(twoBelowBlock.getType())) {
             return twoBelow;
         }
         
         return null;
     }
-    
-    /**
-     * Checks if a material is a sign
-     * @param material The material to check
-     * @return true if it's a sign
-     */
-    private boolean isSign(Material material) {
-        return material.name().contains("SIGN");
-    }
 }
\ No newline at end of file
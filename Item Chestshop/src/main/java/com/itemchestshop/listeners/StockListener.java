@@ -0,0 +1,128 @@
+package com.itemchestshop.listeners;
+
+import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.managers.ChestShopManager;
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.utils.Messages;
+import org.bukkit.Location;
+import org.bukkit.block.Chest;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.event.inventory.InventoryMoveItemEvent;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.inventory.DoubleChestInventory;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class StockListener implements Listener {
+
+    private final ItemChestShopPlugin plugin;
+    private final ChestShopManager chestShopManager;
+    // Chests that hoppers moved items in or out of this tick
+    private final Set<Inventory> changedChests;
+
+    public StockListener(ItemChestShopPlugin plugin) {
+        this.plugin = plugin;
+        this.chestShopManager = plugin.getChestShopManager();
+        this.changedChests = new LinkedHashSet<>();
+    }
+
+    /**
+     * Rescans a shop chest when someone closes it, since restocking and emptying
+     * happen outside of trades and are not reflected in the shop's cached counts
+     * @param event The close event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInventoryClose(InventoryCloseEvent event) {
+        // Most closed inventories are player inventories or chests away from shops
+        Inventory inventory = event.getInventory();
+        if (isShopChest(inventory)) {
+            rescan(inventory);
+        }
+    }
+
+    /**
+     * Notes shop chests that hoppers fill or empty. The event fires before the
+     * items move, so the chests are rescanned once on the next tick, however
+     * many items moved.
+     * @param event The move event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryMoveItem(InventoryMoveItemEvent event) {
+        markChanged(event.getSource());
+        markChanged(event.getDestination());
+    }
+
+    /**
+     * Reminds owners of shops that ran low while they were away
+     * @param event The join event
+     */
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        int alertedShops = chestShopManager.getStockMonitor().getAlertedShopCount(player.getUniqueId());
+        if (alertedShops > 0) {
+            player.sendMessage(plugin.getConfigManager().getMessages().get(Messages.Key.STOCK_ALERT_SUMMARY,
+                "amount", String.valueOf(alertedShops)));
+        }
+    }
+
+    private boolean isShopChest(Inventory inventory) {
+        if (inventory.getType() != InventoryType.CHEST) {
+            return false;
+        }
+        if (inventory instanceof DoubleChestInventory doubleChest) {
+            // The halves may lie in different chunks
+            return isShopChest(doubleChest.getLeftSide()) || isShopChest(doubleChest.getRightSide());
+        }
+
+        Location location = inventory.getLocation();
+        return location != null && chestShopManager.mayHaveShop(location.getBlock());
+    }
+
+    private void rescan(Inventory inventory) {
+        if (inventory instanceof DoubleChestInventory doubleChest) {
+            rescan(doubleChest.getLeftSide());
+            rescan(doubleChest.getRightSide());
+            return;
+        }
+
+        // The live holder is enough to find the block, without copying the chest's state
+        InventoryHolder holder = inventory.getHolder(false);
+        if (!(holder instanceof Chest chest)) {
+            return;
+        }
+
+        ChestShop chestShop = chestShopManager.findShopByChest(chest.getBlock());
+        if (chestShop != null) {
+            chestShop.scanStock();
+            chestShopManager.getStockMonitor().check(chestShop);
+        }
+    }
+
+    private void markChanged(Inventory inventory) {
+        // Most hoppers feed chests in chunks without shops, which the chunk index dismisses
+        if (!isShopChest(inventory)) {
+            return;
+        }
+
+        if (changedChests.isEmpty()) {
+            plugin.getServer().getScheduler().runTask(plugin, this::rescanChanged);
+        }
+        changedChests.add(inventory);
+    }
+
+    private void rescanChanged() {
+        for (Inventory inventory : changedChests) {
+            rescan(inventory);
+        }
+        changedChests.clear();
+    }
+}
@@ -0,0 +1,19 @@
+package com.itemchestshop.listeners;
+
+import com.itemchestshop.models.ShopTables;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+public class WorldListener implements Listener {
+
+    /**
+     * Lets go of an unloaded world, so the shop tables do not keep it in memory
+     * @param event The unload event
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        ShopTables.releaseWorld(event.getWorld());
+    }
+}
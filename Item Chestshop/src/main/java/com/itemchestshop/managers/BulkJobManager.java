@@ -0,0 +1,370 @@
+package com.itemchestshop.managers;
+
+import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.api.events.ShopRemoveEvent;
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.utils.ShopFilter;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Sign;
+import org.bukkit.block.sign.Side;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Runs admin operations over many shops without stalling the server.
+ *
+ * A job walks a snapshot of the registry a slice per tick, until the tick's time
+ * budget is spent, and applies its action to the shops its filter selects.
+ * Shops removed or replaced since the snapshot are skipped. Changes are not
+ * saved one by one; the job saves once when it finishes or is cancelled. A dry
+ * run walks the same shops and only counts them. One job runs at a time.
+ */
+public class BulkJobManager {
+
+    // Clock reads are amortized over this many shops
+    private static final int CHECKS_PER_CLOCK_READ = 8;
+
+    /**
+     * What a job does to the shops it selects
+     */
+    public enum Action {
+        REMOVE("remove"),
+        TRANSFER("transfer"),
+        MIGRATE("migrate");
+
+        private final String name;
+
+        Action(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Looks up an action by name
+         * @param name "remove", "transfer" or "migrate"
+         * @return The action, or null if unknown
+         */
+        public static Action fromName(String name) {
+            for (Action action : values()) {
+                if (action.name.equalsIgnoreCase(name)) {
+                    return action;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final ItemChestShopPlugin plugin;
+    private final ChestShopManager chestShopManager;
+
+    private long budgetNanos;
+    private long progressIntervalNanos;
+    private Job job;
+    private BukkitTask task;
+
+    public BulkJobManager(ItemChestShopPlugin plugin, ChestShopManager chestShopManager) {
+        this.plugin = plugin;
+        this.chestShopManager = chestShopManager;
+    }
+
+    /**
+     * Reads the time budget and progress interval from the configuration
+     */
+    public void configure() {
+        this.budgetNanos = plugin.getConfigManager().getBulkBudgetMicros() * 1000L;
+        this.progressIntervalNanos = plugin.getConfigManager().getBulkProgressIntervalSeconds() * 1_000_000_000L;
+    }
+
+    /**
+     * Starts a job over the shops registered now
+     * @param newJob The job
+     * @param onProgress Called on the main thread every progress interval while the job runs
+     * @param onDone Called on the main thread when the job finished or was cancelled
+     * @return false if another job is running
+     */
+    public boolean start(Job newJob, Consumer<Job> onProgress, Consumer<Job> onDone) {
+        if (job != null) {
+            return false;
+        }
+
+        newJob.shops = chestShopManager.getShops().toArray(new ChestShop[0]);
+        newJob.total = newJob.shops.length;
+        newJob.onProgress = onProgress;
+        newJob.onDone = onDone;
+        newJob.startedAt = System.nanoTime();
+        newJob.progressAt = newJob.startedAt;
+        job = newJob;
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 1L, 1L);
+        return true;
+    }
+
+    /**
+     * Stops the running job, keeping and saving the changes made so far
+     * @return false if no job is running
+     */
+    public boolean cancel() {
+        if (job == null) {
+            return false;
+        }
+        job.cancelled = true;
+        finish(job);
+        return true;
+    }
+
+    /**
+     * Gets the running job
+     * @return The job, or null if none is running
+     */
+    public Job getJob() {
+        return job;
+    }
+
+    /**
+     * Works through the job's shops until the tick's budget is spent
+     */
+    private void tick() {
+        Job current = job;
+        // A restore replaces the registry; the job waits and skips the shops it replaced
+        if (current == null || !chestShopManager.isWritable()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int checked = 0;
+        while (current.cursor < current.shops.length) {
+            ChestShop chestShop = current.shops[current.cursor];
+            current.shops[current.cursor++] = null;
+            boolean applied = false;
+            // Shops removed or replaced since the job started are no longer the job's to count
+            if (chestShopManager.isRegistered(chestShop) && current.filter.matches(chestShop)) {
+                current.matched++;
+                if (!current.dryRun) {
+                    applied = apply(current, chestShop);
+                    if (applied) {
+                        current.changed++;
+                    } else {
+                        current.skipped++;
+                    }
+                }
+            }
+
+            // Changes cost far more than checks, so the clock is read after each one
+            if ((++checked % CHECKS_PER_CLOCK_READ == 0 || applied) && System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+        }
+
+        if (current.cursor >= current.shops.length) {
+            finish(current);
+        } else if (start - current.progressAt >= progressIntervalNanos) {
+            current.progressAt = start;
+            current.onProgress.accept(current);
+        }
+    }
+
+    /**
+     * Applies a job's action to one shop
+     * @param current The job
+     * @param chestShop A shop the job selected
+     * @return false if the shop was left unchanged
+     */
+    private boolean apply(Job current, ChestShop chestShop) {
+        switch (current.action) {
+            case REMOVE:
+                return chestShopManager.unregisterShop(chestShop, ShopRemoveEvent.Reason.ADMIN);
+            case TRANSFER: {
+                // A shop is only built in a loaded world
+                if (chestShop.getOwner().equals(current.newOwner) || chestShop.getWorld() == null) {
+                    return false;
+                }
+                ChestShop replacement = new ChestShop(chestShop.getSignLocation(), chestShop.getChestLocation(),
+                    current.newOwner, current.newOwnerName, chestShop.getWantTemplate(), chestShop.getGiveTemplate());
+                // Same chest, so the stock snapshot still holds
+                replacement.setStockSnapshot(chestShop.getStockTrades(), chestShop.getSpaceTrades(), chestShop.getStockTime());
+                replacement.setTradeTime(chestShop.getTradeTime());
+                if (!chestShopManager.replaceShop(chestShop, replacement)) {
+                    return false;
+                }
+                updateOwnerLine(replacement);
+                return true;
+            }
+            case MIGRATE: {
+                // A shop in an unloaded world is skipped, like one already in the target world
+                World world = chestShop.getWorld();
+                if (world == null || world.equals(current.targetWorld)) {
+                    return false;
+                }
+                Location signLocation = chestShop.getSignLocation();
+                Location chestLocation = chestShop.getChestLocation();
+                signLocation.setWorld(current.targetWorld);
+                chestLocation.setWorld(current.targetWorld);
+                ChestShop moved = new ChestShop(signLocation, chestLocation,
+                    chestShop.getOwner(), chestShop.getOwnerName(), chestShop.getWantTemplate(), chestShop.getGiveTemplate());
+                moved.setTradeTime(chestShop.getTradeTime());
+                return chestShopManager.replaceShop(chestShop, moved);
+            }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Writes the new owner's name on a transferred shop's sign, if its chunk is
+     * loaded. Signs in unloaded chunks keep the old name; trades go by the registry.
+     * @param chestShop The transferred shop
+     */
+    private static void updateOwnerLine(ChestShop chestShop) {
+        World world = chestShop.getWorld();
+        if (world == null || !world.isChunkLoaded(chestShop.getX() >> 4, chestShop.getZ() >> 4)) {
+            return;
+        }
+
+        BlockState state = world.getBlockAt(chestShop.getX(), chestShop.getY(), chestShop.getZ()).getState();
+        if (state instanceof Sign sign) {
+            sign.getSide(Side.FRONT).line(0, Component.text(chestShop.getOwnerName()));
+            sign.update();
+        }
+    }
+
+    private void finish(Job current) {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        job = null;
+        current.shops = new ChestShop[0];
+        current.millis = (System.nanoTime() - current.startedAt) / 1_000_000;
+
+        if (current.changed > 0) {
+            chestShopManager.saveShops();
+        }
+        if (!current.dryRun) {
+            plugin.getLogger().info("Bulk " + current.action.getName() + (current.cancelled ? " cancelled" : " done")
+                + ": " + current.matched + " shops selected, " + current.changed + " changed, " + current.skipped + " skipped");
+        }
+        current.onDone.accept(current);
+    }
+
+    /**
+     * A bulk operation and its progress
+     */
+    public static final class Job {
+        private final Action action;
+        private final ShopFilter filter;
+        private final boolean dryRun;
+        private UUID newOwner;
+        private String newOwnerName;
+        private World targetWorld;
+
+        private ChestShop[] shops;
+        private int cursor;
+        private int total;
+        private int matched;
+        private int changed;
+        private int skipped;
+        private long startedAt;
+        private long progressAt;
+        private long millis;
+        private boolean cancelled;
+        private Consumer<Job> onProgress;
+        private Consumer<Job> onDone;
+
+        private Job(Action action, ShopFilter filter, boolean dryRun) {
+            this.action = action;
+            this.filter = filter;
+            this.dryRun = dryRun;
+        }
+
+        /**
+         * Describes removing the selected shops. Their signs and chests stay in place.
+         * @param filter The shops to remove
+         * @param dryRun Whether to only count them
+         * @return The job
+         */
+        public static Job remove(ShopFilter filter, boolean dryRun) {
+            return new Job(Action.REMOVE, filter, dryRun);
+        }
+
+        /**
+         * Describes giving the selected shops to another player
+         * @param filter The shops to transfer
+         * @param dryRun Whether to only count them
+         * @param owner The new owner
+         * @param ownerName The new owner's name
+         * @return The job
+         */
+        public static Job transfer(ShopFilter filter, boolean dryRun, UUID owner, String ownerName) {
+            Job job = new Job(Action.TRANSFER, filter, dryRun);
+            job.newOwner = owner;
+            job.newOwnerName = ownerName;
+            return job;
+        }
+
+        /**
+         * Describes moving the selected shops to the same coordinates in another
+         * world, as after copying or renaming a world
+         * @param filter The shops to move
+         * @param dryRun Whether to only count them
+         * @param world The world to move them to
+         * @return The job
+         */
+        public static Job migrate(ShopFilter filter, boolean dryRun, World world) {
+            Job job = new Job(Action.MIGRATE, filter, dryRun);
+            job.targetWorld = world;
+            return job;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public boolean isDryRun() {
+            return dryRun;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Gets the number of shops the job walks
+         * @return The shops registered when the job started
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        public int getChecked() {
+            return cursor;
+        }
+
+        public int getMatched() {
+            return matched;
+        }
+
+        public int getChanged() {
+            return changed;
+        }
+
+        /**
+         * Gets the selected shops left unchanged, because they were removed or
+         * replaced meanwhile, another shop was in the way, or nothing needed changing
+         * @return The number of shops skipped
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+}
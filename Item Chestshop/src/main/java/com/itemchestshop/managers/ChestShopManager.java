@@ -1,32 +1,62 @@
 package com.itemchestshop.managers;
 
 import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.api.ShopQueryService;
+import com.itemchestshop.api.events.ShopCreateEvent;
+import com.itemchestshop.api.events.ShopRemoveEvent;
+import com.itemchestshop.api.events.ShopsLoadEvent;
 import com.itemchestshop.models.ChestShop;
 import com.itemchestshop.utils.DataManager;
 import com.itemchestshop.utils.ItemParser;
+import com.itemchestshop.utils.MetricsRegistry;
+import com.itemchestshop.utils.ShopBlocks;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.Sign;
 import org.bukkit.inventory.ItemStack;
 
-import java.util.HashMap;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 public class ChestShopManager {
     
     private final ItemChestShopPlugin plugin;
-    private final Map<Location, ChestShop> chestShops;
+    private final ShopRegistry chestShops;
     private final DataManager dataManager;
+    private final MarketIndex marketIndex;
+    private final TradeGraph tradeGraph;
+    private final ShopSpatialIndex spatialIndex;
+    private final ShopChunkIndex chunkIndex;
+    private final StockMonitor stockMonitor;
+    private final ShopExpiry shopExpiry;
+    private final TradeLeaderboard leaderboard;
+    private final PriceHistory priceHistory;
+    private final ShopQueryService queryService;
+    private boolean loaded;
+    private boolean restoring;
     
     public ChestShopManager(ItemChestShopPlugin plugin) {
         this.plugin = plugin;
-        this.chestShops = new HashMap<>();
+        this.chestShops = new ShopRegistry();
         this.dataManager = new DataManager(plugin);
-        
-        // Load existing shops on startup
-        loadShops();
+        this.marketIndex = new MarketIndex();
+        this.tradeGraph = new TradeGraph();
+        this.spatialIndex = new ShopSpatialIndex();
+        this.chunkIndex = new ShopChunkIndex();
+        this.stockMonitor = new StockMonitor(plugin);
+        this.stockMonitor.configure();
+        this.shopExpiry = new ShopExpiry(plugin, this, dataManager);
+        this.shopExpiry.configure();
+        this.leaderboard = new TradeLeaderboard(plugin.getConfigManager().getLeaderboardSize());
+        this.priceHistory = new PriceHistory(plugin, this);
+        this.priceHistory.configure();
+        this.queryService = new ShopQueryService(plugin.getServer(), chestShops, priceHistory);
     }
     
     /**
@@ -39,7 +69,7 @@ public class ChestShopManager {
      */
     public ChestShop createChestShop(Location signLocation, UUID owner, String ownerName, String[] lines) {
         // Validate sign format
-        if (lines.length < 3) {
+        if (lines.length < 3 || !isWritable()) {
             return null;
         }
         
@@ -79,7 +109,17 @@ public class ChestShopManager {
         
         // Create the chest shop
         ChestShop chestShop = new ChestShop(signLocation, chestLocation, owner, ownerName, wantItem, giveItem);
-        chestShops.put(signLocation, chestShop);
+        ChestShop replaced = chestShops.put(chestShop);
+        if (replaced != null) {
+            unindexShop(replaced);
+        }
+        indexShop(chestShop);
+        plugin.getMetrics().increment(MetricsRegistry.Counter.SHOPS_CREATED);
+        plugin.getShopReplicator().shopCreated(chestShop);
+        if (replaced != null) {
+            fireRemoved(replaced, ShopRemoveEvent.Reason.REPLACED);
+        }
+        fireCreated(chestShop, ShopCreateEvent.Reason.CREATED);
         
         // Auto-save after creating a shop
         saveShops();
@@ -97,7 +137,7 @@ public class ChestShopManager {
         Location belowSign = signLocation.clone().subtract(0, 1, 0);
         Block belowBlock = belowSign.getBlock();
         
-        if (belowBlock.getType() == Material.CHEST || belowBlock.getType() == Material.TRAPPED_CHEST) {
+        if (ShopBlocks.isChest(belowBlock.getType())) {
             return belowSign;
         }
         
@@ -105,7 +145,7 @@ public class ChestShopManager {
         Location twoBelow = signLocation.clone().subtract(0, 2, 0);
         Block twoBelowBlock = twoBelow.getBlock();
         
-        if (twoBelowBlock.getType() == Material.CHEST || twoBelowBlock.getType() == Material.TRAPPED_CHEST) {
+        if (ShopBlocks.isChest(twoBelowBlock.getType())) {
             return twoBelow;
         }
         
@@ -118,23 +158,185 @@ public class ChestShopManager {
      * @return ChestShop or null if not found
      */
     public ChestShop getChestShop(Location signLocation) {
-        return chestShops.get(signLocation);
+        return chestShops.get(signLocation.getWorld(), signLocation.getBlockX(), signLocation.getBlockY(), signLocation.getBlockZ());
     }
     
     /**
-     * Removes a chest shop
+     * Gets a chest shop by sign block, without allocating
+     * @param signBlock The sign block
+     * @return ChestShop or null if not found
+     */
+    public ChestShop getChestShop(Block signBlock) {
+        return chestShops.get(signBlock.getWorld(), signBlock.getX(), signBlock.getY(), signBlock.getZ());
+    }
+    
+    /**
+     * Removes a chest shop whose sign or chest was broken
      * @param signLocation The location of the sign
      * @return true if removed, false if not found
      */
     public boolean removeChestShop(Location signLocation) {
-        boolean removed = chestShops.remove(signLocation) != null;
+        if (!isWritable()) {
+            return false;
+        }
+        ChestShop removed = removeFromRegistry(signLocation);
         
         // Auto-save after removing a shop
-        if (removed) {
+        if (removed != null) {
+            unindexShop(removed);
+            plugin.getMetrics().increment(MetricsRegistry.Counter.SHOPS_REMOVED);
+            plugin.getShopReplicator().shopRemoved(removed);
+            fireRemoved(removed, ShopRemoveEvent.Reason.BROKEN);
+            saveShops();
+        }
+        
+        return removed != null;
+    }
+    
+    /**
+     * Removes several chest shops whose signs or chests are gone, saving once
+     * @param signLocations The locations of the signs
+     * @return The number of shops removed
+     */
+    public int removeChestShops(Collection<Location> signLocations) {
+        if (!isWritable()) {
+            return 0;
+        }
+        int removedCount = 0;
+        for (Location signLocation : signLocations) {
+            ChestShop removed = removeFromRegistry(signLocation);
+            if (removed != null) {
+                unindexShop(removed);
+                plugin.getMetrics().increment(MetricsRegistry.Counter.SHOPS_REMOVED);
+                plugin.getShopReplicator().shopRemoved(removed);
+                fireRemoved(removed, ShopRemoveEvent.Reason.ORPHANED);
+                removedCount++;
+            }
+        }
+        
+        if (removedCount > 0) {
+            saveShops();
+        }
+        
+        return removedCount;
+    }
+    
+    /**
+     * Removes a shop without saving, if it is still the one registered at its sign.
+     * Callers that change many shops save once when they are done.
+     * @param chestShop The shop to remove
+     * @param reason Why the shop is removed, for integrations
+     * @return true if removed
+     */
+    public boolean unregisterShop(ChestShop chestShop, ShopRemoveEvent.Reason reason) {
+        if (!isWritable() || !isRegistered(chestShop)) {
+            return false;
+        }
+        
+        chestShops.removeAt(chestShop);
+        unindexShop(chestShop);
+        plugin.getMetrics().increment(MetricsRegistry.Counter.SHOPS_REMOVED);
+        plugin.getShopReplicator().shopRemoved(chestShop);
+        fireRemoved(chestShop, reason);
+        return true;
+    }
+    
+    /**
+     * Replaces a shop with a changed copy without saving, for example with another
+     * owner or in another world. Callers that change many shops save once when they are done.
+     * @param chestShop The registered shop
+     * @param replacement The shop to register instead
+     * @return false if the shop is no longer registered, or another shop has the replacement's sign
+     */
+    public boolean replaceShop(ChestShop chestShop, ChestShop replacement) {
+        if (!isWritable() || !isRegistered(chestShop)) {
+            return false;
+        }
+        ChestShop occupant = chestShops.getAt(replacement);
+        if (occupant != null && occupant != chestShop) {
+            return false;
+        }
+        
+        chestShops.removeAt(chestShop);
+        unindexShop(chestShop);
+        if (occupant == null) {
+            // Moved to another sign, which the other servers know as a different shop
+            plugin.getShopReplicator().shopRemoved(chestShop);
+        }
+        chestShops.put(replacement);
+        indexShop(replacement);
+        plugin.getShopReplicator().shopCreated(replacement);
+        fireRemoved(chestShop, ShopRemoveEvent.Reason.REPLACED);
+        fireCreated(replacement, ShopCreateEvent.Reason.REPLACED);
+        return true;
+    }
+    
+    /**
+     * Registers shops whose signs have no shop, for example expired shops brought back, saving once
+     * @param restoredShops The shops to register
+     * @return The number of shops registered
+     */
+    public int registerShops(Collection<ChestShop> restoredShops) {
+        if (!isWritable()) {
+            return 0;
+        }
+        int registeredCount = 0;
+        for (ChestShop chestShop : restoredShops) {
+            if (chestShops.getAt(chestShop) != null) {
+                continue;
+            }
+            chestShops.put(chestShop);
+            indexShop(chestShop);
+            plugin.getMetrics().increment(MetricsRegistry.Counter.SHOPS_CREATED);
+            plugin.getShopReplicator().shopCreated(chestShop);
+            fireCreated(chestShop, ShopCreateEvent.Reason.RESTORED);
+            registeredCount++;
+        }
+        
+        if (registeredCount > 0) {
             saveShops();
         }
         
-        return removed;
+        return registeredCount;
+    }
+    
+    /**
+     * Checks whether a shop is still the one registered at its sign
+     * @param chestShop The shop
+     * @return false if it was removed or replaced
+     */
+    public boolean isRegistered(ChestShop chestShop) {
+        return chestShops.getAt(chestShop) == chestShop;
+    }
+    
+    /**
+     * Checks whether a block's chunk contains any shop sign, without allocating.
+     * A false result means the block is certainly not a shop sign.
+     * @param block The block to check
+     * @return true if the block may be a shop sign
+     */
+    public boolean mayHaveShop(Block block) {
+        return chunkIndex.hasShops(block.getWorld().getName(), block.getX() >> 4, block.getZ() >> 4);
+    }
+    
+    /**
+     * Finds the shop that sells from a chest block
+     * @param chestBlock The chest block
+     * @return ChestShop or null if the chest belongs to no shop
+     */
+    public ChestShop findShopByChest(Block chestBlock) {
+        if (!mayHaveShop(chestBlock)) {
+            return null;
+        }
+        
+        // Shop signs sit one or two blocks above their chest
+        for (int depth = 1; depth <= 2; depth++) {
+            ChestShop chestShop = chestShops.get(chestBlock.getWorld(), chestBlock.getX(), chestBlock.getY() + depth, chestBlock.getZ());
+            if (chestShop != null && chestShop.getChestY() == chestBlock.getY()) {
+                return chestShop;
+            }
+        }
+        return null;
     }
     
     /**
@@ -143,7 +345,7 @@ public class ChestShopManager {
      * @return true if there's a chest shop at this location
      */
     public boolean hasChestShop(Location signLocation) {
-        return chestShops.containsKey(signLocation);
+        return getChestShop(signLocation) != null;
     }
     
     /**
@@ -180,32 +382,336 @@ public class ChestShopManager {
      * @return Number of shops owned
      */
     public int getShopCount(UUID owner) {
-        return (int) chestShops.values().stream()
-                .filter(shop -> shop.getOwner().equals(owner))
-                .count();
+        int[] count = new int[1];
+        chestShops.forEach(shop -> {
+            if (shop.getOwner().equals(owner)) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+    
+    /**
+     * Gets the number of shops on the server
+     * @return Number of shops
+     */
+    public int getShopCount() {
+        return chestShops.size();
     }
     
     /**
      * Gets all chest shops
-     * @return Map of all chest shops
+     * @return A new list of all chest shops
+     */
+    public List<ChestShop> getShops() {
+        return chestShops.values();
+    }
+    
+    /**
+     * Visits every chest shop without copying the registry. The action must not add or remove shops.
+     * @param action The action to run for each shop
+     */
+    public void forEachShop(Consumer<ChestShop> action) {
+        chestShops.forEach(action);
+    }
+    
+    /**
+     * Gets the read-only view of the shops offered to other plugins
+     * @return The query service
      */
-    public Map<Location, ChestShop> getAllChestShops() {
-        return new HashMap<>(chestShops);
+    public ShopQueryService getQueryService() {
+        return queryService;
+    }
+    
+    /**
+     * Gets the exchange-rate index of all shops
+     * @return The market index
+     */
+    public MarketIndex getMarketIndex() {
+        return marketIndex;
+    }
+    
+    /**
+     * Gets the material graph formed by all shops
+     * @return The trade graph
+     */
+    public TradeGraph getTradeGraph() {
+        return tradeGraph;
+    }
+    
+    /**
+     * Gets the monitor that warns owners about low stock and full chests
+     * @return The stock monitor
+     */
+    public StockMonitor getStockMonitor() {
+        return stockMonitor;
+    }
+    
+    /**
+     * Gets the expiry of inactive shops
+     * @return The shop expiry
+     */
+    public ShopExpiry getShopExpiry() {
+        return shopExpiry;
+    }
+    
+    /**
+     * Gets the exchange-rate history behind /itemchestshop history
+     * @return The price history
+     */
+    public PriceHistory getPriceHistory() {
+        return priceHistory;
+    }
+    
+    /**
+     * Gets the rolling trade counts behind /itemchestshop top
+     * @return The trade leaderboard
+     */
+    public TradeLeaderboard getLeaderboard() {
+        return leaderboard;
+    }
+    
+    /**
+     * Finds the shops closest to a location that sell an item
+     * @param origin The location to search from
+     * @param giveType The material the shops must give
+     * @param limit The maximum number of shops to return
+     * @param inStockOnly Whether to skip shops that are out of stock
+     * @return Matching shops, closest first
+     */
+    public List<ChestShop> findNearestShops(Location origin, Material giveType, int limit, boolean inStockOnly) {
+        return spatialIndex.findNearest(origin, giveType, limit, inStockOnly ? this::isKnownInStock : shop -> true);
+    }
+    
+    /**
+     * Checks the stock of a shop without loading its chunk
+     * @param chestShop The shop to check
+     * @return true if the last stock snapshot, or the chest if it is loaded and was never scanned, has stock
+     */
+    private boolean isKnownInStock(ChestShop chestShop) {
+        if (chestShop.getStockTrades() != ChestShop.UNKNOWN) {
+            return chestShop.getStockTrades() > 0;
+        }
+        World world = chestShop.getWorld();
+        return world != null && world.isChunkLoaded(chestShop.getX() >> 4, chestShop.getZ() >> 4)
+                && chestShop.hasStock();
     }
     
     /**
      * Saves all chest shops to persistent storage
      */
     public void saveShops() {
-        dataManager.saveShops(chestShops);
+        dataManager.saveShops(chestShops.values());
     }
     
     /**
      * Loads all chest shops from persistent storage
      */
     public void loadShops() {
-        Map<Location, ChestShop> loadedShops = dataManager.loadShops();
+        publishShops(dataManager.loadShops());
+    }
+    
+    /**
+     * Reads and deserializes the shops on a background thread, then publishes
+     * them on the main thread. Until then {@link #isLoaded()} is false and the
+     * registry is empty. An unreadable file publishes no shops and blocks saving,
+     * so the server stays usable and a backup can be restored.
+     */
+    public void loadShopsAsync() {
+        long start = System.nanoTime();
+        Map<String, World> worlds = DataManager.snapshotWorlds();
+        
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<ChestShop> loadedShops = dataManager.loadShops(worlds);
+            if (!plugin.isEnabled()) {
+                return;
+            }
+            
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                long publishStart = System.nanoTime();
+                publishShops(loadedShops);
+                long now = System.nanoTime();
+                plugin.getLogger().info("Shops ready after " + (now - start) / 1_000_000 + "ms (" + 
+                    (now - publishStart) / 1_000_000 + "ms on the main thread)");
+            });
+        });
+    }
+    
+    /**
+     * Writes a backup generation of the shops now
+     * @return The generation written, or -1 if it failed
+     */
+    public int backUpShops() {
+        return dataManager.backUpShops(chestShops.values());
+    }
+    
+    /**
+     * Lists the backup generations that can be restored
+     * @return The generations, oldest first
+     */
+    public List<DataManager.Backup> getBackups() {
+        return dataManager.getBackups();
+    }
+    
+    /**
+     * Replaces the shops with a backup generation. The generation is read on a
+     * background thread and published and saved on the main thread. Until then
+     * {@link #isWritable()} is false, so no change is made that the restore would drop.
+     * @param generation The generation to restore
+     * @param onDone Called on the main thread with null on success, or the error
+     */
+    public void restoreShops(int generation, Consumer<IOException> onDone) {
+        restoring = true;
+        Map<String, World> worlds = DataManager.snapshotWorlds();
+        
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<ChestShop> restoredShops = null;
+            IOException error = null;
+            try {
+                restoredShops = dataManager.loadBackup(generation, worlds);
+            } catch (IOException e) {
+                error = e;
+            }
+            if (!plugin.isEnabled()) {
+                return;
+            }
+            
+            List<ChestShop> result = restoredShops;
+            IOException failure = error;
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                restoring = false;
+                if (result != null) {
+                    publishShops(result);
+                    // The restored shops replace an unreadable shops.json
+                    dataManager.clearLoadFailed();
+                    saveShops();
+                    plugin.getLogger().info("Restored " + result.size() + " chest shops from backup generation " + generation);
+                }
+                onDone.accept(failure);
+            });
+        });
+    }
+    
+    /**
+     * Checks whether a backup is being restored
+     * @return true until the restored shops are published
+     */
+    public boolean isRestoring() {
+        return restoring;
+    }
+    
+    /**
+     * Checks whether the shops have been loaded. While they are not, the
+     * registry is empty and must not be saved or changed.
+     * @return true once the shops are loaded
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    /**
+     * Checks whether shops may be created, removed or replaced now. Shops are
+     * left alone while they load and while a backup is restored, because the
+     * shops read then replace the whole registry.
+     * @return true once the shops are loaded and no restore is running
+     */
+    public boolean isWritable() {
+        return loaded && !restoring;
+    }
+    
+    /**
+     * Checks whether shops.json could not be read, so saving is refused until a backup is restored
+     * @return true after a failed load
+     */
+    public boolean isLoadFailed() {
+        return dataManager.isLoadFailed();
+    }
+    
+    /**
+     * Replaces the registry with loaded shops and rebuilds the indexes
+     * @param loadedShops The shops read from storage
+     */
+    private void publishShops(List<ChestShop> loadedShops) {
         chestShops.clear();
-        chestShops.putAll(loadedShops);
+        marketIndex.clear();
+        tradeGraph.clear();
+        spatialIndex.clear();
+        chunkIndex.clear();
+        stockMonitor.clear();
+        shopExpiry.clear();
+        leaderboard.clearShops();
+        for (ChestShop chestShop : loadedShops) {
+            ChestShop replaced = chestShops.put(chestShop);
+            if (replaced != null) {
+                unindexShop(replaced);
+            }
+            indexShop(chestShop);
+        }
+        loaded = true;
+        
+        // Nothing to compare with before the replicator exists, during the first load
+        if (plugin.getShopReplicator() != null) {
+            plugin.getShopReplicator().resync();
+        }
+        if (ShopsLoadEvent.getHandlerList().getRegisteredListeners().length > 0) {
+            plugin.getServer().getPluginManager().callEvent(new ShopsLoadEvent(chestShops.size()));
+        }
+    }
+    
+    /**
+     * Removes the shop with its sign at a location from the registry only
+     * @param signLocation The location of the sign
+     * @return The removed shop, or null
+     */
+    private ChestShop removeFromRegistry(Location signLocation) {
+        return chestShops.remove(signLocation.getWorld(), signLocation.getBlockX(), signLocation.getBlockY(), signLocation.getBlockZ());
+    }
+    
+    /**
+     * Tells other plugins about a registered shop. The event is only built when someone listens.
+     * @param chestShop The registered shop
+     * @param reason Why it was registered
+     */
+    private void fireCreated(ChestShop chestShop, ShopCreateEvent.Reason reason) {
+        if (ShopCreateEvent.getHandlerList().getRegisteredListeners().length > 0) {
+            plugin.getServer().getPluginManager().callEvent(new ShopCreateEvent(chestShop, reason));
+        }
+    }
+    
+    /**
+     * Tells other plugins about an unregistered shop. The event is only built when someone listens.
+     * @param chestShop The unregistered shop
+     * @param reason Why it was unregistered
+     */
+    private void fireRemoved(ChestShop chestShop, ShopRemoveEvent.Reason reason) {
+        if (ShopRemoveEvent.getHandlerList().getRegisteredListeners().length > 0) {
+            plugin.getServer().getPluginManager().callEvent(new ShopRemoveEvent(chestShop, reason));
+        }
+    }
+    
+    /**
+     * Adds a shop to every derived index
+     * @param chestShop The shop to index
+     */
+    private void indexShop(ChestShop chestShop) {
+        marketIndex.add(chestShop);
+        tradeGraph.add(chestShop);
+        spatialIndex.add(chestShop);
+        chunkIndex.add(chestShop);
+        shopExpiry.add(chestShop);
+    }
+    
+    /**
+     * Removes a shop from every derived index
+     * @param chestShop The shop to unindex
+     */
+    private void unindexShop(ChestShop chestShop) {
+        marketIndex.remove(chestShop);
+        tradeGraph.remove(chestShop);
+        spatialIndex.remove(chestShop);
+        chunkIndex.remove(chestShop);
+        stockMonitor.forget(chestShop);
+        shopExpiry.forget(chestShop);
+        leaderboard.forget(chestShop);
     }
 }
\ No newline at end of file
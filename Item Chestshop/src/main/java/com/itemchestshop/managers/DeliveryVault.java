@@ -0,0 +1,330 @@
+package com.itemchestshop.managers;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.utils.Messages;
+import com.itemchestshop.utils.TransactionManager;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Bought items that did not fit in the buyer's inventory. Instead of dropping
+ * them as item entities, trades park the overflow here, and it is handed over
+ * as soon as the player has room or claims it with /itemchestshop claim.
+ *
+ * Each player's box holds a limited number of stacks; a trade whose overflow
+ * would not fit is refused before any items move. Changes are written to
+ * deliveries.json in batches, off the main thread.
+ */
+public class DeliveryVault {
+
+    // Online players with pending items are offered them this often
+    private static final long DELIVERY_INTERVAL_TICKS = 40L;
+
+    private final ItemChestShopPlugin plugin;
+    private final File dataFile;
+    private final Gson gson;
+    private final Map<UUID, List<ItemStack>> pending;
+    private final Object fileLock;
+
+    private BukkitTask deliveryTask;
+    private BukkitTask saveTask;
+    private int maxStacks;
+    private boolean dirty;
+    // Snapshots are numbered so a late background write never replaces a newer file
+    private long snapshotNumber;
+    private long writtenNumber;
+
+    public DeliveryVault(ItemChestShopPlugin plugin) {
+        this.plugin = plugin;
+        this.dataFile = new File(plugin.getDataFolder(), "deliveries.json");
+        this.gson = new GsonBuilder().disableHtmlEscaping().create();
+        this.pending = new HashMap<>();
+        this.fileLock = new Object();
+    }
+
+    /**
+     * Applies the configuration and starts the delivery and save tasks
+     */
+    public void configure() {
+        this.maxStacks = plugin.getConfigManager().getDeliveryMaxStacks();
+        long saveIntervalTicks = plugin.getConfigManager().getDeliverySaveIntervalSeconds() * 20L;
+
+        cancelTasks();
+        deliveryTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::deliverToOnlinePlayers,
+            DELIVERY_INTERVAL_TICKS, DELIVERY_INTERVAL_TICKS);
+        saveTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::saveAsync,
+            saveIntervalTicks, saveIntervalTicks);
+    }
+
+    /**
+     * Stops the tasks and writes any unsaved changes
+     */
+    public void shutdown() {
+        cancelTasks();
+        boolean unwritten;
+        synchronized (fileLock) {
+            // Covers a background write that failed
+            unwritten = writtenNumber < snapshotNumber;
+        }
+        if (dirty || unwritten) {
+            write(snapshot());
+        }
+    }
+
+    /**
+     * Counts how many of an item still fit in a player's box
+     * @param playerId The player's UUID
+     * @param item The item
+     * @return The amount that fits
+     */
+    public int getSpace(UUID playerId, ItemStack item) {
+        List<ItemStack> stacks = pending.get(playerId);
+        if (stacks == null) {
+            return maxStacks * item.getMaxStackSize();
+        }
+
+        int space = Math.max(0, maxStacks - stacks.size()) * item.getMaxStackSize();
+        for (ItemStack stack : stacks) {
+            if (stack.isSimilar(item)) {
+                space += Math.max(0, stack.getMaxStackSize() - stack.getAmount());
+            }
+        }
+        return space;
+    }
+
+    /**
+     * Adds items to a player's box. Callers check {@link #getSpace(UUID, ItemStack)} first;
+     * the box may go over its limit otherwise.
+     * @param playerId The player's UUID
+     * @param item The items to store
+     */
+    public void store(UUID playerId, ItemStack item) {
+        List<ItemStack> stacks = pending.computeIfAbsent(playerId, id -> new ArrayList<>());
+        int remaining = item.getAmount();
+
+        // Top up partial stacks before starting new ones
+        for (ItemStack stack : stacks) {
+            if (remaining > 0 && stack.isSimilar(item)) {
+                int added = Math.min(remaining, stack.getMaxStackSize() - stack.getAmount());
+                if (added > 0) {
+                    stack.setAmount(stack.getAmount() + added);
+                    remaining -= added;
+                }
+            }
+        }
+        while (remaining > 0) {
+            ItemStack stack = item.clone();
+            stack.setAmount(Math.min(remaining, item.getMaxStackSize()));
+            stacks.add(stack);
+            remaining -= stack.getAmount();
+        }
+        dirty = true;
+    }
+
+    /**
+     * Moves as many pending items as fit into a player's inventory
+     * @param player The player
+     * @return The amount delivered
+     */
+    public int deliver(Player player) {
+        List<ItemStack> stacks = pending.get(player.getUniqueId());
+        if (stacks == null) {
+            return 0;
+        }
+
+        int delivered = 0;
+        Iterator<ItemStack> iterator = stacks.iterator();
+        while (iterator.hasNext()) {
+            ItemStack stack = iterator.next();
+            int left = TransactionManager.addItemsToInventory(player.getInventory(), stack);
+            delivered += stack.getAmount() - left;
+            if (left == 0) {
+                iterator.remove();
+            } else {
+                stack.setAmount(left);
+            }
+        }
+
+        if (stacks.isEmpty()) {
+            pending.remove(player.getUniqueId());
+        }
+        if (delivered > 0) {
+            dirty = true;
+        }
+        return delivered;
+    }
+
+    /**
+     * Counts the items waiting for a player
+     * @param playerId The player's UUID
+     * @return The total amount of pending items
+     */
+    public int getPendingAmount(UUID playerId) {
+        List<ItemStack> stacks = pending.get(playerId);
+        if (stacks == null) {
+            return 0;
+        }
+
+        int amount = 0;
+        for (ItemStack stack : stacks) {
+            amount += stack.getAmount();
+        }
+        return amount;
+    }
+
+    /**
+     * Loads the boxes from deliveries.json. Must be called on the main thread.
+     */
+    public void load() {
+        pending.clear();
+        dirty = false;
+        if (!dataFile.exists()) {
+            return;
+        }
+
+        try (Reader reader = new FileReader(dataFile, StandardCharsets.UTF_8)) {
+            Type type = new TypeToken<Map<String, List<String>>>(){}.getType();
+            Map<String, List<String>> stored = gson.fromJson(reader, type);
+            if (stored == null) {
+                return;
+            }
+
+            for (Map.Entry<String, List<String>> entry : stored.entrySet()) {
+                List<ItemStack> stacks = new ArrayList<>(entry.getValue().size());
+                for (String data : entry.getValue()) {
+                    try {
+                        stacks.add(ItemStack.deserializeBytes(Base64.getDecoder().decode(data)));
+                    } catch (Exception e) {
+                        plugin.getLogger().log(Level.WARNING, "Failed to load a pending delivery of " + entry.getKey(), e);
+                    }
+                }
+                if (!stacks.isEmpty()) {
+                    pending.put(UUID.fromString(entry.getKey()), stacks);
+                }
+            }
+        } catch (IOException | JsonParseException | IllegalArgumentException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to load pending deliveries", e);
+        }
+    }
+
+    /**
+     * Offers pending items to every online player who has some
+     */
+    private void deliverToOnlinePlayers() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        for (UUID playerId : new ArrayList<>(pending.keySet())) {
+            Player player = plugin.getServer().getPlayer(playerId);
+            if (player == null || !player.isOnline()) {
+                continue;
+            }
+
+            int delivered = deliver(player);
+            if (delivered > 0) {
+                player.sendMessage(plugin.getConfigManager().getMessages().get(Messages.Key.DELIVERY_DELIVERED,
+                    "amount", String.valueOf(delivered)));
+            }
+        }
+    }
+
+    /**
+     * Writes the boxes in the background if anything changed since the last save
+     */
+    private void saveAsync() {
+        if (!dirty) {
+            return;
+        }
+        Snapshot snapshot = snapshot();
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> write(snapshot));
+    }
+
+    /**
+     * Serializes the boxes on the main thread, so the write can happen elsewhere
+     * @return The boxes as they are now
+     */
+    private Snapshot snapshot() {
+        Map<String, List<String>> stored = new HashMap<>();
+        for (Map.Entry<UUID, List<ItemStack>> entry : pending.entrySet()) {
+            List<String> stacks = new ArrayList<>(entry.getValue().size());
+            for (ItemStack stack : entry.getValue()) {
+                stacks.add(Base64.getEncoder().encodeToString(stack.serializeAsBytes()));
+            }
+            stored.put(entry.getKey().toString(), stacks);
+        }
+        dirty = false;
+        return new Snapshot(++snapshotNumber, stored);
+    }
+
+    /**
+     * Replaces deliveries.json with a snapshot, through a temporary file
+     * @param snapshot The snapshot to write
+     */
+    private void write(Snapshot snapshot) {
+        synchronized (fileLock) {
+            if (snapshot.number <= writtenNumber) {
+                return;
+            }
+
+            File tempFile = new File(dataFile.getPath() + ".tmp");
+            try {
+                try (Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+                    gson.toJson(snapshot.boxes, writer);
+                }
+                Files.move(tempFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                writtenNumber = snapshot.number;
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to save pending deliveries", e);
+            }
+        }
+    }
+
+    private void cancelTasks() {
+        if (deliveryTask != null) {
+            deliveryTask.cancel();
+            deliveryTask = null;
+        }
+        if (saveTask != null) {
+            saveTask.cancel();
+            saveTask = null;
+        }
+    }
+
+    /**
+     * Serialized boxes by player UUID
+     */
+    private static final class Snapshot {
+        final long number;
+        final Map<String, List<String>> boxes;
+
+        Snapshot(long number, Map<String, List<String>> boxes) {
+            this.number = number;
+            this.boxes = boxes;
+        }
+    }
+}
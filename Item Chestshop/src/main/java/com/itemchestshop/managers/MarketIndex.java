@@ -0,0 +1,199 @@
+package com.itemchestshop.managers;
+
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.utils.RateSketch;
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Incrementally maintained exchange-rate statistics for every
+ * (give material, want material) pair in the shop registry.
+ * The rate of a shop is the number of want items asked for one give item.
+ */
+public class MarketIndex {
+
+    private final Map<Material, Map<Material, PairStats>> pairs;
+
+    public MarketIndex() {
+        this.pairs = new EnumMap<>(Material.class);
+    }
+
+    /**
+     * Adds a shop's exchange rate to the index
+     * @param chestShop The shop that was created or loaded
+     */
+    public void add(ChestShop chestShop) {
+        pairs.computeIfAbsent(chestShop.getGiveTemplate().getType(), type -> new EnumMap<>(Material.class))
+                .computeIfAbsent(chestShop.getWantTemplate().getType(), type -> new PairStats())
+                .add(getRate(chestShop));
+    }
+
+    /**
+     * Removes a shop's exchange rate from the index
+     * @param chestShop The shop that was removed
+     */
+    public void remove(ChestShop chestShop) {
+        Material giveType = chestShop.getGiveTemplate().getType();
+        Map<Material, PairStats> wants = pairs.get(giveType);
+        if (wants == null) {
+            return;
+        }
+
+        Material wantType = chestShop.getWantTemplate().getType();
+        PairStats stats = wants.get(wantType);
+        if (stats == null) {
+            return;
+        }
+
+        stats.remove(getRate(chestShop));
+        if (stats.isEmpty()) {
+            wants.remove(wantType);
+            if (wants.isEmpty()) {
+                pairs.remove(giveType);
+            }
+        }
+    }
+
+    /**
+     * Removes all entries from the index
+     */
+    public void clear() {
+        pairs.clear();
+    }
+
+    /**
+     * Gets the statistics for a single pair
+     * @param giveType The material the shops give
+     * @param wantType The material the shops want
+     * @return MarketStats or null if no shop trades this pair
+     */
+    public MarketStats getStats(Material giveType, Material wantType) {
+        Map<Material, PairStats> wants = pairs.get(giveType);
+        if (wants == null) {
+            return null;
+        }
+
+        PairStats stats = wants.get(wantType);
+        return stats == null ? null : stats.toMarketStats(giveType, wantType);
+    }
+
+    /**
+     * Gets the statistics for every pair selling an item, busiest pair first
+     * @param giveType The material the shops give
+     * @return List of statistics, empty if nobody sells the item
+     */
+    public List<MarketStats> getStatsForItem(Material giveType) {
+        List<MarketStats> result = new ArrayList<>();
+        Map<Material, PairStats> wants = pairs.get(giveType);
+        if (wants == null) {
+            return result;
+        }
+
+        for (Map.Entry<Material, PairStats> entry : wants.entrySet()) {
+            result.add(entry.getValue().toMarketStats(giveType, entry.getKey()));
+        }
+        result.sort(Comparator.comparingLong(MarketStats::getCount).reversed());
+        return result;
+    }
+
+    /**
+     * Visits the statistics of every pair
+     * @param action The action to run for each pair
+     */
+    public void forEachPair(Consumer<MarketStats> action) {
+        for (Map.Entry<Material, Map<Material, PairStats>> gives : pairs.entrySet()) {
+            for (Map.Entry<Material, PairStats> wants : gives.getValue().entrySet()) {
+                action.accept(wants.getValue().toMarketStats(gives.getKey(), wants.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Gets the exchange rate of a shop
+     * @param chestShop The shop
+     * @return Want items asked for one give item
+     */
+    public static double getRate(ChestShop chestShop) {
+        return (double) chestShop.getWantTemplate().getAmount() / chestShop.getGiveTemplate().getAmount();
+    }
+
+    /**
+     * Running statistics of one pair
+     */
+    private static class PairStats {
+        private final RateSketch sketch = new RateSketch();
+        private double sum;
+
+        void add(double rate) {
+            sketch.add(rate);
+            sum += rate;
+        }
+
+        void remove(double rate) {
+            if (sketch.remove(rate)) {
+                sum = sketch.isEmpty() ? 0 : sum - rate;
+            }
+        }
+
+        boolean isEmpty() {
+            return sketch.isEmpty();
+        }
+
+        MarketStats toMarketStats(Material giveType, Material wantType) {
+            long count = sketch.getCount();
+            return new MarketStats(giveType, wantType, count, sketch.getMin(), sketch.getQuantile(0.5), sum / count);
+        }
+    }
+
+    /**
+     * Immutable view of the exchange-rate statistics of one pair.
+     * Min and median are accurate to within {@link RateSketch#RELATIVE_ACCURACY}.
+     */
+    public static class MarketStats {
+        private final Material giveType;
+        private final Material wantType;
+        private final long count;
+        private final double min;
+        private final double median;
+        private final double mean;
+
+        public MarketStats(Material giveType, Material wantType, long count, double min, double median, double mean) {
+            this.giveType = giveType;
+            this.wantType = wantType;
+            this.count = count;
+            this.min = min;
+            this.median = median;
+            this.mean = mean;
+        }
+
+        public Material getGiveType() {
+            return giveType;
+        }
+
+        public Material getWantType() {
+            return wantType;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMedian() {
+            return median;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+    }
+}
@@ -0,0 +1,577 @@
+package com.itemchestshop.managers;
+
+import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.utils.ConfigManager;
+import com.itemchestshop.utils.PriceSeries;
+import org.bukkit.Material;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Exchange-rate history of every (give material, want material) pair, for
+ * price charts and /itemchestshop history.
+ *
+ * Once a minute the statistics of every pair in the {@link MarketIndex} are
+ * merged into the pair's {@link PriceSeries}, which keeps minute, hour and day
+ * points in fixed-size rings. Pairs that no shop trades any more get no samples
+ * and keep their history until it falls out of the rings.
+ *
+ * Points are appended to price-history.bin as their minute, hour or day ends.
+ * The few records a minute adds are encoded on the main thread and written by a
+ * single background thread. When the file holds about twice as many records as
+ * the rings, it is rewritten from memory through a temporary file, which also
+ * drops pairs without any point left; the main thread only copies the rings for
+ * that, and the writer thread encodes the copies. A point written again
+ * replaces the earlier one, so the current points are simply written again on
+ * shutdown.
+ *
+ * File layout: magic, version, then records, each starting with its type byte.
+ * <pre>
+ * PAIR   id (int), give material, want material (modified UTF-8)
+ * POINT  pair id (int), resolution (byte), start in epoch milliseconds (long),
+ *        min, median, mean, shops (floats), samples (int)
+ * </pre>
+ */
+public class PriceHistory {
+
+    public static final int MAGIC = 0x49435048;
+    public static final int VERSION = 1;
+
+    private static final byte RECORD_PAIR = 1;
+    private static final byte RECORD_POINT = 2;
+    private static final long SAMPLE_INTERVAL_TICKS = 20L * 60;
+    // Small files are not worth rewriting every few minutes
+    private static final long MIN_COMPACT_RECORDS = 10_000;
+    private static final long WEEK_MILLIS = 7 * PriceSeries.Resolution.DAY.getMillis();
+
+    private final ItemChestShopPlugin plugin;
+    private final ChestShopManager chestShopManager;
+    private final File file;
+    private final Map<Material, Map<Material, Pair>> pairs;
+
+    private int[] capacities;
+    private ExecutorService writer;
+    private BukkitTask task;
+    private boolean loaded;
+    private int nextPairId;
+    private long appendedRecords;
+    private long compactedRecords;
+    // Used on the writer thread only; null while the file cannot be written
+    private FileChannel channel;
+
+    public PriceHistory(ItemChestShopPlugin plugin, ChestShopManager chestShopManager) {
+        this.plugin = plugin;
+        this.chestShopManager = chestShopManager;
+        this.file = new File(plugin.getDataFolder(), "price-history.bin");
+        this.pairs = new EnumMap<>(Material.class);
+    }
+
+    /**
+     * Starts or stops recording as configured. The ring sizes are read when
+     * recording starts, so changing them takes a restart.
+     */
+    public void configure() {
+        boolean enabled = plugin.getConfigManager().isHistoryEnabled();
+        if (enabled && writer == null) {
+            start();
+        } else if (!enabled && writer != null) {
+            stop();
+        }
+    }
+
+    /**
+     * Reads the history back on the writer thread, then starts sampling
+     */
+    private void start() {
+        ConfigManager configManager = plugin.getConfigManager();
+        capacities = new int[] {
+            configManager.getHistoryMinutes(),
+            configManager.getHistoryHours(),
+            configManager.getHistoryDays()
+        };
+        int[] sizes = capacities;
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ItemChestShop price history writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        ExecutorService current = writer;
+        current.execute(() -> {
+            Map<Material, Map<Material, PriceSeries>> read = load(sizes);
+            if (!plugin.isEnabled()) {
+                return;
+            }
+            plugin.getServer().getScheduler().runTask(plugin, () -> publish(current, read));
+        });
+    }
+
+    /**
+     * Writes the current points and stops recording
+     */
+    public void stop() {
+        if (writer == null) {
+            return;
+        }
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        if (loaded) {
+            // The current minute, hour and day of every pair are still open
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                for (Map<Material, Pair> wants : pairs.values()) {
+                    for (Pair pair : wants.values()) {
+                        for (PriceSeries.Resolution resolution : PriceSeries.Resolution.values()) {
+                            PriceSeries.Point point = pair.series.getLatest(resolution);
+                            if (point != null) {
+                                writePoint(out, pair, point);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            append(bytes.toByteArray());
+        }
+
+        writer.execute(this::closeChannel);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Price history writer did not finish, the last minutes may be lost");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        loaded = false;
+        pairs.clear();
+    }
+
+    /**
+     * Checks whether prices are being recorded
+     * @return false while the history is disabled or still loading
+     */
+    public boolean isRecording() {
+        return loaded;
+    }
+
+    /**
+     * Gets a pair's points at one resolution in a time window, oldest first.
+     * Only the points of the window are read.
+     * @param giveType The material the shops give
+     * @param wantType The material the shops want
+     * @param resolution The resolution
+     * @param from The start of the window in epoch milliseconds, inclusive
+     * @param to The end of the window in epoch milliseconds, inclusive
+     * @return The points, empty if the pair has none in the window
+     */
+    public List<PriceSeries.Point> getHistory(Material giveType, Material wantType, PriceSeries.Resolution resolution,
+                                              long from, long to) {
+        Pair pair = getPair(giveType, wantType);
+        return pair == null ? Collections.emptyList() : pair.series.getPoints(resolution, from, to);
+    }
+
+    /**
+     * Gets the materials an item has been sold for
+     * @param giveType The material the shops give
+     * @return The want materials with a history
+     */
+    public List<Material> getWantTypes(Material giveType) {
+        Map<Material, Pair> wants = pairs.get(giveType);
+        return wants == null ? Collections.emptyList() : new ArrayList<>(wants.keySet());
+    }
+
+    /**
+     * Summarizes how a pair's median rate moved over the last hour, day and week
+     * @param giveType The material the shops give
+     * @param wantType The material the shops want
+     * @param now The current time in epoch milliseconds
+     * @return The summary, or null if the pair has no history
+     */
+    public Summary getSummary(Material giveType, Material wantType, long now) {
+        Pair pair = getPair(giveType, wantType);
+        PriceSeries.Point latest = pair == null ? null : pair.series.getLatest();
+        if (latest == null) {
+            return null;
+        }
+
+        // Hour points cover the week unless fewer hours are kept; day points fill in the rest
+        float low = latest.getMedian();
+        float high = latest.getMedian();
+        for (PriceSeries.Resolution resolution : new PriceSeries.Resolution[] {PriceSeries.Resolution.HOUR, PriceSeries.Resolution.DAY}) {
+            for (PriceSeries.Point point : pair.series.getPoints(resolution, now - WEEK_MILLIS, now)) {
+                low = Math.min(low, point.getMedian());
+                high = Math.max(high, point.getMedian());
+            }
+        }
+
+        return new Summary(giveType, wantType, latest,
+            pair.series.getPointAt(now - PriceSeries.Resolution.HOUR.getMillis()),
+            pair.series.getPointAt(now - PriceSeries.Resolution.DAY.getMillis()),
+            pair.series.getPointAt(now - WEEK_MILLIS), low, high);
+    }
+
+    private Pair getPair(Material giveType, Material wantType) {
+        Map<Material, Pair> wants = pairs.get(giveType);
+        return wants == null ? null : wants.get(wantType);
+    }
+
+    /**
+     * Takes over the history read from disk, rewrites the file and starts sampling
+     */
+    private void publish(ExecutorService loadedBy, Map<Material, Map<Material, PriceSeries>> read) {
+        if (writer != loadedBy) {
+            // Stopped while loading
+            return;
+        }
+
+        for (Map.Entry<Material, Map<Material, PriceSeries>> gives : read.entrySet()) {
+            Map<Material, Pair> wants = pairs.computeIfAbsent(gives.getKey(), type -> new EnumMap<>(Material.class));
+            for (Map.Entry<Material, PriceSeries> entry : gives.getValue().entrySet()) {
+                wants.put(entry.getKey(), new Pair(gives.getKey(), entry.getKey(), entry.getValue()));
+            }
+        }
+        loaded = true;
+        // Also cuts off a partial record left by a crash, so appends start on a clean end
+        compact();
+        task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::sample, SAMPLE_INTERVAL_TICKS, SAMPLE_INTERVAL_TICKS);
+    }
+
+    /**
+     * Merges the current statistics of every pair and appends the points that ended
+     */
+    private void sample() {
+        if (!loaded || !chestShopManager.isLoaded()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<MarketIndex.MarketStats> current = new ArrayList<>();
+        chestShopManager.getMarketIndex().forEachPair(current::add);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        List<PriceSeries.Point> closed = new ArrayList<>();
+        int records = 0;
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (MarketIndex.MarketStats stats : current) {
+                Pair pair = pairs.computeIfAbsent(stats.getGiveType(), type -> new EnumMap<>(Material.class))
+                    .computeIfAbsent(stats.getWantType(), type -> new Pair(stats.getGiveType(), type, new PriceSeries(capacities)));
+                if (pair.id < 0) {
+                    // New since the last rewrite
+                    pair.id = nextPairId++;
+                    writePair(out, pair);
+                }
+                closed.clear();
+                pair.series.add(now, stats.getMin(), stats.getMedian(), stats.getMean(), (int) stats.getCount(), closed);
+                for (PriceSeries.Point point : closed) {
+                    writePoint(out, pair, point);
+                    records++;
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        // New pairs are written even before their first point closes
+        if (bytes.size() > 0) {
+            append(bytes.toByteArray());
+            appendedRecords += records;
+        }
+        if (appendedRecords > Math.max(compactedRecords, MIN_COMPACT_RECORDS)) {
+            compact();
+        }
+    }
+
+    /**
+     * Replaces the file with the points in memory, dropping pairs that have none left.
+     * The pairs get their ids in the new file here, so appends queued after the
+     * rewrite refer to them; the copies are encoded on the writer thread.
+     */
+    private void compact() {
+        long oldestKept = System.currentTimeMillis() - (long) capacities[PriceSeries.Resolution.DAY.ordinal()]
+            * PriceSeries.Resolution.DAY.getMillis();
+        nextPairId = 0;
+        List<Pair> copies = new ArrayList<>();
+        long records = 0;
+        for (Map<Material, Pair> wants : pairs.values()) {
+            wants.values().removeIf(pair -> pair.series.getLastDay() < oldestKept);
+            for (Pair pair : wants.values()) {
+                pair.id = nextPairId++;
+                Pair copy = new Pair(pair.giveType, pair.wantType, pair.series.copy());
+                copy.id = pair.id;
+                copies.add(copy);
+                records += pair.series.getPointCount();
+            }
+        }
+        pairs.values().removeIf(Map::isEmpty);
+
+        compactedRecords = records;
+        appendedRecords = 0;
+        writer.execute(() -> rewrite(encode(copies)));
+    }
+
+    /**
+     * Encodes a whole file. Runs on the writer thread.
+     * @param copies Copies of the pairs, with their ids in the new file
+     * @return The file content
+     */
+    private static byte[] encode(List<Pair> copies) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            for (Pair pair : copies) {
+                writePair(out, pair);
+                for (PriceSeries.Point point : pair.series.getAllPoints()) {
+                    writePoint(out, pair, point);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writePair(DataOutputStream out, Pair pair) throws IOException {
+        out.writeByte(RECORD_PAIR);
+        out.writeInt(pair.id);
+        out.writeUTF(pair.giveType.name());
+        out.writeUTF(pair.wantType.name());
+    }
+
+    /**
+     * Encodes a point of a pair the file already knows
+     */
+    private static void writePoint(DataOutputStream out, Pair pair, PriceSeries.Point point) throws IOException {
+        out.writeByte(RECORD_POINT);
+        out.writeInt(pair.id);
+        out.writeByte(point.getResolution().ordinal());
+        out.writeLong(point.getTime());
+        out.writeFloat(point.getMin());
+        out.writeFloat(point.getMedian());
+        out.writeFloat(point.getMean());
+        out.writeFloat(point.getShops());
+        out.writeInt(point.getSamples());
+    }
+
+    private void append(byte[] content) {
+        writer.execute(() -> {
+            if (channel == null) {
+                return;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to append to " + file.getName(), e);
+            }
+        });
+    }
+
+    /**
+     * Replaces the file through a temporary file and reopens it for appending.
+     * Runs on the writer thread.
+     */
+    private void rewrite(byte[] content) {
+        closeChannel();
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(tempFile.toPath(), content);
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            // Appends would refer to pairs the old file does not know; they wait for the next rewrite
+            plugin.getLogger().log(Level.SEVERE, "Failed to write " + file.getName()
+                + "; new prices are kept in memory until the next attempt", e);
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to close " + file.getName(), e);
+        }
+        channel = null;
+    }
+
+    /**
+     * Reads the file into new series. Runs on the writer thread.
+     * @param sizes The ring sizes per resolution
+     * @return The series by give and want material, empty if there is no readable file
+     */
+    private Map<Material, Map<Material, PriceSeries>> load(int[] sizes) {
+        Map<Material, Map<Material, PriceSeries>> read = new EnumMap<>(Material.class);
+        if (!file.exists()) {
+            return read;
+        }
+
+        Map<Integer, PriceSeries> byId = new HashMap<>();
+        PriceSeries.Resolution[] resolutions = PriceSeries.Resolution.values();
+        long points = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Not a price history file");
+            }
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                if (type == RECORD_PAIR) {
+                    int id = in.readInt();
+                    Material giveType = Material.getMaterial(in.readUTF());
+                    Material wantType = Material.getMaterial(in.readUTF());
+                    if (giveType != null && wantType != null) {
+                        // Materials removed by a game update lose their history
+                        byId.put(id, read.computeIfAbsent(giveType, material -> new EnumMap<>(Material.class))
+                            .computeIfAbsent(wantType, material -> new PriceSeries(sizes)));
+                    }
+                } else if (type == RECORD_POINT) {
+                    PriceSeries series = byId.get(in.readInt());
+                    int resolution = in.readByte();
+                    PriceSeries.Point point = new PriceSeries.Point(resolutions[resolution], in.readLong(),
+                        in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(), in.readInt());
+                    if (series != null) {
+                        series.put(point);
+                        points++;
+                    }
+                } else {
+                    throw new IOException("Unknown record type " + type);
+                }
+            }
+        } catch (EOFException e) {
+            plugin.getLogger().warning("Ignored a partial record at the end of " + file.getName());
+        } catch (IOException | RuntimeException e) {
+            File damaged = new File(file.getPath() + ".damaged");
+            plugin.getLogger().log(Level.SEVERE, "Failed to read " + file.getName() + " after " + points
+                + " points, moving it to " + damaged.getName(), e);
+            try {
+                Files.move(file.toPath(), damaged.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException moveError) {
+                plugin.getLogger().log(Level.WARNING, "Failed to move " + file.getName(), moveError);
+            }
+        }
+        plugin.getLogger().info("Read " + points + " price history points for " + byId.size() + " item pairs");
+        return read;
+    }
+
+    /**
+     * A pair's series and its id in the current file
+     */
+    private static final class Pair {
+        private final Material giveType;
+        private final Material wantType;
+        private final PriceSeries series;
+        // -1 until the pair is written to the current file
+        private int id = -1;
+
+        Pair(Material giveType, Material wantType, PriceSeries series) {
+            this.giveType = giveType;
+            this.wantType = wantType;
+            this.series = series;
+        }
+    }
+
+    /**
+     * How a pair's median rate moved. Earlier points are null where the history
+     * does not reach back that far.
+     */
+    public static final class Summary {
+        private final Material giveType;
+        private final Material wantType;
+        private final PriceSeries.Point latest;
+        private final PriceSeries.Point hourAgo;
+        private final PriceSeries.Point dayAgo;
+        private final PriceSeries.Point weekAgo;
+        private final float weekLow;
+        private final float weekHigh;
+
+        Summary(Material giveType, Material wantType, PriceSeries.Point latest, PriceSeries.Point hourAgo,
+                PriceSeries.Point dayAgo, PriceSeries.Point weekAgo, float weekLow, float weekHigh) {
+            this.giveType = giveType;
+            this.wantType = wantType;
+            this.latest = latest;
+            this.hourAgo = hourAgo;
+            this.dayAgo = dayAgo;
+            this.weekAgo = weekAgo;
+            this.weekLow = weekLow;
+            this.weekHigh = weekHigh;
+        }
+
+        public Material getGiveType() {
+            return giveType;
+        }
+
+        public Material getWantType() {
+            return wantType;
+        }
+
+        public PriceSeries.Point getLatest() {
+            return latest;
+        }
+
+        public PriceSeries.Point getHourAgo() {
+            return hourAgo;
+        }
+
+        public PriceSeries.Point getDayAgo() {
+            return dayAgo;
+        }
+
+        public PriceSeries.Point getWeekAgo() {
+            return weekAgo;
+        }
+
+        /**
+         * Gets the lowest median rate of the last week
+         * @return Want items asked for one give item
+         */
+        public float getWeekLow() {
+            return weekLow;
+        }
+
+        /**
+         * Gets the highest median rate of the last week
+         * @return Want items asked for one give item
+         */
+        public float getWeekHigh() {
+            return weekHigh;
+        }
+    }
+}
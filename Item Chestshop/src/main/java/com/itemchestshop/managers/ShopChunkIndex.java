@@ -0,0 +1,170 @@
+package com.itemchestshop.managers;
+
+import com.itemchestshop.models.ChestShop;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Number of shop signs per chunk, per world.
+ * Listeners use it to dismiss clicks and block breaks in chunks without shops
+ * with one primitive lookup, before building a Location or touching the registry.
+ * Counts are kept in open-addressing tables of chunk keys, so lookups neither
+ * box nor allocate.
+ */
+public class ShopChunkIndex {
+
+    private final Map<String, ChunkCounts> worlds;
+
+    public ShopChunkIndex() {
+        this.worlds = new HashMap<>();
+    }
+
+    /**
+     * Adds a shop to the index
+     * @param chestShop The shop that was created or loaded
+     */
+    public void add(ChestShop chestShop) {
+        worlds.computeIfAbsent(chestShop.getWorldName(), name -> new ChunkCounts())
+                .add(chunkKey(chestShop.getX() >> 4, chestShop.getZ() >> 4), 1);
+    }
+
+    /**
+     * Removes a shop from the index
+     * @param chestShop The shop that was removed
+     */
+    public void remove(ChestShop chestShop) {
+        String worldName = chestShop.getWorldName();
+        ChunkCounts counts = worlds.get(worldName);
+        if (counts == null) {
+            return;
+        }
+
+        counts.add(chunkKey(chestShop.getX() >> 4, chestShop.getZ() >> 4), -1);
+        if (counts.isEmpty()) {
+            worlds.remove(worldName);
+        }
+    }
+
+    /**
+     * Removes all shops from the index
+     */
+    public void clear() {
+        worlds.clear();
+    }
+
+    /**
+     * Checks whether a chunk contains at least one shop sign
+     * @param worldName The name of the world
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @return true if a shop sign is in the chunk
+     */
+    public boolean hasShops(String worldName, int chunkX, int chunkZ) {
+        ChunkCounts counts = worlds.get(worldName);
+        return counts != null && counts.get(chunkKey(chunkX, chunkZ)) > 0;
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Open-addressing map from chunk key to shop count with linear probing.
+     * Entries whose count drops to zero are deleted by shifting later entries back,
+     * so the table never fills up with tombstones.
+     */
+    private static final class ChunkCounts {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private long[] keys;
+        private int[] counts;
+        private int size;
+
+        ChunkCounts() {
+            this.keys = new long[INITIAL_CAPACITY];
+            this.counts = new int[INITIAL_CAPACITY];
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); counts[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return counts[slot];
+                }
+            }
+            return 0;
+        }
+
+        void add(long key, int delta) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (counts[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+
+            if (counts[slot] == 0) {
+                if (delta <= 0) {
+                    return;
+                }
+                keys[slot] = key;
+                counts[slot] = delta;
+                if (++size * 2 > keys.length) {
+                    resize(keys.length * 2);
+                }
+                return;
+            }
+
+            counts[slot] += delta;
+            if (counts[slot] <= 0) {
+                delete(slot);
+            }
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void delete(int slot) {
+            int mask = keys.length - 1;
+            counts[slot] = 0;
+            size--;
+
+            // Move back entries that probed past the freed slot
+            int next = (slot + 1) & mask;
+            while (counts[next] != 0) {
+                int home = slot(keys[next], mask);
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    keys[slot] = keys[next];
+                    counts[slot] = counts[next];
+                    counts[next] = 0;
+                    slot = next;
+                }
+                next = (next + 1) & mask;
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[capacity];
+            counts = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldCounts[i] != 0) {
+                    int slot = slot(oldKeys[i], mask);
+                    while (counts[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
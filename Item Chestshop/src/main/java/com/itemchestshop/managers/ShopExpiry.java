@@ -0,0 +1,306 @@
+package com.itemchestshop.managers;
+
+import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.api.events.ShopRemoveEvent;
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.utils.ConfigManager;
+import com.itemchestshop.utils.DataManager;
+import com.itemchestshop.utils.ItemParser;
+import com.itemchestshop.utils.Messages;
+import com.itemchestshop.utils.TimingWheel;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+
+/**
+ * Removes shops that have been inactive for too long.
+ *
+ * A shop is active when it trades and, if configured, when its owner logs in.
+ * Each shop waits on a {@link TimingWheel} for its next warning or its expiry,
+ * so a check only touches the shops that are due rather than the registry.
+ * Trades and logins do not reschedule anything: when a shop comes up, its
+ * deadline is worked out again from its last activity and the shop waits again
+ * if the deadline moved. Shops removed meanwhile are dropped when they come up.
+ *
+ * Owners are warned once per configured stage before the deadline, in chat if
+ * they are online and with a summary when they join otherwise. Expired shops
+ * are appended to the archive, unregistered and saved once per check; their
+ * signs and chests stay in place.
+ */
+public class ShopExpiry {
+
+    private static final long TICK_MILLIS = 60_000L;
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final long CHECK_INTERVAL_TICKS = 20L * 60;
+
+    private final ItemChestShopPlugin plugin;
+    private final ChestShopManager chestShopManager;
+    private final DataManager dataManager;
+    // Number of shops with a pending warning, per owner, for the reminder on join
+    private final Map<UUID, Integer> warnedShops;
+
+    private TimingWheel<ChestShop> wheel;
+    private BukkitTask task;
+    private long inactiveMillis;
+    private boolean countOwnerLogins;
+    // Warning stages before the deadline, furthest first
+    private long[] warnMillis;
+    private long expiredCount;
+
+    public ShopExpiry(ItemChestShopPlugin plugin, ChestShopManager chestShopManager, DataManager dataManager) {
+        this.plugin = plugin;
+        this.chestShopManager = chestShopManager;
+        this.dataManager = dataManager;
+        this.warnedShops = new HashMap<>();
+        this.warnMillis = new long[0];
+    }
+
+    /**
+     * Reads the settings from the configuration and schedules every shop again,
+     * as their deadlines depend on them
+     */
+    public void configure() {
+        ConfigManager configManager = plugin.getConfigManager();
+        long inactiveDays = configManager.getExpiryInactiveDays();
+        this.inactiveMillis = inactiveDays * DAY_MILLIS;
+        this.countOwnerLogins = configManager.isExpiryCountingOwnerLogins();
+        this.warnMillis = configManager.getExpiryWarnDays().stream()
+            .filter(days -> days > 0 && days < inactiveDays)
+            .distinct()
+            .sorted((a, b) -> Integer.compare(b, a))
+            .mapToLong(days -> days * DAY_MILLIS)
+            .toArray();
+
+        boolean enabled = configManager.isExpiryEnabled();
+        if (enabled && task == null) {
+            task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::check, CHECK_INTERVAL_TICKS, CHECK_INTERVAL_TICKS);
+        } else if (!enabled && task != null) {
+            task.cancel();
+            task = null;
+        }
+
+        wheel = enabled ? new TimingWheel<>(TICK_MILLIS, System.currentTimeMillis()) : null;
+        warnedShops.clear();
+        chestShopManager.forEachShop(chestShop -> {
+            if (chestShop.getExpiryWarnings() > 0) {
+                warnedShops.merge(chestShop.getOwner(), 1, Integer::sum);
+            }
+            add(chestShop);
+        });
+    }
+
+    /**
+     * Schedules a newly registered shop
+     * @param chestShop The shop
+     */
+    public void add(ChestShop chestShop) {
+        if (wheel != null) {
+            // Starts at the first warning; later stages are worked out when it comes up
+            wheel.schedule(chestShop, getDeadline(chestShop) - (warnMillis.length > 0 ? warnMillis[0] : 0));
+        }
+    }
+
+    /**
+     * Drops a removed shop's warnings. Its entry in the wheel is dropped when it comes up.
+     * @param chestShop The removed shop
+     */
+    public void forget(ChestShop chestShop) {
+        if (chestShop.getExpiryWarnings() != 0) {
+            chestShop.setExpiryWarnings(0);
+            decrement(chestShop.getOwner());
+        }
+    }
+
+    /**
+     * Drops every scheduled shop and warning, for when the registry is replaced
+     */
+    public void clear() {
+        warnedShops.clear();
+        if (wheel != null) {
+            wheel.clear();
+        }
+    }
+
+    /**
+     * Gets when a shop expires unless it is active again
+     * @param chestShop The shop
+     * @return The time in epoch milliseconds
+     */
+    public long getDeadline(ChestShop chestShop) {
+        long lastActive = chestShop.getTradeTime();
+        if (countOwnerLogins) {
+            lastActive = Math.max(lastActive, chestShop.getOwnerLogin());
+        }
+        return lastActive + inactiveMillis;
+    }
+
+    /**
+     * Gets the number of an owner's shops that were warned about expiring. When
+     * logins count as activity, the login itself keeps them, so none are reported.
+     * @param owner The owner's UUID
+     * @return The number of shops with a pending warning
+     */
+    public int getWarnedShopCount(UUID owner) {
+        return countOwnerLogins ? 0 : warnedShops.getOrDefault(owner, 0);
+    }
+
+    /**
+     * Gets the number of shops expired since the server started
+     * @return The number of expired shops
+     */
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * Reads the archive of expired shops on a background thread
+     * @param onDone Called on the main thread with the shops in the order they expired,
+     *               or with the error if the archive cannot be read
+     */
+    public void readArchive(BiConsumer<List<DataManager.ExpiredShop>, IOException> onDone) {
+        Map<String, World> worlds = DataManager.snapshotWorlds();
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<DataManager.ExpiredShop> expiredShops = null;
+            IOException error = null;
+            try {
+                expiredShops = dataManager.loadArchive(worlds);
+            } catch (IOException e) {
+                error = e;
+            }
+            if (!plugin.isEnabled()) {
+                return;
+            }
+
+            List<DataManager.ExpiredShop> result = expiredShops;
+            IOException failure = error;
+            plugin.getServer().getScheduler().runTask(plugin, () -> onDone.accept(result, failure));
+        });
+    }
+
+    /**
+     * Registers expired shops again, as if they had just traded. Shops whose
+     * sign has another shop now are left out.
+     * @param expiredShops The shops read back from the archive
+     * @return The number of shops registered
+     */
+    public int restore(Collection<ChestShop> expiredShops) {
+        long now = System.currentTimeMillis();
+        for (ChestShop chestShop : expiredShops) {
+            chestShop.setTradeTime(now);
+            chestShop.setExpiryWarnings(0);
+        }
+        int restored = chestShopManager.registerShops(expiredShops);
+        if (restored > 0) {
+            plugin.getLogger().info("Restored " + restored + " expired shops");
+        }
+        return restored;
+    }
+
+    /**
+     * Fires the shops that are due, then archives and removes the expired ones
+     */
+    private void check() {
+        if (wheel == null || !chestShopManager.isWritable()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<ChestShop> expired = new ArrayList<>();
+        wheel.advance(now, chestShop -> fire(chestShop, now, expired));
+        if (expired.isEmpty()) {
+            return;
+        }
+
+        try {
+            dataManager.archiveShops(expired, now);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to archive " + expired.size()
+                + " expired shops; keeping them until the next check", e);
+            for (ChestShop chestShop : expired) {
+                wheel.schedule(chestShop, now);
+            }
+            return;
+        }
+
+        int removed = 0;
+        for (ChestShop chestShop : expired) {
+            if (chestShopManager.unregisterShop(chestShop, ShopRemoveEvent.Reason.EXPIRED)) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            expiredCount += removed;
+            chestShopManager.saveShops();
+            plugin.getLogger().info("Expired " + removed + " shops inactive for " + inactiveMillis / DAY_MILLIS
+                + " days; they are kept in expired-shops.ndjson");
+        }
+    }
+
+    /**
+     * Expires, warns or reschedules a shop that came up
+     * @param chestShop The shop
+     * @param now The current time in epoch milliseconds
+     * @param expired Collects the shops past their deadline
+     */
+    private void fire(ChestShop chestShop, long now, List<ChestShop> expired) {
+        if (!chestShopManager.isRegistered(chestShop)) {
+            return;
+        }
+
+        long deadline = getDeadline(chestShop);
+        if (now >= deadline) {
+            expired.add(chestShop);
+            return;
+        }
+
+        int reached = 0;
+        while (reached < warnMillis.length && now >= deadline - warnMillis[reached]) {
+            reached++;
+        }
+        int warned = chestShop.getExpiryWarnings();
+        if (reached > warned) {
+            // Stages passed while the server was down get a single warning
+            warn(chestShop, deadline - now);
+            if (warned == 0) {
+                warnedShops.merge(chestShop.getOwner(), 1, Integer::sum);
+            }
+        } else if (reached == 0 && warned > 0) {
+            // Active again since the last warning
+            decrement(chestShop.getOwner());
+        }
+        chestShop.setExpiryWarnings(reached);
+        wheel.schedule(chestShop, reached < warnMillis.length ? deadline - warnMillis[reached] : deadline);
+    }
+
+    private void warn(ChestShop chestShop, long remaining) {
+        Player owner = plugin.getServer().getPlayer(chestShop.getOwner());
+        if (owner == null || !owner.isOnline()) {
+            // Offline owners get a summary when they join
+            return;
+        }
+
+        Messages messages = plugin.getConfigManager().getMessages();
+        owner.sendMessage(messages.get(Messages.Key.EXPIRY_WARNING,
+            "days", String.valueOf(Math.max(1, (remaining + DAY_MILLIS - 1) / DAY_MILLIS)),
+            "give", ItemParser.itemToString(chestShop.getGiveItem()),
+            "want", ItemParser.itemToString(chestShop.getWantItem()),
+            "world", chestShop.getWorldName(),
+            "x", String.valueOf(chestShop.getX()),
+            "y", String.valueOf(chestShop.getY()),
+            "z", String.valueOf(chestShop.getZ())));
+    }
+
+    private void decrement(UUID owner) {
+        warnedShops.computeIfPresent(owner, (id, count) -> count > 1 ? count - 1 : null);
+    }
+}
@@ -0,0 +1,358 @@
+package com.itemchestshop.managers;
+
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.models.ShopTables;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * All shops by sign position. Each world has an open-addressing table keyed by
+ * the packed block position, so the registry holds no Location keys, map
+ * entries or boxed keys, and lookups from a block do not allocate.
+ */
+public class ShopRegistry {
+
+    private Table[] worlds;
+    private int size;
+    private int modCount;
+
+    public ShopRegistry() {
+        this.worlds = new Table[0];
+    }
+
+    /**
+     * Gets the shop with its sign at a block
+     * @param world The world
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return The shop, or null if there is none
+     */
+    public ChestShop get(World world, int x, int y, int z) {
+        return get(ShopTables.indexOf(world), x, y, z);
+    }
+
+    /**
+     * Gets the shop registered at another shop's sign, by world index, so it
+     * also works while the shop's world is unloaded
+     * @param chestShop The shop whose sign to look at
+     * @return The registered shop, which may be another one, or null
+     */
+    public ChestShop getAt(ChestShop chestShop) {
+        return get(chestShop.getWorldIndex(), chestShop.getX(), chestShop.getY(), chestShop.getZ());
+    }
+
+    /**
+     * Adds a shop, replacing any shop with its sign at the same block
+     * @param chestShop The shop
+     * @return The replaced shop, or null
+     */
+    public ChestShop put(ChestShop chestShop) {
+        int index = chestShop.getWorldIndex();
+        if (index >= worlds.length) {
+            worlds = Arrays.copyOf(worlds, index + 1);
+        }
+        if (worlds[index] == null) {
+            worlds[index] = new Table();
+        }
+
+        ChestShop replaced = worlds[index].put(pack(chestShop.getX(), chestShop.getY(), chestShop.getZ()), chestShop);
+        if (replaced == null) {
+            size++;
+        }
+        modCount++;
+        return replaced;
+    }
+
+    /**
+     * Removes the shop with its sign at a block
+     * @param world The world
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return The removed shop, or null if there was none
+     */
+    public ChestShop remove(World world, int x, int y, int z) {
+        return remove(ShopTables.indexOf(world), x, y, z);
+    }
+
+    /**
+     * Removes the shop registered at another shop's sign, by world index, so it
+     * also works while the shop's world is unloaded
+     * @param chestShop The shop whose sign to clear
+     * @return The removed shop, which may be another one, or null
+     */
+    public ChestShop removeAt(ChestShop chestShop) {
+        return remove(chestShop.getWorldIndex(), chestShop.getX(), chestShop.getY(), chestShop.getZ());
+    }
+
+    private ChestShop get(int index, int x, int y, int z) {
+        if (index < 0 || index >= worlds.length || worlds[index] == null) {
+            return null;
+        }
+        return worlds[index].get(pack(x, y, z));
+    }
+
+    private ChestShop remove(int index, int x, int y, int z) {
+        if (index < 0 || index >= worlds.length || worlds[index] == null) {
+            return null;
+        }
+
+        ChestShop removed = worlds[index].remove(pack(x, y, z));
+        if (removed != null) {
+            size--;
+            modCount++;
+        }
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        worlds = new Table[0];
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Gets the number of changes made to the registry so far
+     * @return A count that changes whenever a shop is added, replaced or removed
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Visits every shop
+     * @param action The action to run for each shop
+     */
+    public void forEach(Consumer<ChestShop> action) {
+        for (Table table : worlds) {
+            if (table != null) {
+                table.forEach(action);
+            }
+        }
+    }
+
+    /**
+     * Iterates over every shop without copying. The iterator fails once the
+     * registry changes.
+     * @return An iterator over the live registry
+     */
+    public Iterator<ChestShop> iterator() {
+        return new ShopIterator(worlds, 0, worlds.length);
+    }
+
+    /**
+     * Iterates over the shops of one world without copying or visiting other
+     * worlds. The iterator fails once the registry changes.
+     * @param world The world
+     * @return An iterator over the world's shops in the live registry
+     */
+    public Iterator<ChestShop> iterator(World world) {
+        int index = ShopTables.indexOf(world);
+        if (index < 0 || index >= worlds.length) {
+            return new ShopIterator(worlds, 0, 0);
+        }
+        return new ShopIterator(worlds, index, index + 1);
+    }
+
+    /**
+     * Copies the shops into a list
+     * @return A new list of all shops
+     */
+    public List<ChestShop> values() {
+        List<ChestShop> shops = new ArrayList<>(size);
+        forEach(shops::add);
+        return shops;
+    }
+
+    /**
+     * Packs block coordinates into one long, 26 bits for x and z and 12 for y
+     */
+    private static long pack(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    /**
+     * Walks the slots of a range of world tables, skipping empty ones
+     */
+    private final class ShopIterator implements Iterator<ChestShop> {
+        private final Table[] tables;
+        private final int end;
+        private final int expectedModCount;
+        private int table;
+        private int slot;
+        private ChestShop next;
+
+        ShopIterator(Table[] tables, int start, int end) {
+            this.tables = tables;
+            this.end = end;
+            this.expectedModCount = modCount;
+            this.table = start;
+            this.slot = -1;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public ChestShop next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException("Shops changed while iterating");
+            }
+            ChestShop current = next;
+            advance();
+            return current;
+        }
+
+        private void advance() {
+            next = null;
+            for (; table < end; table++, slot = -1) {
+                Table current = tables[table];
+                if (current == null) {
+                    continue;
+                }
+                ChestShop[] values = current.values;
+                while (++slot < values.length) {
+                    if (values[slot] != null) {
+                        next = values[slot];
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Open-addressing map from packed position to shop with linear probing.
+     * Removed entries are deleted by shifting later entries back, as in
+     * {@link ShopChunkIndex}.
+     */
+    private static final class Table {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private long[] keys;
+        private ChestShop[] values;
+        private int size;
+
+        Table() {
+            this.keys = new long[INITIAL_CAPACITY];
+            this.values = new ChestShop[INITIAL_CAPACITY];
+        }
+
+        ChestShop get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = slot(key, mask); values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        ChestShop put(long key, ChestShop chestShop) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (values[slot] != null) {
+                if (keys[slot] == key) {
+                    ChestShop replaced = values[slot];
+                    values[slot] = chestShop;
+                    return replaced;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            keys[slot] = key;
+            values[slot] = chestShop;
+            // Resize at 3/4 load
+            if (++size * 4 > keys.length * 3) {
+                resize(keys.length * 2);
+            }
+            return null;
+        }
+
+        ChestShop remove(long key) {
+            int mask = keys.length - 1;
+            int slot = slot(key, mask);
+            while (values[slot] != null) {
+                if (keys[slot] == key) {
+                    ChestShop removed = values[slot];
+                    delete(slot);
+                    return removed;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        void forEach(Consumer<ChestShop> action) {
+            for (ChestShop chestShop : values) {
+                if (chestShop != null) {
+                    action.accept(chestShop);
+                }
+            }
+        }
+
+        private void delete(int slot) {
+            int mask = keys.length - 1;
+            values[slot] = null;
+            size--;
+
+            // Move back entries that probed past the freed slot
+            int next = (slot + 1) & mask;
+            while (values[next] != null) {
+                int home = slot(keys[next], mask);
+                if (((next - home) & mask) >= ((next - slot) & mask)) {
+                    keys[slot] = keys[next];
+                    values[slot] = values[next];
+                    values[next] = null;
+                    slot = next;
+                }
+                next = (next + 1) & mask;
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            ChestShop[] oldValues = values;
+            keys = new long[capacity];
+            values = new ChestShop[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    int slot = slot(oldKeys[i], mask);
+                    while (values[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
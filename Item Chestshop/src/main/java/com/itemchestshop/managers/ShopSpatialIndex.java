@@ -0,0 +1,212 @@
+package com.itemchestshop.managers;
+
+import com.itemchestshop.models.ChestShop;
+import org.bukkit.Location;
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Spatial index of shops per world and give material.
+ * Shops are bucketed into square grid cells, and nearest-shop queries visit
+ * cells in rings around the query point until no closer shop can exist.
+ */
+public class ShopSpatialIndex {
+
+    private static final int CELL_SHIFT = 8;
+    private static final int CELL_SIZE = 1 << CELL_SHIFT;
+
+    private final Map<String, Map<Material, Grid>> worlds;
+
+    public ShopSpatialIndex() {
+        this.worlds = new HashMap<>();
+    }
+
+    /**
+     * Adds a shop to the index
+     * @param chestShop The shop that was created or loaded
+     */
+    public void add(ChestShop chestShop) {
+        worlds.computeIfAbsent(chestShop.getWorldName(), name -> new EnumMap<>(Material.class))
+                .computeIfAbsent(chestShop.getGiveTemplate().getType(), type -> new Grid())
+                .add(chestShop.getX() >> CELL_SHIFT, chestShop.getZ() >> CELL_SHIFT, chestShop);
+    }
+
+    /**
+     * Removes a shop from the index
+     * @param chestShop The shop that was removed
+     */
+    public void remove(ChestShop chestShop) {
+        String worldName = chestShop.getWorldName();
+        Map<Material, Grid> grids = worlds.get(worldName);
+        if (grids == null) {
+            return;
+        }
+
+        Material giveType = chestShop.getGiveTemplate().getType();
+        Grid grid = grids.get(giveType);
+        if (grid == null) {
+            return;
+        }
+
+        grid.remove(chestShop.getX() >> CELL_SHIFT, chestShop.getZ() >> CELL_SHIFT, chestShop);
+        if (grid.isEmpty()) {
+            grids.remove(giveType);
+            if (grids.isEmpty()) {
+                worlds.remove(worldName);
+            }
+        }
+    }
+
+    /**
+     * Removes all shops from the index
+     */
+    public void clear() {
+        worlds.clear();
+    }
+
+    /**
+     * Finds the shops closest to a location that sell an item
+     * @param origin The location to search from
+     * @param giveType The material the shops must give
+     * @param limit The maximum number of shops to return
+     * @param filter Additional condition a shop must meet
+     * @return Matching shops, closest first
+     */
+    public List<ChestShop> findNearest(Location origin, Material giveType, int limit, Predicate<ChestShop> filter) {
+        Map<Material, Grid> grids = worlds.get(origin.getWorld().getName());
+        Grid grid = grids == null ? null : grids.get(giveType);
+        if (grid == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        double x = origin.getX();
+        double y = origin.getY();
+        double z = origin.getZ();
+        int centerX = origin.getBlockX() >> CELL_SHIFT;
+        int centerZ = origin.getBlockZ() >> CELL_SHIFT;
+
+        // Farthest shops first, so the head is the one to evict
+        Comparator<Neighbor> byDistance = Comparator.comparingDouble(neighbor -> neighbor.distanceSquared);
+        PriorityQueue<Neighbor> nearest = new PriorityQueue<>(limit + 1, byDistance.reversed());
+
+        int firstRing = Math.max(
+                Math.max(grid.minCellX - centerX, centerX - grid.maxCellX),
+                Math.max(grid.minCellZ - centerZ, centerZ - grid.maxCellZ));
+        int lastRing = Math.max(
+                Math.max(centerX - grid.minCellX, grid.maxCellX - centerX),
+                Math.max(centerZ - grid.minCellZ, grid.maxCellZ - centerZ));
+
+        for (int ring = Math.max(0, firstRing); ring <= lastRing; ring++) {
+            // Every cell of this ring is at least (ring - 1) cells away from the origin's cell
+            if (nearest.size() == limit) {
+                double reach = (double) (ring - 1) * CELL_SIZE;
+                if (ring > 0 && nearest.peek().distanceSquared <= reach * reach) {
+                    break;
+                }
+            }
+
+            int fromX = Math.max(centerX - ring, grid.minCellX);
+            int toX = Math.min(centerX + ring, grid.maxCellX);
+            int fromZ = Math.max(centerZ - ring, grid.minCellZ);
+            int toZ = Math.min(centerZ + ring, grid.maxCellZ);
+
+            for (int cellX = fromX; cellX <= toX; cellX++) {
+                boolean edgeColumn = cellX == centerX - ring || cellX == centerX + ring;
+                for (int cellZ = fromZ; cellZ <= toZ; cellZ++) {
+                    if (!edgeColumn && cellZ != centerZ - ring && cellZ != centerZ + ring) {
+                        // Skip straight to the far edge of this column
+                        cellZ = centerZ + ring - 1;
+                        continue;
+                    }
+
+                    List<ChestShop> cell = grid.cells.get(cellKey(cellX, cellZ));
+                    if (cell == null) {
+                        continue;
+                    }
+
+                    for (ChestShop chestShop : cell) {
+                        double dx = chestShop.getX() - x;
+                        double dy = chestShop.getY() - y;
+                        double dz = chestShop.getZ() - z;
+                        double distanceSquared = dx * dx + dy * dy + dz * dz;
+
+                        if (nearest.size() == limit && distanceSquared >= nearest.peek().distanceSquared) {
+                            continue;
+                        }
+                        if (!filter.test(chestShop)) {
+                            continue;
+                        }
+
+                        nearest.add(new Neighbor(chestShop, distanceSquared));
+                        if (nearest.size() > limit) {
+                            nearest.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Neighbor> sorted = new ArrayList<>(nearest);
+        sorted.sort(byDistance);
+        List<ChestShop> result = new ArrayList<>(sorted.size());
+        for (Neighbor neighbor : sorted) {
+            result.add(neighbor.chestShop);
+        }
+        return result;
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Grid cells of one world and give material, with the bounding box of occupied cells.
+     * The bounds only ever grow, which keeps removal cheap and still bounds the search.
+     */
+    private static class Grid {
+        private final Map<Long, List<ChestShop>> cells = new HashMap<>();
+        private int minCellX = Integer.MAX_VALUE;
+        private int maxCellX = Integer.MIN_VALUE;
+        private int minCellZ = Integer.MAX_VALUE;
+        private int maxCellZ = Integer.MIN_VALUE;
+
+        void add(int cellX, int cellZ, ChestShop chestShop) {
+            cells.computeIfAbsent(cellKey(cellX, cellZ), key -> new ArrayList<>(2)).add(chestShop);
+            minCellX = Math.min(minCellX, cellX);
+            maxCellX = Math.max(maxCellX, cellX);
+            minCellZ = Math.min(minCellZ, cellZ);
+            maxCellZ = Math.max(maxCellZ, cellZ);
+        }
+
+        void remove(int cellX, int cellZ, ChestShop chestShop) {
+            long key = cellKey(cellX, cellZ);
+            List<ChestShop> cell = cells.get(key);
+            if (cell != null && cell.remove(chestShop) && cell.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+
+        boolean isEmpty() {
+            return cells.isEmpty();
+        }
+    }
+
+    private static class Neighbor {
+        private final ChestShop chestShop;
+        private final double distanceSquared;
+
+        Neighbor(ChestShop chestShop, double distanceSquared) {
+            this.chestShop = chestShop;
+            this.distanceSquared = distanceSquared;
+        }
+    }
+}
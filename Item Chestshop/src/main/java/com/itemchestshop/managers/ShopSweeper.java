@@ -0,0 +1,186 @@
+package com.itemchestshop.managers;
+
+import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.utils.ShopBlocks;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes shops whose sign or chest disappeared without a block break event,
+ * for example through WorldEdit, explosions, pistons or chunk regeneration.
+ *
+ * Every tick the sweeper checks shops from a snapshot of the registry until its
+ * time budget is spent, continuing where it stopped on the next tick. Shops in
+ * unloaded chunks are skipped and checked again on a later lap, so sweeping
+ * never loads chunks. Orphans are removed in batches with a single save.
+ *
+ * Shops in loaded chunks whose stock snapshot is older than a lap are
+ * rescanned on the way, so the snapshot shown in listings catches up with
+ * chunks that were loaded since, and with changes no event reported.
+ */
+public class ShopSweeper {
+
+    // Clock reads are amortized over this many shops
+    private static final int CHECKS_PER_CLOCK_READ = 8;
+    // Pending removals are flushed at this size, at the end of a lap, or after FLUSH_DELAY_TICKS
+    private static final int MAX_BATCH = 256;
+    private static final int FLUSH_DELAY_TICKS = 600;
+
+    private final ItemChestShopPlugin plugin;
+    private final ChestShopManager chestShopManager;
+    private final List<Location> pendingRemovals;
+
+    private BukkitTask task;
+    private long budgetNanos;
+    private long lapIntervalNanos;
+
+    private ChestShop[] lap;
+    private int cursor;
+    private boolean swept;
+    private long lapStartedAt;
+    private int ticksSinceFirstPending;
+    private long lapsCompleted;
+    private long orphansRemoved;
+
+    public ShopSweeper(ItemChestShopPlugin plugin, ChestShopManager chestShopManager) {
+        this.plugin = plugin;
+        this.chestShopManager = chestShopManager;
+        this.pendingRemovals = new ArrayList<>();
+        this.lap = new ChestShop[0];
+    }
+
+    /**
+     * Starts or stops the sweeper according to the configuration
+     */
+    public void configure() {
+        this.budgetNanos = plugin.getConfigManager().getSweeperBudgetMicros() * 1000L;
+        this.lapIntervalNanos = plugin.getConfigManager().getSweeperLapIntervalSeconds() * 1_000_000_000L;
+
+        boolean enabled = plugin.getConfigManager().isSweeperEnabled();
+        if (enabled && task == null) {
+            task = plugin.getServer().getScheduler().runTaskTimer(plugin, this::tick, 20L, 1L);
+        } else if (!enabled && task != null) {
+            task.cancel();
+            task = null;
+            pendingRemovals.clear();
+        }
+    }
+
+    /**
+     * Checks shops until the tick's budget is spent
+     */
+    public void tick() {
+        if (!chestShopManager.isWritable()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        if (cursor >= lap.length) {
+            if (swept && start - lapStartedAt < lapIntervalNanos) {
+                flushIfDue();
+                return;
+            }
+            lap = chestShopManager.getShops().toArray(new ChestShop[0]);
+            cursor = 0;
+            swept = true;
+            lapStartedAt = start;
+        }
+
+        long staleBefore = System.currentTimeMillis() - lapIntervalNanos / 1_000_000L;
+        int checked = 0;
+        while (cursor < lap.length) {
+            ChestShop chestShop = lap[cursor];
+            lap[cursor++] = null;
+            if (isOrphaned(chestShop)) {
+                pendingRemovals.add(chestShop.getSignLocation());
+            } else if (chestShop.getStockTime() < staleBefore && isChunkLoaded(chestShop)) {
+                chestShop.scanStock();
+                chestShopManager.getStockMonitor().check(chestShop);
+            }
+
+            if (++checked % CHECKS_PER_CLOCK_READ == 0 && System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+        }
+
+        if (cursor >= lap.length) {
+            lapsCompleted++;
+            flush();
+        } else {
+            flushIfDue();
+        }
+    }
+
+    /**
+     * Removes the shops found so far, saving once
+     */
+    public void flush() {
+        ticksSinceFirstPending = 0;
+        if (pendingRemovals.isEmpty()) {
+            return;
+        }
+
+        // The sign or chest may have been put back since the shop was checked
+        pendingRemovals.removeIf(location -> !isOrphaned(chestShopManager.getChestShop(location)));
+        int removed = chestShopManager.removeChestShops(pendingRemovals);
+        pendingRemovals.clear();
+        if (removed > 0) {
+            orphansRemoved += removed;
+            plugin.getLogger().info("Removed " + removed + " shops whose sign or chest no longer exists");
+        }
+    }
+
+    public long getLapsCompleted() {
+        return lapsCompleted;
+    }
+
+    public long getOrphansRemoved() {
+        return orphansRemoved;
+    }
+
+    private void flushIfDue() {
+        if (pendingRemovals.isEmpty()) {
+            return;
+        }
+        if (pendingRemovals.size() >= MAX_BATCH || ++ticksSinceFirstPending >= FLUSH_DELAY_TICKS) {
+            flush();
+        }
+    }
+
+    /**
+     * Checks whether a shop lost its sign or chest, without loading chunks
+     * @param chestShop The shop, or null if it was removed meanwhile
+     * @return true if the sign or the chest is gone, false if unknown because its chunk is unloaded
+     */
+    private boolean isOrphaned(ChestShop chestShop) {
+        if (chestShop == null) {
+            return false;
+        }
+
+        if (!isChunkLoaded(chestShop)) {
+            return false;
+        }
+
+        World world = chestShop.getWorld();
+        Material signType = world.getBlockAt(chestShop.getX(), chestShop.getY(), chestShop.getZ()).getType();
+        Material chestType = world.getBlockAt(chestShop.getX(), chestShop.getChestY(), chestShop.getZ()).getType();
+        return !ShopBlocks.isSign(signType) || !ShopBlocks.isChest(chestType);
+    }
+
+    /**
+     * Checks whether a shop's blocks can be read without loading a chunk
+     * @param chestShop The shop
+     * @return true if the chunk of its sign and chest is loaded
+     */
+    private static boolean isChunkLoaded(ChestShop chestShop) {
+        // The chest is in the same column as the sign, so both are in one chunk
+        World world = chestShop.getWorld();
+        return world != null && world.isChunkLoaded(chestShop.getX() >> 4, chestShop.getZ() >> 4);
+    }
+}
@@ -0,0 +1,138 @@
+package com.itemchestshop.managers;
+
+import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.utils.ConfigManager;
+import com.itemchestshop.utils.ItemParser;
+import com.itemchestshop.utils.Messages;
+import org.bukkit.entity.Player;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Tells owners when a shop is about to run out of stock or payment space.
+ *
+ * Checks only read the counts a shop cached during its last chest scan, so they
+ * cost two comparisons per trade. An alert fires once when a count drops to the
+ * low threshold and is re-armed only after the count recovers to the higher
+ * re-arm threshold, so a shop hovering around the threshold does not flap.
+ */
+public class StockMonitor {
+
+    private static final int LOW_STOCK = 1;
+    private static final int LOW_SPACE = 2;
+
+    private final ItemChestShopPlugin plugin;
+    // Number of shops with an active alert, per owner, for the reminder on join
+    private final Map<UUID, Integer> alertedShops;
+
+    private boolean enabled;
+    private int lowThreshold;
+    private int rearmThreshold;
+
+    public StockMonitor(ItemChestShopPlugin plugin) {
+        this.plugin = plugin;
+        this.alertedShops = new HashMap<>();
+    }
+
+    /**
+     * Reads the thresholds from the configuration
+     */
+    public void configure() {
+        ConfigManager configManager = plugin.getConfigManager();
+        this.enabled = configManager.isStockAlertsEnabled();
+        this.lowThreshold = configManager.getStockAlertLowThreshold();
+        this.rearmThreshold = Math.max(lowThreshold + 1, configManager.getStockAlertRearmThreshold());
+    }
+
+    /**
+     * Compares a shop's cached counts with the thresholds and alerts its owner on a crossing
+     * @param chestShop The shop whose counts may have changed
+     */
+    public void check(ChestShop chestShop) {
+        if (!enabled) {
+            return;
+        }
+
+        int before = chestShop.getAlerts();
+        int after = update(chestShop, before, LOW_STOCK, chestShop.getStockTrades());
+        after = update(chestShop, after, LOW_SPACE, chestShop.getSpaceTrades());
+        if (after == before) {
+            return;
+        }
+
+        chestShop.setAlerts(after);
+        if (before == 0) {
+            alertedShops.merge(chestShop.getOwner(), 1, Integer::sum);
+        } else if (after == 0) {
+            decrement(chestShop.getOwner());
+        }
+    }
+
+    /**
+     * Drops a removed shop's alerts
+     * @param chestShop The removed shop
+     */
+    public void forget(ChestShop chestShop) {
+        if (chestShop.getAlerts() != 0) {
+            chestShop.setAlerts(0);
+            decrement(chestShop.getOwner());
+        }
+    }
+
+    /**
+     * Drops all alerts, for when the registry is replaced
+     */
+    public void clear() {
+        alertedShops.clear();
+    }
+
+    /**
+     * Gets the number of an owner's shops that are low on stock or payment space
+     * @param owner The owner's UUID
+     * @return The number of shops with an active alert
+     */
+    public int getAlertedShopCount(UUID owner) {
+        return alertedShops.getOrDefault(owner, 0);
+    }
+
+    private int update(ChestShop chestShop, int alerts, int alert, int trades) {
+        if (trades == ChestShop.UNKNOWN) {
+            return alerts;
+        }
+
+        if ((alerts & alert) == 0) {
+            if (trades <= lowThreshold) {
+                notifyOwner(chestShop, alert, trades);
+                return alerts | alert;
+            }
+        } else if (trades >= rearmThreshold) {
+            return alerts & ~alert;
+        }
+        return alerts;
+    }
+
+    private void notifyOwner(ChestShop chestShop, int alert, int trades) {
+        Player owner = plugin.getServer().getPlayer(chestShop.getOwner());
+        if (owner == null || !owner.isOnline()) {
+            // Offline owners get a summary when they join
+            return;
+        }
+
+        Messages messages = plugin.getConfigManager().getMessages();
+        owner.sendMessage(messages.get(alert == LOW_STOCK ? Messages.Key.STOCK_ALERT_LOW_STOCK : Messages.Key.STOCK_ALERT_LOW_SPACE,
+            "trades", String.valueOf(trades),
+            "give", ItemParser.itemToString(chestShop.getGiveItem()),
+            "want", ItemParser.itemToString(chestShop.getWantItem()),
+            "world", chestShop.getWorldName(),
+            "x", String.valueOf(chestShop.getX()),
+            "y", String.valueOf(chestShop.getY()),
+            "z", String.valueOf(chestShop.getZ())));
+    }
+
+    private void decrement(UUID owner) {
+        alertedShops.computeIfPresent(owner, (id, count) -> count > 1 ? count - 1 : null);
+    }
+}
@@ -0,0 +1,380 @@
+package com.itemchestshop.managers;
+
+import com.itemchestshop.models.ChestShop;
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Weighted graph of materials built from the shop registry.
+ * An edge leads from the item a shop wants to the item it gives, weighted by
+ * how many give items one want item buys. Only the best shop per edge matters
+ * for routing, but every shop is tracked so removals can fall back to the next one.
+ */
+public class TradeGraph {
+
+    private static final double EPSILON = 1e-9;
+
+    private final Map<Material, Map<Material, TreeMap<Double, List<ChestShop>>>> edges;
+    private Snapshot snapshot;
+
+    public TradeGraph() {
+        this.edges = new EnumMap<>(Material.class);
+    }
+
+    /**
+     * Adds a shop as a trade edge
+     * @param chestShop The shop that was created or loaded
+     */
+    public void add(ChestShop chestShop) {
+        edges.computeIfAbsent(chestShop.getWantTemplate().getType(), type -> new EnumMap<>(Material.class))
+                .computeIfAbsent(chestShop.getGiveTemplate().getType(), type -> new TreeMap<>())
+                .computeIfAbsent(getRate(chestShop), rate -> new ArrayList<>(1))
+                .add(chestShop);
+        snapshot = null;
+    }
+
+    /**
+     * Removes a shop's trade edge
+     * @param chestShop The shop that was removed
+     */
+    public void remove(ChestShop chestShop) {
+        Material wantType = chestShop.getWantTemplate().getType();
+        Map<Material, TreeMap<Double, List<ChestShop>>> targets = edges.get(wantType);
+        if (targets == null) {
+            return;
+        }
+
+        Material giveType = chestShop.getGiveTemplate().getType();
+        TreeMap<Double, List<ChestShop>> rates = targets.get(giveType);
+        if (rates == null) {
+            return;
+        }
+
+        double rate = getRate(chestShop);
+        List<ChestShop> shops = rates.get(rate);
+        if (shops == null || !shops.remove(chestShop)) {
+            return;
+        }
+
+        if (shops.isEmpty()) {
+            rates.remove(rate);
+            if (rates.isEmpty()) {
+                targets.remove(giveType);
+                if (targets.isEmpty()) {
+                    edges.remove(wantType);
+                }
+            }
+        }
+        snapshot = null;
+    }
+
+    /**
+     * Removes all edges from the graph
+     */
+    public void clear() {
+        edges.clear();
+        snapshot = null;
+    }
+
+    /**
+     * Gets an immutable copy of the best edges, safe to search off the main thread.
+     * The copy is cached until the graph changes.
+     * @return The current snapshot
+     */
+    public Snapshot snapshot() {
+        if (snapshot == null) {
+            List<Hop> hops = new ArrayList<>();
+            for (Map<Material, TreeMap<Double, List<ChestShop>>> targets : edges.values()) {
+                for (TreeMap<Double, List<ChestShop>> rates : targets.values()) {
+                    hops.add(new Hop(rates.lastEntry().getValue().get(0)));
+                }
+            }
+            snapshot = new Snapshot(hops);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Gets the number of give items one want item buys at a shop
+     * @param chestShop The shop
+     * @return The shop's rate
+     */
+    private static double getRate(ChestShop chestShop) {
+        return (double) chestShop.getGiveTemplate().getAmount() / chestShop.getWantTemplate().getAmount();
+    }
+
+    /**
+     * Immutable search structure over the best edge of every material pair
+     */
+    public static class Snapshot {
+        private final Hop[] hops;
+        private final double[] weights;
+        private final int[] sources;
+        private final int[] targets;
+        private final Map<Material, Integer> nodes;
+
+        private Snapshot(List<Hop> hopList) {
+            this.hops = hopList.toArray(new Hop[0]);
+            this.weights = new double[hops.length];
+            this.sources = new int[hops.length];
+            this.targets = new int[hops.length];
+            this.nodes = new EnumMap<>(Material.class);
+
+            for (int i = 0; i < hops.length; i++) {
+                weights[i] = -Math.log(hops[i].getRate());
+                sources[i] = nodes.computeIfAbsent(hops[i].getPayType(), type -> nodes.size());
+                targets[i] = nodes.computeIfAbsent(hops[i].getReceiveType(), type -> nodes.size());
+            }
+        }
+
+        /**
+         * Finds the trade chain with the best overall rate.
+         * Runs a hop-bounded Bellman-Ford over negative log-rates.
+         * @param from The material the player has
+         * @param to The material the player wants
+         * @param maxHops The maximum number of trades in the chain
+         * @return The best route or null if the item cannot be reached
+         */
+        public Route findRoute(Material from, Material to, int maxHops) {
+            Integer source = nodes.get(from);
+            Integer target = nodes.get(to);
+            if (source == null || target == null || from == to || maxHops < 1) {
+                return null;
+            }
+
+            Search search = search(source, maxHops);
+            int bestLevel = -1;
+            for (int level = 1; level <= maxHops; level++) {
+                if (search.distances[level][target] < Double.POSITIVE_INFINITY
+                        && (bestLevel == -1 || search.distances[level][target] < search.distances[bestLevel][target] - EPSILON)) {
+                    bestLevel = level;
+                }
+            }
+
+            if (bestLevel == -1) {
+                return null;
+            }
+
+            return toRoute(search.trace(target, bestLevel));
+        }
+
+        /**
+         * Finds trade loops that end with more items than they started with
+         * @param maxHops The maximum number of trades in a loop
+         * @param limit The maximum number of loops to return
+         * @return Profitable loops, most profitable first
+         */
+        public List<Route> findArbitrageCycles(int maxHops, int limit) {
+            List<Route> cycles = new ArrayList<>();
+            Set<Set<Integer>> seen = new HashSet<>();
+
+            for (int source = 0; source < nodes.size(); source++) {
+                Search search = search(source, maxHops);
+
+                // Level 1 is a single shop that wants and gives the same material
+                for (int level = 1; level <= maxHops; level++) {
+                    if (search.distances[level][source] < -EPSILON) {
+                        int[] loop = search.trace(source, level);
+                        Set<Integer> key = new HashSet<>();
+                        for (int edge : loop) {
+                            key.add(edge);
+                        }
+                        if (seen.add(key)) {
+                            cycles.add(toRoute(loop));
+                        }
+                    }
+                }
+            }
+
+            cycles.sort((a, b) -> Double.compare(b.getRate(), a.getRate()));
+            return cycles.size() > limit ? new ArrayList<>(cycles.subList(0, limit)) : cycles;
+        }
+
+        public int getMaterialCount() {
+            return nodes.size();
+        }
+
+        public int getEdgeCount() {
+            return hops.length;
+        }
+
+        /**
+         * Computes the best distance to every node using exactly n edges, for each n up to maxHops.
+         * A path never revisits a node, except that it may close back onto the source.
+         */
+        private Search search(int source, int maxHops) {
+            Search search = new Search(maxHops, nodes.size());
+            search.distances[0][source] = 0;
+
+            for (int level = 1; level <= maxHops; level++) {
+                double[] previous = search.distances[level - 1];
+                double[] current = search.distances[level];
+                for (int edge = 0; edge < hops.length; edge++) {
+                    int from = sources[edge];
+                    int to = targets[edge];
+                    if (previous[from] == Double.POSITIVE_INFINITY || (from == source && level > 1)) {
+                        continue;
+                    }
+
+                    double distance = previous[from] + weights[edge];
+                    if (distance < current[to] && (to == source || !search.isOnPath(from, level - 1, to))) {
+                        current[to] = distance;
+                        search.parents[level][to] = edge;
+                    }
+                }
+            }
+
+            return search;
+        }
+
+        private Route toRoute(int[] edges) {
+            List<Hop> path = new ArrayList<>(edges.length);
+            for (int edge : edges) {
+                path.add(hops[edge]);
+            }
+            return new Route(path);
+        }
+
+        /**
+         * Working state of one search, kept per call so snapshots can be shared between threads
+         */
+        private class Search {
+            private final double[][] distances;
+            private final int[][] parents;
+
+            Search(int maxHops, int nodeCount) {
+                this.distances = new double[maxHops + 1][nodeCount];
+                this.parents = new int[maxHops + 1][nodeCount];
+                for (int level = 0; level <= maxHops; level++) {
+                    Arrays.fill(distances[level], Double.POSITIVE_INFINITY);
+                    Arrays.fill(parents[level], -1);
+                }
+            }
+
+            boolean isOnPath(int node, int level, int candidate) {
+                for (int current = node; level > 0; level--) {
+                    if (current == candidate) {
+                        return true;
+                    }
+                    current = sources[parents[level][current]];
+                }
+                return false;
+            }
+
+            int[] trace(int node, int level) {
+                int[] path = new int[level];
+                for (int current = node; level > 0; level--) {
+                    int edge = parents[level][current];
+                    path[level - 1] = edge;
+                    current = sources[edge];
+                }
+                return path;
+            }
+        }
+    }
+
+    /**
+     * A chain of trades
+     */
+    public static class Route {
+        private final List<Hop> hops;
+        private final double rate;
+
+        public Route(List<Hop> hops) {
+            this.hops = Collections.unmodifiableList(hops);
+            double product = 1;
+            for (Hop hop : hops) {
+                product *= hop.getRate();
+            }
+            this.rate = product;
+        }
+
+        public List<Hop> getHops() {
+            return hops;
+        }
+
+        /**
+         * Gets how many of the final item one starting item buys
+         * @return The overall rate of the chain
+         */
+        public double getRate() {
+            return rate;
+        }
+    }
+
+    /**
+     * A single trade at one shop, copied so it can be read from any thread
+     */
+    public static class Hop {
+        private final Material payType;
+        private final int payAmount;
+        private final Material receiveType;
+        private final int receiveAmount;
+        private final String ownerName;
+        private final String worldName;
+        private final int x;
+        private final int y;
+        private final int z;
+
+        private Hop(ChestShop chestShop) {
+            this.payType = chestShop.getWantTemplate().getType();
+            this.payAmount = chestShop.getWantTemplate().getAmount();
+            this.receiveType = chestShop.getGiveTemplate().getType();
+            this.receiveAmount = chestShop.getGiveTemplate().getAmount();
+            this.ownerName = chestShop.getOwnerName();
+            this.worldName = chestShop.getWorldName();
+            this.x = chestShop.getX();
+            this.y = chestShop.getY();
+            this.z = chestShop.getZ();
+        }
+
+        public Material getPayType() {
+            return payType;
+        }
+
+        public int getPayAmount() {
+            return payAmount;
+        }
+
+        public Material getReceiveType() {
+            return receiveType;
+        }
+
+        public int getReceiveAmount() {
+            return receiveAmount;
+        }
+
+        public double getRate() {
+            return (double) receiveAmount / payAmount;
+        }
+
+        public String getOwnerName() {
+            return ownerName;
+        }
+
+        public String getWorldName() {
+            return worldName;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getZ() {
+            return z;
+        }
+    }
+}
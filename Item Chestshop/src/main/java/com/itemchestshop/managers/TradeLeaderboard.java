@@ -0,0 +1,515 @@
+package com.itemchestshop.managers;
+
+import com.itemchestshop.models.ChestShop;
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Busiest shops, owners and items over the last hour, day and week.
+ *
+ * Every successful trade adds to rolling counters, one ring of time buckets per
+ * window, kept in flat int arrays indexed by a slot per shop, owner or item.
+ * Next to the counters each window keeps a bounded min-heap of the top entries.
+ * Counts only grow between bucket rollovers, so a heap updated on each trade
+ * stays exact; when a bucket expires the heap is rebuilt once from the surviving
+ * counts. Reading a leaderboard sorts the heap and costs O(K log K).
+ *
+ * Counts are kept in memory only and start over when the server restarts.
+ */
+public class TradeLeaderboard {
+
+    /**
+     * The time spans a leaderboard can cover
+     */
+    public enum Window {
+        HOUR("hour", 12, 5 * 60 * 1000L),
+        DAY("day", 24, 60 * 60 * 1000L),
+        WEEK("week", 28, 6 * 60 * 60 * 1000L);
+
+        private final String name;
+        private final int buckets;
+        private final long bucketMillis;
+
+        Window(String name, int buckets, long bucketMillis) {
+            this.name = name;
+            this.buckets = buckets;
+            this.bucketMillis = bucketMillis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Looks up a window by its name
+         * @param name The name, e.g. "day"
+         * @return The window, or null if there is none with that name
+         */
+        public static Window fromName(String name) {
+            for (Window window : values()) {
+                if (window.name.equalsIgnoreCase(name)) {
+                    return window;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final RollingCounts<ChestShop> shops;
+    private final RollingCounts<UUID> owners;
+    private final RollingCounts<Material> items;
+
+    public TradeLeaderboard(int size) {
+        this.shops = new RollingCounts<>(size);
+        this.owners = new RollingCounts<>(size);
+        this.items = new RollingCounts<>(size);
+    }
+
+    /**
+     * Changes the number of entries kept per leaderboard
+     * @param size The number of entries
+     */
+    public void setSize(int size) {
+        shops.setSize(size);
+        owners.setSize(size);
+        items.setSize(size);
+    }
+
+    /**
+     * Counts a successful trade
+     * @param chestShop The shop that traded
+     */
+    public void record(ChestShop chestShop) {
+        record(chestShop, System.currentTimeMillis());
+    }
+
+    /**
+     * Counts a successful trade at a given time
+     * @param chestShop The shop that traded
+     * @param now The time of the trade in epoch milliseconds
+     */
+    public void record(ChestShop chestShop, long now) {
+        shops.add(chestShop, 1, now);
+        owners.add(chestShop.getOwner(), 1, now);
+        items.add(chestShop.getGiveTemplate().getType(), chestShop.getGiveTemplate().getAmount(), now);
+        items.add(chestShop.getWantTemplate().getType(), chestShop.getWantTemplate().getAmount(), now);
+    }
+
+    /**
+     * Drops a removed shop's counts. The owner and items keep theirs.
+     * @param chestShop The removed shop
+     */
+    public void forget(ChestShop chestShop) {
+        shops.remove(chestShop);
+    }
+
+    /**
+     * Drops all shop counts, for when the registry is replaced
+     */
+    public void clearShops() {
+        shops.clear();
+    }
+
+    /**
+     * Gets the shops with the most trades
+     * @param window The time span
+     * @param now The current time in epoch milliseconds
+     * @return The shops and their trade counts, busiest first
+     */
+    public List<Entry<ChestShop>> getTopShops(Window window, long now) {
+        return shops.top(window, now);
+    }
+
+    /**
+     * Gets the owners whose shops made the most trades
+     * @param window The time span
+     * @param now The current time in epoch milliseconds
+     * @return The owners and their trade counts, busiest first
+     */
+    public List<Entry<UUID>> getTopOwners(Window window, long now) {
+        return owners.top(window, now);
+    }
+
+    /**
+     * Gets the items that changed hands most, counting both sides of each trade
+     * @param window The time span
+     * @param now The current time in epoch milliseconds
+     * @return The items and amounts traded, most traded first
+     */
+    public List<Entry<Material>> getTopItems(Window window, long now) {
+        return items.top(window, now);
+    }
+
+    /**
+     * Copies the trade counts of every shop that traded within the longest window
+     * @param now The current time in epoch milliseconds
+     * @return Per shop, its trade count in each window, indexed by {@link Window#ordinal()}
+     */
+    public Map<ChestShop, int[]> snapshotShopCounts(long now) {
+        return shops.snapshot(now);
+    }
+
+    /**
+     * A leaderboard entry
+     */
+    public static final class Entry<K> {
+        private final K key;
+        private final int count;
+
+        Entry(K key, int count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Rolling counts of one kind of key in every window, with a top-K heap per window
+     */
+    private static final class RollingCounts<K> {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private final Map<K, Integer> slots;
+        private final WindowCounts[] windows;
+        private Object[] keys;
+        private int[] freeSlots;
+        private int freeCount;
+        // Slots at or above this index have never been used
+        private int slotLimit;
+        private int size;
+
+        RollingCounts(int size) {
+            this.slots = new HashMap<>();
+            this.keys = new Object[INITIAL_CAPACITY];
+            this.freeSlots = new int[INITIAL_CAPACITY];
+            this.size = size;
+            Window[] values = Window.values();
+            this.windows = new WindowCounts[values.length];
+            for (int i = 0; i < values.length; i++) {
+                windows[i] = new WindowCounts(values[i], INITIAL_CAPACITY, size);
+            }
+        }
+
+        void setSize(int size) {
+            this.size = size;
+            for (WindowCounts counts : windows) {
+                counts.rebuildHeap(keys, slotLimit, size);
+            }
+        }
+
+        void add(K key, int amount, long now) {
+            advance(now);
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                slot = allocate(key);
+            }
+            for (WindowCounts counts : windows) {
+                counts.add(slot, amount);
+            }
+        }
+
+        void remove(K key) {
+            Integer slot = slots.remove(key);
+            if (slot == null) {
+                return;
+            }
+
+            release(slot);
+            for (WindowCounts counts : windows) {
+                if (counts.clear(slot)) {
+                    counts.rebuildHeap(keys, slotLimit, size);
+                }
+            }
+        }
+
+        void clear() {
+            slots.clear();
+            Arrays.fill(keys, null);
+            freeCount = 0;
+            slotLimit = 0;
+            for (WindowCounts counts : windows) {
+                counts.reset();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<K, int[]> snapshot(long now) {
+            advance(now);
+            Map<K, int[]> counts = new HashMap<>(slots.size() * 2);
+            for (int slot = 0; slot < slotLimit; slot++) {
+                if (keys[slot] != null) {
+                    int[] totals = new int[windows.length];
+                    for (int i = 0; i < windows.length; i++) {
+                        totals[i] = windows[i].totals[slot];
+                    }
+                    counts.put((K) keys[slot], totals);
+                }
+            }
+            return counts;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Entry<K>> top(Window window, long now) {
+            advance(now);
+            WindowCounts counts = windows[window.ordinal()];
+            int[] ranked = counts.rankedSlots();
+            List<Entry<K>> entries = new ArrayList<>(ranked.length);
+            for (int slot : ranked) {
+                entries.add(new Entry<>((K) keys[slot], counts.totals[slot]));
+            }
+            return entries;
+        }
+
+        /**
+         * Expires old buckets, frees slots with nothing left in any window and
+         * rebuilds the heaps of the windows that moved on
+         */
+        private void advance(long now) {
+            boolean expired = false;
+            for (WindowCounts counts : windows) {
+                expired |= counts.advance(now, keys, slotLimit);
+            }
+            if (!expired) {
+                return;
+            }
+
+            for (int slot = 0; slot < slotLimit; slot++) {
+                if (keys[slot] != null && isIdle(slot)) {
+                    slots.remove(keys[slot]);
+                    release(slot);
+                }
+            }
+            for (WindowCounts counts : windows) {
+                counts.rebuildHeap(keys, slotLimit, size);
+            }
+        }
+
+        private boolean isIdle(int slot) {
+            for (WindowCounts counts : windows) {
+                if (counts.totals[slot] != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int allocate(K key) {
+            int slot;
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                slot = slotLimit++;
+                if (slot == keys.length) {
+                    int capacity = keys.length * 2;
+                    keys = Arrays.copyOf(keys, capacity);
+                    freeSlots = Arrays.copyOf(freeSlots, capacity);
+                    for (WindowCounts counts : windows) {
+                        counts.grow(capacity);
+                    }
+                }
+            }
+            keys[slot] = key;
+            slots.put(key, slot);
+            return slot;
+        }
+
+        private void release(int slot) {
+            keys[slot] = null;
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    /**
+     * Bucket counts of every slot in one window, laid out slot by slot, plus a
+     * min-heap of the slots with the highest totals
+     */
+    private static final class WindowCounts {
+        private final int bucketCount;
+        private final long bucketMillis;
+        private int[] buckets;
+        private int[] totals;
+        // Position of each slot in the heap, or -1
+        private int[] heapIndex;
+        private int[] heap;
+        private int heapSize;
+        // Buckets since the epoch at the last update, or -1 before the first
+        private long currentBucket;
+
+        WindowCounts(Window window, int capacity, int size) {
+            this.bucketCount = window.buckets;
+            this.bucketMillis = window.bucketMillis;
+            this.buckets = new int[capacity * bucketCount];
+            this.totals = new int[capacity];
+            this.heapIndex = new int[capacity];
+            Arrays.fill(heapIndex, -1);
+            this.heap = new int[size];
+            this.currentBucket = -1;
+        }
+
+        void add(int slot, int amount) {
+            buckets[slot * bucketCount + (int) (currentBucket % bucketCount)] += amount;
+            totals[slot] += amount;
+
+            // Totals only grow between rollovers, so the heap can be kept exact here
+            if (heapIndex[slot] >= 0) {
+                siftDown(heapIndex[slot]);
+            } else if (heapSize < heap.length) {
+                heap[heapSize] = slot;
+                heapIndex[slot] = heapSize;
+                siftUp(heapSize++);
+            } else if (heapSize > 0 && totals[slot] > totals[heap[0]]) {
+                heapIndex[heap[0]] = -1;
+                heap[0] = slot;
+                heapIndex[slot] = 0;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * Clears the buckets that fell out of the window since the last update
+         * @return true if any bucket was cleared
+         */
+        boolean advance(long now, Object[] keys, int slotLimit) {
+            long bucket = now / bucketMillis;
+            if (currentBucket < 0) {
+                currentBucket = bucket;
+                return false;
+            }
+            if (bucket <= currentBucket) {
+                return false;
+            }
+
+            long steps = Math.min(bucket - currentBucket, bucketCount);
+            for (long step = 1; step <= steps; step++) {
+                int column = (int) ((currentBucket + step) % bucketCount);
+                for (int slot = 0; slot < slotLimit; slot++) {
+                    if (keys[slot] != null) {
+                        int index = slot * bucketCount + column;
+                        totals[slot] -= buckets[index];
+                        buckets[index] = 0;
+                    }
+                }
+            }
+            currentBucket = bucket;
+            return true;
+        }
+
+        /**
+         * Zeroes a slot's counts
+         * @return true if the slot was in the heap
+         */
+        boolean clear(int slot) {
+            Arrays.fill(buckets, slot * bucketCount, (slot + 1) * bucketCount, 0);
+            totals[slot] = 0;
+            return heapIndex[slot] >= 0;
+        }
+
+        void reset() {
+            Arrays.fill(buckets, 0);
+            Arrays.fill(totals, 0);
+            Arrays.fill(heapIndex, -1);
+            heapSize = 0;
+        }
+
+        void grow(int capacity) {
+            buckets = Arrays.copyOf(buckets, capacity * bucketCount);
+            totals = Arrays.copyOf(totals, capacity);
+            int oldCapacity = heapIndex.length;
+            heapIndex = Arrays.copyOf(heapIndex, capacity);
+            Arrays.fill(heapIndex, oldCapacity, capacity, -1);
+        }
+
+        void rebuildHeap(Object[] keys, int slotLimit, int size) {
+            for (int i = 0; i < heapSize; i++) {
+                heapIndex[heap[i]] = -1;
+            }
+            if (heap.length != size) {
+                heap = new int[size];
+            }
+            heapSize = 0;
+
+            for (int slot = 0; slot < slotLimit; slot++) {
+                if (keys[slot] == null || totals[slot] == 0) {
+                    continue;
+                }
+                if (heapSize < heap.length) {
+                    heap[heapSize] = slot;
+                    heapIndex[slot] = heapSize;
+                    siftUp(heapSize++);
+                } else if (heapSize > 0 && totals[slot] > totals[heap[0]]) {
+                    heapIndex[heap[0]] = -1;
+                    heap[0] = slot;
+                    heapIndex[slot] = 0;
+                    siftDown(0);
+                }
+            }
+        }
+
+        /**
+         * Gets the slots in the heap, highest total first
+         */
+        int[] rankedSlots() {
+            Integer[] ranked = new Integer[heapSize];
+            for (int i = 0; i < heapSize; i++) {
+                ranked[i] = heap[i];
+            }
+            Arrays.sort(ranked, (a, b) -> Integer.compare(totals[b], totals[a]));
+
+            int[] slots = new int[heapSize];
+            for (int i = 0; i < heapSize; i++) {
+                slots[i] = ranked[i];
+            }
+            return slots;
+        }
+
+        private void siftUp(int index) {
+            int slot = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (totals[heap[parent]] <= totals[slot]) {
+                    break;
+                }
+                move(heap[parent], index);
+                index = parent;
+            }
+            move(slot, index);
+        }
+
+        private void siftDown(int index) {
+            int slot = heap[index];
+            while (true) {
+                int child = index * 2 + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && totals[heap[child + 1]] < totals[heap[child]]) {
+                    child++;
+                }
+                if (totals[slot] <= totals[heap[child]]) {
+                    break;
+                }
+                move(heap[child], index);
+                index = child;
+            }
+            move(slot, index);
+        }
+
+        private void move(int slot, int index) {
+            heap[index] = slot;
+            heapIndex[slot] = index;
+        }
+    }
+}
@@ -1,72 +1,320 @@
 package com.itemchestshop.models;
 
+import com.itemchestshop.api.ShopView;
+import com.itemchestshop.utils.ShopBlocks;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.Chest;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
 import java.util.UUID;
+import java.util.logging.Level;
 
-public class ChestShop {
+/**
+ * A shop sign and the chest below it.
+ * Shops are kept compact for servers with very large registries: block
+ * coordinates are stored as ints, the world as an index, the chest as an offset
+ * below the sign, and the owner and items are shared through {@link ShopTables}.
+ * The Location getters build a new Location on every call; hot paths use the
+ * coordinate getters instead. A shop in a world that is unloaded keeps its
+ * world name, but has no World until the world is loaded again.
+ */
+public class ChestShop implements ShopView {
     
-    private final Location signLocation;
-    private final Location chestLocation;
-    private final UUID owner;
-    private final String ownerName;
-    private final ItemStack wantItem;
-    private final ItemStack giveItem;
+    public static final int UNKNOWN = -1;
+    
+    private final int x;
+    private final int y;
+    private final int z;
+    private final short world;
+    // How far the chest is below the sign
+    private final byte chestDepth;
+    private final ShopTables.Owner owner;
+    private final ItemTemplate wantItem;
+    private final ItemTemplate giveItem;
+    // Trades left before the chest runs out of stock or payment space, from the last scan; UNKNOWN until scanned
+    private int stockTrades = UNKNOWN;
+    private int spaceTrades = UNKNOWN;
+    // When the counts were last known to match the chest, in epoch milliseconds
+    private long stockTime;
+    // When the shop last traded, or was created or first loaded if it never has, in epoch milliseconds
+    private long tradeTime;
+    // Stock alerts sent to the owner and not yet re-armed
+    private byte alerts;
+    // Expiry warnings sent to the owner since the shop was last active
+    private byte expiryWarnings;
     
     public ChestShop(Location signLocation, Location chestLocation, UUID owner, String ownerName, 
                      ItemStack wantItem, ItemStack giveItem) {
-        this.signLocation = signLocation;
-        this.chestLocation = chestLocation;
-        this.owner = owner;
-        this.ownerName = ownerName;
+        this(signLocation, chestLocation, owner, ownerName, ShopTables.internItem(wantItem), ShopTables.internItem(giveItem));
+    }
+    
+    public ChestShop(Location signLocation, Location chestLocation, UUID owner, String ownerName,
+                     ItemTemplate wantItem, ItemTemplate giveItem) {
+        int depth = signLocation.getBlockY() - chestLocation.getBlockY();
+        if (!signLocation.getWorld().equals(chestLocation.getWorld())
+                || signLocation.getBlockX() != chestLocation.getBlockX()
+                || signLocation.getBlockZ() != chestLocation.getBlockZ()
+                || depth < Byte.MIN_VALUE || depth > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("The chest must be in the same column as the sign");
+        }
+        
+        this.x = signLocation.getBlockX();
+        this.y = signLocation.getBlockY();
+        this.z = signLocation.getBlockZ();
+        this.world = (short) ShopTables.internWorld(signLocation.getWorld());
+        this.chestDepth = (byte) depth;
+        this.owner = ShopTables.internOwner(owner, ownerName);
         this.wantItem = wantItem;
         this.giveItem = giveItem;
+        this.tradeTime = System.currentTimeMillis();
     }
     
     public Location getSignLocation() {
-        return signLocation;
+        return new Location(getWorld(), x, y, z);
     }
     
     public Location getChestLocation() {
-        return chestLocation;
+        return new Location(getWorld(), x, getChestY(), z);
+    }
+    
+    /**
+     * Gets the world of the shop
+     * @return The world, or null if it is not loaded
+     */
+    public World getWorld() {
+        return ShopTables.getWorld(world);
+    }
+    
+    public String getWorldName() {
+        return ShopTables.getWorldName(world);
+    }
+    
+    public int getWorldIndex() {
+        return world;
+    }
+    
+    public int getX() {
+        return x;
+    }
+    
+    public int getY() {
+        return y;
+    }
+    
+    public int getZ() {
+        return z;
+    }
+    
+    public int getChestY() {
+        return y - chestDepth;
+    }
+    
+    public Block getChestBlock() {
+        return getWorld().getBlockAt(x, getChestY(), z);
     }
     
     public UUID getOwner() {
-        return owner;
+        return owner.id;
     }
     
     public String getOwnerName() {
-        return ownerName;
+        return owner.name;
     }
     
+    /**
+     * Gets a copy of the item the shop asks for
+     * @return The payment item and amount
+     */
     public ItemStack getWantItem() {
-        return wantItem;
+        return item(wantItem, "payment").clone();
     }
     
+    /**
+     * Gets a copy of the item the shop sells
+     * @return The sold item and amount
+     */
     public ItemStack getGiveItem() {
+        return item(giveItem, "sold").clone();
+    }
+    
+    /**
+     * Gets the template of the item the shop asks for, which knows the type and amount without decoding the item
+     * @return The payment item template
+     */
+    public ItemTemplate getWantTemplate() {
+        return wantItem;
+    }
+    
+    /**
+     * Gets the template of the item the shop sells, which knows the type and amount without decoding the item
+     * @return The sold item template
+     */
+    public ItemTemplate getGiveTemplate() {
         return giveItem;
     }
     
+    /**
+     * Counts, in one pass over the chest, how many more trades its stock and free
+     * space allow, and keeps the counts for {@link #getStockTrades()} and {@link #getSpaceTrades()}
+     */
+    public void scanStock() {
+        Block chestBlock = getChestBlock();
+        stockTime = System.currentTimeMillis();
+        if (!ShopBlocks.isChest(chestBlock.getType())) {
+            stockTrades = 0;
+            spaceTrades = 0;
+            return;
+        }
+        
+        Chest chest = (Chest) chestBlock.getState();
+        ItemStack stock = item(giveItem, "sold");
+        ItemStack payment = item(wantItem, "payment");
+        if (giveItem.isDecodeFailed() || wantItem.isDecodeFailed()) {
+            stockTrades = 0;
+            spaceTrades = 0;
+            return;
+        }
+        int stockAmount = 0;
+        int space = 0;
+        
+        for (ItemStack item : chest.getInventory().getContents()) {
+            if (item == null || item.getType() == Material.AIR) {
+                space += payment.getMaxStackSize();
+                continue;
+            }
+            if (item.isSimilar(stock)) {
+                stockAmount += item.getAmount();
+            }
+            if (item.isSimilar(payment)) {
+                space += Math.max(0, item.getMaxStackSize() - item.getAmount());
+            }
+        }
+        
+        stockTrades = stockAmount / stock.getAmount();
+        spaceTrades = space / payment.getAmount();
+    }
+    
+    /**
+     * Updates the cached counts after a trade, without scanning the chest again
+     */
+    public void recordTrade() {
+        long now = System.currentTimeMillis();
+        tradeTime = now;
+        if (stockTrades > 0) {
+            stockTrades--;
+        }
+        if (spaceTrades > 0) {
+            spaceTrades--;
+        }
+        if (stockTrades != UNKNOWN) {
+            stockTime = now;
+        }
+    }
+    
+    /**
+     * Restores the counts of an earlier scan, as saved with the shop
+     * @param stockTrades The trades the stock allowed
+     * @param spaceTrades The payments there was room for
+     * @param stockTime When the counts were taken, in epoch milliseconds
+     */
+    public void setStockSnapshot(int stockTrades, int spaceTrades, long stockTime) {
+        this.stockTrades = stockTrades;
+        this.spaceTrades = spaceTrades;
+        this.stockTime = stockTime;
+    }
+    
+    /**
+     * Gets how many more trades the chest's stock allows, as of the last scan and the trades since
+     * @return The number of trades, or UNKNOWN if the chest was never scanned
+     */
+    public int getStockTrades() {
+        return stockTrades;
+    }
+    
+    /**
+     * Gets how many more payments fit in the chest, as of the last scan and the trades since
+     * @return The number of trades, or UNKNOWN if the chest was never scanned
+     */
+    public int getSpaceTrades() {
+        return spaceTrades;
+    }
+    
+    /**
+     * Gets when the stock and space counts were taken
+     * @return The time in epoch milliseconds, or 0 if the chest was never scanned
+     */
+    public long getStockTime() {
+        return stockTime;
+    }
+    
+    /**
+     * Gets when the shop last traded
+     * @return The time in epoch milliseconds, or when the shop was created or first loaded if it never traded
+     */
+    public long getTradeTime() {
+        return tradeTime;
+    }
+    
+    /**
+     * Restores the time of the last trade, as saved with the shop
+     * @param tradeTime The time in epoch milliseconds
+     */
+    public void setTradeTime(long tradeTime) {
+        this.tradeTime = tradeTime;
+    }
+    
+    /**
+     * Gets when the owner last logged in, as far as the plugin has seen
+     * @return The time in epoch milliseconds, or 0 if unknown
+     */
+    public long getOwnerLogin() {
+        return ShopTables.getOwnerLogin(owner.id);
+    }
+    
+    public int getExpiryWarnings() {
+        return expiryWarnings;
+    }
+    
+    public void setExpiryWarnings(int expiryWarnings) {
+        this.expiryWarnings = (byte) expiryWarnings;
+    }
+    
+    public int getAlerts() {
+        return alerts;
+    }
+    
+    public void setAlerts(int alerts) {
+        this.alerts = (byte) alerts;
+    }
+    
     public boolean hasStock() {
-        Block chestBlock = chestLocation.getBlock();
-        if (chestBlock.getType() != Material.CHEST && chestBlock.getType() != Material.TRAPPED_CHEST) {
+        ItemStack stock = item(giveItem, "sold");
+        if (giveItem.isDecodeFailed()) {
+            // A plain stand-in would sell plain items for the real item's price
+            return false;
+        }
+        Block chestBlock = getChestBlock();
+        if (!ShopBlocks.isChest(chestBlock.getType())) {
             return false;
         }
         
         Chest chest = (Chest) chestBlock.getState();
         Inventory inventory = chest.getInventory();
         
-        return inventory.containsAtLeast(giveItem, giveItem.getAmount());
+        return inventory.containsAtLeast(stock, giveItem.getAmount());
     }
     
     public boolean canAcceptPayment() {
-        Block chestBlock = chestLocation.getBlock();
-        if (chestBlock.getType() != Material.CHEST && chestBlock.getType() != Material.TRAPPED_CHEST) {
+        ItemStack payment = item(wantItem, "payment");
+        if (wantItem.isDecodeFailed()) {
+            return false;
+        }
+        Block chestBlock = getChestBlock();
+        if (!ShopBlocks.isChest(chestBlock.getType())) {
             return false;
         }
         
@@ -82,21 +330,38 @@ public class ChestShop {
         for (ItemStack item : contents) {
             if (item == null || item.getType() == Material.AIR) {
                 availableSlots++;
-            } else if (item.isSimilar(wantItem)) {
+            } else if (item.isSimilar(payment)) {
                 int maxStack = item.getMaxStackSize();
                 int currentAmount = item.getAmount();
                 int canAdd = maxStack - currentAmount;
-                if (canAdd >= wantItem.getAmount()) {
+                if (canAdd >= payment.getAmount()) {
                     return true;
                 }
             }
         }
         
         // Calculate needed slots for the payment
-        int totalAmount = wantItem.getAmount();
-        int maxStack = wantItem.getMaxStackSize();
+        int totalAmount = payment.getAmount();
+        int maxStack = payment.getMaxStackSize();
         neededSlots = (int) Math.ceil((double) totalAmount / maxStack);
         
         return availableSlots >= neededSlots;
     }
-}
\ No newline at end of file
+    
+    /**
+     * Gets the shared instance of one of the shop's items, reporting once if it cannot be decoded
+     * @param template The item template
+     * @param role "sold" or "payment", for the report
+     * @return The item, which must not be modified
+     */
+    private ItemStack item(ItemTemplate template, String role) {
+        ItemStack item = template.item();
+        Exception error = template.takeDecodeError();
+        if (error != null) {
+            ShopTables.getLogger().log(Level.WARNING, "Failed to decode the " + role + " item of the shop at "
+                + getWorldName() + "," + x + "," + y + "," + z + " (" + template.getType() + "); it and every shop with "
+                + "the same item will not trade, and the stored item is saved back unchanged", error);
+        }
+        return item;
+    }
+}
@@ -0,0 +1,108 @@
+package com.itemchestshop.models;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Base64;
+
+/**
+ * An item a shop buys or sells, shared by every shop with the same item.
+ * The item is kept in Paper's binary item format, so names, enchantments,
+ * custom model data and other components survive a restart. Templates loaded
+ * from disk are decoded the first time a shop uses the item; until then only the
+ * type and amount are known, which is all the indexes need.
+ *
+ * The template's own item is never handed out; {@link #getItem()} returns a copy.
+ */
+public final class ItemTemplate {
+
+    private final Material type;
+    private final int amount;
+    private volatile ItemStack item;
+    // Base64 of ItemStack#serializeAsBytes; kept as read, so an item that fails to decode is saved back unchanged
+    private final String data;
+    private volatile Exception decodeError;
+    private volatile boolean decodeReported;
+
+    ItemTemplate(ItemStack item, String data) {
+        this.type = item.getType();
+        this.amount = item.getAmount();
+        this.item = item;
+        this.data = data;
+    }
+
+    ItemTemplate(Material type, int amount, String data) {
+        this.type = type;
+        this.amount = amount;
+        this.data = data;
+    }
+
+    public Material getType() {
+        return type;
+    }
+
+    public int getAmount() {
+        return amount;
+    }
+
+    /**
+     * Gets a copy of the item, decoding it on first use
+     * @return The item and amount, which the caller may change
+     */
+    public ItemStack getItem() {
+        return item().clone();
+    }
+
+    /**
+     * Gets the item in Paper's binary format
+     * @return The serialized item as Base64
+     */
+    public String getData() {
+        return data;
+    }
+
+    /**
+     * Checks whether the stored item could not be decoded. Such an item stands
+     * in as a plain item of its type, and shops using it do not trade.
+     * @return true if decoding failed
+     */
+    public boolean isDecodeFailed() {
+        item();
+        return decodeError != null;
+    }
+
+    /**
+     * Gets the shared item, decoding it on first use. It must not be modified
+     * or leave the models package.
+     * @return The item and amount
+     */
+    ItemStack item() {
+        ItemStack current = item;
+        if (current == null) {
+            current = decode();
+            item = current;
+        }
+        return current;
+    }
+
+    /**
+     * Takes the decode failure for reporting, once per template
+     * @return The error, or null if the item decoded or the failure was already reported
+     */
+    synchronized Exception takeDecodeError() {
+        if (decodeError == null || decodeReported) {
+            return null;
+        }
+        decodeReported = true;
+        return decodeError;
+    }
+
+    private ItemStack decode() {
+        try {
+            return ItemStack.deserializeBytes(Base64.getDecoder().decode(data));
+        } catch (Exception e) {
+            decodeError = e;
+            return new ItemStack(type, amount);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.itemchestshop.models;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Interning tables shared by all shops. Most shops on a server live in a few
+ * worlds, belong to a few hundred owners and trade a handful of common items,
+ * so each shop refers to a world by index and shares its owner and item
+ * objects with every other shop that has the same ones. The owners' last
+ * logins are kept here too, once per owner rather than once per shop.
+ *
+ * Worlds are interned by name; the World objects are only cached while the
+ * world is loaded. Owners and items are held weakly, so they are released once
+ * no shop uses them.
+ *
+ * Interning is thread-safe, as shops are built while loading off the main thread.
+ */
+public final class ShopTables {
+
+    private static final Map<String, Integer> worldIndexes = new ConcurrentHashMap<>();
+    private static volatile String[] worldNames = new String[0];
+    // The loaded World of each index, or null while it is unloaded
+    private static volatile World[] worlds = new World[0];
+    private static final WeakTable<UUID, Owner> owners = new WeakTable<>();
+    // Keyed by the item in Paper's binary format, so items from signs and from disk share a template
+    private static final WeakTable<String, ItemTemplate> items = new WeakTable<>();
+    private static final Map<UUID, Long> ownerLogins = new ConcurrentHashMap<>();
+    private static volatile Logger logger = Logger.getLogger("ItemChestShop");
+
+    private ShopTables() {
+    }
+
+    /**
+     * Gets the index of a world, adding it to the table if needed.
+     * A world that was unloaded and loaded again keeps its index.
+     * @param world The world
+     * @return The world's index
+     */
+    public static synchronized int internWorld(World world) {
+        Integer index = worldIndexes.get(world.getName());
+        if (index != null) {
+            if (worlds[index] != world) {
+                World[] updated = worlds.clone();
+                updated[index] = world;
+                worlds = updated;
+            }
+            return index;
+        }
+
+        if (worldNames.length > Short.MAX_VALUE) {
+            throw new IllegalStateException("Too many worlds");
+        }
+        int added = worldNames.length;
+        worldNames = Arrays.copyOf(worldNames, added + 1);
+        worldNames[added] = world.getName();
+        World[] updated = Arrays.copyOf(worlds, added + 1);
+        updated[added] = world;
+        worlds = updated;
+        worldIndexes.put(world.getName(), added);
+        return added;
+    }
+
+    /**
+     * Gets the index of a world without adding it
+     * @param world The world
+     * @return The world's index, or -1 if no shop was ever in it
+     */
+    public static int indexOf(World world) {
+        Integer index = worldIndexes.get(world.getName());
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Gets a world by index
+     * @param index The index from {@link #internWorld(World)}
+     * @return The world, or null if it is not loaded
+     */
+    public static World getWorld(int index) {
+        World world = worlds[index];
+        if (world == null) {
+            // Loaded again since it was released
+            world = Bukkit.getWorld(worldNames[index]);
+            if (world != null) {
+                internWorld(world);
+            }
+        }
+        return world;
+    }
+
+    /**
+     * Gets the name of a world by index, whether or not it is loaded
+     * @param index The index from {@link #internWorld(World)}
+     * @return The world's name
+     */
+    public static String getWorldName(int index) {
+        return worldNames[index];
+    }
+
+    /**
+     * Drops the reference to an unloaded world. Its shops keep their index and
+     * find the world again once it is loaded.
+     * @param world The world being unloaded
+     */
+    public static synchronized void releaseWorld(World world) {
+        Integer index = worldIndexes.get(world.getName());
+        if (index != null && worlds[index] != null) {
+            World[] updated = worlds.clone();
+            updated[index] = null;
+            worlds = updated;
+        }
+    }
+
+    /**
+     * Gets the shared owner entry of a player
+     * @param id The player's UUID
+     * @param name The player's name
+     * @return An owner with this UUID and name
+     */
+    static synchronized Owner internOwner(UUID id, String name) {
+        Owner owner = owners.get(id);
+        if (owner == null || !owner.name.equals(name)) {
+            // A renamed player's older shops keep the entry with the old name
+            owner = new Owner(id, name);
+            owners.put(id, owner);
+        }
+        return owner;
+    }
+
+    /**
+     * Records that an owner logged in, keeping the latest time seen
+     * @param id The owner's UUID
+     * @param time The login time in epoch milliseconds
+     */
+    public static void recordOwnerLogin(UUID id, long time) {
+        ownerLogins.merge(id, time, Math::max);
+    }
+
+    /**
+     * Gets when an owner last logged in
+     * @param id The owner's UUID
+     * @return The login time in epoch milliseconds, or 0 if unknown
+     */
+    public static long getOwnerLogin(UUID id) {
+        Long time = ownerLogins.get(id);
+        return time != null ? time : 0;
+    }
+
+    /**
+     * Gets the shared template of an item. The template keeps its own copy, so
+     * the caller may go on changing the item.
+     * @param item The item
+     * @return The template for all items equal to this one
+     */
+    public static ItemTemplate internItem(ItemStack item) {
+        ItemStack copy = item.clone();
+        String data = Base64.getEncoder().encodeToString(copy.serializeAsBytes());
+        synchronized (ShopTables.class) {
+            return items.computeIfAbsent(data, key -> new ItemTemplate(copy, key));
+        }
+    }
+
+    /**
+     * Gets the shared template of a serialized item without decoding it
+     * @param type The item type
+     * @param amount The amount
+     * @param data The item in Paper's binary format, as Base64
+     * @return The template for all items with this data
+     */
+    public static synchronized ItemTemplate internItem(Material type, int amount, String data) {
+        return items.computeIfAbsent(data, key -> new ItemTemplate(type, amount, key));
+    }
+
+    /**
+     * Gets the number of distinct items in use
+     * @return The size of the item table
+     */
+    public static synchronized int getItemCount() {
+        return items.size();
+    }
+
+    /**
+     * Gets the number of distinct owners in use
+     * @return The size of the owner table
+     */
+    public static synchronized int getOwnerCount() {
+        return owners.size();
+    }
+
+    /**
+     * Sets the logger that reports items which cannot be decoded
+     * @param pluginLogger The plugin's logger
+     */
+    public static void setLogger(Logger pluginLogger) {
+        logger = pluginLogger;
+    }
+
+    static Logger getLogger() {
+        return logger;
+    }
+
+    /**
+     * Drops every table when the plugin is disabled, so no World or item
+     * outlives the plugin. Logins are kept; they are saved with the shops.
+     */
+    public static synchronized void clear() {
+        worlds = new World[worlds.length];
+        owners.clear();
+        items.clear();
+    }
+
+    /**
+     * A shop owner, shared by all shops of the same player
+     */
+    static final class Owner {
+        final UUID id;
+        final String name;
+
+        Owner(UUID id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+
+    /**
+     * An interning map whose values are held weakly. Entries of collected
+     * values are removed on the next change. Not thread-safe; callers lock.
+     */
+    private static final class WeakTable<K, V> {
+        private final Map<K, Entry<K, V>> entries = new HashMap<>();
+        private final ReferenceQueue<V> released = new ReferenceQueue<>();
+
+        V get(K key) {
+            Entry<K, V> entry = entries.get(key);
+            return entry != null ? entry.get() : null;
+        }
+
+        void put(K key, V value) {
+            expunge();
+            entries.put(key, new Entry<>(key, value, released));
+        }
+
+        V computeIfAbsent(K key, Function<K, V> factory) {
+            V value = get(key);
+            if (value == null) {
+                value = factory.apply(key);
+                put(key, value);
+            }
+            return value;
+        }
+
+        int size() {
+            expunge();
+            return entries.size();
+        }
+
+        void clear() {
+            entries.clear();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void expunge() {
+            Entry<K, V> entry;
+            while ((entry = (Entry<K, V>) released.poll()) != null) {
+                // A newer value may have taken the key since
+                entries.remove(entry.key, entry);
+            }
+        }
+
+        private static final class Entry<K, V> extends WeakReference<V> {
+            final K key;
+
+            Entry(K key, V value, ReferenceQueue<V> queue) {
+                super(value, queue);
+                this.key = key;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.itemchestshop.replication;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * A bus in a shared directory. Each server appends its deltas to its own
+ * &lt;server-id&gt;.log, one JSON object per line, and reads the other servers'
+ * logs from where it left off. Logs are never compacted, which makes this
+ * transport best suited to tests and small networks on one machine or share.
+ */
+public class FileTransport implements ReplicationTransport {
+
+    private static final String SUFFIX = ".log";
+
+    private final File directory;
+    private final Logger logger;
+    private final Gson gson;
+    // Where the next unread line of each log starts, and the sequence read up to there
+    private final Map<String, Long> offsets;
+    private final Map<String, Long> offsetSequences;
+
+    public FileTransport(File directory, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+        this.gson = new GsonBuilder().disableHtmlEscaping().create();
+        this.offsets = new HashMap<>();
+        this.offsetSequences = new HashMap<>();
+    }
+
+    @Override
+    public void open() throws IOException {
+        Files.createDirectories(directory.toPath());
+    }
+
+    @Override
+    public void publish(List<ShopDelta> deltas) throws IOException {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        // One write per origin, so readers never see half a batch's line
+        Map<String, StringBuilder> lines = new HashMap<>();
+        for (ShopDelta delta : deltas) {
+            lines.computeIfAbsent(delta.getOrigin(), origin -> new StringBuilder())
+                .append(gson.toJson(delta)).append('\n');
+        }
+        for (Map.Entry<String, StringBuilder> entry : lines.entrySet()) {
+            File log = new File(directory, entry.getKey() + SUFFIX);
+            try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(entry.getValue().toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getOrigins() {
+        Set<String> origins = new HashSet<>();
+        File[] logs = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (logs != null) {
+            for (File log : logs) {
+                origins.add(log.getName().substring(0, log.getName().length() - SUFFIX.length()));
+            }
+        }
+        return origins;
+    }
+
+    @Override
+    public List<ShopDelta> read(String origin, long afterSequence) throws IOException {
+        List<ShopDelta> deltas = new ArrayList<>();
+        File log = new File(directory, origin + SUFFIX);
+        if (!log.exists()) {
+            return deltas;
+        }
+
+        // Resume from the saved offset unless the caller wants older deltas than were read there
+        long offset = offsets.getOrDefault(origin, 0L);
+        long offsetSequence = offsetSequences.getOrDefault(origin, 0L);
+        if (afterSequence < offsetSequence || offset > log.length()) {
+            offset = 0;
+            offsetSequence = 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            channel.position(offset);
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte next = buffer.get();
+                    if (next != '\n') {
+                        line.write(next);
+                        continue;
+                    }
+
+                    offset += line.size() + 1;
+                    ShopDelta delta = parse(line.toString(StandardCharsets.UTF_8), log);
+                    line.reset();
+                    if (delta != null) {
+                        offsetSequence = Math.max(offsetSequence, delta.getSequence());
+                        if (delta.getSequence() > afterSequence) {
+                            deltas.add(delta);
+                        }
+                    }
+                }
+                buffer.clear();
+            }
+            // A trailing line without a newline is still being written; it is read next time
+        }
+
+        offsets.put(origin, offset);
+        offsetSequences.put(origin, offsetSequence);
+        return deltas;
+    }
+
+    @Override
+    public void close() {
+        offsets.clear();
+        offsetSequences.clear();
+    }
+
+    private ShopDelta parse(String line, File log) {
+        if (line.isBlank()) {
+            return null;
+        }
+        try {
+            return gson.fromJson(line, ShopDelta.class);
+        } catch (JsonParseException e) {
+            logger.warning("Skipping a malformed delta in " + log.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.itemchestshop.replication;
+
+import org.bukkit.Material;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A bus in a SQL database shared by the servers, through plain JDBC. The MySQL
+ * and SQLite drivers bundled with the server work; others need to be on the
+ * classpath.
+ *
+ * The table holds one row per shop sign and server, replaced by every newer
+ * delta, so it stays as large as the network's shops plus removal markers
+ * rather than growing with every change.
+ */
+public class JdbcTransport implements ReplicationTransport {
+
+    private static final String COLUMNS = "origin, sequence, removed, world, x, y, z, owner, owner_name, "
+        + "want_type, want_amount, give_type, give_amount";
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final String table;
+    private Connection connection;
+
+    public JdbcTransport(String url, String username, String password, String table) {
+        if (!table.matches("[A-Za-z0-9_]+")) {
+            throw new IllegalArgumentException("Invalid table name: " + table);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.table = table;
+    }
+
+    @Override
+    public void open() throws IOException {
+        try (Statement statement = connection().createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + table + " ("
+                + "origin VARCHAR(64) NOT NULL, "
+                + "sequence BIGINT NOT NULL, "
+                + "removed SMALLINT NOT NULL, "
+                + "world VARCHAR(128) NOT NULL, "
+                + "x INT NOT NULL, "
+                + "y INT NOT NULL, "
+                + "z INT NOT NULL, "
+                + "owner CHAR(36), "
+                + "owner_name VARCHAR(32), "
+                + "want_type VARCHAR(64), "
+                + "want_amount INT NOT NULL, "
+                + "give_type VARCHAR(64), "
+                + "give_amount INT NOT NULL, "
+                + "PRIMARY KEY (origin, world, x, y, z))");
+        } catch (SQLException e) {
+            throw new IOException("Failed to create " + table, e);
+        }
+    }
+
+    @Override
+    public void publish(List<ShopDelta> deltas) throws IOException {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        // Delete and insert rather than a vendor-specific upsert, in one transaction
+        Connection current = connection();
+        try {
+            current.setAutoCommit(false);
+            try (PreparedStatement delete = current.prepareStatement(
+                    "DELETE FROM " + table + " WHERE origin = ? AND world = ? AND x = ? AND y = ? AND z = ?");
+                 PreparedStatement insert = current.prepareStatement(
+                    "INSERT INTO " + table + " (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (ShopDelta delta : deltas) {
+                    delete.setString(1, delta.getOrigin());
+                    delete.setString(2, delta.getWorld());
+                    delete.setInt(3, delta.getX());
+                    delete.setInt(4, delta.getY());
+                    delete.setInt(5, delta.getZ());
+                    delete.executeUpdate();
+
+                    insert.setString(1, delta.getOrigin());
+                    insert.setLong(2, delta.getSequence());
+                    insert.setInt(3, delta.isRemoved() ? 1 : 0);
+                    insert.setString(4, delta.getWorld());
+                    insert.setInt(5, delta.getX());
+                    insert.setInt(6, delta.getY());
+                    insert.setInt(7, delta.getZ());
+                    insert.setString(8, delta.getOwner() == null ? null : delta.getOwner().toString());
+                    insert.setString(9, delta.getOwnerName());
+                    insert.setString(10, delta.getWantType() == null ? null : delta.getWantType().name());
+                    insert.setInt(11, delta.getWantAmount());
+                    insert.setString(12, delta.getGiveType() == null ? null : delta.getGiveType().name());
+                    insert.setInt(13, delta.getGiveAmount());
+                    insert.executeUpdate();
+                }
+            }
+            current.commit();
+        } catch (SQLException e) {
+            rollback(current);
+            throw new IOException("Failed to publish shop deltas", e);
+        } finally {
+            try {
+                current.setAutoCommit(true);
+            } catch (SQLException ignored) {
+                // The connection is replaced on the next call if it broke
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getOrigins() throws IOException {
+        Set<String> origins = new HashSet<>();
+        try (Statement statement = connection().createStatement();
+             ResultSet result = statement.executeQuery("SELECT DISTINCT origin FROM " + table)) {
+            while (result.next()) {
+                origins.add(result.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to list replicating servers", e);
+        }
+        return origins;
+    }
+
+    @Override
+    public List<ShopDelta> read(String origin, long afterSequence) throws IOException {
+        List<ShopDelta> deltas = new ArrayList<>();
+        try (PreparedStatement statement = connection().prepareStatement(
+                "SELECT " + COLUMNS + " FROM " + table + " WHERE origin = ? AND sequence > ? ORDER BY sequence")) {
+            statement.setString(1, origin);
+            statement.setLong(2, afterSequence);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    String owner = result.getString(8);
+                    deltas.add(new ShopDelta(
+                        result.getString(1),
+                        result.getLong(2),
+                        result.getInt(3) != 0,
+                        result.getString(4),
+                        result.getInt(5),
+                        result.getInt(6),
+                        result.getInt(7),
+                        owner == null ? null : UUID.fromString(owner),
+                        result.getString(9),
+                        material(result.getString(10)),
+                        result.getInt(11),
+                        material(result.getString(12)),
+                        result.getInt(13)));
+                }
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            throw new IOException("Failed to read shop deltas of " + origin, e);
+        }
+        return deltas;
+    }
+
+    @Override
+    public void close() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // Nothing left to do with it
+            }
+            connection = null;
+        }
+    }
+
+    /**
+     * Gets the connection, reconnecting if it was lost
+     * @return An open connection
+     * @throws IOException If the database cannot be reached
+     */
+    private Connection connection() throws IOException {
+        try {
+            if (connection == null || !connection.isValid(5)) {
+                close();
+                connection = DriverManager.getConnection(url, username, password);
+            }
+            return connection;
+        } catch (SQLException e) {
+            throw new IOException("Failed to connect to " + url, e);
+        }
+    }
+
+    private static void rollback(Connection current) {
+        try {
+            current.rollback();
+        } catch (SQLException ignored) {
+            // The connection is replaced on the next call if it broke
+        }
+    }
+
+    private static Material material(String name) {
+        // Items unknown to this server's version are shown as air rather than failing the batch
+        if (name == null) {
+            return null;
+        }
+        Material material = Material.matchMaterial(name);
+        return material == null ? Material.AIR : material;
+    }
+}
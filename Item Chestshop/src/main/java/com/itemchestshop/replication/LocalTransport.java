@@ -0,0 +1,79 @@
+package com.itemchestshop.replication;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bus inside the JVM, shared by every transport opened with the same name.
+ * Useful for tests and for running several plugin instances in one process;
+ * servers in separate processes need the file or JDBC transport.
+ */
+public class LocalTransport implements ReplicationTransport {
+
+    private static final Map<String, Map<String, List<ShopDelta>>> BUSES = new HashMap<>();
+
+    private final String busName;
+
+    public LocalTransport(String busName) {
+        this.busName = busName;
+    }
+
+    @Override
+    public void open() {
+        synchronized (BUSES) {
+            BUSES.computeIfAbsent(busName, name -> new HashMap<>());
+        }
+    }
+
+    @Override
+    public void publish(List<ShopDelta> deltas) {
+        synchronized (BUSES) {
+            Map<String, List<ShopDelta>> bus = BUSES.computeIfAbsent(busName, name -> new HashMap<>());
+            for (ShopDelta delta : deltas) {
+                bus.computeIfAbsent(delta.getOrigin(), origin -> new ArrayList<>()).add(delta);
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getOrigins() {
+        synchronized (BUSES) {
+            Map<String, List<ShopDelta>> bus = BUSES.get(busName);
+            return bus == null ? new HashSet<>() : new HashSet<>(bus.keySet());
+        }
+    }
+
+    @Override
+    public List<ShopDelta> read(String origin, long afterSequence) {
+        synchronized (BUSES) {
+            Map<String, List<ShopDelta>> bus = BUSES.get(busName);
+            List<ShopDelta> log = bus == null ? null : bus.get(origin);
+            List<ShopDelta> deltas = new ArrayList<>();
+            if (log == null) {
+                return deltas;
+            }
+
+            // Sequences increase along the log, so find the first newer delta by bisection
+            int low = 0;
+            int high = log.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (log.get(middle).getSequence() <= afterSequence) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            deltas.addAll(log.subList(low, log.size()));
+            return deltas;
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,114 @@
+package com.itemchestshop.replication;
+
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only copy of the shops on the other servers, for searches and listings.
+ * Built from their deltas alone; remote shops are never traded with or saved.
+ * Accessed on the main thread only.
+ */
+public class ReplicaIndex {
+
+    // Shops per server, keyed by sign position
+    private final Map<String, Map<String, ShopDelta>> servers;
+    private final Map<Material, Map<String, ShopDelta>> byGiveType;
+    private int shopCount;
+
+    public ReplicaIndex() {
+        this.servers = new HashMap<>();
+        this.byGiveType = new EnumMap<>(Material.class);
+    }
+
+    /**
+     * Applies a delta from another server
+     * @param delta The delta
+     */
+    public void apply(ShopDelta delta) {
+        Map<String, ShopDelta> shops = servers.computeIfAbsent(delta.getOrigin(), origin -> new LinkedHashMap<>());
+        String key = delta.getKey();
+        ShopDelta previous = delta.isRemoved() ? shops.remove(key) : shops.put(key, delta);
+        if (previous != null) {
+            unindex(previous);
+            shopCount--;
+        }
+        if (!delta.isRemoved()) {
+            index(delta);
+            shopCount++;
+        }
+        if (shops.isEmpty()) {
+            servers.remove(delta.getOrigin());
+        }
+    }
+
+    /**
+     * Removes every shop
+     */
+    public void clear() {
+        servers.clear();
+        byGiveType.clear();
+        shopCount = 0;
+    }
+
+    /**
+     * Finds the remote shops that sell an item
+     * @param giveType The item sold
+     * @return The shops, oldest first
+     */
+    public List<ShopDelta> findByGiveType(Material giveType) {
+        Map<String, ShopDelta> shops = byGiveType.get(giveType);
+        return shops == null ? Collections.emptyList() : new ArrayList<>(shops.values());
+    }
+
+    /**
+     * Gets every remote shop
+     * @return The shops, grouped by server
+     */
+    public List<ShopDelta> getShops() {
+        List<ShopDelta> shops = new ArrayList<>(shopCount);
+        for (Map<String, ShopDelta> serverShops : servers.values()) {
+            shops.addAll(serverShops.values());
+        }
+        return shops;
+    }
+
+    /**
+     * Gets the number of remote shops
+     * @return The shop count
+     */
+    public int getShopCount() {
+        return shopCount;
+    }
+
+    /**
+     * Gets the number of servers with at least one shop
+     * @return The server count
+     */
+    public int getServerCount() {
+        return servers.size();
+    }
+
+    private void index(ShopDelta delta) {
+        if (delta.getGiveType() != null) {
+            byGiveType.computeIfAbsent(delta.getGiveType(), type -> new LinkedHashMap<>())
+                .put(delta.getOrigin() + ' ' + delta.getKey(), delta);
+        }
+    }
+
+    private void unindex(ShopDelta delta) {
+        Map<String, ShopDelta> shops = delta.getGiveType() == null ? null : byGiveType.get(delta.getGiveType());
+        if (shops != null) {
+            shops.remove(delta.getOrigin() + ' ' + delta.getKey());
+            if (shops.isEmpty()) {
+                byGiveType.remove(delta.getGiveType());
+            }
+        }
+    }
+}
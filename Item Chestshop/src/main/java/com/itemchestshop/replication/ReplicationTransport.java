@@ -0,0 +1,49 @@
+package com.itemchestshop.replication;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The shared bus servers exchange shop deltas over. Implementations must keep
+ * each server's deltas retrievable by sequence; they may drop deltas that a
+ * later delta for the same sign replaces.
+ *
+ * Calls are made from one background thread at a time and may block.
+ */
+public interface ReplicationTransport {
+
+    /**
+     * Connects to the bus, creating whatever storage it needs
+     * @throws IOException If the bus cannot be reached
+     */
+    void open() throws IOException;
+
+    /**
+     * Publishes deltas of this server, in sequence order
+     * @param deltas The deltas
+     * @throws IOException If they could not be stored
+     */
+    void publish(List<ShopDelta> deltas) throws IOException;
+
+    /**
+     * Lists the servers that have published anything
+     * @return The server ids
+     * @throws IOException If the bus cannot be read
+     */
+    Set<String> getOrigins() throws IOException;
+
+    /**
+     * Reads a server's deltas after a sequence number
+     * @param origin The server id
+     * @param afterSequence The highest sequence already seen, or 0 for all
+     * @return The newer deltas in sequence order
+     * @throws IOException If the bus cannot be read
+     */
+    List<ShopDelta> read(String origin, long afterSequence) throws IOException;
+
+    /**
+     * Releases connections and files
+     */
+    void close();
+}
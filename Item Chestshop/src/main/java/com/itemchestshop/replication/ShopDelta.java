@@ -0,0 +1,163 @@
+package com.itemchestshop.replication;
+
+import com.itemchestshop.models.ChestShop;
+import org.bukkit.Material;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * One change to a server's shops, as sent to the other servers.
+ *
+ * Every server numbers its own changes with an increasing sequence, so a
+ * receiver only needs the highest sequence it has applied per server (its
+ * version vector) to ask for what it is missing. A creation carries everything
+ * listings need; a removal only the sign position. A later delta for the same
+ * sign replaces any earlier one.
+ */
+public final class ShopDelta {
+
+    private final String origin;
+    private final long sequence;
+    private final boolean removed;
+    private final String world;
+    private final int x;
+    private final int y;
+    private final int z;
+    private final UUID owner;
+    private final String ownerName;
+    private final Material wantType;
+    private final int wantAmount;
+    private final Material giveType;
+    private final int giveAmount;
+
+    public ShopDelta(String origin, long sequence, boolean removed, String world, int x, int y, int z,
+                     UUID owner, String ownerName, Material wantType, int wantAmount, Material giveType, int giveAmount) {
+        this.origin = origin;
+        this.sequence = sequence;
+        this.removed = removed;
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.owner = owner;
+        this.ownerName = ownerName;
+        this.wantType = wantType;
+        this.wantAmount = wantAmount;
+        this.giveType = giveType;
+        this.giveAmount = giveAmount;
+    }
+
+    /**
+     * Describes a shop that was created or changed
+     * @param origin The server the shop is on
+     * @param sequence The server's sequence number for this change
+     * @param chestShop The shop
+     * @return The delta
+     */
+    public static ShopDelta created(String origin, long sequence, ChestShop chestShop) {
+        return new ShopDelta(origin, sequence, false, chestShop.getWorldName(),
+            chestShop.getX(), chestShop.getY(), chestShop.getZ(),
+            chestShop.getOwner(), chestShop.getOwnerName(),
+            chestShop.getWantTemplate().getType(), chestShop.getWantTemplate().getAmount(),
+            chestShop.getGiveTemplate().getType(), chestShop.getGiveTemplate().getAmount());
+    }
+
+    /**
+     * Describes a shop that was removed
+     * @param origin The server the shop was on
+     * @param sequence The server's sequence number for this change
+     * @param world The name of the shop's world
+     * @param x The sign x coordinate
+     * @param y The sign y coordinate
+     * @param z The sign z coordinate
+     * @return The delta
+     */
+    public static ShopDelta removed(String origin, long sequence, String world, int x, int y, int z) {
+        return new ShopDelta(origin, sequence, true, world, x, y, z, null, null, null, 0, null, 0);
+    }
+
+    /**
+     * Gets the position of the shop's sign, unique among one server's shops
+     * @return The world name and sign coordinates
+     */
+    public String getKey() {
+        return key(world, x, y, z);
+    }
+
+    /**
+     * Builds the key of a sign position
+     * @param world The world name
+     * @param x The sign x coordinate
+     * @param y The sign y coordinate
+     * @param z The sign z coordinate
+     * @return The key
+     */
+    public static String key(String world, int x, int y, int z) {
+        return world + ' ' + x + ' ' + y + ' ' + z;
+    }
+
+    /**
+     * Checks whether another delta describes the same shop contents
+     * @param other The other delta
+     * @return true if both are creations with the same owner and trade
+     */
+    public boolean sameShop(ShopDelta other) {
+        return !removed && !other.removed
+            && Objects.equals(owner, other.owner)
+            && wantType == other.wantType && wantAmount == other.wantAmount
+            && giveType == other.giveType && giveAmount == other.giveAmount;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    public String getWorld() {
+        return world;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public UUID getOwner() {
+        return owner;
+    }
+
+    public String getOwnerName() {
+        return ownerName;
+    }
+
+    public Material getWantType() {
+        return wantType;
+    }
+
+    public int getWantAmount() {
+        return wantAmount;
+    }
+
+    public Material getGiveType() {
+        return giveType;
+    }
+
+    public int getGiveAmount() {
+        return giveAmount;
+    }
+}
@@ -0,0 +1,419 @@
+package com.itemchestshop.replication;
+
+import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.utils.ConfigManager;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+/**
+ * Shares shop creations and removals with the other servers of a network and
+ * keeps a {@link ReplicaIndex} of theirs.
+ *
+ * Changes are numbered per server and sent as deltas over a
+ * {@link ReplicationTransport}. Each sync publishes the deltas made since the
+ * last one and asks every other server only for the deltas after the sequence
+ * already seen from it. On start, this server reads back what it published
+ * before and sends only the differences to its current shops, which also
+ * covers changes made while replication was off.
+ *
+ * Transport calls run off the main thread, one sync at a time; the replica
+ * index and the outgoing queue are only touched on the main thread. Stopping
+ * hands the last deltas and the transport to a background thread as well, so a
+ * slow or unreachable database cannot hold up a reload; only disabling the
+ * plugin waits for it, and only for a few seconds.
+ */
+public class ShopReplicator {
+
+    private static final Pattern SERVER_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final String LOCAL_BUS = "itemchestshop";
+    private static final long SHUTDOWN_WAIT_SECONDS = 5;
+
+    private final ItemChestShopPlugin plugin;
+    private final ReplicaIndex replicaIndex;
+    private final Object transportLock;
+
+    private ReplicationTransport transport;
+    private String serverId;
+    private BukkitTask syncTask;
+    // Bumped on every start and stop, so results of an earlier run are dropped
+    private volatile int session;
+    private boolean ready;
+    private boolean syncing;
+    private boolean failing;
+    private long sequence;
+    private List<ShopDelta> outbox;
+    // Completes once the transport of the previous run has published its last deltas and closed
+    private CompletableFuture<Void> closing;
+    // Highest sequence received per server, used by the sync thread only
+    private VersionVector received;
+
+    public ShopReplicator(ItemChestShopPlugin plugin) {
+        this.plugin = plugin;
+        this.replicaIndex = new ReplicaIndex();
+        this.transportLock = new Object();
+        this.outbox = new ArrayList<>();
+        this.received = new VersionVector();
+        this.closing = CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Starts replicating if it is enabled in the configuration
+     */
+    public void start() {
+        stop();
+        ConfigManager configManager = plugin.getConfigManager();
+        if (!configManager.isReplicationEnabled()) {
+            return;
+        }
+
+        String id = configManager.getReplicationServerId();
+        if (!SERVER_ID.matcher(id).matches()) {
+            plugin.getLogger().warning("Replication needs a replication.server-id of letters, digits, - and _; leaving it off");
+            return;
+        }
+
+        try {
+            transport = createTransport(configManager);
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning("Replication is off: " + e.getMessage());
+            return;
+        }
+
+        serverId = id;
+        received = new VersionVector();
+        replicaIndex.clear();
+        long intervalTicks = configManager.getReplicationSyncIntervalSeconds() * 20L;
+        syncTask = plugin.getServer().getScheduler().runTaskTimer(plugin, this::sync, 1L, intervalTicks);
+    }
+
+    /**
+     * Stops replicating. What is still queued is published and the transport
+     * closed on a background thread, without waiting for either.
+     */
+    public void stop() {
+        disconnect();
+    }
+
+    /**
+     * Stops replicating as the plugin is disabled, waiting a few seconds at most
+     * for what is still queued to be published
+     */
+    public void shutdown() {
+        CompletableFuture<Void> closed = disconnect();
+        try {
+            closed.get(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            plugin.getLogger().warning("Replication transport did not close within " + SHUTDOWN_WAIT_SECONDS
+                + " seconds; unpublished shop changes are sent when replication starts again");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to close the replication transport", e.getCause());
+        }
+    }
+
+    /**
+     * Ends the current run and hands its transport and last deltas to a background thread
+     * @return Completes once the transport is closed
+     */
+    private CompletableFuture<Void> disconnect() {
+        session++;
+        if (syncTask != null) {
+            syncTask.cancel();
+            syncTask = null;
+        }
+
+        if (transport != null) {
+            ReplicationTransport closingTransport = transport;
+            List<ShopDelta> last = ready ? outbox : new ArrayList<>();
+            CompletableFuture<Void> previous = closing;
+            CompletableFuture<Void> closed = new CompletableFuture<>();
+            closing = closed;
+            Runnable close = () -> {
+                try {
+                    previous.join();
+                    closeTransport(closingTransport, last);
+                    closed.complete(null);
+                } catch (RuntimeException e) {
+                    closed.completeExceptionally(e);
+                }
+            };
+            if (plugin.isEnabled()) {
+                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, close);
+            } else {
+                // No tasks can be scheduled while the plugin is disabled
+                Thread thread = new Thread(close, "ItemChestShop replication shutdown");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            transport = null;
+        }
+
+        ready = false;
+        syncing = false;
+        outbox = new ArrayList<>();
+        replicaIndex.clear();
+        return closing;
+    }
+
+    /**
+     * Publishes the last deltas of a run and closes its transport. Runs off the main thread.
+     */
+    private void closeTransport(ReplicationTransport closingTransport, List<ShopDelta> last) {
+        // Waits for a sync in progress to finish with the transport
+        synchronized (transportLock) {
+            try {
+                if (!last.isEmpty()) {
+                    closingTransport.publish(last);
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to publish " + last.size()
+                    + " shop changes; they are sent when replication starts again", e);
+            } finally {
+                closingTransport.close();
+            }
+        }
+    }
+
+    /**
+     * Queues a created or changed shop for the other servers
+     * @param chestShop The shop
+     */
+    public void shopCreated(ChestShop chestShop) {
+        if (ready) {
+            outbox.add(ShopDelta.created(serverId, ++sequence, chestShop));
+        }
+    }
+
+    /**
+     * Queues a removed shop for the other servers
+     * @param chestShop The shop
+     */
+    public void shopRemoved(ChestShop chestShop) {
+        if (ready) {
+            outbox.add(ShopDelta.removed(serverId, ++sequence, chestShop.getWorldName(),
+                chestShop.getX(), chestShop.getY(), chestShop.getZ()));
+        }
+    }
+
+    /**
+     * Compares this server's shops with what it published again, after the
+     * registry was replaced as a whole
+     */
+    public void resync() {
+        if (transport != null && ready) {
+            // Queued deltas are superseded by the comparison
+            outbox = new ArrayList<>();
+            ready = false;
+        }
+    }
+
+    /**
+     * Checks whether deltas are being exchanged
+     * @return true once the start-up comparison is done
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Gets this server's id in the network
+     * @return The server id, or null when replication is off
+     */
+    public String getServerId() {
+        return transport == null ? null : serverId;
+    }
+
+    /**
+     * Gets the shops on the other servers
+     * @return The replica index
+     */
+    public ReplicaIndex getReplicaIndex() {
+        return replicaIndex;
+    }
+
+    /**
+     * Runs on the main thread every sync interval and hands the transport work to a
+     * background thread, unless the previous sync is still running
+     */
+    private void sync() {
+        if (syncing) {
+            return;
+        }
+        if (!ready) {
+            if (plugin.getChestShopManager().isLoaded()) {
+                readPublished();
+            }
+            return;
+        }
+
+        List<ShopDelta> batch = outbox;
+        outbox = new ArrayList<>();
+        int current = session;
+        ReplicationTransport currentTransport = transport;
+        syncing = true;
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> exchange(current, currentTransport, batch));
+    }
+
+    /**
+     * Reads back this server's published shops, then compares them with the registry
+     */
+    private void readPublished() {
+        int current = session;
+        ReplicationTransport currentTransport = transport;
+        CompletableFuture<Void> previous = closing;
+        syncing = true;
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            // The last deltas of the previous run go out first, so they are read back here
+            previous.exceptionally(e -> null).join();
+            List<ShopDelta> published = null;
+            synchronized (transportLock) {
+                if (current != session) {
+                    return;
+                }
+                try {
+                    currentTransport.open();
+                    published = currentTransport.read(serverId, 0);
+                } catch (IOException e) {
+                    logFailure("Failed to reach the replication transport", e);
+                }
+            }
+
+            List<ShopDelta> result = published;
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                if (current != session) {
+                    return;
+                }
+                syncing = false;
+                if (result != null) {
+                    reconcile(result);
+                }
+            });
+        });
+    }
+
+    /**
+     * Queues the differences between the registry and what this server published before
+     * @param published This server's deltas on the transport
+     */
+    private void reconcile(List<ShopDelta> published) {
+        Map<String, ShopDelta> publishedShops = new HashMap<>();
+        sequence = 0;
+        for (ShopDelta delta : published) {
+            publishedShops.put(delta.getKey(), delta);
+            sequence = Math.max(sequence, delta.getSequence());
+        }
+
+        Set<String> localKeys = new HashSet<>();
+        for (ChestShop chestShop : plugin.getChestShopManager().getShops()) {
+            ShopDelta current = ShopDelta.created(serverId, sequence + 1, chestShop);
+            localKeys.add(current.getKey());
+            ShopDelta previous = publishedShops.get(current.getKey());
+            if (previous == null || !previous.sameShop(current)) {
+                outbox.add(current);
+                sequence++;
+            }
+        }
+        for (ShopDelta previous : publishedShops.values()) {
+            if (!previous.isRemoved() && !localKeys.contains(previous.getKey())) {
+                outbox.add(ShopDelta.removed(serverId, ++sequence, previous.getWorld(),
+                    previous.getX(), previous.getY(), previous.getZ()));
+            }
+        }
+
+        ready = true;
+        plugin.getLogger().info("Replicating shops as " + serverId + ", " + outbox.size() + " changes to publish");
+    }
+
+    /**
+     * Publishes a batch and fetches the other servers' new deltas. Runs off the main thread.
+     * @param current The session the batch belongs to
+     * @param currentTransport The transport of that session
+     * @param batch This server's deltas since the last sync
+     */
+    private void exchange(int current, ReplicationTransport currentTransport, List<ShopDelta> batch) {
+        List<ShopDelta> incoming = new ArrayList<>();
+        boolean published = false;
+        synchronized (transportLock) {
+            if (current != session) {
+                return;
+            }
+            try {
+                currentTransport.publish(batch);
+                published = true;
+                for (String origin : currentTransport.getOrigins()) {
+                    if (origin.equals(serverId)) {
+                        continue;
+                    }
+                    for (ShopDelta delta : currentTransport.read(origin, received.get(origin))) {
+                        received.advance(origin, delta.getSequence());
+                        incoming.add(delta);
+                    }
+                }
+                if (failing) {
+                    failing = false;
+                    plugin.getLogger().info("Replication transport reachable again");
+                }
+            } catch (IOException e) {
+                logFailure("Failed to sync shops with the other servers", e);
+            }
+        }
+
+        boolean sent = published;
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            if (current != session) {
+                return;
+            }
+            syncing = false;
+            if (!sent) {
+                // Retry next time, ahead of anything queued since
+                batch.addAll(outbox);
+                outbox = batch;
+            }
+            for (ShopDelta delta : incoming) {
+                replicaIndex.apply(delta);
+            }
+        });
+    }
+
+    /**
+     * Logs a transport failure once until it recovers, rather than every sync
+     */
+    private void logFailure(String message, IOException e) {
+        if (!failing) {
+            failing = true;
+            plugin.getLogger().log(Level.WARNING, message + "; retrying every sync", e);
+        }
+    }
+
+    private ReplicationTransport createTransport(ConfigManager configManager) {
+        switch (configManager.getReplicationTransport()) {
+            case "local":
+                return new LocalTransport(LOCAL_BUS);
+            case "file":
+                return new FileTransport(new File(configManager.getReplicationDirectory()), plugin.getLogger());
+            case "jdbc":
+                return new JdbcTransport(configManager.getReplicationJdbcUrl(),
+                    configManager.getReplicationJdbcUsername(),
+                    configManager.getReplicationJdbcPassword(),
+                    configManager.getReplicationJdbcTable());
+            default:
+                throw new IllegalArgumentException("unknown replication.transport " + configManager.getReplicationTransport());
+        }
+    }
+}
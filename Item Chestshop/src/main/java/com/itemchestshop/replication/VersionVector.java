@@ -0,0 +1,35 @@
+package com.itemchestshop.replication;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The highest sequence number seen from each server. Deltas of one server are
+ * applied in sequence order, so this is all that is needed to resume.
+ */
+public final class VersionVector {
+
+    private final Map<String, Long> sequences;
+
+    public VersionVector() {
+        this.sequences = new HashMap<>();
+    }
+
+    /**
+     * Gets the highest sequence seen from a server
+     * @param origin The server id
+     * @return The sequence, or 0 if nothing was seen
+     */
+    public long get(String origin) {
+        return sequences.getOrDefault(origin, 0L);
+    }
+
+    /**
+     * Records a sequence as seen, unless a higher one already was
+     * @param origin The server id
+     * @param sequence The sequence
+     */
+    public void advance(String origin, long sequence) {
+        sequences.merge(origin, sequence, Math::max);
+    }
+}
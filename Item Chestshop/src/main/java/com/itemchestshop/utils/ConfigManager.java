@@ -3,10 +3,13 @@ package com.itemchestshop.utils;
 import com.itemchestshop.ItemChestShopPlugin;
 import org.bukkit.configuration.file.FileConfiguration;
 
+import java.util.List;
+
 public class ConfigManager {
     
     private final ItemChestShopPlugin plugin;
     private FileConfiguration config;
+    private Messages messages;
     
     public ConfigManager(ItemChestShopPlugin plugin) {
         this.plugin = plugin;
@@ -17,10 +20,11 @@ public class ConfigManager {
         plugin.saveDefaultConfig();
         plugin.reloadConfig();
         config = plugin.getConfig();
+        messages = new Messages(config.getConfigurationSection("messages"));
     }
     
-    public String getMessage(String key) {
-        return config.getString("messages." + key, "Message not found: " + key);
+    public Messages getMessages() {
+        return messages;
     }
     
     public boolean isDebugEnabled() {
@@ -34,4 +38,164 @@ public class ConfigManager {
     public int getMaxShopsPerPlayer() {
         return config.getInt("max-shops-per-player", 10);
     }
+    
+    public int getMaxRouteHops() {
+        return Math.max(1, config.getInt("max-route-hops", 4));
+    }
+    
+    public boolean isSlowLogEnabled() {
+        return config.getBoolean("slow-log.enabled", true);
+    }
+    
+    public long getSlowTradeThresholdMillis() {
+        return config.getLong("slow-log.trade-threshold-ms", 5);
+    }
+    
+    public long getSlowSaveThresholdMillis() {
+        return config.getLong("slow-log.save-threshold-ms", 50);
+    }
+    
+    public int getSlowLogSampleRate() {
+        return config.getInt("slow-log.sample-rate", 100);
+    }
+    
+    public int getSlowLogMaxEntriesPerMinute() {
+        return config.getInt("slow-log.max-entries-per-minute", 30);
+    }
+    
+    public boolean isSweeperEnabled() {
+        return config.getBoolean("sweeper.enabled", true);
+    }
+    
+    public long getSweeperBudgetMicros() {
+        return Math.max(1, config.getLong("sweeper.budget-us", 100));
+    }
+    
+    public long getSweeperLapIntervalSeconds() {
+        return Math.max(0, config.getLong("sweeper.lap-interval-seconds", 60));
+    }
+    
+    public long getBulkBudgetMicros() {
+        return Math.max(100, config.getLong("bulk.budget-us", 2000));
+    }
+    
+    public long getBulkProgressIntervalSeconds() {
+        return Math.max(1, config.getLong("bulk.progress-interval-seconds", 5));
+    }
+    
+    public boolean isTraceEnabled() {
+        return config.getBoolean("trace.enabled", false);
+    }
+    
+    public long getTraceMaxSizeMegabytes() {
+        return Math.max(1, config.getLong("trace.max-size-mb", 256));
+    }
+    
+    public int getDeliveryMaxStacks() {
+        return Math.max(1, config.getInt("delivery.max-stacks", 54));
+    }
+    
+    public long getDeliverySaveIntervalSeconds() {
+        return Math.max(1, config.getLong("delivery.save-interval-seconds", 30));
+    }
+    
+    public boolean isBackupsEnabled() {
+        return config.getBoolean("backups.enabled", true);
+    }
+    
+    public long getBackupIntervalMinutes() {
+        return Math.max(1, config.getLong("backups.interval-minutes", 30));
+    }
+    
+    public int getBackupGenerations() {
+        return Math.max(1, config.getInt("backups.generations", 48));
+    }
+    
+    public int getBackupFullEvery() {
+        return Math.max(1, config.getInt("backups.full-every", 8));
+    }
+    
+    public boolean isExpiryEnabled() {
+        return config.getBoolean("expiry.enabled", false);
+    }
+    
+    public long getExpiryInactiveDays() {
+        return Math.max(1, config.getLong("expiry.inactive-days", 30));
+    }
+    
+    public boolean isExpiryCountingOwnerLogins() {
+        return config.getBoolean("expiry.count-owner-logins", true);
+    }
+    
+    public List<Integer> getExpiryWarnDays() {
+        return config.getIntegerList("expiry.warn-days");
+    }
+    
+    public boolean isHistoryEnabled() {
+        return config.getBoolean("history.enabled", true);
+    }
+    
+    public int getHistoryMinutes() {
+        return Math.max(1, config.getInt("history.minutes", 180));
+    }
+    
+    public int getHistoryHours() {
+        return Math.max(1, config.getInt("history.hours", 336));
+    }
+    
+    public int getHistoryDays() {
+        return Math.max(1, config.getInt("history.days", 365));
+    }
+    
+    public boolean isStockAlertsEnabled() {
+        return config.getBoolean("stock-alerts.enabled", true);
+    }
+    
+    public int getStockAlertLowThreshold() {
+        return Math.max(0, config.getInt("stock-alerts.low-threshold", 3));
+    }
+    
+    public int getStockAlertRearmThreshold() {
+        return config.getInt("stock-alerts.rearm-threshold", 10);
+    }
+    
+    public int getLeaderboardSize() {
+        return Math.max(1, Math.min(100, config.getInt("leaderboard.size", 10)));
+    }
+    
+    public boolean isReplicationEnabled() {
+        return config.getBoolean("replication.enabled", false);
+    }
+    
+    public String getReplicationServerId() {
+        return config.getString("replication.server-id", "");
+    }
+    
+    public String getReplicationTransport() {
+        return config.getString("replication.transport", "file").toLowerCase();
+    }
+    
+    public long getReplicationSyncIntervalSeconds() {
+        return Math.max(1, config.getLong("replication.sync-interval-seconds", 2));
+    }
+    
+    public String getReplicationDirectory() {
+        return config.getString("replication.file.directory", "replication");
+    }
+    
+    public String getReplicationJdbcUrl() {
+        return config.getString("replication.jdbc.url", "");
+    }
+    
+    public String getReplicationJdbcUsername() {
+        return config.getString("replication.jdbc.username", "");
+    }
+    
+    public String getReplicationJdbcPassword() {
+        return config.getString("replication.jdbc.password", "");
+    }
+    
+    public String getReplicationJdbcTable() {
+        return config.getString("replication.jdbc.table", "itemchestshop_shops");
+    }
 }
\ No newline at end of file
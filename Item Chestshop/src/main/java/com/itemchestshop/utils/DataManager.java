@@ -2,74 +2,173 @@ package com.itemchestshop.utils;
 
 import com.google.gson.*;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.itemchestshop.ItemChestShopPlugin;
 import com.itemchestshop.models.ChestShop;
+import com.itemchestshop.models.ItemTemplate;
+import com.itemchestshop.models.ShopTables;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
+import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.inventory.ItemStack;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+/**
+ * Stores the shops in shops.json and keeps backup generations of it.
+ *
+ * shops.json is replaced through a temporary file, so a crash while saving
+ * leaves the previous version intact. At most once per backup interval a save
+ * also writes a generation to the backups folder: every few generations a full
+ * gzipped copy, and in between only the shops added, changed or removed since
+ * the previous generation. Restoring a diff replays it on top of the full copy
+ * it follows. Generations are written on a background thread from a copy made
+ * while saving, and diffs are found by comparing each shop field by field with
+ * the previous generation, which is kept in memory.
+ *
+ * Shops removed for inactivity are appended to expired-shops.ndjson, one shop
+ * with its items per line, so they can be brought back later.
+ */
 public class DataManager {
     
+    // Version 1 had no version field and stored items inline in each shop
+    private static final int FORMAT_VERSION = 2;
+    private static final Pattern BACKUP_NAME = Pattern.compile("shops-(\\d+)\\.(full|diff)\\.json\\.gz");
+    
     private final ItemChestShopPlugin plugin;
     private final File dataFile;
+    private final File backupFolder;
+    private final File archiveFile;
     private final Gson gson;
+    private final Gson backupGson;
+    
+    // Guards the generation state below, which background backups and restores share
+    private final Object backupLock = new Object();
+    // The newest generation written since startup, which the next diff is made against
+    private ShopFile lastBackup;
+    private int lastGeneration;
+    private int lastFullGeneration;
+    private volatile long lastBackupTime;
+    // Set when shops.json exists but could not be read, so saving would overwrite it
+    private volatile boolean loadFailed;
     
     public DataManager(ItemChestShopPlugin plugin) {
         this.plugin = plugin;
         this.dataFile = new File(plugin.getDataFolder(), "shops.json");
+        this.backupFolder = new File(plugin.getDataFolder(), "backups");
+        this.archiveFile = new File(plugin.getDataFolder(), "expired-shops.ndjson");
         this.gson = new GsonBuilder()
                 .registerTypeAdapter(Location.class, new LocationAdapter())
                 .registerTypeAdapter(ItemStack.class, new ItemStackAdapter())
+                .disableHtmlEscaping()
                 .setPrettyPrinting()
                 .create();
+        this.backupGson = new GsonBuilder()
+                .disableHtmlEscaping()
+                .create();
         
         // Create data folder if it doesn't exist
         if (!plugin.getDataFolder().exists()) {
             plugin.getDataFolder().mkdirs();
         }
+        
+        // Continue numbering after the generations already on disk
+        List<Backup> backups = getBackups();
+        if (!backups.isEmpty()) {
+            Backup newest = backups.get(backups.size() - 1);
+            lastGeneration = newest.getGeneration();
+            lastBackupTime = newest.getTime();
+        }
     }
     
     /**
      * Saves all chest shops to the data file
-     * @param chestShops Map of chest shops to save
+     * @param chestShops The chest shops to save
      */
-    public void saveShops(Map<Location, ChestShop> chestShops) {
+    public void saveShops(Collection<ChestShop> chestShops) {
+        if (loadFailed) {
+            plugin.getLogger().warning("Not saving chest shops, " + dataFile.getName()
+                + " could not be read; restore a backup with /itemchestshop restore first");
+            return;
+        }
+        
+        long start = plugin.getMetrics().start();
+        PhaseTimer timer = plugin.getSlowLog().begin(SlowOperationLog.Operation.SAVE);
         try {
-            // Convert to serializable format
-            Map<String, SerializableChestShop> serializableShops = new HashMap<>();
+            // Convert to serializable format, storing each distinct item once
+            ShopFile shopFile = new ShopFile();
+            ItemTable itemTable = new ItemTable(shopFile.items);
             
-            for (Map.Entry<Location, ChestShop> entry : chestShops.entrySet()) {
-                String locationKey = locationToString(entry.getKey());
-                SerializableChestShop serializableShop = new SerializableChestShop(entry.getValue());
-                serializableShops.put(locationKey, serializableShop);
+            for (ChestShop chestShop : chestShops) {
+                SerializableChestShop serializableShop = new SerializableChestShop(chestShop, itemTable);
+                shopFile.shops.put(serializableShop.signLocation, serializableShop);
             }
+            String json = gson.toJson(shopFile);
+            timer.mark(PhaseTimer.Phase.SERIALIZE);
             
-            // Write to file
-            try (FileWriter writer = new FileWriter(dataFile)) {
-                gson.toJson(serializableShops, writer);
+            // Write to a temporary file first, so a crash mid-write keeps the previous file
+            File tempFile = new File(dataFile.getPath() + ".tmp");
+            try (FileWriter writer = new FileWriter(tempFile)) {
+                writer.write(json);
             }
+            Files.move(tempFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            timer.mark(PhaseTimer.Phase.WRITE);
             
             plugin.getLogger().info("Saved " + chestShops.size() + " chest shops to " + dataFile.getName());
             
+            if (isBackupDue()) {
+                // Claims the interval now, so the saves until the write finishes do not queue another
+                lastBackupTime = System.currentTimeMillis();
+                writeBackupAsync(shopFile);
+            }
+            
         } catch (IOException e) {
             plugin.getLogger().log(Level.SEVERE, "Failed to save chest shops", e);
+        } finally {
+            plugin.getSlowLog().finishSave(timer, chestShops.size());
+            plugin.getMetrics().record(MetricsRegistry.Metric.SAVE, start);
         }
     }
     
     /**
      * Loads all chest shops from the data file
-     * @return Map of loaded chest shops
+     * @return The loaded chest shops
+     */
+    public List<ChestShop> loadShops() {
+        return loadShops(snapshotWorlds());
+    }
+    
+    /**
+     * Loads all chest shops from the data file without touching the server,
+     * so it can run off the main thread. If the file cannot be read no shops are
+     * returned and saving is refused until {@link #clearLoadFailed()}.
+     * @param worlds The loaded worlds by name, from {@link #snapshotWorlds()}
+     * @return The loaded chest shops
      */
-    public Map<Location, ChestShop> loadShops() {
-        Map<Location, ChestShop> chestShops = new HashMap<>();
+    public List<ChestShop> loadShops(Map<String, World> worlds) {
+        List<ChestShop> chestShops = new ArrayList<>();
+        long start = plugin.getMetrics().start();
+        loadFailed = false;
         
         if (!dataFile.exists()) {
             plugin.getLogger().info("No existing shop data found, starting fresh");
@@ -78,72 +177,634 @@ public class DataManager {
         
         try {
             // Read from file
-            try (FileReader reader = new FileReader(dataFile)) {
-                Type type = new TypeToken<Map<String, SerializableChestShop>>(){}.getType();
-                Map<String, SerializableChestShop> serializableShops = gson.fromJson(reader, type);
-                
-                if (serializableShops != null) {
-                    // Convert back to ChestShop objects
-                    for (Map.Entry<String, SerializableChestShop> entry : serializableShops.entrySet()) {
-                        try {
-                            Location location = stringToLocation(entry.getKey());
-                            ChestShop chestShop = entry.getValue().toChestShop();
-                            
-                            if (location != null && chestShop != null) {
-                                chestShops.put(location, chestShop);
-                            }
-                        } catch (Exception e) {
-                            plugin.getLogger().log(Level.WARNING, "Failed to load shop at " + entry.getKey(), e);
-                        }
-                    }
+            try (JsonReader reader = gson.newJsonReader(new FileReader(dataFile))) {
+                if (!isEmpty(reader)) {
+                    chestShops = readShops(reader, worlds);
                 }
             }
             
             plugin.getLogger().info("Loaded " + chestShops.size() + " chest shops from " + dataFile.getName());
             
-        } catch (IOException e) {
-            plugin.getLogger().log(Level.SEVERE, "Failed to load chest shops", e);
+        } catch (IOException | RuntimeException e) {
+            // Gson reports malformed or truncated JSON with unchecked exceptions
+            loadFailed = true;
+            chestShops = new ArrayList<>();
+            File damaged = new File(dataFile.getPath() + ".damaged");
+            try {
+                Files.copy(dataFile.toPath(), damaged.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException copyError) {
+                plugin.getLogger().log(Level.WARNING, "Failed to copy " + dataFile.getName(), copyError);
+            }
+            plugin.getLogger().log(Level.SEVERE, "Failed to load chest shops from " + dataFile.getAbsolutePath()
+                + "; starting without shops and not saving until a backup is restored. "
+                + "/itemchestshop restore lists the backups, and the unreadable file is kept as " + damaged.getName(), e);
+        } finally {
+            plugin.getMetrics().record(MetricsRegistry.Metric.LOAD, start);
         }
         
         return chestShops;
     }
     
     /**
-     * Converts a Location to a string representation
+     * Checks whether the data file could not be read on the last load
+     * @return true while saving is refused
+     */
+    public boolean isLoadFailed() {
+        return loadFailed;
+    }
+    
+    /**
+     * Allows saving again after a failed load, once the shops were replaced,
+     * for example by a restored backup
+     */
+    public void clearLoadFailed() {
+        loadFailed = false;
+    }
+    
+    /**
+     * Reads the shops of a data file. Files from before the item table have no
+     * version and list one entry per shop at the top level, with the items inline.
+     * @param reader The reader, positioned at the start of the file
+     * @param worlds The loaded worlds by name
+     * @return The shops that could be loaded
+     */
+    private List<ChestShop> readShops(JsonReader reader, Map<String, World> worlds) throws IOException {
+        List<SerializableItem> items = new ArrayList<>();
+        Map<String, SerializableChestShop> shops = new HashMap<>();
+        Map<String, LegacyChestShop> legacyShops = new HashMap<>();
+        int version = 1;
+        
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "version":
+                    version = reader.nextInt();
+                    break;
+                case "items":
+                    items = gson.fromJson(reader, new TypeToken<List<SerializableItem>>(){}.getType());
+                    break;
+                case "shops":
+                    shops = gson.fromJson(reader, new TypeToken<Map<String, SerializableChestShop>>(){}.getType());
+                    break;
+                default:
+                    // Sign locations always contain commas, so they never clash with the names above
+                    legacyShops.put(name, gson.fromJson(reader, LegacyChestShop.class));
+                    break;
+            }
+        }
+        reader.endObject();
+        
+        if (version > FORMAT_VERSION) {
+            plugin.getLogger().warning(dataFile.getName() + " was written by a newer version of the plugin, some shops may not load");
+        }
+        
+        return toChestShops(items, shops, legacyShops, worlds);
+    }
+    
+    /**
+     * Creates the shops of a data file's entries
+     * @param items The item table
+     * @param shops The shops, referring to the item table
+     * @param legacyShops The shops with inline items
+     * @param worlds The loaded worlds by name
+     * @return The shops that could be loaded
      */
-    private String locationToString(Location location) {
-        return location.getWorld().getName() + "," + 
-               location.getX() + "," + 
-               location.getY() + "," + 
-               location.getZ() + "," + 
-               location.getYaw() + "," + 
-               location.getPitch();
+    private List<ChestShop> toChestShops(List<SerializableItem> items, Map<String, SerializableChestShop> shops,
+                                         Map<String, LegacyChestShop> legacyShops, Map<String, World> worlds) {
+        // Items are only interned here; they are decoded when a shop first uses them
+        ItemTemplate[] templates = new ItemTemplate[items.size()];
+        for (int i = 0; i < templates.length; i++) {
+            try {
+                templates[i] = items.get(i).toTemplate();
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to load item " + i, e);
+            }
+        }
+        
+        // Entries are keyed by their sign location, so the key is not parsed again
+        List<ChestShop> chestShops = new ArrayList<>(shops.size() + legacyShops.size());
+        for (Map.Entry<String, SerializableChestShop> entry : shops.entrySet()) {
+            try {
+                ChestShop chestShop = entry.getValue().toChestShop(worlds, templates);
+                
+                if (chestShop != null) {
+                    chestShops.add(chestShop);
+                }
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to load shop at " + entry.getKey(), e);
+            }
+        }
+        for (Map.Entry<String, LegacyChestShop> entry : legacyShops.entrySet()) {
+            try {
+                ChestShop chestShop = entry.getValue().toChestShop(worlds);
+                
+                if (chestShop != null) {
+                    chestShops.add(chestShop);
+                }
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to load shop at " + entry.getKey(), e);
+            }
+        }
+        return chestShops;
     }
     
     /**
-     * Converts a string representation back to a Location
+     * Writes a backup generation of the shops now, whether or not one is due
+     * @param chestShops The chest shops to back up
+     * @return The generation written, or -1 if it failed
      */
-    private Location stringToLocation(String locationString) {
+    public int backUpShops(Collection<ChestShop> chestShops) {
+        ShopFile shopFile = new ShopFile();
+        ItemTable itemTable = new ItemTable(shopFile.items);
+        for (ChestShop chestShop : chestShops) {
+            SerializableChestShop serializableShop = new SerializableChestShop(chestShop, itemTable);
+            shopFile.shops.put(serializableShop.signLocation, serializableShop);
+        }
+        
         try {
-            String[] parts = locationString.split(",");
-            if (parts.length != 6) {
-                return null;
+            return writeBackup(shopFile);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to back up chest shops", e);
+            return -1;
+        }
+    }
+    
+    /**
+     * Writes a generation on a background thread. The shop file is not changed
+     * after saving, so it can be handed over as it is. While the plugin shuts
+     * down no background task runs any more, so the generation is written right away.
+     * @param shopFile The shops to back up
+     */
+    private void writeBackupAsync(ShopFile shopFile) {
+        Runnable write = () -> {
+            try {
+                writeBackup(shopFile);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Failed to back up chest shops", e);
             }
-            
-            World world = Bukkit.getWorld(parts[0]);
-            if (world == null) {
-                return null;
+        };
+        if (plugin.isEnabled()) {
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, write);
+        } else {
+            write.run();
+        }
+    }
+    
+    /**
+     * Lists the backup generations on disk
+     * @return The generations, oldest first
+     */
+    public List<Backup> getBackups() {
+        List<Backup> backups = new ArrayList<>();
+        File[] files = backupFolder.listFiles();
+        if (files == null) {
+            return backups;
+        }
+        
+        for (File file : files) {
+            Matcher matcher = BACKUP_NAME.matcher(file.getName());
+            if (matcher.matches()) {
+                backups.add(new Backup(Integer.parseInt(matcher.group(1)), matcher.group(2).equals("full"),
+                    file.lastModified(), file.length(), file));
+            }
+        }
+        backups.sort((a, b) -> Integer.compare(a.getGeneration(), b.getGeneration()));
+        return backups;
+    }
+    
+    /**
+     * Loads the shops of a backup generation without touching the server or
+     * shops.json, so it can run off the main thread
+     * @param generation The generation to load
+     * @param worlds The loaded worlds by name, from {@link #snapshotWorlds()}
+     * @return The shops of that generation
+     * @throws IOException If the generation or one it depends on is missing or unreadable
+     */
+    public List<ChestShop> loadBackup(int generation, Map<String, World> worlds) throws IOException {
+        List<Backup> backups = getBackups();
+        int target = -1;
+        for (int i = 0; i < backups.size(); i++) {
+            if (backups.get(i).getGeneration() == generation) {
+                target = i;
+            }
+        }
+        if (target < 0) {
+            throw new FileNotFoundException("No backup generation " + generation);
+        }
+        
+        int base = target;
+        while (base >= 0 && !backups.get(base).isFull()) {
+            base--;
+        }
+        if (base < 0) {
+            throw new FileNotFoundException("Generation " + generation + " has no full backup before it");
+        }
+        
+        try {
+            // Replay the diffs since the full copy; their items are appended to its item table
+            ShopFile shopFile;
+            try (Reader reader = openBackup(backups.get(base).getFile())) {
+                shopFile = backupGson.fromJson(reader, ShopFile.class);
+            }
+            int previous = backups.get(base).getGeneration();
+            for (int i = base + 1; i <= target; i++) {
+                BackupDiff diff;
+                try (Reader reader = openBackup(backups.get(i).getFile())) {
+                    diff = backupGson.fromJson(reader, BackupDiff.class);
+                }
+                if (diff.base != previous) {
+                    throw new FileNotFoundException("Generation " + backups.get(i).getGeneration()
+                        + " follows generation " + diff.base + ", which is missing");
+                }
+                diff.applyTo(shopFile);
+                previous = backups.get(i).getGeneration();
+            }
+            return toChestShops(shopFile.items, shopFile.shops, new HashMap<>(), worlds);
+        } catch (JsonParseException e) {
+            throw new IOException("Backup generation " + generation + " is damaged", e);
+        }
+    }
+    
+    /**
+     * Appends shops to the archive of expired shops
+     * @param chestShops The expired shops
+     * @param time When they expired, in epoch milliseconds
+     * @throws IOException If the archive cannot be written
+     */
+    public void archiveShops(Collection<ChestShop> chestShops, long time) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(archiveFile, true),
+                StandardCharsets.UTF_8))) {
+            for (ChestShop chestShop : chestShops) {
+                List<SerializableItem> items = new ArrayList<>(2);
+                SerializableChestShop shop = new SerializableChestShop(chestShop, new ItemTable(items));
+                backupGson.toJson(new ArchivedShop(time, shop, items), writer);
+                writer.write('\n');
             }
+        }
+    }
+    
+    /**
+     * Reads the archive of expired shops without touching the server, so it can
+     * run off the main thread. Shops in worlds that are not loaded are left out.
+     * @param worlds The loaded worlds by name, from {@link #snapshotWorlds()}
+     * @return The expired shops, in the order they expired
+     * @throws IOException If the archive cannot be read
+     */
+    public List<ExpiredShop> loadArchive(Map<String, World> worlds) throws IOException {
+        List<ExpiredShop> expiredShops = new ArrayList<>();
+        if (!archiveFile.exists()) {
+            return expiredShops;
+        }
+        
+        int damaged = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(archiveFile),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    ArchivedShop archived = backupGson.fromJson(line, ArchivedShop.class);
+                    ItemTemplate[] templates = new ItemTemplate[archived.items.size()];
+                    for (int i = 0; i < templates.length; i++) {
+                        templates[i] = archived.items.get(i).toTemplate();
+                    }
+                    ChestShop chestShop = archived.shop.toChestShop(worlds, templates);
+                    if (chestShop != null) {
+                        expiredShops.add(new ExpiredShop(chestShop, archived.expired));
+                    }
+                } catch (RuntimeException e) {
+                    // A line cut short by a crash only loses that shop
+                    damaged++;
+                }
+            }
+        }
+        
+        if (damaged > 0) {
+            plugin.getLogger().warning("Skipped " + damaged + " damaged lines in " + archiveFile.getName());
+        }
+        return expiredShops;
+    }
+    
+    /**
+     * Checks whether the backup interval has passed since the newest generation
+     * @return true if a save should also write a generation
+     */
+    private boolean isBackupDue() {
+        ConfigManager configManager = plugin.getConfigManager();
+        return configManager.isBackupsEnabled()
+            && System.currentTimeMillis() - lastBackupTime >= configManager.getBackupIntervalMinutes() * 60_000L;
+    }
+    
+    /**
+     * Writes the next generation, as a diff against the previous one when possible,
+     * then deletes the generations no longer kept
+     * @param shopFile The shops to back up
+     * @return The generation written
+     */
+    private int writeBackup(ShopFile shopFile) throws IOException {
+        synchronized (backupLock) {
+            int generation = lastGeneration + 1;
+            boolean full = lastBackup == null
+                || generation - lastFullGeneration >= plugin.getConfigManager().getBackupFullEvery();
+            File file = new File(backupFolder, "shops-" + generation + (full ? ".full" : ".diff") + ".json.gz");
             
-            double x = Double.parseDouble(parts[1]);
-            double y = Double.parseDouble(parts[2]);
-            double z = Double.parseDouble(parts[3]);
-            float yaw = Float.parseFloat(parts[4]);
-            float pitch = Float.parseFloat(parts[5]);
+            Files.createDirectories(backupFolder.toPath());
+            File tempFile = new File(file.getPath() + ".tmp");
+            try {
+                try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(tempFile), 64 * 1024),
+                        StandardCharsets.UTF_8)) {
+                    backupGson.toJson(full ? shopFile : new BackupDiff(lastGeneration, lastBackup, shopFile), writer);
+                }
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.deleteIfExists(tempFile.toPath());
+                // The next generation cannot be a diff against one that was not written
+                lastBackup = null;
+                throw e;
+            }
             
-            return new Location(world, x, y, z, yaw, pitch);
-        } catch (Exception e) {
-            return null;
+            lastBackup = shopFile;
+            lastGeneration = generation;
+            lastBackupTime = System.currentTimeMillis();
+            if (full) {
+                lastFullGeneration = generation;
+            }
+            pruneBackups();
+            return generation;
+        }
+    }
+    
+    /**
+     * Deletes the oldest generations beyond the configured count, keeping the
+     * full copy the oldest remaining diff is based on
+     */
+    private void pruneBackups() {
+        List<Backup> backups = getBackups();
+        int keep = plugin.getConfigManager().getBackupGenerations();
+        if (backups.size() <= keep) {
+            return;
+        }
+        
+        int oldestKept = backups.size() - keep;
+        while (oldestKept > 0 && !backups.get(oldestKept).isFull()) {
+            oldestKept--;
+        }
+        for (int i = 0; i < oldestKept; i++) {
+            if (!backups.get(i).getFile().delete()) {
+                plugin.getLogger().warning("Failed to delete old backup " + backups.get(i).getFile().getName());
+            }
+        }
+    }
+    
+    private static Reader openBackup(File file) throws IOException {
+        return new InputStreamReader(new GZIPInputStream(new FileInputStream(file), 64 * 1024), StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Checks for an empty or null data file
+     * @param reader The reader, positioned at the start of the file
+     * @return true if the file holds no shops
+     */
+    private static boolean isEmpty(JsonReader reader) throws IOException {
+        try {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return true;
+            }
+            return false;
+        } catch (EOFException e) {
+            return true;
+        }
+    }
+    
+    /**
+     * Collects the loaded worlds once, so loading resolves each world name with a map lookup.
+     * Must be called on the main thread.
+     * @return The loaded worlds by name
+     */
+    public static Map<String, World> snapshotWorlds() {
+        Map<String, World> worlds = new HashMap<>();
+        for (World world : Bukkit.getWorlds()) {
+            worlds.put(world.getName(), world);
+        }
+        return worlds;
+    }
+    
+    /**
+     * Layout of the data file. Items are listed once and shops refer to them by index.
+     */
+    private static class ShopFile {
+        private final int version = FORMAT_VERSION;
+        private final List<SerializableItem> items = new ArrayList<>();
+        private final Map<String, SerializableChestShop> shops = new HashMap<>();
+    }
+    
+    /**
+     * Layout of a diff generation: the shops added or changed since the base
+     * generation, with their own item table, and the sign locations of the shops removed
+     */
+    private static class BackupDiff {
+        private final int version = FORMAT_VERSION;
+        private final int base;
+        private final List<SerializableItem> items = new ArrayList<>();
+        private final Map<String, SerializableChestShop> shops = new HashMap<>();
+        private final List<String> removed = new ArrayList<>();
+        
+        /**
+         * Collects the differences between two generations
+         * @param base The number of the previous generation
+         * @param previous The shops of the previous generation
+         * @param current The shops of this generation
+         */
+        public BackupDiff(int base, ShopFile previous, ShopFile current) {
+            this.base = base;
+            Map<Integer, Integer> itemIds = new HashMap<>();
+            for (Map.Entry<String, SerializableChestShop> entry : current.shops.entrySet()) {
+                SerializableChestShop shop = entry.getValue();
+                SerializableChestShop before = previous.shops.get(entry.getKey());
+                if (before == null || !shop.sameAs(current.items, before, previous.items)) {
+                    shops.put(entry.getKey(), shop.withItems(
+                        itemId(itemIds, current.items, shop.wantItem),
+                        itemId(itemIds, current.items, shop.giveItem)));
+                }
+            }
+            for (String signLocation : previous.shops.keySet()) {
+                if (!current.shops.containsKey(signLocation)) {
+                    removed.add(signLocation);
+                }
+            }
+        }
+        
+        private int itemId(Map<Integer, Integer> itemIds, List<SerializableItem> sourceItems, int id) {
+            return itemIds.computeIfAbsent(id, sourceId -> {
+                items.add(sourceItems.get(sourceId));
+                return items.size() - 1;
+            });
+        }
+        
+        /**
+         * Turns the base generation's shops into this generation's
+         * @param shopFile The shops of the base generation
+         */
+        public void applyTo(ShopFile shopFile) {
+            int offset = shopFile.items.size();
+            shopFile.items.addAll(items);
+            for (String signLocation : removed) {
+                shopFile.shops.remove(signLocation);
+            }
+            for (Map.Entry<String, SerializableChestShop> entry : shops.entrySet()) {
+                SerializableChestShop shop = entry.getValue();
+                shopFile.shops.put(entry.getKey(), shop.withItems(shop.wantItem + offset, shop.giveItem + offset));
+            }
+        }
+    }
+    
+    /**
+     * A line of the archive of expired shops, with the shop's own items
+     */
+    private static class ArchivedShop {
+        private final long expired;
+        private final SerializableChestShop shop;
+        private final List<SerializableItem> items;
+        
+        public ArchivedShop(long expired, SerializableChestShop shop, List<SerializableItem> items) {
+            this.expired = expired;
+            this.shop = shop;
+            this.items = items;
+        }
+    }
+    
+    /**
+     * A shop read back from the archive of expired shops
+     */
+    public static final class ExpiredShop {
+        private final ChestShop shop;
+        private final long time;
+        
+        ExpiredShop(ChestShop shop, long time) {
+            this.shop = shop;
+            this.time = time;
+        }
+        
+        public ChestShop getShop() {
+            return shop;
+        }
+        
+        /**
+         * Gets when the shop expired
+         * @return The time in epoch milliseconds
+         */
+        public long getTime() {
+            return time;
+        }
+    }
+    
+    /**
+     * A backup generation on disk
+     */
+    public static final class Backup {
+        private final int generation;
+        private final boolean full;
+        private final long time;
+        private final long size;
+        private final File file;
+        
+        Backup(int generation, boolean full, long time, long size, File file) {
+            this.generation = generation;
+            this.full = full;
+            this.time = time;
+            this.size = size;
+            this.file = file;
+        }
+        
+        public int getGeneration() {
+            return generation;
+        }
+        
+        /**
+         * Checks whether this generation holds every shop rather than a diff
+         * @return true for a full copy
+         */
+        public boolean isFull() {
+            return full;
+        }
+        
+        public long getTime() {
+            return time;
+        }
+        
+        public long getSize() {
+            return size;
+        }
+        
+        public File getFile() {
+            return file;
+        }
+    }
+    
+    /**
+     * An item template in Paper's binary item format. The type and amount are
+     * stored alongside so shops can be indexed without decoding the item.
+     */
+    private static class SerializableItem {
+        private final String type;
+        private final int amount;
+        private final String data;
+        
+        public SerializableItem(ItemTemplate template) {
+            this.type = template.getType().name();
+            this.amount = template.getAmount();
+            this.data = template.getData();
+        }
+        
+        /**
+         * Compares the stored item, not its position in an item table
+         * @param other The other item
+         * @return true if both store the same item
+         */
+        public boolean sameAs(SerializableItem other) {
+            return amount == other.amount && type.equals(other.type) && data.equals(other.data);
+        }
+        
+        public ItemTemplate toTemplate() {
+            Material material = Material.getMaterial(type);
+            if (material == null) {
+                throw new IllegalArgumentException("Unknown item type " + type);
+            }
+            return ShopTables.internItem(material, amount, data);
+        }
+    }
+    
+    /**
+     * Assigns item indexes while saving. Equal items get the same index even when
+     * one was loaded from disk and the other came from a new sign.
+     */
+    private static class ItemTable {
+        private final List<SerializableItem> items;
+        private final Map<ItemTemplate, Integer> idsByTemplate = new IdentityHashMap<>();
+        private final Map<String, Integer> idsByData = new HashMap<>();
+        
+        public ItemTable(List<SerializableItem> items) {
+            this.items = items;
+        }
+        
+        public int idOf(ItemTemplate template) {
+            Integer id = idsByTemplate.get(template);
+            if (id == null) {
+                SerializableItem item = new SerializableItem(template);
+                id = idsByData.get(item.data);
+                if (id == null) {
+                    id = items.size();
+                    items.add(item);
+                    idsByData.put(item.data, id);
+                }
+                idsByTemplate.put(template, id);
+            }
+            return id;
         }
     }
     
@@ -155,47 +816,122 @@ public class DataManager {
         private final String chestLocation;
         private final String owner;
         private final String ownerName;
-        private final ItemStack wantItem;
-        private final ItemStack giveItem;
+        private final int wantItem;
+        private final int giveItem;
+        // Last known stock; absent in older files, which read as never scanned
+        private final int stock;
+        private final int space;
+        private final long stockTime;
+        // Activity for expiry; absent in older files, which count from when they are loaded
+        private final long tradeTime;
+        private final long ownerLogin;
         
-        public SerializableChestShop(ChestShop chestShop) {
-            this.signLocation = locationToString(chestShop.getSignLocation());
-            this.chestLocation = locationToString(chestShop.getChestLocation());
+        public SerializableChestShop(ChestShop chestShop, ItemTable itemTable) {
+            // By world name, as the shop's world may be unloaded
+            this.signLocation = locationToString(chestShop.getWorldName(), chestShop.getX(), chestShop.getY(), chestShop.getZ());
+            this.chestLocation = locationToString(chestShop.getWorldName(), chestShop.getX(), chestShop.getChestY(), chestShop.getZ());
             this.owner = chestShop.getOwner().toString();
             this.ownerName = chestShop.getOwnerName();
-            this.wantItem = chestShop.getWantItem();
-            this.giveItem = chestShop.getGiveItem();
+            this.wantItem = itemTable.idOf(chestShop.getWantTemplate());
+            this.giveItem = itemTable.idOf(chestShop.getGiveTemplate());
+            this.stock = chestShop.getStockTrades();
+            this.space = chestShop.getSpaceTrades();
+            this.stockTime = chestShop.getStockTime();
+            this.tradeTime = chestShop.getTradeTime();
+            this.ownerLogin = chestShop.getOwnerLogin();
+        }
+        
+        private SerializableChestShop(SerializableChestShop shop, int wantItem, int giveItem) {
+            this.signLocation = shop.signLocation;
+            this.chestLocation = shop.chestLocation;
+            this.owner = shop.owner;
+            this.ownerName = shop.ownerName;
+            this.wantItem = wantItem;
+            this.giveItem = giveItem;
+            this.stock = shop.stock;
+            this.space = shop.space;
+            this.stockTime = shop.stockTime;
+            this.tradeTime = shop.tradeTime;
+            this.ownerLogin = shop.ownerLogin;
+        }
+        
+        /**
+         * Copies this shop with its items at other indexes
+         */
+        public SerializableChestShop withItems(int wantItem, int giveItem) {
+            return new SerializableChestShop(this, wantItem, giveItem);
         }
         
-        public ChestShop toChestShop() {
-            Location signLoc = stringToLocation(this.signLocation);
-            Location chestLoc = stringToLocation(this.chestLocation);
+        /**
+         * Checks whether a backup diff can leave this shop out, comparing the items by
+         * content rather than by their index in the item table. Stock counts and the
+         * trade time count as changes, so a restored diff brings back the stock and
+         * expiry state of its own generation. When the stock was counted and when the
+         * owner last logged in are left out: the sweeper refreshes them all the time,
+         * and an older value only means an earlier recount.
+         * @param items The item table this shop refers to
+         * @param other The same sign's shop in another generation
+         * @param otherItems The item table the other shop refers to
+         * @return true if nothing a diff records has changed
+         */
+        public boolean sameAs(List<SerializableItem> items, SerializableChestShop other, List<SerializableItem> otherItems) {
+            return stock == other.stock && space == other.space && tradeTime == other.tradeTime
+                && chestLocation.equals(other.chestLocation) && owner.equals(other.owner)
+                && Objects.equals(ownerName, other.ownerName)
+                && items.get(wantItem).sameAs(otherItems.get(other.wantItem))
+                && items.get(giveItem).sameAs(otherItems.get(other.giveItem));
+        }
+        
+        public ChestShop toChestShop(Map<String, World> worlds, ItemTemplate[] templates) {
+            Location signLoc = stringToLocation(this.signLocation, worlds);
+            Location chestLoc = stringToLocation(this.chestLocation, worlds);
             UUID ownerUUID = UUID.fromString(this.owner);
             
             if (signLoc == null || chestLoc == null) {
                 return null;
             }
             
-            return new ChestShop(signLoc, chestLoc, ownerUUID, ownerName, wantItem, giveItem);
+            ChestShop chestShop = new ChestShop(signLoc, chestLoc, ownerUUID, ownerName,
+                template(templates, wantItem), template(templates, giveItem));
+            if (stockTime > 0) {
+                chestShop.setStockSnapshot(stock, space, stockTime);
+            }
+            if (tradeTime > 0) {
+                chestShop.setTradeTime(tradeTime);
+            }
+            if (ownerLogin > 0) {
+                ShopTables.recordOwnerLogin(ownerUUID, ownerLogin);
+            }
+            return chestShop;
+        }
+        
+        private static ItemTemplate template(ItemTemplate[] templates, int id) {
+            if (id < 0 || id >= templates.length || templates[id] == null) {
+                throw new IllegalArgumentException("Unknown item " + id);
+            }
+            return templates[id];
         }
         
-        private static String locationToString(Location location) {
-            return location.getWorld().getName() + "," + 
-                   location.getX() + "," + 
-                   location.getY() + "," + 
-                   location.getZ() + "," + 
-                   location.getYaw() + "," + 
-                   location.getPitch();
+        /**
+         * Formats a block position the way a Location of it was always stored, with zero yaw and pitch
+         */
+        private static String locationToString(String worldName, int x, int y, int z) {
+            return worldName + "," + 
+                   (double) x + "," + 
+                   (double) y + "," + 
+                   (double) z + "," + 
+                   0.0f + "," + 
+                   0.0f;
         }
         
-        private static Location stringToLocation(String locationString) {
+        private static Location stringToLocation(String locationString, Map<String, World> worlds) {
             try {
                 String[] parts = locationString.split(",");
                 if (parts.length != 6) {
                     return null;
                 }
                 
-                World world = Bukkit.getWorld(parts[0]);
+                World world = worlds.get(parts[0]);
                 if (world == null) {
                     return null;
                 }
@@ -213,6 +949,33 @@ public class DataManager {
         }
     }
     
+    /**
+     * A shop as stored before the item table, with its items inline
+     */
+    private static class LegacyChestShop {
+        private String signLocation;
+        private String chestLocation;
+        private String owner;
+        private String ownerName;
+        private ItemStack wantItem;
+        private ItemStack giveItem;
+        
+        public ChestShop toChestShop(Map<String, World> worlds) {
+            Location signLoc = SerializableChestShop.stringToLocation(this.signLocation, worlds);
+            Location chestLoc = SerializableChestShop.stringToLocation(this.chestLocation, worlds);
+            UUID ownerUUID = UUID.fromString(this.owner);
+            
+            if (signLoc == null || chestLoc == null) {
+                return null;
+            }
+            if (wantItem == null || giveItem == null) {
+                throw new IllegalArgumentException("Unknown item type");
+            }
+            
+            return new ChestShop(signLoc, chestLoc, ownerUUID, ownerName, wantItem, giveItem);
+        }
+    }
+    
     /**
      * Custom adapter for Location serialization
      */
@@ -247,22 +1010,9 @@ public class DataManager {
     }
     
     /**
-     * Custom adapter for ItemStack serialization
+     * Reads items stored inline by older versions, which only kept the type and amount
      */
-    private static class ItemStackAdapter implements JsonSerializer<ItemStack>, JsonDeserializer<ItemStack> {
-        @Override
-        public JsonElement serialize(ItemStack itemStack, Type type, JsonSerializationContext context) {
-            JsonObject obj = new JsonObject();
-            obj.addProperty("type", itemStack.getType().name());
-            obj.addProperty("amount", itemStack.getAmount());
-            
-            if (itemStack.hasItemMeta()) {
-                obj.addProperty("meta", itemStack.getItemMeta().toString());
-            }
-            
-            return obj;
-        }
-        
+    private static class ItemStackAdapter implements JsonDeserializer<ItemStack> {
         @Override
         public ItemStack deserialize(JsonElement json, Type type, JsonDeserializationContext context) {
             JsonObject obj = json.getAsJsonObject();
@@ -273,9 +1023,6 @@ public class DataManager {
                 
                 ItemStack itemStack = new ItemStack(material, amount);
                 
-                // Note: For simplicity, we're not deserializing meta data here
-                // This could be enhanced to support custom names, lore, enchantments, etc.
-                
                 return itemStack;
             } catch (Exception e) {
                 return null;
@@ -43,6 +43,24 @@ public class ItemParser {
         return new ItemStack(material, amount);
     }
     
+    /**
+     * Parses a bare item name like "Diamond" or "Oak_Log" into a Material
+     * @param materialName The name to parse, aliases are allowed
+     * @return Material or null if parsing fails
+     */
+    public static Material parseMaterial(String materialName) {
+        if (materialName == null || materialName.trim().isEmpty()) {
+            return null;
+        }
+        
+        Material material = getMaterialFromString(materialName.trim());
+        if (material == null || material == Material.AIR) {
+            return null;
+        }
+        
+        return material;
+    }
+    
     /**
      * Gets a Material from a string, handling common variations
      * @param materialName The material name to parse
@@ -0,0 +1,182 @@
+package com.itemchestshop.utils;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.format.Style;
+import net.kyori.adventure.text.format.TextColor;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import net.kyori.adventure.text.serializer.legacy.LegacyFormat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A configured message compiled into styled segments.
+ * Colour codes ({@code &a}, {@code &l}, {@code &r}, {@code &#rrggbb}) are resolved once,
+ * and {@code {name}} placeholders become slots that take the style in effect where
+ * they appear. Rendering only wraps the placeholder values; values are inserted as
+ * plain text, so colour codes in them are not interpreted.
+ */
+public final class MessageTemplate {
+
+    private static final char CODE_PREFIX = '&';
+
+    // Per segment: the precompiled component for literal text, or null for a slot
+    private final Component[] literals;
+    private final String[] slotNames;
+    private final Style[] slotStyles;
+    private final int slotCount;
+    private final Component constant;
+
+    private MessageTemplate(Component[] literals, String[] slotNames, Style[] slotStyles) {
+        this.literals = literals;
+        this.slotNames = slotNames;
+        this.slotStyles = slotStyles;
+        int slots = 0;
+        for (Component literal : literals) {
+            if (literal == null) {
+                slots++;
+            }
+        }
+        this.slotCount = slots;
+        this.constant = slots > 0 ? null : join(literals);
+    }
+
+    /**
+     * Compiles a message from the configuration
+     * @param raw The message text
+     * @return The compiled template
+     */
+    public static MessageTemplate compile(String raw) {
+        List<Component> literals = new ArrayList<>();
+        List<String> slotNames = new ArrayList<>();
+        List<Style> slotStyles = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        Style style = Style.empty();
+
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+
+            if (c == CODE_PREFIX && i + 1 < raw.length()) {
+                Style next = applyCode(raw, i + 1, style);
+                if (next != null) {
+                    addLiteral(literals, slotNames, slotStyles, text, style);
+                    style = next;
+                    i += raw.charAt(i + 1) == '#' ? 7 : 1;
+                    continue;
+                }
+            } else if (c == '{') {
+                int end = raw.indexOf('}', i);
+                if (end > i + 1 && isPlaceholderName(raw, i + 1, end)) {
+                    addLiteral(literals, slotNames, slotStyles, text, style);
+                    literals.add(null);
+                    slotNames.add(raw.substring(i + 1, end));
+                    slotStyles.add(style);
+                    i = end;
+                    continue;
+                }
+            }
+
+            text.append(c);
+        }
+        addLiteral(literals, slotNames, slotStyles, text, style);
+
+        return new MessageTemplate(literals.toArray(new Component[0]),
+            slotNames.toArray(new String[0]), slotStyles.toArray(new Style[0]));
+    }
+
+    /**
+     * Renders the message
+     * @param placeholders Alternating placeholder names and values, e.g. "item", "Diamond"
+     * @return The message component
+     */
+    public Component render(String... placeholders) {
+        if (constant != null) {
+            return constant;
+        }
+
+        TextComponent.Builder builder = Component.text();
+        for (int i = 0; i < literals.length; i++) {
+            if (literals[i] != null) {
+                builder.append(literals[i]);
+            } else {
+                String value = valueOf(slotNames[i], placeholders);
+                builder.append(Component.text(value != null ? value : "{" + slotNames[i] + "}", slotStyles[i]));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Checks whether the message has placeholders to fill in
+     * @return true if rendering depends on placeholder values
+     */
+    public boolean hasSlots() {
+        return slotCount > 0;
+    }
+
+    private static String valueOf(String name, String[] placeholders) {
+        for (int i = 0; i + 1 < placeholders.length; i += 2) {
+            if (placeholders[i].equals(name)) {
+                return placeholders[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Applies the colour code after an ampersand
+     * @return The new style, or null if the ampersand does not start a code
+     */
+    private static Style applyCode(String raw, int index, Style style) {
+        char code = raw.charAt(index);
+        if (code == '#') {
+            TextColor color = index + 7 <= raw.length() ? TextColor.fromHexString(raw.substring(index, index + 7)) : null;
+            return color != null ? Style.style(color) : null;
+        }
+
+        LegacyFormat format = LegacyComponentSerializer.parseChar(code);
+        if (format == null) {
+            return null;
+        }
+        if (format.reset()) {
+            return Style.empty();
+        }
+        if (format.color() != null) {
+            // Like the legacy format, a colour clears bold, italic and the rest
+            return Style.style(format.color());
+        }
+        return style.decorate(format.decoration());
+    }
+
+    private static boolean isPlaceholderName(String raw, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = raw.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= '0' && c <= '9') && c != '-' && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addLiteral(List<Component> literals, List<String> slotNames, List<Style> slotStyles,
+                                   StringBuilder text, Style style) {
+        if (text.length() == 0) {
+            return;
+        }
+        literals.add(Component.text(text.toString(), style));
+        slotNames.add(null);
+        slotStyles.add(null);
+        text.setLength(0);
+    }
+
+    private static Component join(Component[] parts) {
+        if (parts.length == 0) {
+            return Component.empty();
+        }
+        if (parts.length == 1) {
+            return parts[0];
+        }
+        return Component.text().append(parts).build();
+    }
+}
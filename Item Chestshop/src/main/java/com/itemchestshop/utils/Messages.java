@@ -0,0 +1,266 @@
+package com.itemchestshop.utils;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.configuration.ConfigurationSection;
+
+/**
+ * Every user-facing message, compiled from the messages section of the
+ * configuration when it is loaded. Sending a message only fills in its
+ * placeholders; nothing is looked up or parsed per call.
+ */
+public class Messages {
+
+    /**
+     * Messages and their keys in the configuration
+     */
+    public enum Key {
+        // General
+        NO_PERMISSION("no-permission"),
+        PLAYERS_ONLY("players-only"),
+        SHOPS_LOADING("shops-loading"),
+        SHOPS_RESTORING("shops-restoring"),
+        INVALID_ITEM("invalid-item"),
+        INVALID_REGION("invalid-region"),
+        INVALID_PAGE_NUMBER("invalid-page-number"),
+        USAGE_FIND("usage-find"),
+        USAGE_NEAR("usage-near"),
+        USAGE_MARKET("usage-market"),
+        USAGE_ROUTE("usage-route"),
+        USAGE_HISTORY("usage-history"),
+        USAGE_TOP("usage-top"),
+        USAGE_RESTORE("usage-restore"),
+        USAGE_EXPORT("usage-export"),
+        USAGE_BULK("usage-bulk"),
+        USAGE_EXPIRED("usage-expired"),
+        RELOAD_SUCCESS("reload-success"),
+        RELOAD_FAILED("reload-failed"),
+
+        // Shop signs
+        SHOP_CREATED("shop-created"),
+        SHOP_CREATE_FAILED("shop-create-failed"),
+        SHOP_REMOVED("shop-removed"),
+        SHOP_LIMIT_REACHED("shop-limit-reached"),
+        INVALID_FORMAT("invalid-format"),
+        SIGN_OWNER_MISMATCH("sign-owner-mismatch"),
+        NOT_SHOP_OWNER("not-shop-owner"),
+        NO_PERMISSION_CREATE("no-permission-create"),
+        NO_PERMISSION_USE("no-permission-use"),
+        NO_CHEST_FOUND("no-chest-found"),
+
+        // Trades
+        TRANSACTION_SUCCESS("transaction-success"),
+        TRANSACTION_FAILED("transaction-failed"),
+        INSUFFICIENT_ITEMS("insufficient-items"),
+        INSUFFICIENT_STOCK("insufficient-stock"),
+        CANNOT_BUY_OWN_SHOP("cannot-buy-own-shop"),
+        SHOP_FULL("shop-full"),
+        DELIVERY_FULL("delivery-full"),
+        SHOP_OWNER_NOTIFICATION("shop-owner-notification"),
+
+        // Delivery box
+        DELIVERY_STORED("delivery-stored"),
+        DELIVERY_DELIVERED("delivery-delivered"),
+        DELIVERY_WAITING("delivery-waiting"),
+        CLAIM_EMPTY("claim-empty"),
+        CLAIM_NO_ROOM("claim-no-room"),
+
+        // Stock alerts
+        STOCK_ALERT_LOW_STOCK("stock-alert-low-stock"),
+        STOCK_ALERT_LOW_SPACE("stock-alert-low-space"),
+        STOCK_ALERT_SUMMARY("stock-alert-summary"),
+
+        // Expiry
+        EXPIRY_WARNING("expiry-warning"),
+        EXPIRY_SUMMARY("expiry-summary"),
+
+        // Shop info
+        SHOP_INFO_HEADER("shop-info-header"),
+        SHOP_INFO_OWNER("shop-info-owner"),
+        SHOP_INFO_SELLING("shop-info-selling"),
+        SHOP_INFO_PRICE("shop-info-price"),
+        SHOP_INFO_IN_STOCK("shop-info-in-stock"),
+        SHOP_INFO_OUT_OF_STOCK("shop-info-out-of-stock"),
+        SHOP_INFO_ACCEPTING("shop-info-accepting"),
+        SHOP_INFO_FULL("shop-info-full"),
+        SHOP_INFO_HINT("shop-info-hint"),
+
+        // Help
+        HELP_HEADER("help-header"),
+        HELP_HELP("help-help"),
+        HELP_INFO("help-info"),
+        HELP_STATS("help-stats"),
+        HELP_LIST("help-list"),
+        HELP_FIND("help-find"),
+        HELP_NEAR("help-near"),
+        HELP_MARKET("help-market"),
+        HELP_ROUTE("help-route"),
+        HELP_HISTORY("help-history"),
+        HELP_TOP("help-top"),
+        HELP_CLAIM("help-claim"),
+        HELP_RELOAD("help-reload"),
+        HELP_ARBITRAGE("help-arbitrage"),
+        HELP_METRICS("help-metrics"),
+        HELP_TRACE("help-trace"),
+        HELP_RESTORE("help-restore"),
+        HELP_BULK("help-bulk"),
+        HELP_EXPIRED("help-expired"),
+        HELP_EXPORT("help-export"),
+        HELP_CREATE("help-create"),
+
+        // Info and stats
+        INFO_HEADER("info-header"),
+        INFO_VERSION("info-version"),
+        INFO_AUTHOR("info-author"),
+        INFO_DESCRIPTION("info-description"),
+        INFO_TOTAL_SHOPS("info-total-shops"),
+        INFO_REMOTE_SHOPS("info-remote-shops"),
+        STATS_HEADER("stats-header"),
+        STATS_TOTAL_SHOPS("stats-total-shops"),
+        STATS_NO_SHOPS("stats-no-shops"),
+        STATS_SHOPS_HEADER("stats-shops-header"),
+        STATS_SHOP("stats-shop"),
+        STATS_MORE("stats-more"),
+
+        // Shop lists
+        LIST_EMPTY("list-empty"),
+        LIST_INVALID_PAGE("list-invalid-page"),
+        LIST_HEADER("list-header"),
+        LIST_WANT("list-want"),
+        LIST_GIVE("list-give"),
+        LIST_NEXT_PAGE("list-next-page"),
+        FIND_NONE("find-none"),
+        FIND_HEADER("find-header"),
+        FIND_WANT("find-want"),
+        FIND_GIVE("find-give"),
+        FIND_MORE("find-more"),
+        SHOP_ENTRY_OWNER("shop-entry-owner"),
+        SHOP_ENTRY_STOCK("shop-entry-stock"),
+        SHOP_ENTRY_STOCK_UNKNOWN("shop-entry-stock-unknown"),
+        SHOP_ENTRY_LOCATION("shop-entry-location"),
+        SHOP_ENTRY_REMOTE_LOCATION("shop-entry-remote-location"),
+        NEAR_NONE("near-none"),
+        NEAR_HEADER("near-header"),
+        NEAR_ENTRY("near-entry"),
+
+        // Market, routes and arbitrage
+        MARKET_HEADER("market-header"),
+        MARKET_PRICE_OF("market-price-of"),
+        MARKET_ENTRY("market-entry"),
+        MARKET_ENTRY_SINGLE("market-entry-single"),
+        HISTORY_HEADER("history-header"),
+        HISTORY_ENTRY("history-entry"),
+        HISTORY_NONE("history-none"),
+        HISTORY_DISABLED("history-disabled"),
+        ROUTE_SAME_ITEM("route-same-item"),
+        ROUTE_NONE("route-none"),
+        ROUTE_HEADER("route-header"),
+        ROUTE_SUMMARY("route-summary"),
+        ROUTE_HOP("route-hop"),
+        ARBITRAGE_NONE("arbitrage-none"),
+        ARBITRAGE_HEADER("arbitrage-header"),
+        ARBITRAGE_LOOP("arbitrage-loop"),
+
+        // Leaderboards
+        TOP_EMPTY("top-empty"),
+        TOP_SHOPS_HEADER("top-shops-header"),
+        TOP_SHOP_ENTRY("top-shop-entry"),
+        TOP_OWNERS_HEADER("top-owners-header"),
+        TOP_OWNER_ENTRY("top-owner-entry"),
+        TOP_ITEMS_HEADER("top-items-header"),
+        TOP_ITEM_ENTRY("top-item-entry"),
+
+        // Metrics
+        METRICS_RESET("metrics-reset"),
+        METRICS_DUMPED("metrics-dumped"),
+        METRICS_DUMP_FAILED("metrics-dump-failed"),
+        METRICS_HEADER("metrics-header"),
+        METRICS_DISABLED("metrics-disabled"),
+        METRICS_RECORDING("metrics-recording"),
+        METRICS_TIMING("metrics-timing"),
+        METRICS_TRADES("metrics-trades"),
+        METRICS_SHOPS("metrics-shops"),
+
+        // Trace
+        TRACE_STARTED("trace-started"),
+        TRACE_START_FAILED("trace-start-failed"),
+        TRACE_NOT_RECORDING("trace-not-recording"),
+        TRACE_STOPPED("trace-stopped"),
+        TRACE_HEADER("trace-header"),
+        TRACE_IDLE("trace-idle"),
+        TRACE_FILE("trace-file"),
+        TRACE_EVENTS("trace-events"),
+        TRACE_SIZE("trace-size"),
+
+        // Export
+        EXPORT_STARTED("export-started"),
+        EXPORT_RUNNING("export-running"),
+        EXPORT_DONE("export-done"),
+        EXPORT_FAILED("export-failed"),
+
+        // Bulk
+        BULK_NO_SELECTOR("bulk-no-selector"),
+        BULK_UNKNOWN_PLAYER("bulk-unknown-player"),
+        BULK_UNKNOWN_WORLD("bulk-unknown-world"),
+        BULK_RUNNING("bulk-running"),
+        BULK_IDLE("bulk-idle"),
+        BULK_STARTED("bulk-started"),
+        BULK_DRY_RUN_STARTED("bulk-dry-run-started"),
+        BULK_PROGRESS("bulk-progress"),
+        BULK_DONE("bulk-done"),
+        BULK_CANCELLED("bulk-cancelled"),
+        BULK_DRY_RUN_DONE("bulk-dry-run-done"),
+
+        // Expired shops
+        EXPIRED_HEADER("expired-header"),
+        EXPIRED_ENTRY("expired-entry"),
+        EXPIRED_NONE("expired-none"),
+        EXPIRED_RESTORED("expired-restored"),
+        EXPIRED_FAILED("expired-failed"),
+
+        // Restore
+        RESTORE_HEADER("restore-header"),
+        RESTORE_ENTRY("restore-entry"),
+        RESTORE_EMPTY("restore-empty"),
+        RESTORE_UNKNOWN("restore-unknown"),
+        RESTORE_RUNNING("restore-running"),
+        RESTORE_STARTED("restore-started"),
+        RESTORE_STARTED_UNREADABLE("restore-started-unreadable"),
+        RESTORE_DONE("restore-done"),
+        RESTORE_FAILED("restore-failed");
+
+        private final String path;
+
+        Key(String path) {
+            this.path = path;
+        }
+
+        public String getPath() {
+            return path;
+        }
+    }
+
+    private final MessageTemplate[] templates;
+
+    /**
+     * Compiles every message
+     * @param section The messages section of the configuration, may be null
+     */
+    public Messages(ConfigurationSection section) {
+        Key[] keys = Key.values();
+        this.templates = new MessageTemplate[keys.length];
+        for (Key key : keys) {
+            String raw = section != null ? section.getString(key.getPath()) : null;
+            templates[key.ordinal()] = MessageTemplate.compile(raw != null ? raw : "Message not found: " + key.getPath());
+        }
+    }
+
+    /**
+     * Renders a message
+     * @param key The message
+     * @param placeholders Alternating placeholder names and values, e.g. "item", "Diamond"
+     * @return The message component
+     */
+    public Component get(Key key, String... placeholders) {
+        return templates[key.ordinal()].render(placeholders);
+    }
+}
@@ -0,0 +1,205 @@
+package com.itemchestshop.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.itemchestshop.ItemChestShopPlugin;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low-overhead runtime metrics for the plugin's hot paths.
+ * Recording is a no-op while disabled, and never allocates while enabled.
+ *
+ * Usage:
+ * <pre>
+ * long start = metrics.start();
+ * try { ... } finally { metrics.record(Metric.INTERACT, start); }
+ * </pre>
+ */
+public class MetricsRegistry {
+
+    /**
+     * Timed operations
+     */
+    public enum Metric {
+        INTERACT("Interact"),
+        TRANSACTION("Transaction"),
+        SIGN_CHANGE("Sign change"),
+        BLOCK_BREAK("Block break"),
+        COMMAND("Command"),
+        SAVE("Save"),
+        LOAD("Load");
+
+        private final String displayName;
+
+        Metric(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * Plain event counters
+     */
+    public enum Counter {
+        TRANSACTIONS_SUCCEEDED,
+        TRANSACTIONS_FAILED,
+        SHOPS_CREATED,
+        SHOPS_REMOVED
+    }
+
+    private final File dumpFile;
+    private final LatencyHistogram[] histograms;
+    private final AtomicLongArray counters;
+    private volatile boolean enabled;
+    private volatile long resetAt;
+
+    public MetricsRegistry(ItemChestShopPlugin plugin) {
+        this.dumpFile = new File(plugin.getDataFolder(), "metrics.json");
+        this.histograms = new LatencyHistogram[Metric.values().length];
+        this.counters = new AtomicLongArray(Counter.values().length);
+        this.resetAt = System.currentTimeMillis();
+
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Starts timing an operation
+     * @return The start timestamp, or 0 if metrics are disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records the duration of an operation started with {@link #start()}
+     * @param metric The operation
+     * @param startNanos The value returned by start
+     */
+    public void record(Metric metric, long startNanos) {
+        if (startNanos != 0L) {
+            histograms[metric.ordinal()].record(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Increments a counter
+     * @param counter The counter
+     */
+    public void increment(Counter counter) {
+        if (enabled) {
+            counters.incrementAndGet(counter.ordinal());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public LatencyHistogram getHistogram(Metric metric) {
+        return histograms[metric.ordinal()];
+    }
+
+    public long getCount(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    /**
+     * Gets the average rate of an operation since the last reset
+     * @param metric The operation
+     * @return Operations per second
+     */
+    public double getRate(Metric metric) {
+        double seconds = Math.max(1, System.currentTimeMillis() - resetAt) / 1000.0;
+        return histograms[metric.ordinal()].getCount() / seconds;
+    }
+
+    /**
+     * Gets the time of the last reset
+     * @return Milliseconds since the epoch
+     */
+    public long getResetAt() {
+        return resetAt;
+    }
+
+    /**
+     * Clears all recorded values
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+        resetAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Writes all metrics to metrics.json in the plugin folder
+     * @return The file written
+     * @throws IOException If the file cannot be written
+     */
+    public File dump() throws IOException {
+        JsonObject root = new JsonObject();
+        root.addProperty("enabled", enabled);
+        root.addProperty("since", resetAt);
+        root.addProperty("timestamp", System.currentTimeMillis());
+
+        JsonObject timings = new JsonObject();
+        for (Metric metric : Metric.values()) {
+            LatencyHistogram histogram = getHistogram(metric);
+            JsonObject entry = new JsonObject();
+            entry.addProperty("count", histogram.getCount());
+            entry.addProperty("ratePerSecond", getRate(metric));
+            entry.addProperty("p50Nanos", histogram.getPercentile(50));
+            entry.addProperty("p99Nanos", histogram.getPercentile(99));
+            entry.addProperty("maxNanos", histogram.getMax());
+            timings.add(metric.name().toLowerCase(), entry);
+        }
+        root.add("timings", timings);
+
+        JsonObject counts = new JsonObject();
+        for (Counter counter : Counter.values()) {
+            counts.addProperty(counter.name().toLowerCase(), getCount(counter));
+        }
+        root.add("counters", counts);
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        try (FileWriter writer = new FileWriter(dumpFile)) {
+            gson.toJson(root, writer);
+        }
+
+        return dumpFile;
+    }
+
+    /**
+     * Formats a duration for display
+     * @param nanos The duration in nanoseconds
+     * @return The duration in the most readable unit
+     */
+    public static String formatNanos(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + "ns";
+        } else if (nanos < 1_000_000) {
+            return String.format(Locale.ROOT, "%.1fµs", nanos / 1_000.0);
+        } else if (nanos < 1_000_000_000) {
+            return String.format(Locale.ROOT, "%.2fms", nanos / 1_000_000.0);
+        }
+        return String.format(Locale.ROOT, "%.2fs", nanos / 1_000_000_000.0);
+    }
+}
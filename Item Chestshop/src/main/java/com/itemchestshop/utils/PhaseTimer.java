@@ -0,0 +1,111 @@
+package com.itemchestshop.utils;
+
+import java.util.Arrays;
+
+/**
+ * Per-phase stopwatch for a single operation.
+ * The total duration is always measured, while phase marks are only taken
+ * when the timer was started in detailed mode, so an untraced operation
+ * pays one branch per mark.
+ */
+public class PhaseTimer {
+
+    /**
+     * Phases of trades and saves, in the order they happen
+     */
+    public enum Phase {
+        LOOKUP("lookup"),
+        PERMISSION("permission check"),
+        BUYER_CHECK("buyer items check"),
+        STOCK_CHECK("stock check"),
+        SPACE_CHECK("payment space check"),
+        TAKE_PAYMENT("take payment from buyer"),
+        STORE_PAYMENT("store payment in chest"),
+        TAKE_STOCK("take items from chest"),
+        DELIVER_STOCK("give items to buyer"),
+        SERIALIZE("serialization"),
+        WRITE("file write");
+
+        private final String displayName;
+
+        Phase(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * Timer that never measures anything, for callers without a slow log
+     */
+    public static final PhaseTimer DISABLED = new PhaseTimer();
+
+    private final long[] durations;
+    private boolean running;
+    private boolean detailed;
+    private long startedAt;
+    private long lastMark;
+
+    public PhaseTimer() {
+        this.durations = new long[Phase.values().length];
+    }
+
+    /**
+     * Starts timing a new operation
+     * @param detailed Whether to record individual phases
+     */
+    void start(boolean detailed) {
+        this.running = true;
+        this.detailed = detailed;
+        this.startedAt = System.nanoTime();
+        this.lastMark = startedAt;
+        if (detailed) {
+            Arrays.fill(durations, 0);
+        }
+    }
+
+    /**
+     * Ends the current phase
+     * @param phase The phase that just finished
+     */
+    public void mark(Phase phase) {
+        if (!detailed) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        durations[phase.ordinal()] += now - lastMark;
+        lastMark = now;
+    }
+
+    /**
+     * Stops the timer
+     * @return The total duration in nanoseconds
+     */
+    long stop() {
+        running = false;
+        return System.nanoTime() - startedAt;
+    }
+
+    /**
+     * Abandons the current operation without reporting it
+     */
+    public void cancel() {
+        running = false;
+        detailed = false;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    boolean isDetailed() {
+        return detailed;
+    }
+
+    long getDuration(Phase phase) {
+        return durations[phase.ordinal()];
+    }
+}
@@ -0,0 +1,432 @@
+package com.itemchestshop.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exchange-rate history of one (give material, want material) pair at minute,
+ * hour and day resolution.
+ *
+ * Each resolution is a ring of fixed capacity with one point per minute, hour or
+ * day, newest last; when a ring is full its oldest point is dropped. A sample is
+ * merged into the current point of every ring, and points only hold sums and the
+ * lowest rate, so an hour point is exactly the merge of its minute points and
+ * downsampling needs no second pass. Rings start small and grow up to their
+ * capacity, so pairs that appeared recently cost little. Periods without samples
+ * stay as empty points. Not thread-safe; the points handed out are immutable.
+ */
+public class PriceSeries {
+
+    /**
+     * The resolutions a series keeps, finest first
+     */
+    public enum Resolution {
+        MINUTE("minute", 60_000L),
+        HOUR("hour", 3_600_000L),
+        DAY("day", 86_400_000L);
+
+        private final String name;
+        private final long millis;
+
+        Resolution(String name, long millis) {
+            this.name = name;
+            this.millis = millis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the period one point covers
+         * @return The width in milliseconds
+         */
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * Looks up a resolution by name
+         * @param name "minute", "hour" or "day"
+         * @return The resolution, or null if unknown
+         */
+        public static Resolution fromName(String name) {
+            for (Resolution resolution : values()) {
+                if (resolution.name.equalsIgnoreCase(name)) {
+                    return resolution;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Ring[] rings;
+
+    private PriceSeries(PriceSeries original) {
+        this.rings = new Ring[original.rings.length];
+        for (int i = 0; i < rings.length; i++) {
+            rings[i] = new Ring(original.rings[i]);
+        }
+    }
+
+    /**
+     * Creates an empty series
+     * @param capacities The number of points kept per resolution, in {@link Resolution} order
+     */
+    public PriceSeries(int[] capacities) {
+        Resolution[] resolutions = Resolution.values();
+        this.rings = new Ring[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            rings[i] = new Ring(resolutions[i], Math.max(1, capacities[i]));
+        }
+    }
+
+    /**
+     * Merges a sample of the pair's exchange rates into the current point of every resolution
+     * @param time When the sample was taken, in epoch milliseconds
+     * @param min The lowest rate
+     * @param median The median rate
+     * @param mean The mean rate
+     * @param shops The number of shops trading the pair
+     * @param closed Collects the points this sample closed, as it starts a new period; may be null
+     */
+    public void add(long time, double min, double median, double mean, int shops, List<Point> closed) {
+        for (Ring ring : rings) {
+            long bucket = time / ring.resolution.millis;
+            if (closed != null && ring.count > 0 && bucket > ring.headBucket && ring.samples[ring.head] > 0) {
+                closed.add(ring.point(ring.head, ring.headBucket));
+            }
+            int position = ring.seek(bucket);
+            if (position >= 0) {
+                ring.merge(position, (float) min, (float) median, (float) mean, shops, 1);
+            }
+        }
+    }
+
+    /**
+     * Puts a point read back from storage, replacing any point of the same period.
+     * Points older than their ring keeps are dropped.
+     * @param point The point
+     */
+    public void put(Point point) {
+        Ring ring = rings[point.resolution.ordinal()];
+        int position = ring.seek(point.time / ring.resolution.millis);
+        if (position >= 0 && point.samples > 0) {
+            ring.clear(position);
+            ring.merge(position, point.min, point.median * point.samples, point.mean * point.samples,
+                point.shops * point.samples, point.samples);
+        }
+    }
+
+    /**
+     * Gets the points of a resolution in a time window, oldest first. Only the
+     * slots of the window are read; empty periods are left out.
+     * @param resolution The resolution
+     * @param from The start of the window in epoch milliseconds, inclusive
+     * @param to The end of the window in epoch milliseconds, inclusive
+     * @return The points, possibly empty
+     */
+    public List<Point> getPoints(Resolution resolution, long from, long to) {
+        Ring ring = rings[resolution.ordinal()];
+        List<Point> points = new ArrayList<>();
+        if (ring.count == 0) {
+            return points;
+        }
+
+        long first = Math.max(from / resolution.millis, ring.headBucket - ring.count + 1);
+        long last = Math.min(to / resolution.millis, ring.headBucket);
+        for (long bucket = first; bucket <= last; bucket++) {
+            int position = ring.positionOf(bucket);
+            if (ring.samples[position] > 0) {
+                points.add(ring.point(position, bucket));
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Gets the point covering a time at the finest resolution that still keeps it
+     * @param time The time in epoch milliseconds
+     * @return The point, or null if no resolution has a sample for that period
+     */
+    public Point getPointAt(long time) {
+        for (Ring ring : rings) {
+            long bucket = time / ring.resolution.millis;
+            if (ring.count > 0 && bucket <= ring.headBucket && bucket > ring.headBucket - ring.count) {
+                int position = ring.positionOf(bucket);
+                return ring.samples[position] > 0 ? ring.point(position, bucket) : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the newest point at the finest resolution that has one
+     * @return The point, or null if the series is empty
+     */
+    public Point getLatest() {
+        for (Resolution resolution : Resolution.values()) {
+            Point point = getLatest(resolution);
+            if (point != null) {
+                return point;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the newest point of a resolution, which may still be taking samples
+     * @param resolution The resolution
+     * @return The point, or null if the resolution has no samples for its current period
+     */
+    public Point getLatest(Resolution resolution) {
+        Ring ring = rings[resolution.ordinal()];
+        return ring.count > 0 && ring.samples[ring.head] > 0 ? ring.point(ring.head, ring.headBucket) : null;
+    }
+
+    /**
+     * Gets when the newest sample was taken, as the start of its day
+     * @return The time in epoch milliseconds, or 0 if the series is empty
+     */
+    public long getLastDay() {
+        Ring days = rings[Resolution.DAY.ordinal()];
+        return days.count == 0 ? 0 : days.headBucket * Resolution.DAY.millis;
+    }
+
+    /**
+     * Counts the points that have samples
+     * @return The number of points {@link #getAllPoints()} returns
+     */
+    public int getPointCount() {
+        int points = 0;
+        for (Ring ring : rings) {
+            for (int position = 0; position < ring.samples.length; position++) {
+                if (ring.samples[position] > 0) {
+                    points++;
+                }
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Copies the series, so another thread can read the copy while this one takes samples
+     * @return An independent copy
+     */
+    public PriceSeries copy() {
+        return new PriceSeries(this);
+    }
+
+    /**
+     * Copies every point that has samples, oldest first per resolution
+     * @return The points
+     */
+    public List<Point> getAllPoints() {
+        List<Point> points = new ArrayList<>();
+        for (Ring ring : rings) {
+            for (long bucket = ring.headBucket - ring.count + 1; bucket <= ring.headBucket; bucket++) {
+                int position = ring.positionOf(bucket);
+                if (ring.samples[position] > 0) {
+                    points.add(ring.point(position, bucket));
+                }
+            }
+        }
+        return points;
+    }
+
+    /**
+     * The exchange rates of a pair over one minute, hour or day
+     */
+    public static final class Point {
+        private final Resolution resolution;
+        private final long time;
+        private final float min;
+        private final float median;
+        private final float mean;
+        private final float shops;
+        private final int samples;
+
+        public Point(Resolution resolution, long time, float min, float median, float mean, float shops, int samples) {
+            this.resolution = resolution;
+            this.time = time;
+            this.min = min;
+            this.median = median;
+            this.mean = mean;
+            this.shops = shops;
+            this.samples = samples;
+        }
+
+        public Resolution getResolution() {
+            return resolution;
+        }
+
+        /**
+         * Gets the start of the period
+         * @return The time in epoch milliseconds
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Gets the lowest rate seen in the period
+         * @return Want items asked for one give item
+         */
+        public float getMin() {
+            return min;
+        }
+
+        /**
+         * Gets the median rate, averaged over the samples of the period
+         * @return Want items asked for one give item
+         */
+        public float getMedian() {
+            return median;
+        }
+
+        /**
+         * Gets the mean rate, averaged over the samples of the period
+         * @return Want items asked for one give item
+         */
+        public float getMean() {
+            return mean;
+        }
+
+        /**
+         * Gets the number of shops trading the pair, averaged over the samples of the period
+         * @return The average number of shops
+         */
+        public float getShops() {
+            return shops;
+        }
+
+        public int getSamples() {
+            return samples;
+        }
+    }
+
+    /**
+     * The points of one resolution in parallel arrays, as sums so that merging is exact
+     */
+    private static final class Ring {
+        private static final int INITIAL_LENGTH = 8;
+
+        private final Resolution resolution;
+        private final int capacity;
+        private float[] min;
+        private float[] medianSum;
+        private float[] meanSum;
+        private float[] shopsSum;
+        private int[] samples;
+        // Position and period of the newest point
+        private int head;
+        private long headBucket;
+        private int count;
+
+        Ring(Resolution resolution, int capacity) {
+            this.resolution = resolution;
+            this.capacity = capacity;
+            allocate(Math.min(INITIAL_LENGTH, capacity));
+        }
+
+        Ring(Ring original) {
+            this.resolution = original.resolution;
+            this.capacity = original.capacity;
+            this.min = original.min.clone();
+            this.medianSum = original.medianSum.clone();
+            this.meanSum = original.meanSum.clone();
+            this.shopsSum = original.shopsSum.clone();
+            this.samples = original.samples.clone();
+            this.head = original.head;
+            this.headBucket = original.headBucket;
+            this.count = original.count;
+        }
+
+        /**
+         * Finds the position of a period, starting new periods up to it
+         * @return The position, or -1 if the period is older than the ring keeps
+         */
+        int seek(long bucket) {
+            if (count == 0 || bucket - headBucket >= capacity) {
+                // Nothing kept is recent enough to stay
+                count = 1;
+                head = 0;
+                headBucket = bucket;
+                clear(0);
+                return 0;
+            }
+            if (bucket <= headBucket) {
+                return headBucket - bucket < count ? positionOf(bucket) : -1;
+            }
+
+            while (headBucket < bucket) {
+                if (count == samples.length && count < capacity) {
+                    grow();
+                }
+                head = (head + 1) % samples.length;
+                headBucket++;
+                count = Math.min(count + 1, capacity);
+                clear(head);
+            }
+            return head;
+        }
+
+        int positionOf(long bucket) {
+            int position = head - (int) (headBucket - bucket);
+            return position < 0 ? position + samples.length : position;
+        }
+
+        void merge(int position, float minRate, float median, float mean, float shops, int sampleCount) {
+            min[position] = samples[position] == 0 ? minRate : Math.min(min[position], minRate);
+            medianSum[position] += median;
+            meanSum[position] += mean;
+            shopsSum[position] += shops;
+            samples[position] += sampleCount;
+        }
+
+        void clear(int position) {
+            min[position] = 0;
+            medianSum[position] = 0;
+            meanSum[position] = 0;
+            shopsSum[position] = 0;
+            samples[position] = 0;
+        }
+
+        Point point(int position, long bucket) {
+            int n = samples[position];
+            return new Point(resolution, bucket * resolution.millis, min[position],
+                medianSum[position] / n, meanSum[position] / n, shopsSum[position] / n, n);
+        }
+
+        /**
+         * Doubles the arrays up to the capacity, laying the points out oldest first
+         */
+        private void grow() {
+            int length = samples.length;
+            int oldest = head - count + 1;
+            float[] oldMin = min;
+            float[] oldMedian = medianSum;
+            float[] oldMean = meanSum;
+            float[] oldShops = shopsSum;
+            int[] oldSamples = samples;
+            allocate(Math.min(capacity, length * 2));
+            for (int i = 0; i < count; i++) {
+                int from = Math.floorMod(oldest + i, length);
+                min[i] = oldMin[from];
+                medianSum[i] = oldMedian[from];
+                meanSum[i] = oldMean[from];
+                shopsSum[i] = oldShops[from];
+                samples[i] = oldSamples[from];
+            }
+            head = count - 1;
+        }
+
+        private void allocate(int length) {
+            min = new float[length];
+            medianSum = new float[length];
+            meanSum = new float[length];
+            shopsSum = new float[length];
+            samples = new int[length];
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.itemchestshop.utils;
+
+import java.util.Arrays;
+
+/**
+ * Compact, mergeable quantile sketch for positive exchange rates.
+ * Values are grouped into logarithmic buckets so every quantile is accurate to
+ * within {@link #RELATIVE_ACCURACY}, no matter how many values are recorded.
+ * Each bucket also keeps the sum of its values, so a bucket holding a single
+ * distinct rate (the common case for item-for-item prices) reports it exactly.
+ * Values can be removed again, which lets the sketch follow shops being deleted.
+ */
+public class RateSketch {
+
+    public static final double RELATIVE_ACCURACY = 0.01;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] counts;
+    private double[] sums;
+    private int offset;
+    private long total;
+
+    public RateSketch() {
+        this.counts = new int[0];
+        this.sums = new double[0];
+    }
+
+    /**
+     * Records a rate
+     * @param value The rate, must be positive
+     */
+    public void add(double value) {
+        if (!(value > 0)) {
+            throw new IllegalArgumentException("Rate must be positive: " + value);
+        }
+
+        int index = bucketIndex(value);
+        ensureCapacity(index);
+        counts[index - offset]++;
+        sums[index - offset] += value;
+        total++;
+    }
+
+    /**
+     * Removes a previously recorded rate
+     * @param value The rate to remove
+     * @return true if the rate was present
+     */
+    public boolean remove(double value) {
+        if (!(value > 0) || total == 0) {
+            return false;
+        }
+
+        int slot = bucketIndex(value) - offset;
+        if (slot < 0 || slot >= counts.length || counts[slot] == 0) {
+            return false;
+        }
+
+        counts[slot]--;
+        sums[slot] = counts[slot] == 0 ? 0 : sums[slot] - value;
+        total--;
+        return true;
+    }
+
+    /**
+     * Adds all values of another sketch to this one
+     * @param other The sketch to merge in
+     */
+    public void merge(RateSketch other) {
+        if (other.total == 0) {
+            return;
+        }
+
+        ensureCapacity(other.offset);
+        ensureCapacity(other.offset + other.counts.length - 1);
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] > 0) {
+                int slot = other.offset + i - offset;
+                counts[slot] += other.counts[i];
+                sums[slot] += other.sums[i];
+            }
+        }
+        total += other.total;
+    }
+
+    /**
+     * Gets the estimated value at a quantile
+     * @param quantile The quantile between 0 and 1
+     * @return The estimated value, or NaN if the sketch is empty
+     */
+    public double getQuantile(double quantile) {
+        if (total == 0) {
+            return Double.NaN;
+        }
+
+        long rank = (long) Math.floor(Math.max(0, Math.min(1, quantile)) * (total - 1));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                return sums[i] / counts[i];
+            }
+        }
+
+        return Double.NaN;
+    }
+
+    public double getMin() {
+        return getQuantile(0);
+    }
+
+    public double getMax() {
+        return getQuantile(1);
+    }
+
+    public long getCount() {
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return total == 0;
+    }
+
+    private static int bucketIndex(double value) {
+        return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+    }
+
+    /**
+     * Grows the bucket arrays so that the given bucket index fits
+     */
+    private void ensureCapacity(int index) {
+        if (counts.length == 0) {
+            counts = new int[INITIAL_CAPACITY];
+            sums = new double[INITIAL_CAPACITY];
+            offset = index - INITIAL_CAPACITY / 2;
+            return;
+        }
+
+        if (index < offset) {
+            int shift = Math.max(offset - index, counts.length / 2);
+            int[] newCounts = new int[counts.length + shift];
+            double[] newSums = new double[counts.length + shift];
+            System.arraycopy(counts, 0, newCounts, shift, counts.length);
+            System.arraycopy(sums, 0, newSums, shift, sums.length);
+            counts = newCounts;
+            sums = newSums;
+            offset -= shift;
+        } else if (index - offset >= counts.length) {
+            int newLength = Math.max(index - offset + 1, counts.length + counts.length / 2);
+            counts = Arrays.copyOf(counts, newLength);
+            sums = Arrays.copyOf(sums, newLength);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.itemchestshop.utils;
+
+import org.bukkit.Material;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Block types that make up a shop, precomputed so the checks that run for
+ * every click and block break are a single bit test.
+ */
+public final class ShopBlocks {
+
+    private static final Set<Material> SIGNS = EnumSet.noneOf(Material.class);
+    private static final Set<Material> CHESTS = EnumSet.of(Material.CHEST, Material.TRAPPED_CHEST);
+
+    static {
+        for (Material material : Material.values()) {
+            if (material.name().contains("SIGN")) {
+                SIGNS.add(material);
+            }
+        }
+    }
+
+    private ShopBlocks() {
+    }
+
+    /**
+     * Checks if a material is a sign, standing, wall or hanging
+     * @param material The material to check
+     * @return true if it's a sign
+     */
+    public static boolean isSign(Material material) {
+        return SIGNS.contains(material);
+    }
+
+    /**
+     * Checks if a material can hold a shop's stock
+     * @param material The material to check
+     * @return true if it's a chest or trapped chest
+     */
+    public static boolean isChest(Material material) {
+        return CHESTS.contains(material);
+    }
+}
@@ -0,0 +1,273 @@
+package com.itemchestshop.utils;
+
+import com.google.gson.stream.JsonWriter;
+import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.managers.TradeLeaderboard;
+import com.itemchestshop.models.ChestShop;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the shops to a file for analysis, one shop per line, as NDJSON or CSV,
+ * optionally gzipped.
+ *
+ * The main thread only copies the list of shop references and the trade counts
+ * of shops that traded recently; the identity of a shop never changes, so the
+ * copy is a consistent snapshot. Filtering, formatting and writing happen on a
+ * background thread through a fixed-size buffer, so memory does not grow with
+ * the file. Each shop line carries its trade counts for the last hour, day and
+ * week from the leaderboard counters.
+ */
+public class ShopExporter {
+
+    private static final String[] COLUMNS = {
+        "world", "x", "y", "z", "chest_y", "owner", "owner_name",
+        "want_type", "want_amount", "give_type", "give_amount",
+        "trades_hour", "trades_day", "trades_week"
+    };
+    private static final int[] NO_TRADES = new int[TradeLeaderboard.Window.values().length];
+
+    /**
+     * Output formats
+     */
+    public enum Format {
+        NDJSON("ndjson"),
+        CSV("csv");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * Looks up a format by name
+         * @param name "ndjson" or "csv"
+         * @return The format, or null if unknown
+         */
+        public static Format fromName(String name) {
+            for (Format format : values()) {
+                if (format.extension.equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final ItemChestShopPlugin plugin;
+    private volatile boolean running;
+
+    public ShopExporter(ItemChestShopPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Checks whether an export is being written
+     * @return true while an export runs
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Snapshots the shops and writes the matching ones in the background.
+     * Must be called on the main thread.
+     * @param format The output format
+     * @param gzip Whether to compress the file
+     * @param filter Which shops to include
+     * @param onDone Called on the main thread when the export finished or failed
+     * @return The file being written, or null if another export is running
+     */
+    public File export(Format format, boolean gzip, ShopFilter filter, Consumer<Result> onDone) {
+        if (running) {
+            return null;
+        }
+
+        File folder = new File(plugin.getDataFolder(), "exports");
+        String name = "shops-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + "." + format.getExtension()
+            + (gzip ? ".gz" : "");
+        File file = new File(folder, name);
+
+        List<ChestShop> shops = plugin.getChestShopManager().getShops();
+        Map<ChestShop, int[]> trades = plugin.getChestShopManager().getLeaderboard().snapshotShopCounts(System.currentTimeMillis());
+        running = true;
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            long start = System.nanoTime();
+            Result result;
+            try {
+                int written = write(file, format, gzip, filter, shops, trades);
+                result = new Result(file, written, (System.nanoTime() - start) / 1_000_000, null);
+            } catch (IOException | RuntimeException e) {
+                result = new Result(file, 0, (System.nanoTime() - start) / 1_000_000, e);
+            }
+
+            Result finished = result;
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                running = false;
+                onDone.accept(finished);
+            });
+        });
+        return file;
+    }
+
+    private static int write(File file, Format format, boolean gzip, ShopFilter filter,
+                             List<ChestShop> shops, Map<ChestShop, int[]> trades) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        File tempFile = new File(file.getPath() + ".tmp");
+        int written = 0;
+
+        try {
+            try (OutputStream output = openStream(tempFile, gzip);
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 64 * 1024)) {
+                if (format == Format.CSV) {
+                    writer.write(String.join(",", COLUMNS));
+                    writer.write('\n');
+                }
+
+                StringWriter line = new StringWriter();
+                for (ChestShop shop : shops) {
+                    if (!filter.matches(shop)) {
+                        continue;
+                    }
+
+                    int[] counts = trades.getOrDefault(shop, NO_TRADES);
+                    if (format == Format.CSV) {
+                        writeCsv(writer, shop, counts);
+                    } else {
+                        line.getBuffer().setLength(0);
+                        writeJson(line, shop, counts);
+                        writer.write(line.getBuffer().toString());
+                    }
+                    writer.write('\n');
+                    written++;
+                }
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            // Gone after a successful move; left behind by a failed write or move
+            Files.deleteIfExists(tempFile.toPath());
+        }
+        return written;
+    }
+
+    private static OutputStream openStream(File file, boolean gzip) throws IOException {
+        OutputStream output = new FileOutputStream(file);
+        return gzip ? new GZIPOutputStream(output, 64 * 1024) : output;
+    }
+
+    private static void writeJson(Writer out, ChestShop shop, int[] counts) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        json.beginObject();
+        json.name(COLUMNS[0]).value(shop.getWorldName());
+        json.name(COLUMNS[1]).value(shop.getX());
+        json.name(COLUMNS[2]).value(shop.getY());
+        json.name(COLUMNS[3]).value(shop.getZ());
+        json.name(COLUMNS[4]).value(shop.getChestY());
+        json.name(COLUMNS[5]).value(shop.getOwner().toString());
+        json.name(COLUMNS[6]).value(shop.getOwnerName());
+        json.name(COLUMNS[7]).value(shop.getWantTemplate().getType().name());
+        json.name(COLUMNS[8]).value(shop.getWantTemplate().getAmount());
+        json.name(COLUMNS[9]).value(shop.getGiveTemplate().getType().name());
+        json.name(COLUMNS[10]).value(shop.getGiveTemplate().getAmount());
+        json.name(COLUMNS[11]).value(counts[TradeLeaderboard.Window.HOUR.ordinal()]);
+        json.name(COLUMNS[12]).value(counts[TradeLeaderboard.Window.DAY.ordinal()]);
+        json.name(COLUMNS[13]).value(counts[TradeLeaderboard.Window.WEEK.ordinal()]);
+        json.endObject();
+        json.flush();
+    }
+
+    private static void writeCsv(Writer out, ChestShop shop, int[] counts) throws IOException {
+        out.write(csv(shop.getWorldName()));
+        out.write(',');
+        out.write(Integer.toString(shop.getX()));
+        out.write(',');
+        out.write(Integer.toString(shop.getY()));
+        out.write(',');
+        out.write(Integer.toString(shop.getZ()));
+        out.write(',');
+        out.write(Integer.toString(shop.getChestY()));
+        out.write(',');
+        out.write(shop.getOwner().toString());
+        out.write(',');
+        out.write(csv(shop.getOwnerName()));
+        out.write(',');
+        out.write(shop.getWantTemplate().getType().name());
+        out.write(',');
+        out.write(Integer.toString(shop.getWantTemplate().getAmount()));
+        out.write(',');
+        out.write(shop.getGiveTemplate().getType().name());
+        out.write(',');
+        out.write(Integer.toString(shop.getGiveTemplate().getAmount()));
+        out.write(',');
+        out.write(Integer.toString(counts[TradeLeaderboard.Window.HOUR.ordinal()]));
+        out.write(',');
+        out.write(Integer.toString(counts[TradeLeaderboard.Window.DAY.ordinal()]));
+        out.write(',');
+        out.write(Integer.toString(counts[TradeLeaderboard.Window.WEEK.ordinal()]));
+    }
+
+    /**
+     * Quotes a CSV field if it contains a separator, quote or line break
+     */
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * The outcome of an export
+     */
+    public static final class Result {
+        private final File file;
+        private final int shopCount;
+        private final long millis;
+        private final Exception error;
+
+        Result(File file, int shopCount, long millis, Exception error) {
+            this.file = file;
+            this.shopCount = shopCount;
+            this.millis = millis;
+            this.error = error;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public int getShopCount() {
+            return shopCount;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.itemchestshop.utils;
+
+import com.itemchestshop.models.ChestShop;
+import org.bukkit.Material;
+
+/**
+ * Selects shops by world, owner, item and region, for exports and bulk jobs.
+ * Unset criteria match every shop. Only the shop's own fields are read, so
+ * matching is safe off the main thread and never touches the world.
+ */
+public final class ShopFilter {
+
+    private String world;
+    private String owner;
+    private Material item;
+    private boolean hasRegion;
+    private int minX;
+    private int minZ;
+    private int maxX;
+    private int maxZ;
+
+    /**
+     * Keeps shops in one world
+     * @param world The world name
+     * @return This filter
+     */
+    public ShopFilter world(String world) {
+        this.world = world;
+        return this;
+    }
+
+    /**
+     * Keeps shops of one owner
+     * @param owner The owner's name or UUID
+     * @return This filter
+     */
+    public ShopFilter owner(String owner) {
+        this.owner = owner;
+        return this;
+    }
+
+    /**
+     * Keeps shops that buy or sell an item
+     * @param item The item type
+     * @return This filter
+     */
+    public ShopFilter item(Material item) {
+        this.item = item;
+        return this;
+    }
+
+    /**
+     * Keeps shops whose sign is within a rectangle, at any height
+     * @param x1 The x coordinate of one corner
+     * @param z1 The z coordinate of one corner
+     * @param x2 The x coordinate of the opposite corner
+     * @param z2 The z coordinate of the opposite corner
+     * @return This filter
+     */
+    public ShopFilter region(int x1, int z1, int x2, int z2) {
+        this.hasRegion = true;
+        this.minX = Math.min(x1, x2);
+        this.minZ = Math.min(z1, z2);
+        this.maxX = Math.max(x1, x2);
+        this.maxZ = Math.max(z1, z2);
+        return this;
+    }
+
+    /**
+     * Checks whether any criterion is set
+     * @return false if the filter matches every shop
+     */
+    public boolean isSelective() {
+        return world != null || owner != null || item != null || hasRegion;
+    }
+
+    /**
+     * Checks whether a shop meets every criterion
+     * @param shop The shop
+     * @return true if the shop is selected
+     */
+    public boolean matches(ChestShop shop) {
+        if (world != null && !shop.getWorldName().equalsIgnoreCase(world)) {
+            return false;
+        }
+        if (owner != null && !owner.equalsIgnoreCase(shop.getOwnerName())
+                && !shop.getOwner().toString().equalsIgnoreCase(owner)) {
+            return false;
+        }
+        if (hasRegion && (shop.getX() < minX || shop.getX() > maxX || shop.getZ() < minZ || shop.getZ() > maxZ)) {
+            return false;
+        }
+        return item == null || shop.getWantTemplate().getType() == item || shop.getGiveTemplate().getType() == item;
+    }
+}
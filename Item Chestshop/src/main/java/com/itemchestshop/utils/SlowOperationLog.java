@@ -0,0 +1,207 @@
+package com.itemchestshop.utils;
+
+import com.itemchestshop.ItemChestShopPlugin;
+import com.itemchestshop.models.ChestShop;
+import org.bukkit.Location;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.logging.Level;
+
+/**
+ * Writes trades and saves that exceed a time threshold to slow.log,
+ * together with a breakdown of where the time went.
+ *
+ * Phase timings are only collected for a sampled fraction of operations, and
+ * for the next few operations of a kind after one of them was slow, so the
+ * common fast path costs two clock reads and a handful of branches.
+ */
+public class SlowOperationLog {
+
+    /**
+     * Kinds of operations that are timed
+     */
+    public enum Operation {
+        TRADE,
+        SAVE
+    }
+
+    // Operations traced in full after a slow one that was not traced
+    private static final int ARMED_OPERATIONS = 20;
+
+    private final ItemChestShopPlugin plugin;
+    private final File logFile;
+    private final Object fileLock;
+    private final ThreadLocal<PhaseTimer[]> timers;
+    private final int[] armed;
+    private final long[] sampleCounters;
+
+    private boolean enabled;
+    private long tradeThresholdNanos;
+    private long saveThresholdNanos;
+    private int sampleRate;
+    private int maxEntriesPerMinute;
+
+    private long windowStart;
+    private int entriesInWindow;
+    private int suppressedEntries;
+
+    public SlowOperationLog(ItemChestShopPlugin plugin) {
+        this.plugin = plugin;
+        this.logFile = new File(plugin.getDataFolder(), "slow.log");
+        this.fileLock = new Object();
+        this.timers = ThreadLocal.withInitial(() -> {
+            PhaseTimer[] perOperation = new PhaseTimer[Operation.values().length];
+            for (int i = 0; i < perOperation.length; i++) {
+                perOperation[i] = new PhaseTimer();
+            }
+            return perOperation;
+        });
+        this.armed = new int[Operation.values().length];
+        this.sampleCounters = new long[Operation.values().length];
+    }
+
+    /**
+     * Reads the slow-log settings
+     * @param configManager The configuration to read
+     */
+    public void configure(ConfigManager configManager) {
+        this.enabled = configManager.isSlowLogEnabled();
+        this.tradeThresholdNanos = configManager.getSlowTradeThresholdMillis() * 1_000_000L;
+        this.saveThresholdNanos = configManager.getSlowSaveThresholdMillis() * 1_000_000L;
+        this.sampleRate = configManager.getSlowLogSampleRate();
+        this.maxEntriesPerMinute = configManager.getSlowLogMaxEntriesPerMinute();
+    }
+
+    /**
+     * Starts timing an operation
+     * @param operation The kind of operation
+     * @return The timer to mark phases on
+     */
+    public PhaseTimer begin(Operation operation) {
+        if (!enabled) {
+            return PhaseTimer.DISABLED;
+        }
+
+        PhaseTimer timer = timers.get()[operation.ordinal()];
+        timer.start(shouldTrace(operation));
+        return timer;
+    }
+
+    /**
+     * Finishes a trade and logs it if it was slow
+     * @param timer The timer returned by begin
+     * @param chestShop The shop that was traded with
+     */
+    public void finishTrade(PhaseTimer timer, ChestShop chestShop) {
+        if (!timer.isRunning()) {
+            return;
+        }
+
+        long total = timer.stop();
+        if (total >= tradeThresholdNanos) {
+            report(Operation.TRADE, timer, total, formatLocation(chestShop.getSignLocation()) +
+                " give=" + chestShop.getGiveTemplate().getAmount() + "x" + chestShop.getGiveTemplate().getType() +
+                " want=" + chestShop.getWantTemplate().getAmount() + "x" + chestShop.getWantTemplate().getType());
+        }
+    }
+
+    /**
+     * Finishes a save and logs it if it was slow
+     * @param timer The timer returned by begin
+     * @param shopCount The number of shops saved
+     */
+    public void finishSave(PhaseTimer timer, int shopCount) {
+        if (!timer.isRunning()) {
+            return;
+        }
+
+        long total = timer.stop();
+        if (total >= saveThresholdNanos) {
+            report(Operation.SAVE, timer, total, "shops=" + shopCount);
+        }
+    }
+
+    private synchronized boolean shouldTrace(Operation operation) {
+        int index = operation.ordinal();
+        if (armed[index] > 0) {
+            armed[index]--;
+            return true;
+        }
+        return sampleRate > 0 && ++sampleCounters[index] % sampleRate == 0;
+    }
+
+    private void report(Operation operation, PhaseTimer timer, long total, String context) {
+        StringBuilder line = new StringBuilder();
+        synchronized (this) {
+            if (!timer.isDetailed()) {
+                // Trace the next few operations of this kind so the cause shows up
+                armed[operation.ordinal()] = ARMED_OPERATIONS;
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - windowStart >= 60_000) {
+                if (suppressedEntries > 0) {
+                    line.append(timestamp(now)).append(" ").append(suppressedEntries)
+                        .append(" slow operations not logged (rate limit)\n");
+                }
+                windowStart = now;
+                entriesInWindow = 0;
+                suppressedEntries = 0;
+            }
+
+            if (entriesInWindow >= maxEntriesPerMinute) {
+                suppressedEntries++;
+                return;
+            }
+            entriesInWindow++;
+
+            line.append(timestamp(now)).append(" ").append(operation).append(" took ")
+                .append(MetricsRegistry.formatNanos(total)).append(" ").append(context);
+        }
+
+        if (timer.isDetailed()) {
+            line.append("\n   ");
+            for (PhaseTimer.Phase phase : PhaseTimer.Phase.values()) {
+                long duration = timer.getDuration(phase);
+                if (duration > 0) {
+                    line.append(" ").append(phase.getDisplayName()).append("=")
+                        .append(MetricsRegistry.formatNanos(duration)).append(";");
+                }
+            }
+        } else {
+            line.append(" (phases not sampled, tracing the next ").append(ARMED_OPERATIONS).append(")");
+        }
+        line.append("\n");
+
+        String entry = line.toString();
+        if (plugin.isEnabled()) {
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> append(entry));
+        } else {
+            // The scheduler rejects new tasks while the plugin shuts down
+            append(entry);
+        }
+    }
+
+    private void append(String entry) {
+        synchronized (fileLock) {
+            try (FileWriter writer = new FileWriter(logFile, true)) {
+                writer.write(entry);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to write " + logFile.getName(), e);
+            }
+        }
+    }
+
+    private static String formatLocation(Location location) {
+        return location.getWorld().getName() + "(" + location.getBlockX() + "," +
+               location.getBlockY() + "," + location.getBlockZ() + ")";
+    }
+
+    private static String timestamp(long millis) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(millis));
+    }
+}
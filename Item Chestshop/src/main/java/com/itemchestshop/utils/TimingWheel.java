@@ -0,0 +1,198 @@
+package com.itemchestshop.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel for deadlines far apart from each other.
+ *
+ * Time is cut into ticks. The lowest level has a slot per tick for the next
+ * {@link #SLOTS} ticks, and each level above has slots that are {@link #SLOTS}
+ * times wider. An entry goes into the lowest level that can tell its tick apart
+ * from the current one, and moves down a level each time the wheel reaches its
+ * slot, so scheduling costs O(1) and advancing only touches the entries that
+ * are due or move down, however many are scheduled. Entries beyond the highest
+ * level wait in an overflow list.
+ *
+ * Entries cannot be cancelled; callers check whether an entry is still wanted
+ * when it fires. Not thread-safe.
+ *
+ * @param <T> The type of the entries
+ */
+public class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final Bucket<T>[][] levels;
+    private final Bucket<T> overflow;
+    private long currentTick;
+    private int size;
+
+    /**
+     * Creates an empty wheel
+     * @param tickMillis The width of a tick; entries fire at most this late
+     * @param now The current time in epoch milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, long now) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick must be positive: " + tickMillis);
+        }
+        this.tickMillis = tickMillis;
+        this.levels = new Bucket[LEVELS][SLOTS];
+        this.overflow = new Bucket<>();
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * Schedules an entry. Times that already passed fire on the next tick.
+     * @param entry The entry
+     * @param time When the entry is due, in epoch milliseconds
+     */
+    public void schedule(T entry, long time) {
+        long tick = Math.max(time / tickMillis, currentTick + 1);
+        place(entry, tick);
+        size++;
+    }
+
+    /**
+     * Moves the wheel to a time and fires every entry due by then, oldest tick
+     * first. Entries may be scheduled again from the callback.
+     * @param now The current time in epoch milliseconds
+     * @param fired Called with each due entry
+     */
+    public void advance(long now, Consumer<T> fired) {
+        long targetTick = now / tickMillis;
+        List<T> due = new ArrayList<>();
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+
+            Bucket<T> bucket = levels[0][(int) (currentTick & SLOT_MASK)];
+            if (bucket == null || bucket.count == 0) {
+                continue;
+            }
+            // Detached first, as callbacks may schedule into this slot again
+            due.clear();
+            for (int i = 0; i < bucket.count; i++) {
+                due.add(bucket.entries[i]);
+            }
+            size -= bucket.count;
+            bucket.clear();
+            for (T entry : due) {
+                fired.accept(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes every entry
+     */
+    public void clear() {
+        for (Bucket<T>[] level : levels) {
+            Arrays.fill(level, null);
+        }
+        overflow.clear();
+        size = 0;
+    }
+
+    /**
+     * Gets the number of scheduled entries, including those no longer wanted
+     * @return The number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Moves the entries of the higher-level slots the wheel just reached down a level,
+     * highest level first, so entries can fall through several levels in one tick
+     */
+    private void cascade() {
+        int level = 0;
+        while (level < LEVELS && (currentTick & ((1L << (SLOT_BITS * (level + 1))) - 1)) == 0) {
+            level++;
+        }
+        if (level == LEVELS) {
+            redistribute(overflow);
+            level--;
+        }
+        for (; level > 0; level--) {
+            Bucket<T> bucket = levels[level][(int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK)];
+            if (bucket != null) {
+                redistribute(bucket);
+            }
+        }
+    }
+
+    private void redistribute(Bucket<T> bucket) {
+        int count = bucket.count;
+        if (count == 0) {
+            return;
+        }
+        Object[] entries = Arrays.copyOf(bucket.entries, count);
+        long[] ticks = Arrays.copyOf(bucket.ticks, count);
+        bucket.clear();
+        for (int i = 0; i < count; i++) {
+            @SuppressWarnings("unchecked")
+            T entry = (T) entries[i];
+            place(entry, Math.max(ticks[i], currentTick));
+        }
+    }
+
+    /**
+     * Puts an entry into the lowest level whose slots tell its tick apart from the current one
+     */
+    private void place(T entry, long tick) {
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * (level + 1);
+            if ((tick >>> shift) == (currentTick >>> shift)) {
+                int slot = (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+                Bucket<T> bucket = levels[level][slot];
+                if (bucket == null) {
+                    bucket = new Bucket<>();
+                    levels[level][slot] = bucket;
+                }
+                bucket.add(entry, tick);
+                return;
+            }
+        }
+        overflow.add(entry, tick);
+    }
+
+    /**
+     * The entries of one slot and their ticks, in parallel arrays
+     */
+    private static final class Bucket<T> {
+        private T[] entries;
+        private long[] ticks;
+        private int count;
+
+        @SuppressWarnings("unchecked")
+        Bucket() {
+            this.entries = (T[]) new Object[4];
+            this.ticks = new long[4];
+        }
+
+        void add(T entry, long tick) {
+            if (count == entries.length) {
+                entries = Arrays.copyOf(entries, count * 2);
+                ticks = Arrays.copyOf(ticks, count * 2);
+            }
+            entries[count] = entry;
+            ticks[count] = tick;
+            count++;
+        }
+
+        void clear() {
+            Arrays.fill(entries, 0, count, null);
+            count = 0;
+        }
+    }
+}
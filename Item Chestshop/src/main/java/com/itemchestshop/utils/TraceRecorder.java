@@ -0,0 +1,398 @@
+package com.itemchestshop.utils;
+
+import com.itemchestshop.ItemChestShopPlugin;
+import org.bukkit.block.Block;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Records shop interactions, sign changes, sign breaks and commands to a compact
+ * binary trace that the offline replayer can feed back through the plugin.
+ *
+ * Records are encoded on the main thread into pooled buffers and written by a
+ * single background thread. World names and players are written once and then
+ * referred to by index, so a sign click costs two map lookups and a few varints.
+ * When the writer falls behind, new records are dropped instead of blocking the tick.
+ *
+ * File layout: magic, version, start time in epoch milliseconds, then records.
+ * Every record starts with its type byte. Event records follow it with the
+ * microseconds since the previous event as a varint.
+ * <pre>
+ * WORLD       id, name
+ * PLAYER      id, uuid (two longs), name
+ * INTERACT    delta, player, world, x, y, z, flags
+ * SIGN_CHANGE delta, player, world, x, y, z, line count, lines
+ * BREAK       delta, player, world, x, y, z
+ * COMMAND     delta, player (0 = console), argument count, arguments
+ * </pre>
+ * Ids and counts are unsigned varints, coordinates zigzag varints and strings a
+ * varint byte length followed by UTF-8.
+ */
+public class TraceRecorder {
+
+    public static final int MAGIC = 0x49435354;
+    public static final int VERSION = 1;
+
+    public static final byte RECORD_WORLD = 1;
+    public static final byte RECORD_PLAYER = 2;
+    public static final byte RECORD_INTERACT = 3;
+    public static final byte RECORD_SIGN_CHANGE = 4;
+    public static final byte RECORD_BREAK = 5;
+    public static final byte RECORD_COMMAND = 6;
+
+    public static final int FLAG_SNEAKING = 1;
+
+    // Player id written for commands from the console
+    public static final int CONSOLE_ID = 0;
+
+    // Longer strings are cut, which keeps every record well below RECORD_RESERVE
+    public static final int MAX_STRING_CHARS = 256;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BUFFER_COUNT = 8;
+    private static final int RECORD_RESERVE = 8 * 1024;
+    private static final int MAX_ARGUMENTS = 8;
+
+    private final ItemChestShopPlugin plugin;
+    private final Map<String, Integer> worldIds;
+    private final Map<UUID, Integer> playerIds;
+
+    private ExecutorService writer;
+    private ArrayBlockingQueue<ByteBuffer> freeBuffers;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private File file;
+    private boolean recording;
+    private long maxBytes;
+    private long lastEventNanos;
+    private long bytesQueued;
+    private long recordedEvents;
+    private long droppedEvents;
+
+    public TraceRecorder(ItemChestShopPlugin plugin) {
+        this.plugin = plugin;
+        this.worldIds = new HashMap<>();
+        this.playerIds = new HashMap<>();
+    }
+
+    /**
+     * Starts recording to a new file in the traces folder
+     * @param maxSizeMegabytes Size after which recording stops by itself
+     * @return The trace file
+     * @throws IOException If the file cannot be created
+     */
+    public File start(long maxSizeMegabytes) throws IOException {
+        File folder = new File(plugin.getDataFolder(), "traces");
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        String name = "trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".icstrace";
+        return start(new File(folder, name), maxSizeMegabytes);
+    }
+
+    /**
+     * Starts recording to a file, replacing any previous content
+     * @param file The trace file
+     * @param maxSizeMegabytes Size after which recording stops by itself
+     * @return The trace file
+     * @throws IOException If the file cannot be created
+     */
+    public File start(File file, long maxSizeMegabytes) throws IOException {
+        if (recording) {
+            stop();
+        }
+
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.file = file;
+        this.maxBytes = maxSizeMegabytes * 1024 * 1024;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ItemChestShop trace writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.freeBuffers = new ArrayBlockingQueue<>(BUFFER_COUNT);
+        for (int i = 1; i < BUFFER_COUNT; i++) {
+            freeBuffers.add(ByteBuffer.allocate(BUFFER_SIZE));
+        }
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        worldIds.clear();
+        playerIds.clear();
+        bytesQueued = 0;
+        recordedEvents = 0;
+        droppedEvents = 0;
+
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.putLong(System.currentTimeMillis());
+        lastEventNanos = System.nanoTime();
+        recording = true;
+        return file;
+    }
+
+    /**
+     * Writes out buffered records and closes the trace file
+     */
+    public void stop() {
+        if (!recording) {
+            return;
+        }
+        recording = false;
+
+        submit(buffer);
+        buffer = null;
+        FileChannel closing = channel;
+        writer.execute(() -> {
+            try {
+                closing.close();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to close trace " + file.getName(), e);
+            }
+        });
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Trace writer did not finish, " + file.getName() + " may be incomplete");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records a right click on a sign
+     * @param player The clicking player
+     * @param block The clicked sign
+     */
+    public void recordInteract(Player player, Block block) {
+        if (!recording || !reserve()) {
+            return;
+        }
+
+        int playerId = playerId(player);
+        int worldId = worldId(block.getWorld().getName());
+        beginEvent(RECORD_INTERACT);
+        putVarInt(playerId);
+        putVarInt(worldId);
+        putBlock(block);
+        buffer.put((byte) (player.isSneaking() ? FLAG_SNEAKING : 0));
+    }
+
+    /**
+     * Records the text written on a sign
+     * @param player The writing player
+     * @param block The sign
+     * @param lines The lines as submitted
+     */
+    public void recordSignChange(Player player, Block block, String[] lines) {
+        if (!recording || !reserve()) {
+            return;
+        }
+
+        int playerId = playerId(player);
+        int worldId = worldId(block.getWorld().getName());
+        beginEvent(RECORD_SIGN_CHANGE);
+        putVarInt(playerId);
+        putVarInt(worldId);
+        putBlock(block);
+        int count = Math.min(lines.length, 4);
+        buffer.put((byte) count);
+        for (int i = 0; i < count; i++) {
+            putString(lines[i] == null ? "" : lines[i]);
+        }
+    }
+
+    /**
+     * Records a broken sign
+     * @param player The breaking player
+     * @param block The sign
+     */
+    public void recordBreak(Player player, Block block) {
+        if (!recording || !reserve()) {
+            return;
+        }
+
+        int playerId = playerId(player);
+        int worldId = worldId(block.getWorld().getName());
+        beginEvent(RECORD_BREAK);
+        putVarInt(playerId);
+        putVarInt(worldId);
+        putBlock(block);
+    }
+
+    /**
+     * Records a plugin command
+     * @param sender The player or console that ran it
+     * @param args The command arguments
+     */
+    public void recordCommand(CommandSender sender, String[] args) {
+        if (!recording || !reserve()) {
+            return;
+        }
+
+        int playerId = sender instanceof Player ? playerId((Player) sender) : CONSOLE_ID;
+        beginEvent(RECORD_COMMAND);
+        putVarInt(playerId);
+        int count = Math.min(args.length, MAX_ARGUMENTS);
+        buffer.put((byte) count);
+        for (int i = 0; i < count; i++) {
+            putString(args[i]);
+        }
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getRecordedEvents() {
+        return recordedEvents;
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    /**
+     * Gets the size of the trace so far
+     * @return Bytes handed to the writer plus bytes still buffered
+     */
+    public long getBytesRecorded() {
+        return bytesQueued + (buffer == null ? 0 : buffer.position());
+    }
+
+    /**
+     * Makes room for one record, handing a full buffer to the writer
+     * @return false if the record has to be dropped
+     */
+    private boolean reserve() {
+        if (buffer.remaining() >= RECORD_RESERVE) {
+            return true;
+        }
+
+        ByteBuffer next = freeBuffers.poll();
+        if (next == null) {
+            // Every buffer is waiting for the disk
+            droppedEvents++;
+            return false;
+        }
+
+        submit(buffer);
+        buffer = next;
+        if (bytesQueued >= maxBytes) {
+            plugin.getLogger().info("Trace " + file.getName() + " reached its size limit, recording stopped");
+            stop();
+            return false;
+        }
+        return true;
+    }
+
+    private void submit(ByteBuffer full) {
+        full.flip();
+        bytesQueued += full.remaining();
+        FileChannel target = channel;
+        writer.execute(() -> {
+            try {
+                while (full.hasRemaining()) {
+                    target.write(full);
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Failed to write trace " + file.getName(), e);
+            }
+            full.clear();
+            freeBuffers.offer(full);
+        });
+    }
+
+    private void beginEvent(byte type) {
+        long now = System.nanoTime();
+        buffer.put(type);
+        putVarLong((now - lastEventNanos) / 1000);
+        lastEventNanos = now;
+        recordedEvents++;
+    }
+
+    private int worldId(String name) {
+        Integer id = worldIds.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        int newId = worldIds.size();
+        worldIds.put(name, newId);
+        buffer.put(RECORD_WORLD);
+        putVarInt(newId);
+        putString(name);
+        return newId;
+    }
+
+    private int playerId(Player player) {
+        UUID uuid = player.getUniqueId();
+        Integer id = playerIds.get(uuid);
+        if (id != null) {
+            return id;
+        }
+
+        int newId = playerIds.size() + 1;
+        playerIds.put(uuid, newId);
+        buffer.put(RECORD_PLAYER);
+        putVarInt(newId);
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+        putString(player.getName());
+        return newId;
+    }
+
+    private void putBlock(Block block) {
+        putSignedVarInt(block.getX());
+        putSignedVarInt(block.getY());
+        putSignedVarInt(block.getZ());
+    }
+
+    private void putString(String value) {
+        String cut = value.length() > MAX_STRING_CHARS ? value.substring(0, MAX_STRING_CHARS) : value;
+        byte[] bytes = cut.getBytes(StandardCharsets.UTF_8);
+        putVarInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void putSignedVarInt(int value) {
+        putVarInt((value << 1) ^ (value >> 31));
+    }
+
+    private void putVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -1,5 +1,6 @@
 package com.itemchestshop.utils;
 
+import com.itemchestshop.managers.DeliveryVault;
 import com.itemchestshop.models.ChestShop;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
@@ -15,33 +16,60 @@ public class TransactionManager {
      * Processes a transaction between a player and a chest shop
      * @param player The player making the purchase
      * @param chestShop The chest shop
+     * @param deliveryVault Where bought items that don't fit in the player's inventory go
      * @return TransactionResult indicating success or failure
      */
-    public static TransactionResult processTransaction(Player player, ChestShop chestShop) {
+    public static TransactionResult processTransaction(Player player, ChestShop chestShop, DeliveryVault deliveryVault) {
+        return processTransaction(player, chestShop, deliveryVault, PhaseTimer.DISABLED);
+    }
+    
+    /**
+     * Processes a transaction between a player and a chest shop, timing each phase
+     * @param player The player making the purchase
+     * @param chestShop The chest shop
+     * @param deliveryVault Where bought items that don't fit in the player's inventory go
+     * @param timer The timer to mark phases on
+     * @return TransactionResult indicating success or failure
+     */
+    public static TransactionResult processTransaction(Player player, ChestShop chestShop, DeliveryVault deliveryVault,
+                                                       PhaseTimer timer) {
         // Check if player is trying to buy from their own shop
         if (chestShop.getOwner().equals(player.getUniqueId())) {
-            return new TransactionResult(false, "cannot-buy-own-shop");
+            return new TransactionResult(false, Messages.Key.CANNOT_BUY_OWN_SHOP);
         }
         
         // Check if player has enough items to pay
         if (!playerHasItems(player, chestShop.getWantItem())) {
-            return new TransactionResult(false, "insufficient-items");
+            return new TransactionResult(false, Messages.Key.INSUFFICIENT_ITEMS);
         }
+        timer.mark(PhaseTimer.Phase.BUYER_CHECK);
+        
+        // Count stock and payment space in one pass; the counts are kept for stock alerts
+        chestShop.scanStock();
         
         // Check if shop has enough stock
-        if (!chestShop.hasStock()) {
-            return new TransactionResult(false, "insufficient-stock");
+        if (chestShop.getStockTrades() < 1) {
+            return new TransactionResult(false, Messages.Key.INSUFFICIENT_STOCK);
         }
+        timer.mark(PhaseTimer.Phase.STOCK_CHECK);
         
         // Check if shop can accept payment
-        if (!chestShop.canAcceptPayment()) {
-            return new TransactionResult(false, "shop-full");
+        if (chestShop.getSpaceTrades() < 1) {
+            return new TransactionResult(false, Messages.Key.SHOP_FULL);
+        }
+        
+        // Whatever doesn't fit in the buyer's inventory waits in their delivery box, so refuse if that is full too
+        ItemStack giveItem = chestShop.getGiveItem();
+        int overflow = giveItem.getAmount() - getSpace(player.getInventory(), giveItem);
+        if (overflow > 0 && deliveryVault.getSpace(player.getUniqueId(), giveItem) < overflow) {
+            return new TransactionResult(false, Messages.Key.DELIVERY_FULL);
         }
+        timer.mark(PhaseTimer.Phase.SPACE_CHECK);
         
         // Get the chest inventory
-        Block chestBlock = chestShop.getChestLocation().getBlock();
+        Block chestBlock = chestShop.getChestBlock();
         if (chestBlock.getType() != Material.CHEST && chestBlock.getType() != Material.TRAPPED_CHEST) {
-            return new TransactionResult(false, "no-chest-found");
+            return new TransactionResult(false, Messages.Key.NO_CHEST_FOUND);
         }
         
         Chest chest = (Chest) chestBlock.getState();
@@ -51,21 +79,31 @@ public class TransactionManager {
         try {
             // Remove payment from player
             removeItemsFromPlayer(player, chestShop.getWantItem());
+            timer.mark(PhaseTimer.Phase.TAKE_PAYMENT);
             
             // Add payment to chest
             addItemsToInventory(chestInventory, chestShop.getWantItem());
+            timer.mark(PhaseTimer.Phase.STORE_PAYMENT);
             
             // Remove items from chest
             removeItemsFromInventory(chestInventory, chestShop.getGiveItem());
+            timer.mark(PhaseTimer.Phase.TAKE_STOCK);
             
-            // Give items to player
-            addItemsToPlayer(player, chestShop.getGiveItem());
+            // Give items to player, keeping what doesn't fit for later
+            int undelivered = addItemsToInventory(player.getInventory(), giveItem);
+            if (undelivered > 0) {
+                ItemStack rest = giveItem.clone();
+                rest.setAmount(undelivered);
+                deliveryVault.store(player.getUniqueId(), rest);
+            }
+            timer.mark(PhaseTimer.Phase.DELIVER_STOCK);
+            chestShop.recordTrade();
             
-            return new TransactionResult(true, "transaction-success");
+            return new TransactionResult(true, Messages.Key.TRANSACTION_SUCCESS, undelivered);
             
         } catch (Exception e) {
             // If something goes wrong, try to revert (this is a simple approach)
-            return new TransactionResult(false, "transaction-failed");
+            return new TransactionResult(false, Messages.Key.TRANSACTION_FAILED);
         }
     }
     
@@ -104,56 +142,31 @@ public class TransactionManager {
     }
     
     /**
-     * Adds items to a player's inventory
-     * @param player The player
-     * @param items The items to add
+     * Counts how many of an item fit in an inventory
+     * @param inventory The inventory
+     * @param item The item
+     * @return The amount that fits, at most the item's amount
      */
-    private static void addItemsToPlayer(Player player, ItemStack items) {
-        Inventory inventory = player.getInventory();
-        ItemStack toAdd = items.clone();
-        
-        // Try to add to existing stacks first
-        for (int i = 0; i < inventory.getSize() && toAdd.getAmount() > 0; i++) {
-            ItemStack slot = inventory.getItem(i);
-            if (slot != null && slot.isSimilar(toAdd)) {
-                int maxStack = slot.getMaxStackSize();
-                int currentAmount = slot.getAmount();
-                int canAdd = Math.min(maxStack - currentAmount, toAdd.getAmount());
-                
-                if (canAdd > 0) {
-                    slot.setAmount(currentAmount + canAdd);
-                    toAdd.setAmount(toAdd.getAmount() - canAdd);
-                }
-            }
-        }
-        
-        // Add to empty slots
-        for (int i = 0; i < inventory.getSize() && toAdd.getAmount() > 0; i++) {
+    public static int getSpace(Inventory inventory, ItemStack item) {
+        int space = 0;
+        for (int i = 0; i < inventory.getSize() && space < item.getAmount(); i++) {
             ItemStack slot = inventory.getItem(i);
             if (slot == null || slot.getType() == Material.AIR) {
-                int maxStack = toAdd.getMaxStackSize();
-                int amountToAdd = Math.min(maxStack, toAdd.getAmount());
-                
-                ItemStack newStack = toAdd.clone();
-                newStack.setAmount(amountToAdd);
-                inventory.setItem(i, newStack);
-                
-                toAdd.setAmount(toAdd.getAmount() - amountToAdd);
+                space += item.getMaxStackSize();
+            } else if (slot.isSimilar(item)) {
+                space += Math.max(0, slot.getMaxStackSize() - slot.getAmount());
             }
         }
-        
-        // Drop remaining items if inventory is full
-        if (toAdd.getAmount() > 0) {
-            player.getWorld().dropItemNaturally(player.getLocation(), toAdd);
-        }
+        return Math.min(space, item.getAmount());
     }
     
     /**
      * Adds items to an inventory
      * @param inventory The inventory
      * @param items The items to add
+     * @return The amount that did not fit
      */
-    private static void addItemsToInventory(Inventory inventory, ItemStack items) {
+    public static int addItemsToInventory(Inventory inventory, ItemStack items) {
         ItemStack toAdd = items.clone();
         
         // Try to add to existing stacks first
@@ -185,6 +198,8 @@ public class TransactionManager {
                 toAdd.setAmount(toAdd.getAmount() - amountToAdd);
             }
         }
+        
+        return toAdd.getAmount();
     }
     
     /**
@@ -215,19 +230,33 @@ public class TransactionManager {
      */
     public static class TransactionResult {
         private final boolean success;
-        private final String messageKey;
+        private final Messages.Key messageKey;
+        private final int undelivered;
+        
+        public TransactionResult(boolean success, Messages.Key messageKey) {
+            this(success, messageKey, 0);
+        }
         
-        public TransactionResult(boolean success, String messageKey) {
+        public TransactionResult(boolean success, Messages.Key messageKey, int undelivered) {
             this.success = success;
             this.messageKey = messageKey;
+            this.undelivered = undelivered;
         }
         
         public boolean isSuccess() {
             return success;
         }
         
-        public String getMessageKey() {
+        public Messages.Key getMessageKey() {
             return messageKey;
         }
+        
+        /**
+         * Gets the amount of bought items that went to the buyer's delivery box
+         * @return The amount that did not fit in the buyer's inventory
+         */
+        public int getUndelivered() {
+            return undelivered;
+        }
     }
 }
\ No newline at end of file